@@ -0,0 +1,77 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Base64;
+
+/**
+ * An {@link Authenticator} of the credentials of the HTTP Basic authentication scheme (RFC 7617): the user name and
+ * the password separated by a colon, encoded in base64.
+ * <p>
+ * The password is checked by a {@link CredentialVerifier} on each call. Wrap this authenticator in a
+ * {@link CachingAuthenticator} to avoid checking the same credentials on every request.
+ */
+public class BasicAuthenticator implements Authenticator {
+
+	private static final String CREDENTIALS_ENCODING = "UTF-8"; //$NON-NLS-1$
+	private static final char SEPARATOR = ':';
+
+	private final CredentialVerifier verifier;
+
+	/**
+	 * Constructs a {@link BasicAuthenticator}.
+	 *
+	 * @param verifier
+	 *            the verifier of the passwords.
+	 */
+	public BasicAuthenticator(CredentialVerifier verifier) {
+		this.verifier = verifier;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @param credentials
+	 *            the base64-encoded credentials of the Authorization header field.
+	 */
+	@Override
+	public String authenticate(String credentials) {
+		if (credentials == null) {
+			return null;
+		}
+
+		String decoded;
+		try {
+			decoded = decode(Base64.getDecoder().decode(credentials));
+		} catch (IllegalArgumentException e) {
+			// malformed base64
+			return null;
+		}
+
+		int separator = decoded.indexOf(SEPARATOR);
+		if (separator < 0) {
+			return null;
+		}
+		return this.verifier.verify(decoded.substring(0, separator), decoded.substring(separator + 1));
+	}
+
+	private static String decode(byte[] bytes) {
+		try {
+			return new String(bytes, CREDENTIALS_ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 not embedded, decode as ISO-8859-1
+			char[] chars = new char[bytes.length];
+			for (int i = 0; i < bytes.length; i++) {
+				chars[i] = (char) (bytes[i] & 0xFF);
+			}
+			return new String(chars);
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+/**
+ * A {@link SessionDataAccess} keeping a small near-cache of the sessions in front of a remote store shared by the nodes
+ * of a cluster.
+ * <p>
+ * The lookups by session ID, done on every authenticated request, are answered by the cache while the cached session
+ * is younger than the time-to-live and not expired. Otherwise, and for all the other operations, the remote store is
+ * accessed.
+ * <p>
+ * The cache is a fixed-size table indexed by the hash of the session ID, each slot holding one session: a session
+ * evicts the one sharing its slot, so that the memory used is bounded and a hit does not allocate memory. The slots are
+ * guarded by striped locks.
+ * <p>
+ * When a session is removed or refreshed, the other nodes are notified through the
+ * {@link SessionInvalidationChannel}, if any, so that they {@link #invalidate(String)} it. A session removed while a
+ * notification is lost remains in the caches at most for the time-to-live.
+ */
+public class CachedSessionDataAccess implements SessionDataAccess {
+
+	private static final int DEFAULT_CACHE_SIZE = 256;
+	private static final long DEFAULT_TIME_TO_LIVE = 5L; // in seconds
+	private static final int LOCK_COUNT = 16;
+
+	private final SessionDataAccess remote;
+	private final long timeToLive; // in seconds
+	private final CoarseClock clock;
+
+	private final CachedSession[] slots;
+	private final int slotMask;
+	private final Object[] locks;
+
+	private volatile SessionInvalidationChannel channel;
+
+	/**
+	 * Constructs a {@link CachedSessionDataAccess} caching 256 sessions for 5 seconds.
+	 *
+	 * @param remote
+	 *            the remote store of the sessions.
+	 * @see CoarseClock#getDefault()
+	 */
+	public CachedSessionDataAccess(SessionDataAccess remote) {
+		this(remote, DEFAULT_CACHE_SIZE, DEFAULT_TIME_TO_LIVE, CoarseClock.getDefault());
+	}
+
+	/**
+	 * Constructs a {@link CachedSessionDataAccess}.
+	 *
+	 * @param remote
+	 *            the remote store of the sessions.
+	 * @param cacheSize
+	 *            the number of cached sessions, rounded up to a power of two.
+	 * @param timeToLive
+	 *            the time a session is cached before being read again from the remote store, in seconds.
+	 * @param clock
+	 *            the clock used to check the time-to-live and the expiration of the cached sessions.
+	 */
+	public CachedSessionDataAccess(SessionDataAccess remote, int cacheSize, long timeToLive, CoarseClock clock) {
+		if (remote == null || cacheSize <= 0 || cacheSize > (1 << 30) || timeToLive < 0 || clock == null) {
+			throw new IllegalArgumentException();
+		}
+		int slotCount = 1;
+		while (slotCount < cacheSize) {
+			slotCount <<= 1;
+		}
+
+		this.remote = remote;
+		this.timeToLive = timeToLive;
+		this.clock = clock;
+		this.slots = new CachedSession[slotCount];
+		this.slotMask = slotCount - 1;
+		this.locks = new Object[LOCK_COUNT];
+		for (int i = 0; i < LOCK_COUNT; i++) {
+			this.locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Sets the channel notifying the other nodes of the removed and refreshed sessions.
+	 *
+	 * @param channel
+	 *            the channel, or <code>null</code> to stop notifying.
+	 */
+	public void setInvalidationChannel(SessionInvalidationChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Drops a session from the cache, typically when another node notifies that it has been removed.
+	 *
+	 * @param sessionID
+	 *            the ID of the session.
+	 */
+	public void invalidate(String sessionID) {
+		int slot = getSlot(sessionID);
+		synchronized (getLock(slot)) {
+			CachedSession cached = this.slots[slot];
+			if (cached != null && cached.session.sessionID.equals(sessionID)) {
+				this.slots[slot] = null;
+			}
+		}
+	}
+
+	/**
+	 * Drops all the sessions from the cache.
+	 */
+	public void invalidateAll() {
+		CachedSession[] slots = this.slots;
+		for (int i = 0; i < slots.length; i++) {
+			synchronized (getLock(i)) {
+				slots[i] = null;
+			}
+		}
+	}
+
+	@Override
+	public void addSession(Session newSession) {
+		this.remote.addSession(newSession);
+		cache(newSession);
+	}
+
+	@Override
+	public Session getSessionByUser(String userID) {
+		return this.remote.getSessionByUser(userID);
+	}
+
+	@Override
+	public Session getSessionByID(String sessionID) {
+		if (sessionID == null) {
+			return null;
+		}
+		long now = this.clock.getSeconds();
+		int slot = getSlot(sessionID);
+		CachedSession cached;
+		synchronized (getLock(slot)) {
+			cached = this.slots[slot];
+		}
+		if (cached != null && cached.cachedUntil >= now && !cached.session.isExpired(now)
+				&& cached.session.sessionID.equals(sessionID)) {
+			return cached.session;
+		}
+
+		// the expiration of a cached session may have been refreshed by another node
+		Session session = this.remote.getSessionByID(sessionID);
+		if (session != null) {
+			cache(session);
+		} else if (cached != null) {
+			invalidate(sessionID);
+		}
+		return session;
+	}
+
+	@Override
+	public void refreshSession(String sessionID, long newExpiration) {
+		this.remote.refreshSession(sessionID, newExpiration);
+		invalidate(sessionID);
+		publish(sessionID);
+	}
+
+	@Override
+	public void removeSession(Session session) {
+		this.remote.removeSession(session);
+		invalidate(session.sessionID);
+		publish(session.sessionID);
+	}
+
+	private void publish(String sessionID) {
+		SessionInvalidationChannel channel = this.channel;
+		if (channel != null) {
+			channel.publish(sessionID);
+		}
+	}
+
+	private void cache(Session session) {
+		CachedSession cached = new CachedSession(session, this.clock.getSeconds() + this.timeToLive);
+		int slot = getSlot(session.sessionID);
+		synchronized (getLock(slot)) {
+			this.slots[slot] = cached;
+		}
+	}
+
+	private int getSlot(String sessionID) {
+		int hash = sessionID.hashCode();
+		// spread the high bits, the low bits of string hashes are often similar
+		return (hash ^ (hash >>> 16)) & this.slotMask;
+	}
+
+	private Object getLock(int slot) {
+		return this.locks[slot & (LOCK_COUNT - 1)];
+	}
+
+	private static final class CachedSession {
+
+		/* default */ final Session session;
+		/* default */ final long cachedUntil;
+
+		/* default */ CachedSession(Session session, long cachedUntil) {
+			this.session = session;
+			this.cachedUntil = cachedUntil;
+		}
+
+	}
+
+}
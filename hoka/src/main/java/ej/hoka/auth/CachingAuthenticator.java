@@ -0,0 +1,170 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+import java.util.Random;
+
+/**
+ * An {@link Authenticator} caching the successful authentications of another one, typically checking the credentials
+ * of machine-to-machine calls with a slow password hash.
+ * <p>
+ * The credentials are not kept: the cache is keyed by their HMAC-SHA256, with a random key generated at construction.
+ * The cache is a fixed-size table indexed by this digest, each slot holding one authentication, so that the memory
+ * used is bounded. An authentication is used until its time-to-live elapses, then the credentials are checked again.
+ * Failed authentications are not cached.
+ * <p>
+ * Changing or revoking credentials takes effect when the cached authentications expire, or after
+ * {@link #invalidateAll()}.
+ */
+public class CachingAuthenticator implements Authenticator {
+
+	private static final int DEFAULT_CACHE_SIZE = 64;
+	private static final long DEFAULT_TIME_TO_LIVE = 60L; // in seconds
+	private static final int LOCK_COUNT = 16;
+	private static final int BITS_PER_BYTE = 8;
+
+	private final Authenticator authenticator;
+	private final long timeToLive; // in seconds
+	private final CoarseClock clock;
+	private final HmacSha256 hmac;
+
+	private final CachedAuthentication[] slots;
+	private final int slotMask;
+	private final Object[] locks;
+
+	/**
+	 * Constructs a {@link CachingAuthenticator} caching 64 authentications for 1 minute.
+	 * <p>
+	 * Use a secure {@link Random} implementation (see java.security.SecureRandom).
+	 *
+	 * @param authenticator
+	 *            the authenticator checking the credentials.
+	 * @param random
+	 *            the random number generator used to create the key of the cache digests.
+	 * @see CoarseClock#getDefault()
+	 */
+	public CachingAuthenticator(Authenticator authenticator, Random random) {
+		this(authenticator, random, DEFAULT_CACHE_SIZE, DEFAULT_TIME_TO_LIVE, CoarseClock.getDefault());
+	}
+
+	/**
+	 * Constructs a {@link CachingAuthenticator}.
+	 * <p>
+	 * Use a secure {@link Random} implementation (see java.security.SecureRandom).
+	 *
+	 * @param authenticator
+	 *            the authenticator checking the credentials.
+	 * @param random
+	 *            the random number generator used to create the key of the cache digests.
+	 * @param cacheSize
+	 *            the number of cached authentications, rounded up to a power of two.
+	 * @param timeToLive
+	 *            the time an authentication is cached, in seconds.
+	 * @param clock
+	 *            the clock used to check the time-to-live.
+	 */
+	public CachingAuthenticator(Authenticator authenticator, Random random, int cacheSize, long timeToLive,
+			CoarseClock clock) {
+		if (authenticator == null || cacheSize <= 0 || cacheSize > (1 << 30) || timeToLive < 0 || clock == null) {
+			throw new IllegalArgumentException();
+		}
+		int slotCount = 1;
+		while (slotCount < cacheSize) {
+			slotCount <<= 1;
+		}
+
+		byte[] key = new byte[HmacSha256.MAC_LENGTH];
+		random.nextBytes(key);
+
+		this.authenticator = authenticator;
+		this.timeToLive = timeToLive;
+		this.clock = clock;
+		this.hmac = new HmacSha256(key);
+		this.slots = new CachedAuthentication[slotCount];
+		this.slotMask = slotCount - 1;
+		this.locks = new Object[LOCK_COUNT];
+		for (int i = 0; i < LOCK_COUNT; i++) {
+			this.locks[i] = new Object();
+		}
+	}
+
+	@Override
+	public String authenticate(String credentials) {
+		if (credentials == null) {
+			return null;
+		}
+
+		byte[] digest = digest(credentials);
+		int slot = getSlot(digest);
+		CachedAuthentication cached;
+		synchronized (getLock(slot)) {
+			cached = this.slots[slot];
+		}
+		long now = this.clock.getSeconds();
+		if (cached != null && cached.cachedUntil >= now && HmacSha256.constantTimeEquals(cached.digest, digest)) {
+			return cached.userID;
+		}
+
+		String userID = this.authenticator.authenticate(credentials);
+		if (userID != null) {
+			CachedAuthentication authentication = new CachedAuthentication(digest, userID, now + this.timeToLive);
+			synchronized (getLock(slot)) {
+				this.slots[slot] = authentication;
+			}
+		}
+		return userID;
+	}
+
+	/**
+	 * Drops all the cached authentications, typically when credentials are changed or revoked.
+	 */
+	public void invalidateAll() {
+		CachedAuthentication[] slots = this.slots;
+		for (int i = 0; i < slots.length; i++) {
+			synchronized (getLock(i)) {
+				slots[i] = null;
+			}
+		}
+	}
+
+	private byte[] digest(String credentials) {
+		int length = credentials.length();
+		byte[] bytes = new byte[2 * length];
+		for (int i = 0; i < length; i++) {
+			char c = credentials.charAt(i);
+			bytes[2 * i] = (byte) (c >> BITS_PER_BYTE);
+			bytes[2 * i + 1] = (byte) c;
+		}
+		return this.hmac.mac(bytes, 0, bytes.length);
+	}
+
+	private int getSlot(byte[] digest) {
+		int hash = (digest[0] & 0xFF) | (digest[1] & 0xFF) << BITS_PER_BYTE | (digest[2] & 0xFF) << 2 * BITS_PER_BYTE
+				| (digest[3] & 0xFF) << 3 * BITS_PER_BYTE;
+		return hash & this.slotMask;
+	}
+
+	private Object getLock(int slot) {
+		return this.locks[slot & (LOCK_COUNT - 1)];
+	}
+
+	private static final class CachedAuthentication {
+
+		/* default */ final byte[] digest;
+		/* default */ final String userID;
+		/* default */ final long cachedUntil;
+
+		/* default */ CachedAuthentication(byte[] digest, String userID, long cachedUntil) {
+			this.digest = digest;
+			this.userID = userID;
+			this.cachedUntil = cachedUntil;
+		}
+
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+import ej.bon.Timer;
+import ej.bon.TimerTask;
+
+/**
+ * A clock giving the current time in seconds.
+ * <p>
+ * Once started, the time is updated every second by a timer task and reading it only reads a field. Before it is
+ * started, or after it is stopped, the time is computed from {@link System#currentTimeMillis()} on each call.
+ * <p>
+ * The authenticators and the session stores use the clock returned by {@link #getDefault()} unless a clock is given to
+ * their constructor. This clock is not started by the library: the application starts it with its own timer to avoid
+ * reading the system time on each call, and stops it when it is done with it.
+ */
+public class CoarseClock {
+
+	private static final long ONE_SECOND = 1000L;
+
+	/**
+	 * The clock shared by default.
+	 */
+	private static final CoarseClock DEFAULT_CLOCK = new CoarseClock();
+
+	private volatile long seconds;
+	private volatile boolean started;
+	private TimerTask task;
+
+	/**
+	 * Gets the clock shared by default.
+	 * <p>
+	 * The clock is not started: until the application starts it, it reads the system time on each call. The
+	 * application that starts it owns the timer it is given and is responsible for stopping it.
+	 *
+	 * @return the default clock.
+	 */
+	public static CoarseClock getDefault() {
+		return DEFAULT_CLOCK;
+	}
+
+	/**
+	 * Gets the current time.
+	 *
+	 * @return the number of seconds since midnight, January 1, 1970 UTC.
+	 */
+	public long getSeconds() {
+		if (this.started) {
+			return this.seconds;
+		}
+		return System.currentTimeMillis() / ONE_SECOND;
+	}
+
+	/**
+	 * Starts updating the time every second. A stopped clock can be started again.
+	 *
+	 * @param timer
+	 *            the timer used to schedule the update.
+	 * @throws IllegalStateException
+	 *             if the clock is already started.
+	 */
+	public synchronized void start(Timer timer) {
+		if (this.task != null) {
+			throw new IllegalStateException();
+		}
+		TimerTask task = new TimerTask() {
+			@Override
+			public void run() {
+				CoarseClock.this.seconds = System.currentTimeMillis() / ONE_SECOND;
+			}
+		};
+		this.seconds = System.currentTimeMillis() / ONE_SECOND;
+		this.task = task;
+		this.started = true;
+		timer.schedule(task, ONE_SECOND, ONE_SECOND);
+	}
+
+	/**
+	 * Stops updating the time, which is then read from the system time on each call. Does nothing if the clock is not
+	 * started.
+	 */
+	public synchronized void stop() {
+		TimerTask task = this.task;
+		if (task != null) {
+			this.started = false;
+			this.task = null;
+			task.cancel();
+		}
+	}
+
+}
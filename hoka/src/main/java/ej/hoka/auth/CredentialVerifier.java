@@ -0,0 +1,28 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+/**
+ * Verifies the password of a user, typically by comparing a slow hash of the password with the stored one.
+ *
+ * @see BasicAuthenticator
+ */
+public interface CredentialVerifier {
+
+	/**
+	 * Verifies the password of a user.
+	 *
+	 * @param username
+	 *            the name of the user.
+	 * @param password
+	 *            the submitted password.
+	 * @return the identifier of the user if the password is correct, <code>null</code> otherwise.
+	 */
+	String verify(String username, String password);
+
+}
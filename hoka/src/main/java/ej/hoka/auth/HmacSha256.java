@@ -0,0 +1,206 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+/**
+ * HMAC-SHA256 (RFC 2104, FIPS 180-4), implemented without the security API which is not available on every platform.
+ * <p>
+ * The hash states after the inner and outer padded keys are computed once, so computing a MAC only hashes the message
+ * and one block. Instances are immutable and can be shared between threads.
+ */
+/* default */ final class HmacSha256 {
+
+	/**
+	 * The length of a MAC, in bytes.
+	 */
+	/* default */ static final int MAC_LENGTH = 32;
+
+	private static final int BLOCK_LENGTH = 64;
+	private static final int STATE_LENGTH = 8;
+	private static final int SCHEDULE_LENGTH = 64;
+	private static final int LENGTH_FIELD_LENGTH = 8;
+	private static final int BITS_PER_BYTE = 8;
+	private static final byte INNER_PAD = 0x36;
+	private static final byte OUTER_PAD = 0x5C;
+
+	private static final int[] INITIAL_STATE = { 0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f,
+			0x9b05688c, 0x1f83d9ab, 0x5be0cd19 };
+
+	private static final int[] K = { 0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1,
+			0x923f82a4, 0xab1c5ed5, 0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7,
+			0xc19bf174, 0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+			0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967, 0x27b70a85,
+			0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85, 0xa2bfe8a1, 0xa81a664b,
+			0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070, 0x19a4c116, 0x1e376c08, 0x2748774c,
+			0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3, 0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208,
+			0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2 };
+
+	private final int[] innerState;
+	private final int[] outerState;
+
+	/**
+	 * Creates an HMAC-SHA256 with the given key.
+	 *
+	 * @param key
+	 *            the secret key.
+	 */
+	/* default */ HmacSha256(byte[] key) {
+		if (key.length > BLOCK_LENGTH) {
+			key = hash(INITIAL_STATE, 0, key, 0, key.length);
+		}
+		byte[] block = new byte[BLOCK_LENGTH];
+		int[] schedule = new int[SCHEDULE_LENGTH];
+
+		int[] innerState = INITIAL_STATE.clone();
+		for (int i = 0; i < BLOCK_LENGTH; i++) {
+			block[i] = (byte) ((i < key.length ? key[i] : 0) ^ INNER_PAD);
+		}
+		compress(innerState, block, 0, schedule);
+
+		int[] outerState = INITIAL_STATE.clone();
+		for (int i = 0; i < BLOCK_LENGTH; i++) {
+			block[i] = (byte) ((i < key.length ? key[i] : 0) ^ OUTER_PAD);
+		}
+		compress(outerState, block, 0, schedule);
+
+		this.innerState = innerState;
+		this.outerState = outerState;
+	}
+
+	/**
+	 * Computes the MAC of a message.
+	 *
+	 * @param message
+	 *            the array containing the message.
+	 * @param offset
+	 *            the offset of the message.
+	 * @param length
+	 *            the length of the message.
+	 * @return the MAC.
+	 */
+	/* default */ byte[] mac(byte[] message, int offset, int length) {
+		byte[] innerHash = hash(this.innerState, BLOCK_LENGTH, message, offset, length);
+		return hash(this.outerState, BLOCK_LENGTH, innerHash, 0, MAC_LENGTH);
+	}
+
+	/**
+	 * Compares two arrays in a time that does not depend on the position of the first difference.
+	 *
+	 * @param expected
+	 *            the expected array.
+	 * @param actual
+	 *            the compared array.
+	 * @return whether both arrays are equal.
+	 */
+	/* default */ static boolean constantTimeEquals(byte[] expected, byte[] actual) {
+		if (expected.length != actual.length) {
+			return false;
+		}
+		int difference = 0;
+		for (int i = 0; i < expected.length; i++) {
+			difference |= expected[i] ^ actual[i];
+		}
+		return difference == 0;
+	}
+
+	/**
+	 * Hashes a message, starting from the given state.
+	 *
+	 * @param initialState
+	 *            the state after the bytes already hashed.
+	 * @param hashedLength
+	 *            the number of bytes already hashed, a multiple of the block length.
+	 */
+	private static byte[] hash(int[] initialState, int hashedLength, byte[] message, int offset, int length) {
+		int[] state = initialState.clone();
+		int[] schedule = new int[SCHEDULE_LENGTH];
+
+		int end = offset + length;
+		int position = offset;
+		while (end - position >= BLOCK_LENGTH) {
+			compress(state, message, position, schedule);
+			position += BLOCK_LENGTH;
+		}
+
+		// padding: 0x80, zeros, then the length in bits on 8 bytes
+		int remaining = end - position;
+		byte[] last = new byte[remaining + 1 + LENGTH_FIELD_LENGTH <= BLOCK_LENGTH ? BLOCK_LENGTH : 2 * BLOCK_LENGTH];
+		System.arraycopy(message, position, last, 0, remaining);
+		last[remaining] = (byte) 0x80;
+		long bitLength = ((long) hashedLength + length) * BITS_PER_BYTE;
+		for (int i = 0; i < LENGTH_FIELD_LENGTH; i++) {
+			last[last.length - 1 - i] = (byte) (bitLength >>> (i * BITS_PER_BYTE));
+		}
+		for (int i = 0; i < last.length; i += BLOCK_LENGTH) {
+			compress(state, last, i, schedule);
+		}
+
+		byte[] digest = new byte[MAC_LENGTH];
+		for (int i = 0; i < STATE_LENGTH; i++) {
+			int word = state[i];
+			digest[4 * i] = (byte) (word >>> 24);
+			digest[4 * i + 1] = (byte) (word >>> 16);
+			digest[4 * i + 2] = (byte) (word >>> 8);
+			digest[4 * i + 3] = (byte) word;
+		}
+		return digest;
+	}
+
+	private static void compress(int[] state, byte[] block, int offset, int[] w) {
+		for (int i = 0; i < 16; i++) {
+			int j = offset + 4 * i;
+			w[i] = (block[j] << 24) | ((block[j + 1] & 0xFF) << 16) | ((block[j + 2] & 0xFF) << 8)
+					| (block[j + 3] & 0xFF);
+		}
+		for (int i = 16; i < SCHEDULE_LENGTH; i++) {
+			int w15 = w[i - 15];
+			int w2 = w[i - 2];
+			int s0 = rotateRight(w15, 7) ^ rotateRight(w15, 18) ^ (w15 >>> 3);
+			int s1 = rotateRight(w2, 17) ^ rotateRight(w2, 19) ^ (w2 >>> 10);
+			w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+		}
+
+		int a = state[0];
+		int b = state[1];
+		int c = state[2];
+		int d = state[3];
+		int e = state[4];
+		int f = state[5];
+		int g = state[6];
+		int h = state[7];
+		for (int i = 0; i < SCHEDULE_LENGTH; i++) {
+			int s1 = rotateRight(e, 6) ^ rotateRight(e, 11) ^ rotateRight(e, 25);
+			int ch = (e & f) ^ (~e & g);
+			int t1 = h + s1 + ch + K[i] + w[i];
+			int s0 = rotateRight(a, 2) ^ rotateRight(a, 13) ^ rotateRight(a, 22);
+			int maj = (a & b) ^ (a & c) ^ (b & c);
+			int t2 = s0 + maj;
+			h = g;
+			g = f;
+			f = e;
+			e = d + t1;
+			d = c;
+			c = b;
+			b = a;
+			a = t1 + t2;
+		}
+		state[0] += a;
+		state[1] += b;
+		state[2] += c;
+		state[3] += d;
+		state[4] += e;
+		state[5] += f;
+		state[6] += g;
+		state[7] += h;
+	}
+
+	private static int rotateRight(int value, int distance) {
+		return (value >>> distance) | (value << (32 - distance));
+	}
+
+}
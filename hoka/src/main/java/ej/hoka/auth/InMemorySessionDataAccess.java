@@ -1,63 +1,492 @@
 /*
  * Java
  *
- * Copyright 2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2019-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
 package ej.hoka.auth;
 
-import ej.basictool.map.PackedMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import ej.bon.Timer;
+import ej.bon.TimerTask;
 
 /**
- * A {@link SessionDataAccess} implementation that uses {@link PackedMap} to map user ID to session ID, session ID to
- * user ID and session ID to session expiration.
+ * A thread-safe {@link SessionDataAccess} implementation that keeps the {@link Session} objects in memory.
+ * <p>
+ * The sessions are indexed by session ID and by user ID. Each index is split into stripes selected by the hash of the
+ * key, each stripe being a {@link HashMap} guarded by its own lock, so that concurrent lookups of different sessions
+ * rarely contend.
+ * <p>
+ * The sessions are also linked in creation order and in a timing wheel sorted by expiration, guarded by a global lock
+ * which is only taken when a session is added or removed. When the number of sessions exceeds the maximum, the oldest
+ * sessions are removed. The expired sessions are removed by {@link #removeExpiredSessions()}, which can be run
+ * periodically with {@link #startExpirySweeper(Timer)}. Otherwise, expired sessions are removed only when they are
+ * accessed. The sessions removed by this data access itself are notified to the listener set by
+ * {@link #setRemovalListener(SessionRemovalListener)}.
  * <p>
- * Sessions aren't automatically removed when expired.
+ * The global lock may be held while a stripe lock is acquired, never the opposite.
  */
 public class InMemorySessionDataAccess implements SessionDataAccess {
 
-	private final PackedMap<String, String> activeSessionIDs = new PackedMap<>();
-	private final PackedMap<String, String> activeUserIDs = new PackedMap<>();
-	private final PackedMap<String, Long> activeSessionExp = new PackedMap<>();
+	private static final long ONE_SECOND = 1000L;
+	private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+	private static final int MAX_CONCURRENCY_LEVEL = 1 << 16;
+	private static final int DEFAULT_TICK = 16; // in seconds
+	private static final int WHEEL_SIZE = 256;
+
+	private final Stripe[] sessionsByID;
+	private final Stripe[] sessionsByUser;
+	private final int stripeMask;
+	private final int maxSessions;
+	private final int tick; // in seconds
+
+	/**
+	 * The lock of the creation order list and of the timing wheel.
+	 */
+	private final Object lock;
+
+	/**
+	 * The oldest session, the head of the list in creation order.
+	 */
+	private Entry oldest;
+	/**
+	 * The newest session, the tail of the list in creation order.
+	 */
+	private Entry newest;
+	private int size;
+
+	/**
+	 * The buckets of the timing wheel. The bucket of a session is selected by its expiration divided by the tick,
+	 * modulo the size of the wheel: the sessions expiring after a full turn of the wheel are checked and kept when their
+	 * bucket is swept.
+	 */
+	private final Entry[] wheel;
+	/**
+	 * The last tick swept, <code>-1</code> before the first sweep.
+	 */
+	private long sweptTick;
+
+	private TimerTask sweeper;
+
+	private volatile SessionRemovalListener removalListener;
+
+	/**
+	 * Constructs an empty {@link InMemorySessionDataAccess} with 16 stripes and no maximum number of sessions.
+	 */
+	public InMemorySessionDataAccess() {
+		this(DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * Constructs an empty {@link InMemorySessionDataAccess} with no maximum number of sessions.
+	 *
+	 * @param concurrencyLevel
+	 *            the expected number of threads accessing the sessions concurrently, rounded up to a power of two to
+	 *            give the number of stripes.
+	 */
+	public InMemorySessionDataAccess(int concurrencyLevel) {
+		this(concurrencyLevel, Integer.MAX_VALUE, DEFAULT_TICK);
+	}
+
+	/**
+	 * Constructs an empty {@link InMemorySessionDataAccess}.
+	 *
+	 * @param concurrencyLevel
+	 *            the expected number of threads accessing the sessions concurrently, rounded up to a power of two to
+	 *            give the number of stripes.
+	 * @param maxSessions
+	 *            the maximum number of sessions, the oldest sessions are removed when it is exceeded.
+	 * @param tick
+	 *            the period of the expiry sweeper, in seconds. An expired session is removed at most one tick after
+	 *            its expiration.
+	 */
+	public InMemorySessionDataAccess(int concurrencyLevel, int maxSessions, int tick) {
+		if (concurrencyLevel <= 0 || concurrencyLevel > MAX_CONCURRENCY_LEVEL || maxSessions <= 0 || tick <= 0) {
+			throw new IllegalArgumentException();
+		}
+		int stripeCount = 1;
+		while (stripeCount < concurrencyLevel) {
+			stripeCount <<= 1;
+		}
+
+		this.sessionsByID = new Stripe[stripeCount];
+		this.sessionsByUser = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			this.sessionsByID[i] = new Stripe();
+			this.sessionsByUser[i] = new Stripe();
+		}
+		this.stripeMask = stripeCount - 1;
+		this.maxSessions = maxSessions;
+		this.tick = tick;
+		this.lock = new Object();
+		this.wheel = new Entry[WHEEL_SIZE];
+		this.sweptTick = -1;
+	}
+
+	/**
+	 * Sets the listener notified of the sessions removed when the maximum number of sessions is exceeded or when they
+	 * expire.
+	 *
+	 * @param listener
+	 *            the listener, or <code>null</code> to remove it.
+	 */
+	public void setRemovalListener(SessionRemovalListener listener) {
+		this.removalListener = listener;
+	}
 
 	@Override
 	public void addSession(Session session) {
-		this.activeSessionIDs.put(session.userID, session.sessionID);
-		this.activeUserIDs.put(session.sessionID, session.userID);
-		this.activeSessionExp.put(session.sessionID, Long.valueOf(session.sessionExpiration));
+		Entry entry = new Entry(session);
+		Entry replaced = getStripe(this.sessionsByID, session.sessionID).put(session.sessionID, entry);
+		getStripe(this.sessionsByUser, session.userID).put(session.userID, entry);
+
+		SessionRemovalListener listener = this.removalListener;
+		List<Session> evicted = null;
+		synchronized (this.lock) {
+			if (replaced != null) {
+				// the replaced session may belong to another user
+				String replacedUser = replaced.session.userID;
+				getStripe(this.sessionsByUser, replacedUser).remove(replacedUser, replaced);
+				unlink(replaced);
+			}
+			if (entry.removed) {
+				// removed concurrently
+				return;
+			}
+			linkNewest(entry);
+			linkInWheel(entry, session.sessionExpiration);
+			entry.linked = true;
+			this.size++;
+
+			while (this.size > this.maxSessions) {
+				Entry oldest = this.oldest;
+				removeFromIndexes(oldest);
+				unlink(oldest);
+				if (listener != null) {
+					if (evicted == null) {
+						evicted = new ArrayList<>(1);
+					}
+					evicted.add(oldest.session);
+				}
+			}
+		}
+		notifyRemoved(listener, evicted);
 	}
 
 	@Override
 	public Session getSessionByUser(String userID) {
-		if (userID == null || !this.activeSessionIDs.containsKey(userID)) {
+		if (userID == null) {
 			return null;
 		}
-		String sessionID = this.activeSessionIDs.get(userID);
-		Long sessionExp = this.activeSessionExp.get(sessionID);
-		return new Session(userID, sessionID, sessionExp.longValue());
+		Entry entry = getStripe(this.sessionsByUser, userID).get(userID);
+		return entry == null ? null : entry.session;
 	}
 
 	@Override
 	public Session getSessionByID(String sessionID) {
-		if (sessionID == null || !this.activeUserIDs.containsKey(sessionID)) {
+		if (sessionID == null) {
 			return null;
 		}
-		String userID = this.activeUserIDs.get(sessionID);
-		Long sessionExp = this.activeSessionExp.get(sessionID);
-		return new Session(userID, sessionID, sessionExp.longValue());
+		Entry entry = getStripe(this.sessionsByID, sessionID).get(sessionID);
+		return entry == null ? null : entry.session;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The stored {@link Session} is replaced by a new one, the sessions are immutable so that they can be shared
+	 * without locking. The session is not moved in the timing wheel: it is moved to its new bucket when its former one
+	 * is swept.
+	 */
 	@Override
 	public void refreshSession(String sessionID, long newExpiration) {
-		this.activeSessionExp.put(sessionID, Long.valueOf(newExpiration));
+		Entry entry = getStripe(this.sessionsByID, sessionID).get(sessionID);
+		if (entry != null) {
+			Session session = entry.session;
+			entry.session = new Session(session.userID, sessionID, newExpiration);
+		}
 	}
 
 	@Override
 	public void removeSession(Session session) {
-		this.activeSessionIDs.remove(session.userID);
-		this.activeUserIDs.remove(session.sessionID);
-		this.activeSessionExp.remove(session.sessionID);
+		Entry entry = getStripe(this.sessionsByID, session.sessionID).get(session.sessionID);
+		if (entry != null) {
+			removeFromIndexes(entry);
+			synchronized (this.lock) {
+				unlink(entry);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of sessions.
+	 *
+	 * @return the number of sessions, including the expired ones that have not been removed yet.
+	 */
+	public int size() {
+		synchronized (this.lock) {
+			return this.size;
+		}
+	}
+
+	/**
+	 * Gets a snapshot of the sessions.
+	 *
+	 * @return the sessions, from the oldest to the newest.
+	 */
+	public List<Session> getSessions() {
+		synchronized (this.lock) {
+			List<Session> sessions = new ArrayList<>(this.size);
+			for (Entry entry = this.oldest; entry != null; entry = entry.newer) {
+				sessions.add(entry.session);
+			}
+			return sessions;
+		}
+	}
+
+	/**
+	 * Removes the expired sessions.
+	 * <p>
+	 * Only the buckets of the timing wheel reached since the last call are visited, so the cost is proportional to the
+	 * number of sessions expiring in the meantime, plus the sessions refreshed or expiring after a full turn of the
+	 * wheel.
+	 */
+	public void removeExpiredSessions() {
+		long now = System.currentTimeMillis() / ONE_SECOND;
+		long currentTick = now / this.tick;
+		Entry[] wheel = this.wheel;
+		SessionRemovalListener listener = this.removalListener;
+		List<Session> expired = null;
+
+		synchronized (this.lock) {
+			long sweptTick = this.sweptTick;
+			if (sweptTick == -1 || currentTick - sweptTick > WHEEL_SIZE) {
+				// first sweep or late: visit the whole wheel
+				sweptTick = currentTick - WHEEL_SIZE;
+			}
+
+			for (long t = sweptTick + 1; t <= currentTick; t++) {
+				int index = (int) (t % WHEEL_SIZE);
+				Entry entry = wheel[index];
+				// detach the bucket, the sessions still alive are linked again
+				wheel[index] = null;
+				while (entry != null) {
+					Entry next = entry.nextInBucket;
+					entry.previousInBucket = null;
+					entry.nextInBucket = null;
+					entry.bucket = -1;
+					Session session = entry.session;
+					if (entry.removed || session.sessionExpiration < now) {
+						if (listener != null && !entry.removed) {
+							if (expired == null) {
+								expired = new ArrayList<>();
+							}
+							expired.add(session);
+						}
+						removeFromIndexes(entry);
+						unlinkFromAge(entry);
+					} else {
+						linkInWheel(entry, session.sessionExpiration);
+					}
+					entry = next;
+				}
+			}
+			this.sweptTick = currentTick;
+		}
+		notifyRemoved(listener, expired);
+	}
+
+	/**
+	 * Starts removing the expired sessions periodically.
+	 *
+	 * @param timer
+	 *            the timer used to schedule the sweeper.
+	 * @throws IllegalStateException
+	 *             if the sweeper is already started.
+	 */
+	public void startExpirySweeper(Timer timer) {
+		TimerTask sweeper = new TimerTask() {
+			@Override
+			public void run() {
+				removeExpiredSessions();
+			}
+		};
+		synchronized (this.lock) {
+			if (this.sweeper != null) {
+				throw new IllegalStateException();
+			}
+			this.sweeper = sweeper;
+		}
+		long period = this.tick * ONE_SECOND;
+		timer.schedule(sweeper, period, period);
+	}
+
+	/**
+	 * Stops removing the expired sessions periodically.
+	 */
+	public void stopExpirySweeper() {
+		TimerTask sweeper;
+		synchronized (this.lock) {
+			sweeper = this.sweeper;
+			this.sweeper = null;
+		}
+		if (sweeper != null) {
+			sweeper.cancel();
+		}
+	}
+
+	private static void notifyRemoved(SessionRemovalListener listener, List<Session> sessions) {
+		if (sessions != null) {
+			for (Session session : sessions) {
+				listener.onSessionRemoved(session);
+			}
+		}
+	}
+
+	/**
+	 * Removes a session entry from the indexes, a newer session with the same ID or of the same user is kept.
+	 */
+	private void removeFromIndexes(Entry entry) {
+		entry.removed = true;
+		Session session = entry.session;
+		getStripe(this.sessionsByID, session.sessionID).remove(session.sessionID, entry);
+		getStripe(this.sessionsByUser, session.userID).remove(session.userID, entry);
+	}
+
+	private void unlink(Entry entry) {
+		entry.removed = true;
+		if (entry.linked) {
+			unlinkFromAge(entry);
+			unlinkFromWheel(entry);
+		}
+	}
+
+	private void unlinkFromAge(Entry entry) {
+		Entry older = entry.older;
+		Entry newer = entry.newer;
+		if (older == null) {
+			this.oldest = newer;
+		} else {
+			older.newer = newer;
+		}
+		if (newer == null) {
+			this.newest = older;
+		} else {
+			newer.older = older;
+		}
+		entry.older = null;
+		entry.newer = null;
+		entry.linked = false;
+		this.size--;
+	}
+
+	private void linkNewest(Entry entry) {
+		Entry newest = this.newest;
+		entry.older = newest;
+		if (newest == null) {
+			this.oldest = entry;
+		} else {
+			newest.newer = entry;
+		}
+		this.newest = entry;
+	}
+
+	private void unlinkFromWheel(Entry entry) {
+		int bucket = entry.bucket;
+		if (bucket == -1) {
+			return;
+		}
+		Entry previous = entry.previousInBucket;
+		Entry next = entry.nextInBucket;
+		if (previous == null) {
+			this.wheel[bucket] = next;
+		} else {
+			previous.nextInBucket = next;
+		}
+		if (next != null) {
+			next.previousInBucket = previous;
+		}
+		entry.previousInBucket = null;
+		entry.nextInBucket = null;
+		entry.bucket = -1;
+	}
+
+	private void linkInWheel(Entry entry, long expiration) {
+		// the session is removed on the first tick after its expiration
+		long expirationTick = expiration / this.tick + 1;
+		if (expirationTick <= this.sweptTick) {
+			// already expired, remove it on the next sweep
+			expirationTick = this.sweptTick + 1;
+		}
+		int bucket = (int) (expirationTick % WHEEL_SIZE);
+		Entry head = this.wheel[bucket];
+		entry.nextInBucket = head;
+		if (head != null) {
+			head.previousInBucket = entry;
+		}
+		this.wheel[bucket] = entry;
+		entry.bucket = bucket;
+	}
+
+	private Stripe getStripe(Stripe[] stripes, String key) {
+		int hash = key.hashCode();
+		// spread the high bits, the low bits of string hashes are often similar
+		return stripes[(hash ^ (hash >>> 16)) & this.stripeMask];
+	}
+
+	/**
+	 * The unique entry of a session, shared by the indexes and linked in the creation order list and in the timing
+	 * wheel.
+	 */
+	private static final class Entry {
+
+		/* default */ volatile Session session;
+		/* default */ volatile boolean removed;
+
+		// the following fields are guarded by the global lock
+		/* default */ boolean linked;
+		/* default */ Entry older;
+		/* default */ Entry newer;
+		/* default */ Entry previousInBucket;
+		/* default */ Entry nextInBucket;
+		/* default */ int bucket;
+
+		/* default */ Entry(Session session) {
+			this.session = session;
+			this.bucket = -1;
+		}
+
+	}
+
+	/**
+	 * A part of an index, mapping keys to session entries.
+	 */
+	private static final class Stripe {
+
+		private final HashMap<String, Entry> entries = new HashMap<>();
+
+		/* default */ synchronized Entry get(String key) {
+			return this.entries.get(key);
+		}
+
+		/* default */ synchronized Entry put(String key, Entry entry) {
+			return this.entries.put(key, entry);
+		}
+
+		/**
+		 * Removes the entry mapped to <code>key</code>, if it is <code>expected</code>.
+		 */
+		/* default */ synchronized void remove(String key, Entry expected) {
+			HashMap<String, Entry> entries = this.entries;
+			if (entries.get(key) == expected) {
+				entries.remove(key);
+			}
+		}
+
 	}
 
 }
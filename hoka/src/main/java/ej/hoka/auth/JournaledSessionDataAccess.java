@@ -0,0 +1,583 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import ej.hoka.log.Messages;
+import ej.util.message.Level;
+
+/**
+ * A {@link SessionDataAccess} that keeps the sessions in an {@link InMemorySessionDataAccess} and records every change
+ * in an append-only journal, so that the sessions survive a restart.
+ * <p>
+ * Each record of the journal is written with its length and a checksum: a record partially written before a crash is
+ * detected and ignored when the journal is replayed by {@link #open()}. When the journal holds many more records than
+ * active sessions, it is compacted: the active sessions are written to a new journal which replaces the former one.
+ * <p>
+ * The sessions removed by the in-memory data access itself, when its maximum number of sessions is exceeded or when
+ * they expire, are also recorded.
+ * <p>
+ * A change returns once its record has been written and the journal flushed. The records of the changes made while
+ * the journal is flushed are written together by the next flush, so that concurrent logins and logouts share the cost
+ * of the flushes rather than waiting for one flush each. The records of the expired sessions are written with the next
+ * record, without waiting for a flush.
+ * <p>
+ * When the journal cannot be written, the error is logged and the sessions are kept in memory only, until the journal
+ * is successfully compacted by {@link #compactJournal()}.
+ */
+public class JournaledSessionDataAccess implements SessionDataAccess {
+
+	private static final long ONE_SECOND = 1000L;
+	private static final int DEFAULT_MIN_COMPACTION_RECORDS = 1024;
+	private static final int MAX_RECORD_SIZE = 4096;
+
+	private static final byte RECORD_ADD = 1;
+	private static final byte RECORD_REFRESH = 2;
+	private static final byte RECORD_REMOVE = 3;
+
+	private static final int CHECKSUM_OFFSET = 0x811C9DC5;
+	private static final int CHECKSUM_PRIME = 0x01000193;
+
+	private static final int INT_SIZE = 4;
+	private static final int BYTE_MASK = 0xFF;
+	private static final int BITS_PER_BYTE = 8;
+
+	private final InMemorySessionDataAccess sessions;
+	private final SessionJournalStorage storage;
+	private final int minCompactionRecords;
+
+	// the following fields are guarded by the lock of the record buffer
+	private final RecordBuffer recordBuffer;
+	private final DataOutputStream record;
+	/**
+	 * The records appended since the last write to the journal.
+	 */
+	private RecordBuffer pending;
+	/**
+	 * Whether the records are appended: <code>false</code> before the journal is opened and after an error.
+	 */
+	private boolean journaling;
+	/**
+	 * The number of records appended since the creation of this data access, used as sequence number.
+	 */
+	private long appendedCount;
+	/**
+	 * The number of records in the journal, including the pending ones.
+	 */
+	private int recordCount;
+
+	/**
+	 * The lock of {@link #journalOwned} and {@link #writtenCount}, which may be held while the lock of the record buffer
+	 * is acquired, never the opposite.
+	 */
+	private final Object journalLock;
+	/**
+	 * Whether a thread owns the journal, see {@link #acquireJournal(long)}.
+	 */
+	private boolean journalOwned;
+	/**
+	 * The sequence number of the last record written to the journal and flushed.
+	 */
+	private long writtenCount;
+
+	// the following fields are only accessed by the thread owning the journal
+	private OutputStream journal;
+	/**
+	 * The records being written to the journal, swapped with the pending ones.
+	 */
+	private RecordBuffer writing;
+
+	/**
+	 * Constructs a {@link JournaledSessionDataAccess} storing the sessions in a new {@link InMemorySessionDataAccess}.
+	 *
+	 * @param storage
+	 *            the storage of the journal.
+	 */
+	public JournaledSessionDataAccess(SessionJournalStorage storage) {
+		this(storage, new InMemorySessionDataAccess(), DEFAULT_MIN_COMPACTION_RECORDS);
+	}
+
+	/**
+	 * Constructs a {@link JournaledSessionDataAccess}.
+	 * <p>
+	 * The removal listener of the in-memory sessions is set to record the sessions it removes.
+	 *
+	 * @param storage
+	 *            the storage of the journal.
+	 * @param sessions
+	 *            the in-memory sessions, must be empty.
+	 * @param minCompactionRecords
+	 *            the minimum number of records before compacting the journal. The journal is compacted when it holds
+	 *            more than this number of records and more than twice the number of sessions.
+	 */
+	public JournaledSessionDataAccess(SessionJournalStorage storage, InMemorySessionDataAccess sessions,
+			int minCompactionRecords) {
+		if (storage == null || sessions == null || minCompactionRecords <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.storage = storage;
+		this.sessions = sessions;
+		this.minCompactionRecords = minCompactionRecords;
+		this.recordBuffer = new RecordBuffer();
+		this.record = new DataOutputStream(this.recordBuffer);
+		this.pending = new RecordBuffer();
+		this.journalLock = new Object();
+		this.writing = new RecordBuffer();
+		sessions.setRemovalListener(new SessionRemovalListener() {
+			@Override
+			public void onSessionRemoved(Session session) {
+				recordRemoval(session);
+			}
+		});
+	}
+
+	/**
+	 * Restores the sessions from the journal, then compacts it.
+	 * <p>
+	 * Must be called once, before using this data access.
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be read or compacted.
+	 */
+	public void open() throws IOException {
+		InputStream input = this.storage.openJournal();
+		if (input != null) {
+			try (DataInputStream journal = new DataInputStream(input)) {
+				replay(journal);
+			}
+		}
+		compactJournal();
+	}
+
+	/**
+	 * Closes the journal, after writing the pending records.
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be closed.
+	 */
+	public void close() throws IOException {
+		acquireJournal(0);
+		try {
+			write();
+		} finally {
+			synchronized (this.recordBuffer) {
+				this.journaling = false;
+				this.pending.reset();
+			}
+			OutputStream journal = this.journal;
+			this.journal = null;
+			releaseJournal();
+			if (journal != null) {
+				journal.close();
+			}
+		}
+	}
+
+	/**
+	 * Gets the in-memory sessions.
+	 *
+	 * @return the in-memory sessions.
+	 */
+	public InMemorySessionDataAccess getSessions() {
+		return this.sessions;
+	}
+
+	@Override
+	public void addSession(Session session) {
+		this.sessions.addSession(session);
+		long sequence;
+		synchronized (this.recordBuffer) {
+			try {
+				writeAdd(this.record, session);
+				sequence = stage();
+			} catch (IOException e) {
+				sequence = stop(e);
+			}
+		}
+		commit(sequence);
+	}
+
+	@Override
+	public Session getSessionByUser(String userID) {
+		return this.sessions.getSessionByUser(userID);
+	}
+
+	@Override
+	public Session getSessionByID(String sessionID) {
+		return this.sessions.getSessionByID(sessionID);
+	}
+
+	@Override
+	public void refreshSession(String sessionID, long newExpiration) {
+		this.sessions.refreshSession(sessionID, newExpiration);
+		long sequence;
+		synchronized (this.recordBuffer) {
+			try {
+				DataOutputStream record = this.record;
+				record.writeByte(RECORD_REFRESH);
+				record.writeUTF(sessionID);
+				record.writeLong(newExpiration);
+				sequence = stage();
+			} catch (IOException e) {
+				sequence = stop(e);
+			}
+		}
+		commit(sequence);
+	}
+
+	@Override
+	public void removeSession(Session session) {
+		this.sessions.removeSession(session);
+		commit(stageRemoval(session));
+	}
+
+	/**
+	 * Compacts the journal: writes the active sessions in a new journal that replaces the current one.
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be compacted.
+	 */
+	public void compactJournal() throws IOException {
+		acquireJournal(0);
+		try {
+			compact();
+		} catch (IOException e) {
+			onError(e);
+			throw e;
+		} finally {
+			releaseJournal();
+		}
+	}
+
+	/**
+	 * Records a session removed by the in-memory sessions. An expired session does not need to be removed from the
+	 * journal before a restart, its record is written with the next one.
+	 */
+	/* default */ void recordRemoval(Session session) {
+		long sequence = stageRemoval(session);
+		if (!session.isExpired(System.currentTimeMillis() / ONE_SECOND)) {
+			commit(sequence);
+		}
+	}
+
+	private long stageRemoval(Session session) {
+		synchronized (this.recordBuffer) {
+			try {
+				DataOutputStream record = this.record;
+				record.writeByte(RECORD_REMOVE);
+				record.writeUTF(session.sessionID);
+				return stage();
+			} catch (IOException e) {
+				return stop(e);
+			}
+		}
+	}
+
+	private void replay(DataInputStream journal) throws IOException {
+		InMemorySessionDataAccess sessions = this.sessions;
+		byte[] payload = new byte[MAX_RECORD_SIZE];
+		while (true) {
+			int length;
+			try {
+				length = journal.readInt();
+				if (length <= 0 || length > MAX_RECORD_SIZE) {
+					// corrupted record
+					return;
+				}
+				journal.readFully(payload, 0, length);
+				if (journal.readInt() != checksum(payload, length)) {
+					return;
+				}
+			} catch (EOFException e) {
+				// end of the journal, or record partially written before a crash
+				return;
+			}
+
+			DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+			switch (record.readByte()) {
+			case RECORD_ADD:
+				String userID = record.readUTF();
+				String sessionID = record.readUTF();
+				sessions.addSession(new Session(userID, sessionID, record.readLong()));
+				break;
+			case RECORD_REFRESH:
+				sessions.refreshSession(record.readUTF(), record.readLong());
+				break;
+			case RECORD_REMOVE:
+				Session session = sessions.getSessionByID(record.readUTF());
+				if (session != null) {
+					sessions.removeSession(session);
+				}
+				break;
+			default:
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Appends the record buffer to the pending records. Must be called with the lock of the record buffer.
+	 *
+	 * @return the sequence number of the record, or <code>0</code> if it is not journaled.
+	 */
+	private long stage() throws IOException {
+		if (!this.journaling) {
+			// not opened, or an error occurred
+			this.recordBuffer.reset();
+			return 0;
+		}
+		writeRecord(this.recordBuffer, this.pending);
+		this.recordCount++;
+		return ++this.appendedCount;
+	}
+
+	/**
+	 * Stops journaling after a record cannot be encoded. Must be called with the lock of the record buffer. The journal
+	 * is closed by the next compaction.
+	 *
+	 * @return <code>0</code>, the record is not journaled.
+	 */
+	private long stop(IOException e) {
+		Messages.LOGGER.log(Level.SEVERE, Messages.CATEGORY_HOKA, Messages.SESSION_JOURNAL_ERROR, e);
+		this.recordBuffer.reset();
+		this.pending.reset();
+		this.journaling = false;
+		return 0;
+	}
+
+	/**
+	 * Waits until a record is written to the journal. If it has not been written by another thread, writes all the
+	 * pending records.
+	 *
+	 * @param sequence
+	 *            the sequence number of the record, <code>0</code> if it is not journaled.
+	 */
+	private void commit(long sequence) {
+		if (sequence == 0 || !acquireJournal(sequence)) {
+			// not journaled, or written with the records of another thread
+			return;
+		}
+		try {
+			write();
+			int recordCount;
+			synchronized (this.recordBuffer) {
+				recordCount = this.recordCount;
+			}
+			if (recordCount > this.minCompactionRecords && recordCount > 2 * this.sessions.size()) {
+				compact();
+			}
+		} catch (IOException e) {
+			onError(e);
+		} finally {
+			releaseJournal();
+		}
+	}
+
+	/**
+	 * Waits until the journal is not owned by another thread, then owns it. The journal is written without holding the
+	 * journal lock, so that the threads whose records are written meanwhile can wait for the end of the write, and
+	 * return without writing.
+	 *
+	 * @param sequence
+	 *            the sequence number of the record to write, or <code>0</code> to own the journal in any case.
+	 * @return <code>true</code> if the journal is owned and must be released with {@link #releaseJournal()},
+	 *         <code>false</code> if the record has been written by another thread.
+	 */
+	private boolean acquireJournal(long sequence) {
+		boolean interrupted = false;
+		try {
+			synchronized (this.journalLock) {
+				while (true) {
+					if (sequence != 0 && this.writtenCount >= sequence) {
+						return false;
+					}
+					if (!this.journalOwned) {
+						this.journalOwned = true;
+						return true;
+					}
+					try {
+						this.journalLock.wait();
+					} catch (InterruptedException e) {
+						// the record must be written before returning
+						interrupted = true;
+					}
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void releaseJournal() {
+		synchronized (this.journalLock) {
+			this.journalOwned = false;
+			this.journalLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Writes the pending records to the journal and flushes it. Must be called by the thread owning the journal.
+	 */
+	private void write() throws IOException {
+		RecordBuffer writing = this.writing;
+		long appendedCount;
+		synchronized (this.recordBuffer) {
+			// the records appended from now on are written by the next call
+			this.writing = this.pending;
+			this.pending = writing;
+			appendedCount = this.appendedCount;
+		}
+		writing = this.writing;
+		try {
+			OutputStream journal = this.journal;
+			int length = writing.size();
+			if (journal != null && length > 0) {
+				journal.write(writing.getBuffer(), 0, length);
+				journal.flush();
+			}
+			synchronized (this.journalLock) {
+				this.writtenCount = appendedCount;
+			}
+		} finally {
+			writing.reset();
+		}
+	}
+
+	/**
+	 * Must be called by the thread owning the journal.
+	 */
+	private void compact() throws IOException {
+		OutputStream journal = this.journal;
+		this.journal = null;
+		long compactedCount;
+		synchronized (this.recordBuffer) {
+			// the changes of the pending records are written with the sessions below, the records appended from now on
+			// are written to the new journal
+			this.pending.reset();
+			compactedCount = this.appendedCount;
+			this.recordCount = 0;
+			this.journaling = true;
+		}
+		if (journal != null) {
+			journal.close();
+		}
+
+		long now = System.currentTimeMillis() / ONE_SECOND;
+		SessionJournalStorage storage = this.storage;
+		RecordBuffer recordBuffer = new RecordBuffer();
+		DataOutputStream record = new DataOutputStream(recordBuffer);
+		int recordCount = 0;
+		try (OutputStream compacted = storage.createCompactedJournal()) {
+			for (Session session : this.sessions.getSessions()) {
+				if (!session.isExpired(now)) {
+					writeAdd(record, session);
+					writeRecord(recordBuffer, compacted);
+					recordCount++;
+				}
+			}
+		}
+		storage.commitCompactedJournal();
+		// the changes of the discarded pending records are durable only once the compacted journal is committed
+		synchronized (this.journalLock) {
+			if (compactedCount > this.writtenCount) {
+				this.writtenCount = compactedCount;
+			}
+			this.journalLock.notifyAll();
+		}
+
+		this.journal = storage.appendJournal();
+		synchronized (this.recordBuffer) {
+			this.recordCount += recordCount;
+		}
+	}
+
+	/**
+	 * Writes a record with its length and its checksum, then resets the record buffer.
+	 */
+	private static void writeRecord(RecordBuffer recordBuffer, OutputStream output) throws IOException {
+		byte[] payload = recordBuffer.getBuffer();
+		int length = recordBuffer.size();
+		recordBuffer.reset();
+		if (length > MAX_RECORD_SIZE) {
+			throw new IOException();
+		}
+		writeInt(output, length);
+		output.write(payload, 0, length);
+		writeInt(output, checksum(payload, length));
+	}
+
+	/**
+	 * Writes an integer in big-endian order, as {@link DataOutputStream#writeInt(int)}.
+	 */
+	private static void writeInt(OutputStream output, int value) throws IOException {
+		for (int shift = (INT_SIZE - 1) * BITS_PER_BYTE; shift >= 0; shift -= BITS_PER_BYTE) {
+			output.write((value >>> shift) & BYTE_MASK);
+		}
+	}
+
+	/**
+	 * Must be called by the thread owning the journal.
+	 */
+	private void onError(IOException e) {
+		Messages.LOGGER.log(Level.SEVERE, Messages.CATEGORY_HOKA, Messages.SESSION_JOURNAL_ERROR, e);
+		synchronized (this.recordBuffer) {
+			this.journaling = false;
+			this.pending.reset();
+		}
+		OutputStream journal = this.journal;
+		this.journal = null;
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException ignored) {
+				// already failing
+			}
+		}
+	}
+
+	private static void writeAdd(DataOutputStream record, Session session) throws IOException {
+		record.writeByte(RECORD_ADD);
+		record.writeUTF(session.userID);
+		record.writeUTF(session.sessionID);
+		record.writeLong(session.sessionExpiration);
+	}
+
+	/**
+	 * Computes the FNV-1a hash of a record.
+	 */
+	private static int checksum(byte[] data, int length) {
+		int hash = CHECKSUM_OFFSET;
+		for (int i = 0; i < length; i++) {
+			hash ^= data[i] & 0xFF;
+			hash *= CHECKSUM_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * A byte array output stream giving access to its buffer, to write a record without copying it.
+	 */
+	private static final class RecordBuffer extends ByteArrayOutputStream {
+
+		/* default */ byte[] getBuffer() {
+			return this.buf;
+		}
+
+	}
+
+}
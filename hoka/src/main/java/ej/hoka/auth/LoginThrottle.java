@@ -0,0 +1,229 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+/**
+ * Limits the rate of the login attempts per key, typically the address of the client and the submitted user name.
+ * <p>
+ * Each key has a token bucket allowing a burst of attempts, then one attempt per refill period. After a failed
+ * attempt, the key is also blocked for a backoff delay doubling with each consecutive failure, up to a maximum. The
+ * failures are forgotten once the key has not failed for the maximum backoff delay, or when it succeeds.
+ * <p>
+ * The state is kept in a fixed-size sketch: each key is hashed to one cell in each of two rows, and a key is only
+ * throttled when both of its cells are. Distinct keys sharing a cell make each other throttled earlier, but the memory
+ * used does not depend on the number of keys, so that it cannot be exhausted by an attacker. When far more keys than
+ * cells are failing, all the keys are throttled.
+ * <p>
+ * The token buckets are stored as the time at which they are full again, in seconds: a bucket allows an attempt when
+ * this time is less than the burst duration ahead of now.
+ */
+public class LoginThrottle {
+
+	private static final int DEFAULT_WIDTH = 1024;
+	private static final int DEFAULT_BURST = 5;
+	private static final int DEFAULT_REFILL_PERIOD = 12; // in seconds
+	private static final int DEFAULT_MAX_BACKOFF = 300; // in seconds
+	private static final int ROWS = 2;
+	private static final int MAX_WIDTH = 1 << 20;
+	private static final int SECOND_HASH_MULTIPLIER = 0x9E3779B9;
+
+	private final int width;
+	private final int burst;
+	private final int refillPeriod; // in seconds
+	private final int maxBackoff; // in seconds
+	private final CoarseClock clock;
+
+	/**
+	 * The time at which the bucket of each cell is full again, in seconds.
+	 */
+	private final long[] fullAt;
+	/**
+	 * The number of consecutive failures of each cell.
+	 */
+	private final int[] failures;
+	/**
+	 * The time until which each cell is blocked, in seconds.
+	 */
+	private final long[] blockedUntil;
+
+	/**
+	 * Constructs a {@link LoginThrottle} allowing bursts of 5 attempts then one every 12 seconds, with a backoff up to 5
+	 * minutes.
+	 *
+	 * @see CoarseClock#getDefault()
+	 */
+	public LoginThrottle() {
+		this(DEFAULT_WIDTH, DEFAULT_BURST, DEFAULT_REFILL_PERIOD, DEFAULT_MAX_BACKOFF, CoarseClock.getDefault());
+	}
+
+	/**
+	 * Constructs a {@link LoginThrottle}.
+	 *
+	 * @param width
+	 *            the number of cells of each row of the sketch, rounded up to a power of two.
+	 * @param burst
+	 *            the number of attempts allowed at once, the capacity of the token buckets.
+	 * @param refillPeriod
+	 *            the time to refill one attempt, in seconds.
+	 * @param maxBackoff
+	 *            the maximum time a key is blocked after consecutive failures, in seconds.
+	 * @param clock
+	 *            the clock used to refill the buckets and compute the backoff.
+	 */
+	public LoginThrottle(int width, int burst, int refillPeriod, int maxBackoff, CoarseClock clock) {
+		if (width <= 0 || width > MAX_WIDTH || burst <= 0 || refillPeriod <= 0 || maxBackoff < 0 || clock == null) {
+			throw new IllegalArgumentException();
+		}
+		int cellCount = 1;
+		while (cellCount < width) {
+			cellCount <<= 1;
+		}
+
+		this.width = cellCount;
+		this.burst = burst;
+		this.refillPeriod = refillPeriod;
+		this.maxBackoff = maxBackoff;
+		this.clock = clock;
+		this.fullAt = new long[ROWS * cellCount];
+		this.failures = new int[ROWS * cellCount];
+		this.blockedUntil = new long[ROWS * cellCount];
+	}
+
+	/**
+	 * Takes an attempt from the bucket of a key.
+	 *
+	 * @param key
+	 *            the throttled key.
+	 * @return <code>0</code> if the attempt is allowed, otherwise the time to wait before the next attempt, in seconds.
+	 */
+	public long tryAcquire(String key) {
+		return tryAcquire(key, null);
+	}
+
+	/**
+	 * Takes an attempt from the buckets of two keys, typically the address of the client and the user name. The attempt
+	 * is taken from both buckets only if both keys allow it, so that the attempts refused because of one key are not
+	 * charged to the other.
+	 *
+	 * @param key
+	 *            the throttled key, or <code>null</code> to only throttle the other one.
+	 * @param otherKey
+	 *            the other throttled key, or <code>null</code> to only throttle the first one.
+	 * @return <code>0</code> if the attempt is allowed, otherwise the time to wait before the next attempt, in seconds.
+	 */
+	public synchronized long tryAcquire(String key, String otherKey) {
+		long now = this.clock.getSeconds();
+		long wait = Math.max(getWait(key, now), getWait(otherKey, now));
+		if (wait > 0) {
+			return wait;
+		}
+
+		consume(key, now);
+		consume(otherKey, now);
+		return 0;
+	}
+
+	/**
+	 * Records a failed attempt of a key, blocking it for the backoff delay.
+	 *
+	 * @param key
+	 *            the key.
+	 */
+	public synchronized void onFailure(String key) {
+		long now = this.clock.getSeconds();
+		int first = getFirstCell(key);
+		int second = getSecondCell(key);
+
+		int failureCount = Math.min(fail(first, now), fail(second, now));
+		long backoff = getBackoff(failureCount);
+		block(first, now + backoff);
+		block(second, now + backoff);
+	}
+
+	/**
+	 * Records a successful attempt of a key, forgetting its failures.
+	 *
+	 * @param key
+	 *            the key.
+	 */
+	public synchronized void onSuccess(String key) {
+		int first = getFirstCell(key);
+		int second = getSecondCell(key);
+		this.failures[first] = 0;
+		this.failures[second] = 0;
+		this.blockedUntil[first] = 0;
+		this.blockedUntil[second] = 0;
+	}
+
+	/**
+	 * Gets the time to wait before an attempt of a key is allowed, <code>0</code> if it is allowed now.
+	 */
+	private long getWait(String key, long now) {
+		if (key == null) {
+			return 0;
+		}
+		int first = getFirstCell(key);
+		int second = getSecondCell(key);
+
+		long blocked = Math.min(this.blockedUntil[first], this.blockedUntil[second]);
+		if (blocked > now) {
+			return blocked - now;
+		}
+
+		long burstDuration = (long) this.burst * this.refillPeriod;
+		long earliest = Math.min(this.fullAt[first], this.fullAt[second]);
+		// the bucket has at least one token when it is full again at most burst - 1 periods ahead
+		return Math.max(earliest - now - burstDuration + this.refillPeriod, 0);
+	}
+
+	private void consume(String key, long now) {
+		if (key != null) {
+			consume(getFirstCell(key), now);
+			consume(getSecondCell(key), now);
+		}
+	}
+
+	private void consume(int cell, long now) {
+		this.fullAt[cell] = Math.max(this.fullAt[cell], now) + this.refillPeriod;
+	}
+
+	private int fail(int cell, long now) {
+		if (now > this.blockedUntil[cell] + this.maxBackoff) {
+			// no failure for a while
+			this.failures[cell] = 0;
+		}
+		if (this.failures[cell] < Integer.MAX_VALUE) {
+			this.failures[cell]++;
+		}
+		return this.failures[cell];
+	}
+
+	private void block(int cell, long until) {
+		this.blockedUntil[cell] = Math.max(this.blockedUntil[cell], until);
+	}
+
+	private long getBackoff(int failureCount) {
+		long backoff = 1;
+		for (int i = 1; i < failureCount && backoff < this.maxBackoff; i++) {
+			backoff <<= 1;
+		}
+		return Math.min(backoff, this.maxBackoff);
+	}
+
+	private int getFirstCell(String key) {
+		int hash = key.hashCode();
+		return (hash ^ (hash >>> 16)) & (this.width - 1);
+	}
+
+	private int getSecondCell(String key) {
+		int hash = key.hashCode() * SECOND_HASH_MULTIPLIER;
+		// use the high bits, mixed by the multiplication
+		return this.width + (((hash >>> 16) ^ hash) & (this.width - 1));
+	}
+
+}
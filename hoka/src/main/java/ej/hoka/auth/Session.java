@@ -45,4 +45,15 @@ public class Session {
 		return ONE_SECOND * this.sessionExpiration < System.currentTimeMillis();
 	}
 
+	/**
+	 * Checks whether the session has expired at the given time.
+	 *
+	 * @param now
+	 *            the current time in seconds, as given by {@link CoarseClock#getSeconds()}.
+	 * @return {@code true} if the session has expired, {@code false} otherwise.
+	 */
+	public boolean isExpired(long now) {
+		return this.sessionExpiration < now;
+	}
+
 }
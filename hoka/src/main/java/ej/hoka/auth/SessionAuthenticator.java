@@ -14,9 +14,8 @@ import java.util.Random;
  * An implementation of {@link Authenticator} that stores active sessions in a database and authenticate a request using
  * a session ID generated at login.
  */
-public class SessionAuthenticator implements Authenticator {
+public class SessionAuthenticator implements TokenAuthenticator {
 
-	private static final long ONE_SECOND = 1000L;
 	private static final long DEFAULT_SESSION_LIFETIME = 3600L; // 1 hour
 
 	private static final int TOKEN_SIZE = 128;
@@ -25,6 +24,7 @@ public class SessionAuthenticator implements Authenticator {
 	private final long sessionLifetime; // in seconds
 
 	private final SessionDataAccess database;
+	private final CoarseClock clock;
 
 	/**
 	 * Constructs a {@link SessionAuthenticator} with 1-hour-long sessions and using an in-memory database.
@@ -107,57 +107,84 @@ public class SessionAuthenticator implements Authenticator {
 	 *            the time before a session is considered invalid.
 	 * @param database
 	 *            the database to store active sessions.
+	 * @see CoarseClock#getDefault()
 	 */
 	public SessionAuthenticator(Random random, long sessionLifetime, SessionDataAccess database) {
+		this(random, sessionLifetime, database, CoarseClock.getDefault());
+	}
+
+	/**
+	 * Constructs a {@link SessionAuthenticator}.
+	 *
+	 * Use a secure {@link Random} implementation (see java.security.SecureRandom).
+	 *
+	 * @param random
+	 *            the random number generator used to create session IDs.
+	 * @param sessionLifetime
+	 *            the time before a session is considered invalid.
+	 * @param database
+	 *            the database to store active sessions.
+	 * @param clock
+	 *            the clock used to check and generate the expiration dates, typically a started {@link CoarseClock}
+	 *            shared by the application.
+	 */
+	public SessionAuthenticator(Random random, long sessionLifetime, SessionDataAccess database, CoarseClock clock) {
 		this.randomNumberGenerator = random;
 		this.database = database;
 		this.sessionLifetime = sessionLifetime;
+		this.clock = clock;
 	}
 
 	/**
 	 * Creates a new session with the given user identifier.
+	 * <p>
+	 * If the user already has an active session, its ID is returned. The database is not locked during the login: two
+	 * concurrent logins of the same user may create two sessions, both valid until they expire.
 	 *
 	 * @param uid
 	 *            the identifier of the logged in user.
 	 * @return the generated session ID.
 	 */
+	@Override
 	public String login(String uid) {
-		synchronized (this.database) {
-			Session session = this.database.getSessionByUser(uid);
-
-			if (session != null) {
-				if (session.isExpired()) {
-					this.database.removeSession(session);
-				} else {
-					return session.sessionID;
-				}
+		Session session = this.database.getSessionByUser(uid);
+
+		if (session != null) {
+			if (session.isExpired(this.clock.getSeconds())) {
+				this.database.removeSession(session);
+			} else {
+				return session.sessionID;
 			}
+		}
 
-			String sessionId = generateSessionID();
-			long expiration = generateExpiration();
+		String sessionId = generateSessionID();
+		long expiration = generateExpiration();
 
-			this.database.addSession(new Session(uid, sessionId, expiration));
+		this.database.addSession(new Session(uid, sessionId, expiration));
 
-			return sessionId;
-		}
+		return sessionId;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The lookup of an active session does not allocate memory, as long as the database returns its stored
+	 * {@link Session}.
+	 */
 	@Override
 	public String authenticate(String sessionID) {
-		synchronized (this.database) {
-			Session session = this.database.getSessionByID(sessionID);
+		Session session = this.database.getSessionByID(sessionID);
 
-			if (session == null) {
-				return null;
-			}
-
-			if (session.isExpired()) {
-				this.database.removeSession(session);
-				return null;
-			}
+		if (session == null) {
+			return null;
+		}
 
-			return session.userID;
+		if (session.isExpired(this.clock.getSeconds())) {
+			this.database.removeSession(session);
+			return null;
 		}
+
+		return session.userID;
 	}
 
 	/**
@@ -167,10 +194,8 @@ public class SessionAuthenticator implements Authenticator {
 	 *            the identifier of the session.
 	 */
 	public void refresh(String sessionID) {
-		synchronized (this.database) {
-			if (this.database.getSessionByID(sessionID) != null) {
-				this.database.refreshSession(sessionID, generateExpiration());
-			}
+		if (this.database.getSessionByID(sessionID) != null) {
+			this.database.refreshSession(sessionID, generateExpiration());
 		}
 	}
 
@@ -181,17 +206,16 @@ public class SessionAuthenticator implements Authenticator {
 	 *            the identifier of the session.
 	 * @return {@code false} if no sessions are referenced by <code>sessionID</code>, {@code true} otherwise
 	 */
+	@Override
 	public boolean logout(String sessionID) {
-		synchronized (this.database) {
-			Session session = this.database.getSessionByID(sessionID);
+		Session session = this.database.getSessionByID(sessionID);
 
-			if (session != null) {
-				this.database.removeSession(session);
-				return true;
-			}
-
-			return false;
+		if (session != null) {
+			this.database.removeSession(session);
+			return true;
 		}
+
+		return false;
 	}
 
 	/**
@@ -211,10 +235,10 @@ public class SessionAuthenticator implements Authenticator {
 	 *
 	 * @return the generated expiration date.
 	 *
-	 * @see System#currentTimeMillis()
+	 * @see CoarseClock#getSeconds()
 	 */
 	protected long generateExpiration() {
-		return System.currentTimeMillis() / ONE_SECOND + this.sessionLifetime;
+		return this.clock.getSeconds() + this.sessionLifetime;
 	}
 
 }
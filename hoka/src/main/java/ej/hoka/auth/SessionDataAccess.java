@@ -9,6 +9,10 @@ package ej.hoka.auth;
 
 /**
  * The interface to the database of active sessions.
+ * <p>
+ * The implementations must be thread-safe: the {@link SessionAuthenticator} calls them concurrently from the jobs of
+ * the server, without external synchronization. An implementation that is not thread-safe can be wrapped in a
+ * {@link SynchronizedSessionDataAccess}.
  */
 public interface SessionDataAccess {
 
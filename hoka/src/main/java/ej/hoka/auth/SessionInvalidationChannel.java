@@ -0,0 +1,28 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+/**
+ * A channel notifying the other nodes of a cluster that a session has been removed or refreshed, so that they drop it
+ * from their {@link CachedSessionDataAccess}.
+ *
+ * @see SocketSessionPeer
+ */
+public interface SessionInvalidationChannel {
+
+	/**
+	 * Notifies the other nodes that a session has been removed or refreshed.
+	 * <p>
+	 * This method is called by the jobs of the server: it should not wait for the notification to be delivered.
+	 *
+	 * @param sessionID
+	 *            the ID of the removed or refreshed session.
+	 */
+	void publish(String sessionID);
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The persistent storage of the journal of a {@link JournaledSessionDataAccess}.
+ * <p>
+ * A typical implementation stores the journal in a file and the compacted journal in a temporary file, renamed over
+ * the journal on commit.
+ */
+public interface SessionJournalStorage {
+
+	/**
+	 * Opens the journal for reading.
+	 *
+	 * @return the stream to read the journal, or <code>null</code> if there is no journal yet.
+	 * @throws IOException
+	 *             if the journal cannot be opened.
+	 */
+	InputStream openJournal() throws IOException;
+
+	/**
+	 * Opens the journal for appending. The records written to the returned stream are added after the existing ones.
+	 * <p>
+	 * The stream is flushed after each group of records, written with a single call: to survive a power loss, its
+	 * <code>flush()</code> method should also synchronize the data with the storage device.
+	 *
+	 * @return the stream to append records to.
+	 * @throws IOException
+	 *             if the journal cannot be opened.
+	 */
+	OutputStream appendJournal() throws IOException;
+
+	/**
+	 * Creates a compacted journal, which replaces the journal when committed.
+	 *
+	 * @return the stream to write the compacted journal to.
+	 * @throws IOException
+	 *             if the compacted journal cannot be created.
+	 */
+	OutputStream createCompactedJournal() throws IOException;
+
+	/**
+	 * Replaces the journal by the compacted journal, which has been written and closed.
+	 * <p>
+	 * The replacement should be atomic: after a crash, either the former or the compacted journal must be found.
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be replaced.
+	 */
+	void commitCompactedJournal() throws IOException;
+
+}
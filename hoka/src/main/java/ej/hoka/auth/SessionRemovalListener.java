@@ -0,0 +1,29 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+/**
+ * A listener notified of the sessions removed by an {@link InMemorySessionDataAccess} itself, rather than by a call to
+ * {@link SessionDataAccess#removeSession(Session)}.
+ *
+ * @see InMemorySessionDataAccess#setRemovalListener(SessionRemovalListener)
+ */
+public interface SessionRemovalListener {
+
+	/**
+	 * Called when a session has been removed because the maximum number of sessions was exceeded, or because it
+	 * expired and was removed by {@link InMemorySessionDataAccess#removeExpiredSessions()}.
+	 * <p>
+	 * The listener is called without holding the locks of the data access, by the thread that removed the session.
+	 *
+	 * @param session
+	 *            the removed session.
+	 */
+	void onSessionRemoved(Session session);
+
+}
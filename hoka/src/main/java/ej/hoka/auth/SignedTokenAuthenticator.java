@@ -0,0 +1,228 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+import java.util.Base64;
+
+/**
+ * A stateless {@link TokenAuthenticator}: the token carries the user ID and its expiration date, signed with
+ * HMAC-SHA256.
+ * <p>
+ * No session is stored, so the nodes of a cluster sharing the same keys authenticate the tokens issued by each other.
+ * The tokens are signed with the last key given to {@link #rotateKey(int, byte[])}, the previous keys are kept to
+ * verify the tokens signed before the rotation.
+ * <p>
+ * A token cannot be revoked before its expiration: {@link #logout(String)} only checks it. Use short lifetimes, or
+ * remove the keys of the revoked tokens.
+ */
+public class SignedTokenAuthenticator implements TokenAuthenticator {
+
+	private static final long DEFAULT_TOKEN_LIFETIME = 3600L; // 1 hour
+	private static final int DEFAULT_MAX_KEYS = 2;
+	private static final char SEPARATOR = '.';
+
+	private final long tokenLifetime; // in seconds
+	private final CoarseClock clock;
+	private final int maxKeys;
+
+	/**
+	 * The keys, the signing key first. The array is replaced on rotation, so that it is read without locking.
+	 */
+	private volatile Key[] keys;
+
+	/**
+	 * Constructs a {@link SignedTokenAuthenticator} with 1-hour-long tokens, keeping the previous key after a rotation.
+	 *
+	 * @see CoarseClock#getDefault()
+	 */
+	public SignedTokenAuthenticator() {
+		this(DEFAULT_TOKEN_LIFETIME, CoarseClock.getDefault(), DEFAULT_MAX_KEYS);
+	}
+
+	/**
+	 * Constructs a {@link SignedTokenAuthenticator}.
+	 *
+	 * @param tokenLifetime
+	 *            the time before a token is considered invalid, in seconds.
+	 * @param clock
+	 *            the clock used to check and generate the expiration dates.
+	 * @param maxKeys
+	 *            the maximum number of keys kept to verify the tokens, including the signing key.
+	 */
+	public SignedTokenAuthenticator(long tokenLifetime, CoarseClock clock, int maxKeys) {
+		if (tokenLifetime <= 0 || clock == null || maxKeys <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.tokenLifetime = tokenLifetime;
+		this.clock = clock;
+		this.maxKeys = maxKeys;
+		this.keys = new Key[0];
+	}
+
+	/**
+	 * Sets the key used to sign the new tokens. The previous keys are kept to verify the tokens, up to the maximum
+	 * number of keys.
+	 * <p>
+	 * The key should be generated by a secure random generator, and be at least 32 bytes long.
+	 *
+	 * @param keyID
+	 *            the identifier of the key, written in the tokens. It must be the same on all the nodes using the key.
+	 * @param key
+	 *            the secret key.
+	 * @throws IllegalArgumentException
+	 *             if a key already has the same identifier.
+	 */
+	public synchronized void rotateKey(int keyID, byte[] key) {
+		Key[] keys = this.keys;
+		if (getKey(keys, keyID) != null) {
+			throw new IllegalArgumentException();
+		}
+		int length = Math.min(keys.length + 1, this.maxKeys);
+		Key[] newKeys = new Key[length];
+		newKeys[0] = new Key(keyID, new HmacSha256(key));
+		System.arraycopy(keys, 0, newKeys, 1, length - 1);
+		this.keys = newKeys;
+	}
+
+	/**
+	 * Removes a key, the tokens signed with it are not valid anymore.
+	 *
+	 * @param keyID
+	 *            the identifier of the key.
+	 */
+	public synchronized void removeKey(int keyID) {
+		Key[] keys = this.keys;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i].id == keyID) {
+				Key[] newKeys = new Key[keys.length - 1];
+				System.arraycopy(keys, 0, newKeys, 0, i);
+				System.arraycopy(keys, i + 1, newKeys, i, newKeys.length - i);
+				this.keys = newKeys;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The token has the form <code>keyID.expiration.userID.signature</code>, the user ID and the signature being
+	 * encoded in base64.
+	 *
+	 * @throws IllegalStateException
+	 *             if no key has been set.
+	 */
+	@Override
+	public String login(String userID) {
+		Key[] keys = this.keys;
+		if (keys.length == 0) {
+			throw new IllegalStateException();
+		}
+		Key key = keys[0];
+
+		int length = userID.length();
+		byte[] userBytes = new byte[2 * length];
+		for (int i = 0; i < length; i++) {
+			char c = userID.charAt(i);
+			userBytes[2 * i] = (byte) (c >> 8);
+			userBytes[2 * i + 1] = (byte) c;
+		}
+
+		StringBuilder token = new StringBuilder();
+		token.append(key.id).append(SEPARATOR);
+		token.append(this.clock.getSeconds() + this.tokenLifetime).append(SEPARATOR);
+		token.append(Base64.getEncoder().encodeToString(userBytes));
+		byte[] signature = key.mac.mac(toBytes(token, token.length()), 0, token.length());
+		token.append(SEPARATOR).append(Base64.getEncoder().encodeToString(signature));
+		return token.toString();
+	}
+
+	@Override
+	public String authenticate(String token) {
+		if (token == null) {
+			return null;
+		}
+		int keyEnd = token.indexOf(SEPARATOR);
+		int expirationEnd = token.indexOf(SEPARATOR, keyEnd + 1);
+		int userEnd = token.lastIndexOf(SEPARATOR);
+		if (keyEnd <= 0 || expirationEnd <= keyEnd + 1 || userEnd <= expirationEnd) {
+			return null;
+		}
+
+		try {
+			Key key = getKey(this.keys, Integer.parseInt(token.substring(0, keyEnd)));
+			if (key == null) {
+				return null;
+			}
+			long expiration = Long.parseLong(token.substring(keyEnd + 1, expirationEnd));
+			if (expiration < this.clock.getSeconds()) {
+				return null;
+			}
+
+			byte[] expected = key.mac.mac(toBytes(token, userEnd), 0, userEnd);
+			byte[] signature = Base64.getDecoder().decode(token.substring(userEnd + 1));
+			if (!HmacSha256.constantTimeEquals(expected, signature)) {
+				return null;
+			}
+
+			byte[] userBytes = Base64.getDecoder().decode(token.substring(expirationEnd + 1, userEnd));
+			int length = userBytes.length / 2;
+			char[] userID = new char[length];
+			for (int i = 0; i < length; i++) {
+				userID[i] = (char) ((userBytes[2 * i] << 8) | (userBytes[2 * i + 1] & 0xFF));
+			}
+			return new String(userID);
+		} catch (IllegalArgumentException e) {
+			// malformed number or base64
+			return null;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The token is stateless and remains valid until it expires: this method only checks that it is valid.
+	 */
+	@Override
+	public boolean logout(String token) {
+		return authenticate(token) != null;
+	}
+
+	private static Key getKey(Key[] keys, int keyID) {
+		for (Key key : keys) {
+			if (key.id == keyID) {
+				return key;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Converts the first characters of an ASCII string to bytes.
+	 */
+	private static byte[] toBytes(CharSequence string, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) string.charAt(i);
+		}
+		return bytes;
+	}
+
+	private static final class Key {
+
+		/* default */ final int id;
+		/* default */ final HmacSha256 mac;
+
+		/* default */ Key(int id, HmacSha256 mac) {
+			this.id = id;
+			this.mac = mac;
+		}
+
+	}
+
+}
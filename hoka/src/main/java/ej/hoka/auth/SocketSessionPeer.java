@@ -0,0 +1,542 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ServerSocketFactory;
+import javax.net.SocketFactory;
+
+import ej.hoka.log.Messages;
+import ej.util.message.Level;
+
+/**
+ * A peer-to-peer {@link SessionInvalidationChannel} over TCP connections.
+ * <p>
+ * Each node runs a peer listening on a port and knowing the address of the other nodes. The removed sessions are
+ * queued by {@link #publish(String)} for each of the other peers and sent by a background thread per peer, so that a
+ * slow or unreachable peer does not delay the notifications of the others. The other peers invalidate the sessions in
+ * their {@link CachedSessionDataAccess}. The connections to the peers are opened on demand, within a timeout, and kept
+ * open.
+ * <p>
+ * The notifications are best effort: they are dropped when the queue of a peer is full or when a peer cannot be
+ * reached, the time-to-live of the caches bounding how long a removed session stays valid.
+ * <p>
+ * The connections of the other peers are received by a fixed number of threads, each one handling a connection at a
+ * time: it must be at least the number of other peers. Only the connections from the addresses of the peers given to
+ * {@link #addPeer(String, int)} are accepted. When a key is given, each notification is authenticated with
+ * HMAC-SHA256, and the notifications with an invalid MAC close the connection; all the peers must share the same key.
+ */
+public class SocketSessionPeer implements SessionInvalidationChannel {
+
+	private static final int DEFAULT_QUEUE_SIZE = 64;
+	private static final int DEFAULT_RECEIVER_COUNT = 4;
+	private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+	private static final int MAX_SESSION_ID_LENGTH = 1024;
+	private static final byte INVALIDATE = 1;
+	/**
+	 * The length of the header of a notification: its type and the length of the session ID.
+	 */
+	private static final int HEADER_LENGTH = 3;
+
+	private final int port;
+	private final CachedSessionDataAccess cache;
+	private final ServerSocketFactory serverSocketFactory;
+	private final SocketFactory socketFactory;
+	/**
+	 * The MAC of the notifications, <code>null</code> if they are not authenticated.
+	 */
+	private final HmacSha256 mac;
+
+	/**
+	 * The maximum number of notifications waiting to be sent to each peer.
+	 */
+	private final int queueSize;
+	/**
+	 * The timeout of the connections to the other peers, in milliseconds.
+	 */
+	private final int connectTimeout;
+
+	/**
+	 * The other peers. The array is replaced when a peer is added, so that it is read without locking.
+	 */
+	private volatile Peer[] peers;
+
+	/**
+	 * The connections accepted from the other peers.
+	 */
+	private final List<Socket> connections;
+
+	private volatile boolean running;
+	private ServerSocket serverSocket;
+	private final Thread[] receivers;
+
+	/**
+	 * Constructs a {@link SocketSessionPeer} with the default socket factories, receiving the connections of up to 4
+	 * peers. The notifications are not authenticated.
+	 *
+	 * @param port
+	 *            the port listened for the notifications of the other peers.
+	 * @param cache
+	 *            the cache invalidated by the notifications.
+	 */
+	public SocketSessionPeer(int port, CachedSessionDataAccess cache) {
+		this(port, cache, null);
+	}
+
+	/**
+	 * Constructs a {@link SocketSessionPeer} with the default socket factories, receiving the connections of up to 4
+	 * peers.
+	 *
+	 * @param port
+	 *            the port listened for the notifications of the other peers.
+	 * @param cache
+	 *            the cache invalidated by the notifications.
+	 * @param key
+	 *            the secret key authenticating the notifications, shared by all the peers, or <code>null</code> to not
+	 *            authenticate them.
+	 */
+	public SocketSessionPeer(int port, CachedSessionDataAccess cache, byte[] key) {
+		this(port, cache, key, DEFAULT_QUEUE_SIZE, DEFAULT_RECEIVER_COUNT, ServerSocketFactory.getDefault(),
+				SocketFactory.getDefault());
+	}
+
+	/**
+	 * Constructs a {@link SocketSessionPeer}.
+	 *
+	 * @param port
+	 *            the port listened for the notifications of the other peers.
+	 * @param cache
+	 *            the cache invalidated by the notifications.
+	 * @param key
+	 *            the secret key authenticating the notifications, shared by all the peers, or <code>null</code> to not
+	 *            authenticate them.
+	 * @param queueSize
+	 *            the maximum number of notifications waiting to be sent to each peer.
+	 * @param receiverCount
+	 *            the number of threads receiving the connections of the other peers, at least the number of other
+	 *            peers.
+	 * @param serverSocketFactory
+	 *            the factory of the listening socket.
+	 * @param socketFactory
+	 *            the factory of the connections to the other peers.
+	 */
+	public SocketSessionPeer(int port, CachedSessionDataAccess cache, byte[] key, int queueSize, int receiverCount,
+			ServerSocketFactory serverSocketFactory, SocketFactory socketFactory) {
+		this(port, cache, key, queueSize, receiverCount, DEFAULT_CONNECT_TIMEOUT, serverSocketFactory, socketFactory);
+	}
+
+	/**
+	 * Constructs a {@link SocketSessionPeer}.
+	 *
+	 * @param port
+	 *            the port listened for the notifications of the other peers.
+	 * @param cache
+	 *            the cache invalidated by the notifications.
+	 * @param key
+	 *            the secret key authenticating the notifications, shared by all the peers, or <code>null</code> to not
+	 *            authenticate them.
+	 * @param queueSize
+	 *            the maximum number of notifications waiting to be sent to each peer.
+	 * @param receiverCount
+	 *            the number of threads receiving the connections of the other peers, at least the number of other
+	 *            peers.
+	 * @param connectTimeout
+	 *            the timeout of the connections to the other peers, in milliseconds, <code>0</code> to wait
+	 *            indefinitely.
+	 * @param serverSocketFactory
+	 *            the factory of the listening socket.
+	 * @param socketFactory
+	 *            the factory of the connections to the other peers, able to create unconnected sockets.
+	 */
+	public SocketSessionPeer(int port, CachedSessionDataAccess cache, byte[] key, int queueSize, int receiverCount,
+			int connectTimeout, ServerSocketFactory serverSocketFactory, SocketFactory socketFactory) {
+		if (queueSize <= 0 || receiverCount <= 0 || connectTimeout < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.port = port;
+		this.cache = cache;
+		this.mac = key == null ? null : new HmacSha256(key);
+		this.serverSocketFactory = serverSocketFactory;
+		this.socketFactory = socketFactory;
+		this.receivers = new Thread[receiverCount];
+		this.peers = new Peer[0];
+		this.queueSize = queueSize;
+		this.connectTimeout = connectTimeout;
+		this.connections = new ArrayList<>();
+	}
+
+	/**
+	 * Adds a peer to notify, whose connections are accepted.
+	 *
+	 * @param host
+	 *            the host of the peer.
+	 * @param port
+	 *            the port listened by the peer.
+	 */
+	public synchronized void addPeer(String host, int port) {
+		Peer peer = new Peer(host, port, this.queueSize);
+		Peer[] peers = this.peers;
+		Peer[] newPeers = new Peer[peers.length + 1];
+		System.arraycopy(peers, 0, newPeers, 0, peers.length);
+		newPeers[peers.length] = peer;
+		this.peers = newPeers;
+		if (this.running) {
+			peer.start();
+		}
+	}
+
+	/**
+	 * Starts listening for the notifications of the other peers and sending the published ones.
+	 *
+	 * @throws IOException
+	 *             if an error occurs during the creation of the socket.
+	 */
+	public synchronized void start() throws IOException {
+		if (this.running) {
+			throw new IllegalStateException(Messages.BUILDER.buildMessage(Level.SEVERE, Messages.CATEGORY_HOKA,
+					Messages.MULTIPLE_START_FORBIDDEN));
+		}
+		this.serverSocket = this.serverSocketFactory.createServerSocket(this.port);
+		this.running = true;
+
+		Thread[] receivers = this.receivers;
+		for (int i = 0; i < receivers.length; i++) {
+			receivers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					listen();
+				}
+			}, "SessionPeerReceiver-" + i); //$NON-NLS-1$
+			receivers[i].start();
+		}
+		for (Peer peer : this.peers) {
+			peer.start();
+		}
+	}
+
+	/**
+	 * Stops the peer and closes its connections. The notifications not sent yet are dropped.
+	 */
+	public synchronized void stop() {
+		if (!this.running) {
+			return;
+		}
+		this.running = false;
+		close(this.serverSocket);
+		for (Peer peer : this.peers) {
+			peer.stop();
+		}
+		synchronized (this.connections) {
+			for (Socket connection : this.connections) {
+				close(connection);
+			}
+			this.connections.clear();
+		}
+		try {
+			for (Thread receiver : this.receivers) {
+				receiver.join();
+			}
+			for (Peer peer : this.peers) {
+				peer.join();
+			}
+		} catch (InterruptedException e) {
+			// nothing to do on interrupted exception
+		}
+	}
+
+	@Override
+	public void publish(String sessionID) {
+		byte[] notification;
+		try {
+			notification = encode(sessionID);
+		} catch (IOException e) {
+			// session ID too long
+			Messages.LOGGER.log(Level.WARNING, Messages.CATEGORY_HOKA, Messages.SESSION_PEER_ERROR, e);
+			return;
+		}
+		for (Peer peer : this.peers) {
+			peer.offer(notification);
+		}
+	}
+
+	/**
+	 * Encodes the notification of a removed session: its type, the session ID as modified UTF-8 with its length, and
+	 * the MAC of both when the notifications are authenticated.
+	 */
+	private byte[] encode(String sessionID) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeByte(INVALIDATE);
+		output.writeUTF(sessionID);
+		if (bytes.size() > HEADER_LENGTH + MAX_SESSION_ID_LENGTH) {
+			throw new IOException();
+		}
+		HmacSha256 mac = this.mac;
+		if (mac != null) {
+			byte[] message = bytes.toByteArray();
+			output.write(mac.mac(message, 0, message.length));
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Accepts and receives the connections of the other peers, one at a time.
+	 */
+	private void listen() {
+		ServerSocket serverSocket = this.serverSocket;
+		while (this.running) {
+			Socket connection;
+			try {
+				connection = serverSocket.accept();
+			} catch (IOException e) {
+				if (this.running) {
+					Messages.LOGGER.log(Level.SEVERE, Messages.CATEGORY_HOKA, Messages.SESSION_PEER_ERROR, e);
+				}
+				return;
+			}
+
+			if (!isPeer(connection.getInetAddress())) {
+				Messages.LOGGER.log(Level.WARNING, Messages.CATEGORY_HOKA, Messages.SESSION_PEER_REJECTED,
+						connection.getInetAddress().toString());
+				close(connection);
+				continue;
+			}
+			synchronized (this.connections) {
+				if (!this.running) {
+					close(connection);
+					return;
+				}
+				this.connections.add(connection);
+			}
+			receive(connection);
+		}
+	}
+
+	private boolean isPeer(InetAddress address) {
+		for (Peer peer : this.peers) {
+			if (peer.hasAddress(address)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void receive(Socket connection) {
+		HmacSha256 mac = this.mac;
+		byte[] buffer = new byte[HEADER_LENGTH + MAX_SESSION_ID_LENGTH];
+		byte[] signature = new byte[HmacSha256.MAC_LENGTH];
+		try {
+			DataInputStream input = new DataInputStream(connection.getInputStream());
+			while (true) {
+				input.readFully(buffer, 0, HEADER_LENGTH);
+				int length = ((buffer[1] & 0xFF) << 8) | (buffer[2] & 0xFF);
+				if (buffer[0] != INVALIDATE || length > MAX_SESSION_ID_LENGTH) {
+					throw new IOException();
+				}
+				input.readFully(buffer, HEADER_LENGTH, length);
+				if (mac != null) {
+					input.readFully(signature);
+					if (!HmacSha256.constantTimeEquals(mac.mac(buffer, 0, HEADER_LENGTH + length), signature)) {
+						throw new IOException();
+					}
+				}
+				String sessionID = new DataInputStream(new ByteArrayInputStream(buffer, 1, length + 2)).readUTF();
+				this.cache.invalidate(sessionID);
+			}
+		} catch (EOFException e) {
+			// closed by the peer
+		} catch (IOException e) {
+			if (this.running) {
+				Messages.LOGGER.log(Level.WARNING, Messages.CATEGORY_HOKA, Messages.SESSION_PEER_ERROR, e);
+			}
+		} finally {
+			synchronized (this.connections) {
+				this.connections.remove(connection);
+			}
+			close(connection);
+		}
+	}
+
+	private static void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// already closed
+		}
+	}
+
+	private static void close(ServerSocket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// already closed
+		}
+	}
+
+	/**
+	 * Another peer, the queue of the notifications to send to it and the connection to it, only used by the sender
+	 * thread of the peer once started, except its address and its queue.
+	 */
+	private final class Peer implements Runnable {
+
+		private final String host;
+		private final int port;
+
+		/**
+		 * The circular queue of the notifications to send, also the lock of the queue.
+		 */
+		private final byte[][] queue;
+		private int queueHead;
+		private int queueSize;
+
+		private Thread sender;
+		/**
+		 * The connection to the peer, also closed by {@link #stop()} to unblock the sender thread.
+		 */
+		private volatile Socket socket;
+		private OutputStream output;
+
+		/* default */ Peer(String host, int port, int queueSize) {
+			this.host = host;
+			this.port = port;
+			this.queue = new byte[queueSize][];
+		}
+
+		/* default */ boolean hasAddress(InetAddress address) {
+			try {
+				for (InetAddress peerAddress : InetAddress.getAllByName(this.host)) {
+					if (peerAddress.equals(address)) {
+						return true;
+					}
+				}
+			} catch (IOException e) {
+				// unknown host
+			}
+			return false;
+		}
+
+		/* default */ void start() {
+			this.sender = new Thread(this, "SessionPeerSender-" + this.host + ':' + this.port); //$NON-NLS-1$
+			this.sender.start();
+		}
+
+		/* default */ void stop() {
+			synchronized (this.queue) {
+				this.queue.notifyAll();
+			}
+			Socket socket = this.socket;
+			if (socket != null) {
+				close(socket);
+			}
+		}
+
+		/* default */ void join() throws InterruptedException {
+			Thread sender = this.sender;
+			if (sender != null) {
+				sender.join();
+			}
+		}
+
+		/* default */ void offer(byte[] notification) {
+			byte[][] queue = this.queue;
+			synchronized (queue) {
+				if (this.queueSize == queue.length) {
+					// drop the oldest notification
+					queue[this.queueHead] = null;
+					this.queueHead = (this.queueHead + 1) % queue.length;
+					this.queueSize--;
+				}
+				queue[(this.queueHead + this.queueSize) % queue.length] = notification;
+				this.queueSize++;
+				queue.notifyAll();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				byte[] notification;
+				while ((notification = take()) != null) {
+					send(notification);
+				}
+			} finally {
+				disconnect();
+			}
+		}
+
+		/**
+		 * Waits for the next notification to send.
+		 *
+		 * @return the notification, or <code>null</code> when the peer is stopped.
+		 */
+		private byte[] take() {
+			byte[][] queue = this.queue;
+			synchronized (queue) {
+				while (this.queueSize == 0 && SocketSessionPeer.this.running) {
+					try {
+						queue.wait();
+					} catch (InterruptedException e) {
+						// check the state again
+					}
+				}
+				if (!SocketSessionPeer.this.running) {
+					return null;
+				}
+				byte[] notification = queue[this.queueHead];
+				queue[this.queueHead] = null;
+				this.queueHead = (this.queueHead + 1) % queue.length;
+				this.queueSize--;
+				return notification;
+			}
+		}
+
+		private void send(byte[] notification) {
+			try {
+				if (this.output == null) {
+					Socket socket = SocketSessionPeer.this.socketFactory.createSocket();
+					this.socket = socket;
+					socket.connect(new InetSocketAddress(this.host, this.port),
+							SocketSessionPeer.this.connectTimeout);
+					this.output = socket.getOutputStream();
+				}
+				this.output.write(notification);
+				this.output.flush();
+			} catch (IOException e) {
+				// the notification is lost, the connection is opened again by the next one
+				if (SocketSessionPeer.this.running) {
+					Messages.LOGGER.log(Level.WARNING, Messages.CATEGORY_HOKA, Messages.SESSION_PEER_ERROR, e);
+				}
+				disconnect();
+			}
+		}
+
+		private void disconnect() {
+			Socket socket = this.socket;
+			if (socket != null) {
+				close(socket);
+				this.socket = null;
+				this.output = null;
+			}
+		}
+
+	}
+
+}
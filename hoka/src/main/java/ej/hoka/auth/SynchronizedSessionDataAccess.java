@@ -0,0 +1,58 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+/**
+ * A {@link SessionDataAccess} serializing the calls to another one that is not thread-safe.
+ * <p>
+ * The {@link SessionAuthenticator} calls its session database concurrently. The implementations written for the
+ * previous versions, which were called under a global lock, can be wrapped in this class to keep that behavior.
+ */
+public class SynchronizedSessionDataAccess implements SessionDataAccess {
+
+	private final SessionDataAccess database;
+
+	/**
+	 * Constructs a {@link SynchronizedSessionDataAccess}.
+	 *
+	 * @param database
+	 *            the database that is not thread-safe, only accessed through this instance.
+	 */
+	public SynchronizedSessionDataAccess(SessionDataAccess database) {
+		if (database == null) {
+			throw new IllegalArgumentException();
+		}
+		this.database = database;
+	}
+
+	@Override
+	public synchronized void addSession(Session newSession) {
+		this.database.addSession(newSession);
+	}
+
+	@Override
+	public synchronized Session getSessionByUser(String userID) {
+		return this.database.getSessionByUser(userID);
+	}
+
+	@Override
+	public synchronized Session getSessionByID(String sessionID) {
+		return this.database.getSessionByID(sessionID);
+	}
+
+	@Override
+	public synchronized void refreshSession(String sessionID, long newExpiration) {
+		this.database.refreshSession(sessionID, newExpiration);
+	}
+
+	@Override
+	public synchronized void removeSession(Session newSession) {
+		this.database.removeSession(newSession);
+	}
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+/**
+ * An {@link Authenticator} issuing the tokens of the users when they log in.
+ */
+public interface TokenAuthenticator extends Authenticator {
+
+	/**
+	 * Issues a token for the given user.
+	 *
+	 * @param userID
+	 *            the identifier of the logged in user.
+	 * @return the token to authenticate the user.
+	 */
+	String login(String userID);
+
+	/**
+	 * Revokes a token.
+	 *
+	 * @param token
+	 *            the token to revoke.
+	 * @return {@code false} if the token is not valid, {@code true} otherwise.
+	 */
+	boolean logout(String token);
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth.header;
+
+import java.util.Map;
+
+import ej.hoka.auth.Authenticator;
+import ej.hoka.auth.BasicAuthenticator;
+import ej.hoka.auth.CachingAuthenticator;
+import ej.hoka.auth.session.AuthenticatedRequestHandler;
+import ej.hoka.http.HTTPConstants;
+import ej.hoka.http.HTTPRequest;
+import ej.hoka.http.HTTPResponse;
+
+/**
+ * A request handler that requires the user to be authenticated using the Authorization header field to access the
+ * sub-handlers.
+ * <p>
+ * The credentials following the scheme of the handler are given to the {@link Authenticator}. When the authentication
+ * fails, a <code>401 Unauthorized</code> response is sent with a <code>WWW-Authenticate</code> header field giving the
+ * scheme and the realm.
+ * <p>
+ * For example, with the Basic scheme, use a {@link BasicAuthenticator} wrapped in a {@link CachingAuthenticator}. With
+ * the Bearer scheme, use an {@link Authenticator} of the tokens, wrapped in a {@link CachingAuthenticator} if checking
+ * them is slow.
+ */
+public class AuthorizationRequestHandler extends AuthenticatedRequestHandler {
+
+	/**
+	 * The Basic authentication scheme (RFC 7617).
+	 */
+	public static final String SCHEME_BASIC = "Basic"; //$NON-NLS-1$
+
+	/**
+	 * The Bearer authentication scheme (RFC 6750).
+	 */
+	public static final String SCHEME_BEARER = "Bearer"; //$NON-NLS-1$
+
+	private static final char SPACE = ' ';
+
+	private final String scheme;
+	private final HTTPResponse unauthorizedResponse;
+
+	/**
+	 * Constructs the request handler.
+	 *
+	 * @param authenticator
+	 *            the {@link Authenticator} used to authenticate the credentials.
+	 * @param root
+	 *            the URI root used to match the request.
+	 * @param scheme
+	 *            the authentication scheme, {@link #SCHEME_BASIC}, {@link #SCHEME_BEARER} or another one.
+	 * @param realm
+	 *            the protection space, sent to the client when the authentication fails.
+	 */
+	public AuthorizationRequestHandler(Authenticator authenticator, String root, String scheme, String realm) {
+		super(authenticator, root);
+		this.scheme = scheme;
+
+		HTTPResponse unauthorizedResponse = HTTPResponse.createError(HTTPConstants.HTTP_STATUS_UNAUTHORIZED, ""); //$NON-NLS-1$
+		unauthorizedResponse.addHeaderField("WWW-Authenticate", //$NON-NLS-1$
+				scheme + " realm=\"" + realm + '"'); //$NON-NLS-1$
+		this.unauthorizedResponse = unauthorizedResponse;
+	}
+
+	/**
+	 * Retrieves the credentials from the Authorization header field of the request.
+	 *
+	 * @param request
+	 *            the {@link HTTPRequest}.
+	 * @param attributes
+	 *            the attributes populated by the request processing.
+	 * @return the credentials, or <code>null</code> if the request has no credentials for the scheme of this handler.
+	 */
+	@Override
+	protected String getSessionID(HTTPRequest request, Map<String, String> attributes) {
+		String authorization = request.getHeaderField(HTTPConstants.FIELD_AUTHORIZATION);
+		if (authorization == null) {
+			return null;
+		}
+
+		// the scheme is case-insensitive
+		int schemeLength = this.scheme.length();
+		if (authorization.length() <= schemeLength || authorization.charAt(schemeLength) != SPACE
+				|| !authorization.regionMatches(true, 0, this.scheme, 0, schemeLength)) {
+			return null;
+		}
+
+		int start = schemeLength + 1;
+		while (start < authorization.length() && authorization.charAt(start) == SPACE) {
+			start++;
+		}
+		return authorization.substring(start);
+	}
+
+	@Override
+	protected HTTPResponse onFailedAuthentication(HTTPRequest request, Map<String, String> attributes) {
+		return this.unauthorizedResponse;
+	}
+
+}
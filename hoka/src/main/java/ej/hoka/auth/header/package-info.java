@@ -0,0 +1,12 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+/**
+ * Utility classes to quickly setup authentication using the Authorization header field, with the Basic or Bearer
+ * schemes.
+ */
+package ej.hoka.auth.header;
@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2019-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -9,10 +9,12 @@ package ej.hoka.auth.session;
 
 import java.util.Map;
 
+import ej.hoka.auth.Authenticator;
 import ej.hoka.auth.SessionAuthenticator;
 import ej.hoka.http.HTTPConstants;
 import ej.hoka.http.HTTPRequest;
 import ej.hoka.http.HTTPResponse;
+import ej.hoka.http.requesthandler.RequestAttributes;
 import ej.hoka.http.requesthandler.RequestHandlerComposite;
 
 /**
@@ -25,7 +27,7 @@ public class AuthenticatedRequestHandler extends RequestHandlerComposite {
 
 	private static final String SLASH = "/"; //$NON-NLS-1$
 
-	private final SessionAuthenticator authenticator;
+	private final Authenticator authenticator;
 
 	private final String root;
 
@@ -33,11 +35,11 @@ public class AuthenticatedRequestHandler extends RequestHandlerComposite {
 	 * Constructs the request handler.
 	 *
 	 * @param authenticator
-	 *            the {@link SessionAuthenticator} used to authenticate users.
+	 *            the {@link Authenticator} used to authenticate users.
 	 * @param root
 	 *            the URI root used to match the request.
 	 */
-	public AuthenticatedRequestHandler(SessionAuthenticator authenticator, String root) {
+	public AuthenticatedRequestHandler(Authenticator authenticator, String root) {
 		this.authenticator = authenticator;
 
 		if (root.endsWith(SLASH)) {
@@ -47,6 +49,19 @@ public class AuthenticatedRequestHandler extends RequestHandlerComposite {
 		this.root = root;
 	}
 
+	/**
+	 * Constructs the request handler.
+	 *
+	 * @param authenticator
+	 *            the {@link SessionAuthenticator} used to authenticate users.
+	 * @param root
+	 *            the URI root used to match the request.
+	 * @see #AuthenticatedRequestHandler(Authenticator, String)
+	 */
+	public AuthenticatedRequestHandler(SessionAuthenticator authenticator, String root) {
+		this((Authenticator) authenticator, root);
+	}
+
 	/**
 	 * Gets the root of this handler.
 	 *
@@ -114,7 +129,7 @@ public class AuthenticatedRequestHandler extends RequestHandlerComposite {
 	 */
 	protected HTTPResponse onSuccessfulAuthentication(HTTPRequest request, Map<String, String> attributes,
 			String username, String sessionID) {
-		attributes.put("username", username); //$NON-NLS-1$
+		attributes.put(RequestAttributes.USERNAME, username);
 
 		HTTPResponse response = super.process(request, attributes);
 
@@ -138,4 +153,4 @@ public class AuthenticatedRequestHandler extends RequestHandlerComposite {
 		return HTTPResponse.createError(HTTPConstants.HTTP_STATUS_UNAUTHORIZED, ""); //$NON-NLS-1$
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -8,6 +8,7 @@
 package ej.hoka.auth.session;
 
 import ej.hoka.auth.SessionAuthenticator;
+import ej.hoka.http.Cookie;
 
 /**
  * Configuration for the cookie-based session authentication.
@@ -25,6 +26,11 @@ public class CookieBasedSessionConfiguration {
 	 */
 	public static final String COOKIE_NAME = "token"; //$NON-NLS-1$
 
+	/**
+	 * The cookie used to store session ID, not accessible to the scripts of the pages.
+	 */
+	public static final Cookie COOKIE = new Cookie(COOKIE_NAME).withHttpOnly();
+
 	private CookieBasedSessionConfiguration() {
 		// Forbid instantiation
 	}
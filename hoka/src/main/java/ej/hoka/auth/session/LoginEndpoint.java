@@ -1,28 +1,52 @@
 /*
  * Java
  *
- * Copyright 2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2019-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
 package ej.hoka.auth.session;
 
+import java.net.InetAddress;
 import java.util.Map;
 
+import ej.hoka.auth.LoginThrottle;
 import ej.hoka.auth.SessionAuthenticator;
+import ej.hoka.auth.TokenAuthenticator;
+import ej.hoka.http.HTTPConstants;
 import ej.hoka.http.HTTPRequest;
 import ej.hoka.http.HTTPResponse;
+import ej.hoka.http.requesthandler.RequestAttributes;
 import ej.hoka.rest.RestEndpoint;
 
 /**
  * RestEndpoint that logs in users using cookie-based sessions.
+ * <p>
+ * When a {@link LoginThrottle} is given, the login attempts are throttled per client address and per user name before
+ * the credentials are checked, and the failed attempts delay the next ones.
  *
  * @see LogoutEndpoint
  * @see AuthenticatedRequestHandler
  */
 public abstract class LoginEndpoint extends RestEndpoint {
 
-	private final SessionAuthenticator authenticator;
+	private static final String ADDRESS_KEY_PREFIX = "address:"; //$NON-NLS-1$
+	private static final String USER_KEY_PREFIX = "user:"; //$NON-NLS-1$
+
+	private final TokenAuthenticator authenticator;
+	private final LoginThrottle throttle;
+
+	/**
+	 * Constructs the endpoint at given URI.
+	 *
+	 * @param uri
+	 *            the URI of the {@link RestEndpoint}.
+	 * @param authenticator
+	 *            the {@link TokenAuthenticator} used to login users.
+	 */
+	public LoginEndpoint(String uri, TokenAuthenticator authenticator) {
+		this(uri, authenticator, null);
+	}
 
 	/**
 	 * Constructs the endpoint at given URI.
@@ -31,10 +55,26 @@ public abstract class LoginEndpoint extends RestEndpoint {
 	 *            the URI of the {@link RestEndpoint}.
 	 * @param authenticator
 	 *            the {@link SessionAuthenticator} used to login users.
+	 * @see #LoginEndpoint(String, TokenAuthenticator)
 	 */
 	public LoginEndpoint(String uri, SessionAuthenticator authenticator) {
+		this(uri, (TokenAuthenticator) authenticator);
+	}
+
+	/**
+	 * Constructs the endpoint at given URI, throttling the login attempts.
+	 *
+	 * @param uri
+	 *            the URI of the {@link RestEndpoint}.
+	 * @param authenticator
+	 *            the {@link TokenAuthenticator} used to login users.
+	 * @param throttle
+	 *            the {@link LoginThrottle} limiting the login attempts, or <code>null</code> to disable throttling.
+	 */
+	public LoginEndpoint(String uri, TokenAuthenticator authenticator, LoginThrottle throttle) {
 		super(uri);
 		this.authenticator = authenticator;
+		this.throttle = throttle;
 	}
 
 	@Override
@@ -58,6 +98,23 @@ public abstract class LoginEndpoint extends RestEndpoint {
 	 */
 	protected abstract String login(HTTPRequest request, Map<String, String> attributes);
 
+	/**
+	 * Gets the user name submitted in the request, without checking the credentials.
+	 * <p>
+	 * The user name is used to throttle the login attempts per user, in addition to the client address. By default, it
+	 * returns <code>null</code> and the attempts are only throttled per client address. If the request body has to be
+	 * parsed, the credentials can be kept in the attributes for {@link #login(HTTPRequest, Map)}.
+	 *
+	 * @param request
+	 *            the {@link HTTPRequest}.
+	 * @param attributes
+	 *            the attributes populated by the request processing.
+	 * @return the submitted user name, or <code>null</code> if unknown.
+	 */
+	protected String getLoginName(HTTPRequest request, Map<String, String> attributes) {
+		return null;
+	}
+
 	/**
 	 * Constructs the response upon successful login.
 	 *
@@ -80,6 +137,24 @@ public abstract class LoginEndpoint extends RestEndpoint {
 	 */
 	protected abstract HTTPResponse failedLoginResponse(HTTPRequest request, Map<String, String> attributes);
 
+	/**
+	 * Constructs the response upon throttled login, when the client has to wait before trying again.
+	 *
+	 * @param request
+	 *            the {@link HTTPRequest}.
+	 * @param attributes
+	 *            the attributes populated by the request processing.
+	 * @param retryAfter
+	 *            the time to wait before the next attempt, in seconds.
+	 * @return the response to send.
+	 */
+	protected HTTPResponse throttledLoginResponse(HTTPRequest request, Map<String, String> attributes,
+			long retryAfter) {
+		HTTPResponse response = HTTPResponse.createError(HTTPConstants.HTTP_STATUS_TOO_MANY_REQUESTS, ""); //$NON-NLS-1$
+		response.addHeaderField("Retry-After", Long.toString(retryAfter)); //$NON-NLS-1$
+		return response;
+	}
+
 	/**
 	 * Handles the login and send the appropriate response.
 	 *
@@ -95,26 +170,58 @@ public abstract class LoginEndpoint extends RestEndpoint {
 	 */
 	protected HTTPResponse onSuccessfulLogin(HTTPRequest request, Map<String, String> attributes, String username,
 			String sessionID) {
-		attributes.put("username", username); //$NON-NLS-1$
+		attributes.put(RequestAttributes.USERNAME, username);
 
 		HTTPResponse response = successfulLoginResponse(request, attributes);
 
-		response.addHeaderField("Set-Cookie", //$NON-NLS-1$
-				CookieBasedSessionConfiguration.COOKIE_NAME + "=" + sessionID + "; HTTPOnly"); //$NON-NLS-1$ //$NON-NLS-2$
+		response.setCookie(CookieBasedSessionConfiguration.COOKIE, sessionID);
 
 		return response;
 	}
 
 	private HTTPResponse process(HTTPRequest request, Map<String, String> attributes) {
+		LoginThrottle throttle = this.throttle;
+		String addressKey = null;
+		String userKey = null;
+		if (throttle != null) {
+			InetAddress address = request.getRemoteAddress();
+			if (address != null) {
+				addressKey = ADDRESS_KEY_PREFIX + address.getHostAddress();
+			}
+			String loginName = getLoginName(request, attributes);
+			if (loginName != null) {
+				userKey = USER_KEY_PREFIX + loginName;
+			}
+
+			// throttle before the credentials are checked, this check being expensive
+			long retryAfter = throttle.tryAcquire(addressKey, userKey);
+			if (retryAfter > 0) {
+				return throttledLoginResponse(request, attributes, retryAfter);
+			}
+		}
+
 		String username = login(request, attributes);
 
 		if (username == null) {
+			if (throttle != null) {
+				if (addressKey != null) {
+					throttle.onFailure(addressKey);
+				}
+				if (userKey != null) {
+					throttle.onFailure(userKey);
+				}
+			}
 			return failedLoginResponse(request, attributes);
 		}
 
+		if (throttle != null && userKey != null) {
+			// the failures of the address are not forgotten, an attacker could log in to its own account
+			throttle.onSuccess(userKey);
+		}
+
 		String sessionID = this.authenticator.login(username);
 
 		return onSuccessfulLogin(request, attributes, username, sessionID);
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2019-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -10,6 +10,7 @@ package ej.hoka.auth.session;
 import java.util.Map;
 
 import ej.hoka.auth.SessionAuthenticator;
+import ej.hoka.auth.TokenAuthenticator;
 import ej.hoka.http.HTTPRequest;
 import ej.hoka.http.HTTPResponse;
 import ej.hoka.rest.RestEndpoint;
@@ -22,19 +23,32 @@ import ej.hoka.rest.RestEndpoint;
  */
 public abstract class LogoutEndpoint extends RestEndpoint {
 
-	private final SessionAuthenticator sessionAuthenticator;
+	private final TokenAuthenticator authenticator;
 
 	/**
 	 * Constructs the endpoint at given URI.
 	 *
 	 * @param uri
 	 *            the URI of the {@link RestEndpoint}.
-	 * @param sessionAuthenticator
-	 *            the {@link SessionAuthenticator} used to logout users.
+	 * @param authenticator
+	 *            the {@link TokenAuthenticator} used to logout users.
 	 */
-	public LogoutEndpoint(String uri, SessionAuthenticator sessionAuthenticator) {
+	public LogoutEndpoint(String uri, TokenAuthenticator authenticator) {
 		super(uri);
-		this.sessionAuthenticator = sessionAuthenticator;
+		this.authenticator = authenticator;
+	}
+
+	/**
+	 * Constructs the endpoint at given URI.
+	 *
+	 * @param uri
+	 *            the URI of the {@link RestEndpoint}.
+	 * @param authenticator
+	 *            the {@link SessionAuthenticator} used to logout users.
+	 * @see #LogoutEndpoint(String, TokenAuthenticator)
+	 */
+	public LogoutEndpoint(String uri, SessionAuthenticator authenticator) {
+		this(uri, (TokenAuthenticator) authenticator);
 	}
 
 	@Override
@@ -45,7 +59,7 @@ public abstract class LogoutEndpoint extends RestEndpoint {
 			return failedLogoutResponse(request, attributes);
 		}
 
-		if (!this.sessionAuthenticator.logout(sessionID)) {
+		if (!this.authenticator.logout(sessionID)) {
 			return setLoggedOut(failedLogoutResponse(request, attributes));
 		}
 
@@ -95,8 +109,7 @@ public abstract class LogoutEndpoint extends RestEndpoint {
 	 * @return the response with the expired "Set-Cookie".
 	 */
 	protected HTTPResponse setLoggedOut(HTTPResponse response) {
-		response.addHeaderField("Set-Cookie", //$NON-NLS-1$
-				CookieBasedSessionConfiguration.COOKIE_NAME + "=; expires=Thu, 01 Jan 1970 00:00:00 GMT"); //$NON-NLS-1$
+		response.deleteCookie(CookieBasedSessionConfiguration.COOKIE);
 
 		return response;
 	}
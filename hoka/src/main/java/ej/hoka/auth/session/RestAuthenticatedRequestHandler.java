@@ -1,12 +1,13 @@
 /*
  * Java
  *
- * Copyright 2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2019-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
 package ej.hoka.auth.session;
 
+import ej.hoka.auth.Authenticator;
 import ej.hoka.auth.SessionAuthenticator;
 import ej.hoka.rest.RestEndpoint;
 import ej.hoka.rest.RestRequestHandler;
@@ -28,17 +29,30 @@ public class RestAuthenticatedRequestHandler extends AuthenticatedRequestHandler
 	 * Constructs the REST request handler.
 	 *
 	 * @param authenticator
-	 *            the {@link SessionAuthenticator} used to authenticate users.
+	 *            the {@link Authenticator} used to authenticate users.
 	 * @param root
 	 *            the URI root used to match the request.
 	 */
-	public RestAuthenticatedRequestHandler(SessionAuthenticator authenticator, String root) {
+	public RestAuthenticatedRequestHandler(Authenticator authenticator, String root) {
 		super(authenticator, root);
 
 		this.endpointHandler = new RestRequestHandler();
 		addRequestHandler(this.endpointHandler);
 	}
 
+	/**
+	 * Constructs the REST request handler.
+	 *
+	 * @param authenticator
+	 *            the {@link SessionAuthenticator} used to authenticate users.
+	 * @param root
+	 *            the URI root used to match the request.
+	 * @see #RestAuthenticatedRequestHandler(Authenticator, String)
+	 */
+	public RestAuthenticatedRequestHandler(SessionAuthenticator authenticator, String root) {
+		this((Authenticator) authenticator, root);
+	}
+
 	/**
 	 * Add an endpoint to this handler. The URI of the endpoint must be prefixed by <code>root</code>.
 	 *
@@ -46,7 +60,7 @@ public class RestAuthenticatedRequestHandler extends AuthenticatedRequestHandler
 	 *            the {@link RestEndpoint} to add.
 	 * @throws IllegalArgumentException
 	 *             if the endpoint URI isn't prefixed by <code>root</code>.
-	 * @see RestAuthenticatedRequestHandler#RestAuthenticatedRequestHandler(SessionAuthenticator, String)
+	 * @see RestAuthenticatedRequestHandler#RestAuthenticatedRequestHandler(Authenticator, String)
 	 */
 	public void addEndpoint(RestEndpoint endpoint) {
 		if (!endpoint.getURI().startsWith(getRoot())) {
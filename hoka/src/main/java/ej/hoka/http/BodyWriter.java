@@ -0,0 +1,31 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A writer generating the body of an {@link HTTPResponse} while it is sent.
+ * <p>
+ * The body is sent with the chunked transfer coding, each write to the stream producing a chunk: the writer should
+ * write large blocks, for example through a buffered encoder such as {@link ej.hoka.json.JsonWriter}.
+ */
+public interface BodyWriter {
+
+	/**
+	 * Writes the body.
+	 *
+	 * @param output
+	 *            the stream to write the body to, it is closed after this call.
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	void write(OutputStream output) throws IOException;
+
+}
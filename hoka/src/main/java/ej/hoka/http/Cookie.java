@@ -0,0 +1,214 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http;
+
+/**
+ * The name and the attributes of a cookie set by the responses (RFC 6265).
+ * <p>
+ * A {@link Cookie} is immutable and typically created once, as a constant: its attributes are formatted when it is
+ * created, so that setting the cookie in a response only writes its value with {@link HTTPResponse#setCookie(Cookie,
+ * String)}.
+ * <p>
+ * For example:
+ *
+ * <pre>
+ * private static final Cookie SESSION = new Cookie("session").withPath("/").withHttpOnly().withSecure();
+ * </pre>
+ */
+public final class Cookie {
+
+	private static final String PATH = "; Path="; //$NON-NLS-1$
+	private static final String DOMAIN = "; Domain="; //$NON-NLS-1$
+	private static final String MAX_AGE = "; Max-Age="; //$NON-NLS-1$
+	private static final String SAME_SITE = "; SameSite="; //$NON-NLS-1$
+	private static final String SECURE = "; Secure"; //$NON-NLS-1$
+	private static final String HTTP_ONLY = "; HttpOnly"; //$NON-NLS-1$
+	private static final String EXPIRED = "; Expires=Thu, 01 Jan 1970 00:00:00 GMT"; //$NON-NLS-1$
+
+	private final String name;
+	private final String path;
+	private final String domain;
+	private final long maxAge;
+	private final String sameSite;
+	private final boolean secure;
+	private final boolean httpOnly;
+
+	/**
+	 * The formatted attributes, starting with a separator.
+	 */
+	private final String attributes;
+	/**
+	 * The formatted attributes deleting the cookie, starting with a separator.
+	 */
+	private final String deletionAttributes;
+
+	/**
+	 * Creates a session cookie without attributes.
+	 *
+	 * @param name
+	 *            the name of the cookie.
+	 * @throws IllegalArgumentException
+	 *             if the name is empty or contains a separator.
+	 */
+	public Cookie(String name) {
+		this(name, null, null, -1, null, false, false);
+		if (name.length() == 0) {
+			throw new IllegalArgumentException(name);
+		}
+		for (int i = name.length() - 1; i >= 0; i--) {
+			char c = name.charAt(i);
+			if (c <= ' ' || c == '=' || c == ';' || c == ',' || c >= 0x7F) {
+				throw new IllegalArgumentException(name);
+			}
+		}
+	}
+
+	private Cookie(String name, String path, String domain, long maxAge, String sameSite, boolean secure,
+			boolean httpOnly) {
+		this.name = name;
+		this.path = path;
+		this.domain = domain;
+		this.maxAge = maxAge;
+		this.sameSite = sameSite;
+		this.secure = secure;
+		this.httpOnly = httpOnly;
+
+		StringBuilder common = new StringBuilder();
+		if (path != null) {
+			common.append(PATH).append(path);
+		}
+		if (domain != null) {
+			common.append(DOMAIN).append(domain);
+		}
+		if (sameSite != null) {
+			common.append(SAME_SITE).append(sameSite);
+		}
+		if (secure) {
+			common.append(SECURE);
+		}
+		if (httpOnly) {
+			common.append(HTTP_ONLY);
+		}
+		String commonAttributes = common.toString();
+		this.attributes = maxAge >= 0 ? MAX_AGE + maxAge + commonAttributes : commonAttributes;
+		this.deletionAttributes = EXPIRED + commonAttributes;
+	}
+
+	/**
+	 * Gets the name of this cookie.
+	 *
+	 * @return the name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Creates a copy of this cookie with the given path.
+	 *
+	 * @param path
+	 *            the path of the URIs the cookie is sent to.
+	 * @return the new cookie.
+	 * @throws IllegalArgumentException
+	 *             if the value contains a separator or a character that cannot be sent in a header field.
+	 */
+	public Cookie withPath(String path) {
+		checkAttributeValue(path);
+		return new Cookie(this.name, path, this.domain, this.maxAge, this.sameSite, this.secure, this.httpOnly);
+	}
+
+	/**
+	 * Creates a copy of this cookie with the given domain.
+	 *
+	 * @param domain
+	 *            the domain of the hosts the cookie is sent to.
+	 * @return the new cookie.
+	 * @throws IllegalArgumentException
+	 *             if the value contains a separator or a character that cannot be sent in a header field.
+	 */
+	public Cookie withDomain(String domain) {
+		checkAttributeValue(domain);
+		return new Cookie(this.name, this.path, domain, this.maxAge, this.sameSite, this.secure, this.httpOnly);
+	}
+
+	/**
+	 * Creates a copy of this cookie with the given lifetime.
+	 *
+	 * @param maxAge
+	 *            the number of seconds until the cookie expires.
+	 * @return the new cookie.
+	 */
+	public Cookie withMaxAge(long maxAge) {
+		if (maxAge < 0) {
+			throw new IllegalArgumentException();
+		}
+		return new Cookie(this.name, this.path, this.domain, maxAge, this.sameSite, this.secure, this.httpOnly);
+	}
+
+	/**
+	 * Creates a copy of this cookie with the given SameSite attribute.
+	 *
+	 * @param sameSite
+	 *            <code>Strict</code>, <code>Lax</code> or <code>None</code>.
+	 * @return the new cookie.
+	 * @throws IllegalArgumentException
+	 *             if the value contains a separator or a character that cannot be sent in a header field.
+	 */
+	public Cookie withSameSite(String sameSite) {
+		checkAttributeValue(sameSite);
+		return new Cookie(this.name, this.path, this.domain, this.maxAge, sameSite, this.secure, this.httpOnly);
+	}
+
+	/**
+	 * Creates a copy of this cookie only sent over secure connections.
+	 *
+	 * @return the new cookie.
+	 */
+	public Cookie withSecure() {
+		return new Cookie(this.name, this.path, this.domain, this.maxAge, this.sameSite, true, this.httpOnly);
+	}
+
+	/**
+	 * Creates a copy of this cookie not accessible to the scripts of the pages.
+	 *
+	 * @return the new cookie.
+	 */
+	public Cookie withHttpOnly() {
+		return new Cookie(this.name, this.path, this.domain, this.maxAge, this.sameSite, this.secure, true);
+	}
+
+	/**
+	 * Gets the formatted attributes of this cookie.
+	 *
+	 * @return the attributes, starting with a separator, or an empty string.
+	 */
+	/* default */ String getAttributes() {
+		return this.attributes;
+	}
+
+	/**
+	 * Gets the formatted attributes deleting this cookie: an expiration date in the past and the attributes identifying
+	 * the cookie.
+	 *
+	 * @return the attributes, starting with a separator.
+	 */
+	/* default */ String getDeletionAttributes() {
+		return this.deletionAttributes;
+	}
+
+	private static void checkAttributeValue(String value) {
+		for (int i = value.length() - 1; i >= 0; i--) {
+			char c = value.charAt(i);
+			// control characters and characters not encoded in one byte cannot be sent in the header
+			if (c < ' ' || c == ';' || c >= 0x7F) {
+				throw new IllegalArgumentException(value);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,1421 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Base64;
+
+import ej.bon.Util;
+import ej.hoka.http.encoding.HTTPEncodingRegistry;
+import ej.hoka.http.encoding.IHTTPEncodingHandler;
+import ej.hoka.http.encoding.UnsupportedHTTPEncodingException;
+import ej.hoka.http2.HPACKDecoder;
+import ej.hoka.http2.HPACKEncoder;
+import ej.hoka.http2.HTTP2Constants;
+import ej.hoka.http2.HTTP2Exception;
+import ej.hoka.http2.HeaderFieldListener;
+import ej.hoka.io.DeadlineInputStream;
+import ej.hoka.io.PipelineOutputStream;
+import ej.hoka.log.Messages;
+import ej.util.message.Level;
+
+/**
+ * An HTTP/2 connection (RFC 7540), processing its streams with the request handlers of the {@link HTTPServer}.
+ * <p>
+ * The streams are processed one at a time by the job of the connection. The frames are read when the job waits for the
+ * next stream, for the body of the current stream or for the flow-control window to send its response: the header
+ * blocks of the other streams are decoded and their bodies are buffered, within their flow-control windows, until they
+ * are processed. The next stream is chosen according to the priorities given by the client: a stream depending on a
+ * pending stream waits for it, then the heaviest stream is processed first.
+ * <p>
+ * Like the responses of the pipelined HTTP/1.1 requests, the frames are buffered and sent together when the job waits
+ * for the client.
+ * <p>
+ * The {@link RequestLimits} of the server bound the time to receive the frames: a header block, its
+ * <code>HEADERS</code> and <code>CONTINUATION</code> frames, must be received within the head timeout, and the body of
+ * the stream being processed within the body timeout and at the minimum body rate, from the start of its processing.
+ * A connection without open stream is closed with a <code>GOAWAY</code> frame after the keep-alive timeout.
+ */
+/* default */ final class HTTP2Connection implements HeaderFieldListener {
+
+	/**
+	 * The maximum number of streams opened by the client at the same time, including the streams waiting to be
+	 * processed.
+	 */
+	private static final int MAX_CONCURRENT_STREAMS = 16;
+
+	/**
+	 * The initial size of the flow-control windows of the streams, bounding the size of the bodies buffered for each
+	 * stream.
+	 */
+	private static final int INITIAL_WINDOW_SIZE = HTTP2Constants.DEFAULT_MAX_FRAME_SIZE;
+
+	/**
+	 * The maximum number of pseudo-header fields of a request.
+	 */
+	private static final int MAX_PSEUDO_HEADER_FIELDS = 4;
+
+	private static final int BYTE_MASK = 0xff;
+	private static final int STREAM_ID_MASK = 0x7fffffff;
+	private static final int SETTING_SIZE = 6;
+	private static final int PRIORITY_SIZE = 5;
+	private static final int PING_SIZE = 8;
+	private static final int INT_SIZE = 4;
+	private static final int GOAWAY_SIZE = 8;
+	private static final int INITIAL_FIELDS_CAPACITY = 16;
+	private static final long MILLISECONDS_PER_SECOND = 1000;
+
+	private static final String PSEUDO_HEADER_PREFIX = ":"; //$NON-NLS-1$
+	private static final String STREAM_RESET = "Stream reset"; //$NON-NLS-1$
+
+	/**
+	 * The response switching an HTTP/1.1 connection to HTTP/2.
+	 */
+	private static final byte[] SWITCHING_PROTOCOLS_RESPONSE = ("HTTP/1.1 " //$NON-NLS-1$
+			+ HTTPConstants.HTTP_STATUS_SWITCHING_PROTOCOLS + HTTPConstants.END_OF_LINE
+			+ HTTPConstants.FIELD_CONNECTION + ": Upgrade" + HTTPConstants.END_OF_LINE //$NON-NLS-1$
+			+ HTTPConstants.FIELD_UPGRADE + ": " + HTTP2Constants.PROTOCOL_H2C + HTTPConstants.END_OF_LINE //$NON-NLS-1$
+			+ HTTPConstants.END_OF_LINE).getBytes();
+
+	private static final HTTPResponse RESPONSE_NOT_ACCEPTABLE = HTTPResponse
+			.createResponseFromStatus(HTTPConstants.HTTP_STATUS_NOTACCEPTABLE);
+
+	private final HTTPServer server;
+	private final Socket connection;
+	private final JobContext context;
+	private final InputStream input;
+	private final DeadlineInputStream deadlineInput;
+	private final PipelineOutputStream output;
+	private final RequestLimits limits;
+
+	private final HPACKDecoder decoder;
+	private final HPACKEncoder encoder;
+
+	/**
+	 * The header and the payload of the frame being read.
+	 */
+	private final byte[] frameHeader;
+	private final byte[] payload;
+
+	/**
+	 * The header of the frames being written.
+	 */
+	private final byte[] outputFrameHeader;
+
+	/**
+	 * The body written to the current stream, not sent yet.
+	 */
+	private final byte[] dataBuffer;
+
+	/**
+	 * The streams opened by the client and not processed yet, in no particular order.
+	 */
+	private final Stream[] streams;
+	private int streamCount;
+
+	/**
+	 * The stream being processed, or <code>null</code>.
+	 */
+	private Stream currentStream;
+
+	/**
+	 * The largest identifier of the streams opened by the client.
+	 */
+	private int lastStreamId;
+
+	/**
+	 * The fragments of the header block being received, followed by <code>CONTINUATION</code> frames.
+	 */
+	private byte[] headerBlock;
+	private int headerBlockLength;
+
+	/**
+	 * The identifier of the stream whose header block is being received, or <code>0</code>.
+	 */
+	private int continuationStreamId;
+
+	/**
+	 * The stream receiving the decoded fields of the header block being received, or <code>null</code> to discard them.
+	 */
+	private Stream headerStream;
+	private boolean headerEndStream;
+
+	/**
+	 * The time after which the header block being received fails, in milliseconds, or <code>0</code>.
+	 */
+	private long headerDeadline;
+
+	/**
+	 * The time from which the connection has no open stream, in milliseconds.
+	 */
+	private long idleStartTime;
+
+	/**
+	 * The initial flow-control window of the streams, until the client acknowledges the settings of the server.
+	 */
+	private int localInitialWindowSize;
+
+	/**
+	 * The number of bytes received on the connection and not credited to its flow-control window yet.
+	 */
+	private int receivedBytes;
+
+	/**
+	 * The settings of the client.
+	 */
+	private int peerInitialWindowSize;
+	private int peerMaxFrameSize;
+
+	/**
+	 * The flow-control window of the connection for the frames sent to the client.
+	 */
+	private int sendWindow;
+
+	private boolean settingsReceived;
+	private boolean settingsAcknowledged;
+	private boolean goAwayReceived;
+
+	/**
+	 * The error that has broken the connection, thrown again by the next reads, or <code>null</code>.
+	 */
+	private IOException failure;
+
+	/**
+	 * Creates an HTTP/2 connection.
+	 *
+	 * @param server
+	 *            the server processing the requests.
+	 * @param connection
+	 *            the socket of the connection.
+	 * @param context
+	 *            the context of the job.
+	 * @param input
+	 *            the buffered input stream of the connection.
+	 * @param deadlineInput
+	 *            the stream wrapped by the buffered input stream, bounding the time of the reads.
+	 * @param output
+	 *            the buffered output stream of the connection.
+	 */
+	/* default */ HTTP2Connection(HTTPServer server, Socket connection, JobContext context, InputStream input,
+			DeadlineInputStream deadlineInput, PipelineOutputStream output) {
+		this.server = server;
+		this.connection = connection;
+		this.context = context;
+		this.input = input;
+		this.deadlineInput = deadlineInput;
+		this.output = output;
+		this.limits = server.getRequestLimits();
+		this.decoder = new HPACKDecoder(HTTP2Constants.DEFAULT_HEADER_TABLE_SIZE);
+		this.encoder = new HPACKEncoder();
+		this.frameHeader = new byte[HTTP2Constants.FRAME_HEADER_SIZE];
+		this.outputFrameHeader = new byte[HTTP2Constants.FRAME_HEADER_SIZE];
+		this.payload = new byte[HTTP2Constants.DEFAULT_MAX_FRAME_SIZE];
+		this.dataBuffer = new byte[context.buffer.length];
+		this.streams = new Stream[MAX_CONCURRENT_STREAMS];
+		this.localInitialWindowSize = HTTP2Constants.DEFAULT_WINDOW_SIZE;
+		this.peerInitialWindowSize = HTTP2Constants.DEFAULT_WINDOW_SIZE;
+		this.peerMaxFrameSize = HTTP2Constants.DEFAULT_MAX_FRAME_SIZE;
+		this.sendWindow = HTTP2Constants.DEFAULT_WINDOW_SIZE;
+		this.idleStartTime = Util.platformTimeMillis();
+	}
+
+	/**
+	 * Reads the connection preface of a client connecting with prior knowledge of HTTP/2. When the connection does not
+	 * start with the preface, the bytes are read again by the HTTP/1.x parser.
+	 *
+	 * @param input
+	 *            the buffered input stream of the connection, supporting marks.
+	 * @return {@code true} if the preface has been read, {@code false} otherwise.
+	 * @throws IOException
+	 *             if the connection is lost.
+	 */
+	/* default */ static boolean hasPreface(InputStream input) throws IOException {
+		String preface = HTTP2Constants.CONNECTION_PREFACE;
+		int length = preface.length();
+		input.mark(length);
+		for (int i = 0; i < length; i++) {
+			// the first bytes of a request line differ from the preface
+			if (input.read() != preface.charAt(i)) {
+				input.reset();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the settings of a client asking to upgrade the connection to HTTP/2 (RFC 7540 3.2).
+	 * <p>
+	 * The requests with a body are not upgraded: the body would have to be read before switching protocols.
+	 *
+	 * @param request
+	 *            the first request of the connection.
+	 * @return the settings of the client, decoded, or <code>null</code> if the connection is not upgraded.
+	 */
+	/* default */ static byte[] getUpgradeSettings(HTTPRequest request) {
+		String upgrade = request.getHeaderField(HTTPConstants.FIELD_UPGRADE);
+		String settings = request.getHeaderField(HTTP2Constants.FIELD_HTTP2_SETTINGS);
+		if (upgrade == null || settings == null || !"HTTP/1.1".equals(request.getVersion()) //$NON-NLS-1$
+				|| request.getHeaderField(HTTPConstants.FIELD_TRANSFER_ENCODING) != null) {
+			return null;
+		}
+		String contentLength = request.getHeaderField(HTTPConstants.FIELD_CONTENT_LENGTH);
+		if (contentLength != null && !contentLength.equals("0")) { //$NON-NLS-1$
+			return null;
+		}
+
+		boolean h2c = false;
+		int start = 0;
+		do {
+			int end = upgrade.indexOf(',', start);
+			if (end == -1) {
+				end = upgrade.length();
+			}
+			h2c = upgrade.substring(start, end).trim().equalsIgnoreCase(HTTP2Constants.PROTOCOL_H2C);
+			start = end + 1;
+		} while (!h2c && start < upgrade.length());
+		if (!h2c) {
+			return null;
+		}
+
+		byte[] decoded;
+		try {
+			decoded = Base64.getUrlDecoder().decode(settings.trim());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		return decoded.length % SETTING_SIZE == 0 ? decoded : null;
+	}
+
+	/**
+	 * Processes the streams of the connection until the client closes it.
+	 *
+	 * @param upgradeSettings
+	 *            the settings of the client upgrading the connection, whose request is processed as the first stream,
+	 *            or <code>null</code> if the client has sent the preface.
+	 * @throws IOException
+	 *             if the connection is lost.
+	 */
+	/* default */ void run(byte[] upgradeSettings) throws IOException {
+		// the requests are not traced
+		this.context.request.setTrace(null);
+		PipelineOutputStream output = this.output;
+		output.setFlushDeferred(true);
+		try {
+			if (upgradeSettings != null) {
+				output.write(SWITCHING_PROTOCOLS_RESPONSE);
+			}
+			writeSettings();
+			if (upgradeSettings != null) {
+				applySettings(upgradeSettings, upgradeSettings.length);
+				// the request is the first stream, half-closed
+				Stream stream = openStream(1, true);
+				stream.upgraded = true;
+				stream.headersComplete = true;
+				stream.remoteClosed = true;
+				readPreface();
+			}
+
+			while (true) {
+				// the frames already received are read first, to schedule all the streams they open
+				while (this.input.available() > 0) {
+					readFrame();
+				}
+				Stream stream = nextStream();
+				if (stream != null) {
+					processStream(stream);
+				} else if (this.goAwayReceived && this.streamCount == 0) {
+					return;
+				} else {
+					// the buffered frames are sent before waiting for the client
+					readFrame();
+				}
+			}
+		} catch (HTTP2Exception e) {
+			Messages.LOGGER.log(Level.INFO, Messages.CATEGORY_HOKA, Messages.HTTP2_ERROR,
+					Integer.valueOf(this.connection.hashCode()), this.connection.getInetAddress().toString(),
+					Integer.valueOf(e.getErrorCode()));
+			writeGoAway(e.getErrorCode());
+		} catch (SocketTimeoutException e) {
+			// idle connection, or header block or body received too slowly
+			writeGoAway(HTTP2Constants.ERROR_NO_ERROR);
+		} finally {
+			output.setFlushDeferred(false);
+		}
+	}
+
+	private void readPreface() throws IOException {
+		byte[] payload = this.payload;
+		String preface = HTTP2Constants.CONNECTION_PREFACE;
+		int length = preface.length();
+		// the preface is expected right after the interim response
+		int headTimeout = this.limits.getHeadTimeout();
+		this.deadlineInput.setDeadline(headTimeout == 0 ? 0 : Util.platformTimeMillis() + headTimeout);
+		readFully(payload, length);
+		for (int i = 0; i < length; i++) {
+			if (payload[i] != preface.charAt(i)) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+			}
+		}
+	}
+
+	/**
+	 * Chooses the next stream to process, among the streams whose header block has been received.
+	 * <p>
+	 * The streams depending on a pending stream wait for it. The others are processed by decreasing weight, then in
+	 * the order they have been opened.
+	 *
+	 * @return the stream, or <code>null</code> if no stream is ready.
+	 */
+	private Stream nextStream() {
+		Stream[] streams = this.streams;
+		Stream next = null;
+		Stream first = null;
+		for (int i = 0, n = this.streamCount; i < n; i++) {
+			Stream stream = streams[i];
+			if (!stream.headersComplete) {
+				continue;
+			}
+			if (first == null || stream.id < first.id) {
+				first = stream;
+			}
+			if (stream.dependency != 0 && getStream(stream.dependency) != null) {
+				continue;
+			}
+			if (next == null || stream.weight > next.weight || (stream.weight == next.weight && stream.id < next.id)) {
+				next = stream;
+			}
+		}
+		// the streams depending on each other in a cycle, or on an incomplete stream, are processed in order
+		return next != null ? next : first;
+	}
+
+	private void processStream(Stream stream) throws IOException {
+		this.currentStream = stream;
+		HTTPServer server = this.server;
+		HTTPRequest request = this.context.request;
+		HTTPEncodingRegistry encodingRegistry = server.getEncodingRegistry();
+		HTTPResponse response;
+		IHTTPEncodingHandler encodingHandler = null;
+		String responseMessage;
+		long startTime = -1;
+		try {
+			String error = stream.error;
+			if (error != null) {
+				throw new RequestLimitException(error);
+			}
+			// the deadlines of the body start with its processing, the client is blocked by flow control until then
+			stream.bodyStartTime = Util.platformTimeMillis();
+			stream.bodyBytes = 0;
+			if (!stream.upgraded) {
+				request.parseHTTP2(stream.fields, stream.fieldCount, new StreamInputStream(stream), encodingRegistry);
+			}
+			startTime = server.onRequest(request);
+
+			response = server.process(request, this.context);
+
+			encodingHandler = encodingRegistry
+					.getEncodingHandler(request.getHeaderField(HTTPConstants.FIELD_ACCEPT_ENCODING));
+			if (encodingHandler == null && CalibrationConstants.STRICT_ACCEPT_ENCODING_COMPLIANCE) {
+				// RFC2616 14.3
+				response = RESPONSE_NOT_ACCEPTABLE;
+			}
+			responseMessage = request.getURI();
+		} catch (RequestLimitException e) {
+			responseMessage = e.getMessage();
+			response = HTTPResponse.createError(e.getStatus(), responseMessage);
+		} catch (IllegalArgumentException e) {
+			responseMessage = e.getMessage();
+			response = HTTPResponse.createError(HTTPConstants.HTTP_STATUS_BADREQUEST, responseMessage);
+		} catch (UnsupportedHTTPEncodingException e) {
+			responseMessage = e.getMessage();
+			response = HTTPResponse.createError(HTTPConstants.HTTP_STATUS_NOTIMPLEMENTED, responseMessage);
+		} catch (IOException e) {
+			if (this.failure != null || !stream.reset) {
+				throw e;
+			}
+			// the stream has been canceled while its body was read
+			closeStream(stream);
+			return;
+		} catch (final Throwable e) {
+			responseMessage = e.getMessage();
+			response = server.createInternalError(e);
+		}
+
+		if (this.failure != null) {
+			throw this.failure;
+		}
+		if (stream.reset) {
+			// canceled by the client
+			response.closeBody();
+		} else {
+			String status = response.getStatus();
+			server.logResponse(this.connection, status, responseMessage);
+			sendResponse(stream, response, encodingHandler);
+			server.recordResponse(request, status, startTime);
+		}
+		if (!stream.remoteClosed && !stream.reset) {
+			// the rest of the request is not needed (RFC 7540 8.1)
+			writeRstStream(stream.id, HTTP2Constants.ERROR_NO_ERROR);
+		}
+		closeStream(stream);
+	}
+
+	private void sendResponse(Stream stream, HTTPResponse response, IHTTPEncodingHandler encodingHandler)
+			throws IOException {
+		HPACKEncoder encoder = this.encoder;
+		encoder.reset();
+		response.encodeHTTP2Header(encoder, encodingHandler != null ? encodingHandler.getId() : null);
+		boolean hasBody = response.hasBody();
+		writeHeaders(stream.id, encoder.getBuffer(), encoder.getLength(), !hasBody);
+		if (hasBody) {
+			try {
+				response.writeHTTP2Body(new StreamOutputStream(stream), encodingHandler, this.context.buffer);
+			} catch (Throwable t) {
+				if (this.failure != null) {
+					throw this.failure;
+				}
+				if (!stream.reset) {
+					// the client must not take a truncated body for a complete one
+					Messages.LOGGER.log(Level.SEVERE, Messages.CATEGORY_HOKA, Messages.ERROR_UNKNOWN, t);
+					writeRstStream(stream.id, HTTP2Constants.ERROR_INTERNAL);
+					stream.reset = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads and handles the next frame.
+	 *
+	 * @throws HTTP2Exception
+	 *             if the client has broken the protocol.
+	 * @throws IOException
+	 *             if the connection is lost.
+	 */
+	private void readFrame() throws IOException {
+		readFrame(null);
+	}
+
+	/**
+	 * Reads and handles the next frame, within the deadlines of the connection.
+	 *
+	 * @param bodyStream
+	 *            the stream whose body is awaited, or <code>null</code>.
+	 * @throws HTTP2Exception
+	 *             if the client has broken the protocol.
+	 * @throws IOException
+	 *             if the connection is lost or a deadline has passed.
+	 */
+	private void readFrame(Stream bodyStream) throws IOException {
+		IOException failure = this.failure;
+		if (failure != null) {
+			// a request handler has ignored the error
+			throw failure;
+		}
+		try {
+			startDeadline(bodyStream);
+			byte[] frameHeader = this.frameHeader;
+			readFully(frameHeader, HTTP2Constants.FRAME_HEADER_SIZE);
+			int length = ((frameHeader[0] & BYTE_MASK) << 16) | ((frameHeader[1] & BYTE_MASK) << 8)
+					| (frameHeader[2] & BYTE_MASK);
+			int type = frameHeader[3] & BYTE_MASK;
+			int flags = frameHeader[4] & BYTE_MASK;
+			int streamId = readInt(frameHeader, 5) & STREAM_ID_MASK;
+			if (length > this.payload.length) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_FRAME_SIZE);
+			}
+			if (type == HTTP2Constants.TYPE_HEADERS && this.continuationStreamId == 0) {
+				// the header block must be received within the head timeout, whatever the number of frames
+				int headTimeout = this.limits.getHeadTimeout();
+				if (headTimeout != 0) {
+					this.headerDeadline = Util.platformTimeMillis() + headTimeout;
+					this.deadlineInput.setDeadline(getDeadline(bodyStream));
+				}
+			}
+			readFully(this.payload, length);
+
+			if (!this.settingsReceived && type != HTTP2Constants.TYPE_SETTINGS) {
+				// the preface of the client ends with its settings
+				throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+			}
+			if (this.continuationStreamId != 0
+					&& (type != HTTP2Constants.TYPE_CONTINUATION || streamId != this.continuationStreamId)) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+			}
+
+			switch (type) {
+			case HTTP2Constants.TYPE_DATA:
+				onData(streamId, flags, length);
+				break;
+			case HTTP2Constants.TYPE_HEADERS:
+				onHeaders(streamId, flags, length);
+				break;
+			case HTTP2Constants.TYPE_PRIORITY:
+				onPriority(streamId, length);
+				break;
+			case HTTP2Constants.TYPE_RST_STREAM:
+				onRstStream(streamId, length);
+				break;
+			case HTTP2Constants.TYPE_SETTINGS:
+				onSettings(streamId, flags, length);
+				break;
+			case HTTP2Constants.TYPE_PING:
+				onPing(streamId, flags, length);
+				break;
+			case HTTP2Constants.TYPE_GOAWAY:
+				if (streamId != 0) {
+					throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+				}
+				if (length < GOAWAY_SIZE) {
+					throw new HTTP2Exception(HTTP2Constants.ERROR_FRAME_SIZE);
+				}
+				// the streams already opened are still processed
+				this.goAwayReceived = true;
+				break;
+			case HTTP2Constants.TYPE_WINDOW_UPDATE:
+				onWindowUpdate(streamId, length);
+				break;
+			case HTTP2Constants.TYPE_CONTINUATION:
+				onContinuation(streamId, flags, length);
+				break;
+			case HTTP2Constants.TYPE_PUSH_PROMISE:
+				// only sent by servers
+				throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+			default:
+				// unknown frames are ignored (RFC 7540 4.1)
+				break;
+			}
+		} catch (IOException e) {
+			this.failure = e;
+			throw e;
+		}
+	}
+
+	/**
+	 * Sets the deadline of the next reads from the connection: the deadline of the header block being received, and of
+	 * the awaited body if any. When no stream is open, the first bytes of the next frame are expected within the
+	 * keep-alive timeout, then the rest of the frame within the head timeout.
+	 */
+	private void startDeadline(Stream bodyStream) {
+		long deadline = getDeadline(bodyStream);
+		if (deadline == 0 && this.streamCount == 0 && this.continuationStreamId == 0) {
+			RequestLimits limits = this.limits;
+			int keepAliveTimeout = limits.getKeepAliveTimeout();
+			int idleTimeout = 0;
+			if (keepAliveTimeout != 0) {
+				// the frames received without opening a stream, such as pings, do not extend the idle time
+				long remaining = this.idleStartTime + keepAliveTimeout - Util.platformTimeMillis();
+				idleTimeout = (int) Math.max(remaining, 1);
+			}
+			this.deadlineInput.expectRequest(idleTimeout, limits.getHeadTimeout());
+		} else {
+			this.deadlineInput.setDeadline(deadline);
+		}
+	}
+
+	/**
+	 * Gets the earliest of the deadline of the header block being received and the deadlines of the body of a stream.
+	 *
+	 * @return the deadline in milliseconds, or <code>0</code> for no deadline.
+	 */
+	private long getDeadline(Stream bodyStream) {
+		long deadline = this.headerDeadline;
+		if (bodyStream != null) {
+			RequestLimits limits = this.limits;
+			long start = bodyStream.bodyStartTime;
+			int bodyTimeout = limits.getBodyTimeout();
+			long bodyDeadline = bodyTimeout == 0 ? 0 : start + bodyTimeout;
+			int minimumBodyRate = limits.getMinimumBodyRate();
+			if (minimumBodyRate != 0) {
+				long rateDeadline = start + limits.getBodyRateGracePeriod()
+						+ bodyStream.bodyBytes * MILLISECONDS_PER_SECOND / minimumBodyRate;
+				if (bodyDeadline == 0 || rateDeadline < bodyDeadline) {
+					bodyDeadline = rateDeadline;
+				}
+			}
+			if (deadline == 0 || (bodyDeadline != 0 && bodyDeadline < deadline)) {
+				deadline = bodyDeadline;
+			}
+		}
+		return deadline;
+	}
+
+	private void onData(int streamId, int flags, int length) throws IOException {
+		if (streamId == 0) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+		}
+		// the whole frame counts in the flow-control windows
+		int offset = (flags & HTTP2Constants.FLAG_PADDED) != 0 ? 1 : 0;
+		int dataLength = length - offset - getPadding(flags, length);
+
+		// the connection window is credited on reception: the bodies are bounded by the windows of the streams
+		int receivedBytes = this.receivedBytes + length;
+		if (receivedBytes > HTTP2Constants.DEFAULT_WINDOW_SIZE) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_FLOW_CONTROL);
+		}
+		if (receivedBytes >= HTTP2Constants.DEFAULT_WINDOW_SIZE / 2) {
+			writeWindowUpdate(0, receivedBytes);
+			receivedBytes = 0;
+		}
+		this.receivedBytes = receivedBytes;
+
+		Stream stream = getStream(streamId);
+		if (stream == null) {
+			if (streamId > this.lastStreamId) {
+				// idle stream
+				throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+			}
+			// closed or refused stream, the client may not know it yet
+			return;
+		}
+		if (stream.remoteClosed) {
+			resetStream(stream, HTTP2Constants.ERROR_STREAM_CLOSED);
+			return;
+		}
+		stream.receiveWindow -= length;
+		if (stream.receiveWindow < 0
+				// until the client acknowledges the settings, its streams have the default window: the body buffered
+				// for each stream is still bounded by the window of the server
+				|| (!this.settingsAcknowledged && stream.dataEnd - stream.dataStart + dataLength > INITIAL_WINDOW_SIZE)) {
+			resetStream(stream, HTTP2Constants.ERROR_FLOW_CONTROL);
+			return;
+		}
+		stream.append(this.payload, offset, dataLength);
+		stream.bodyBytes += dataLength;
+		if ((flags & HTTP2Constants.FLAG_END_STREAM) != 0) {
+			stream.remoteClosed = true;
+		} else if (dataLength != length) {
+			// the padding is never read by the request handler
+			creditStream(stream, length - dataLength);
+		}
+	}
+
+	private void onHeaders(int streamId, int flags, int length) throws IOException {
+		if (streamId == 0) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+		}
+		byte[] payload = this.payload;
+		int offset = (flags & HTTP2Constants.FLAG_PADDED) != 0 ? 1 : 0;
+		int end = length - getPadding(flags, length);
+		int dependency = 0;
+		int weight = HTTP2Constants.DEFAULT_WEIGHT;
+		if ((flags & HTTP2Constants.FLAG_PRIORITY) != 0) {
+			if (end - offset < PRIORITY_SIZE) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+			}
+			// the exclusive flag is ignored
+			dependency = readInt(payload, offset) & STREAM_ID_MASK;
+			weight = (payload[offset + INT_SIZE] & BYTE_MASK) + 1;
+			offset += PRIORITY_SIZE;
+		}
+
+		Stream stream = getStream(streamId);
+		if (stream != null) {
+			// trailer fields, not given to the request handlers
+			if (stream.remoteClosed) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_STREAM_CLOSED);
+			}
+			if ((flags & HTTP2Constants.FLAG_END_STREAM) == 0) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+			}
+			this.headerStream = null;
+		} else if (streamId <= this.lastStreamId) {
+			if (streamId % 2 == 0) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+			}
+			// closed stream, the header block updates the compression state anyway
+			this.headerStream = null;
+		} else {
+			if (streamId % 2 == 0) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+			}
+			this.lastStreamId = streamId;
+			if (this.streamCount == MAX_CONCURRENT_STREAMS) {
+				writeRstStream(streamId, HTTP2Constants.ERROR_REFUSED_STREAM);
+				this.headerStream = null;
+			} else {
+				stream = openStream(streamId, (flags & HTTP2Constants.FLAG_END_STREAM) != 0);
+				if (dependency != streamId) {
+					stream.dependency = dependency;
+				}
+				stream.weight = weight;
+				this.headerStream = stream;
+			}
+		}
+		this.headerEndStream = (flags & HTTP2Constants.FLAG_END_STREAM) != 0;
+
+		this.headerBlockLength = 0;
+		appendHeaderBlock(offset, end - offset);
+		if ((flags & HTTP2Constants.FLAG_END_HEADERS) != 0) {
+			endHeaders(stream);
+		} else {
+			this.continuationStreamId = streamId;
+		}
+	}
+
+	private void onContinuation(int streamId, int flags, int length) throws IOException {
+		if (this.continuationStreamId == 0) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+		}
+		appendHeaderBlock(0, length);
+		if ((flags & HTTP2Constants.FLAG_END_HEADERS) != 0) {
+			this.continuationStreamId = 0;
+			endHeaders(getStream(streamId));
+		}
+	}
+
+	private void appendHeaderBlock(int offset, int length) throws HTTP2Exception {
+		if (length < 0) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+		}
+		byte[] headerBlock = this.headerBlock;
+		int blockLength = this.headerBlockLength;
+		int newLength = blockLength + length;
+		if (headerBlock == null || newLength > headerBlock.length) {
+			// the compressed block is bounded like the decoded header
+			RequestLimits limits = this.limits;
+			if (newLength > limits.getMaxHeaderSize() + limits.getMaxURILength() + this.payload.length) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_ENHANCE_YOUR_CALM);
+			}
+			byte[] newBlock = new byte[Math.max(newLength, this.payload.length)];
+			if (headerBlock != null) {
+				System.arraycopy(headerBlock, 0, newBlock, 0, blockLength);
+			}
+			headerBlock = newBlock;
+			this.headerBlock = headerBlock;
+		}
+		System.arraycopy(this.payload, offset, headerBlock, blockLength, length);
+		this.headerBlockLength = newLength;
+	}
+
+	private void endHeaders(Stream stream) throws HTTP2Exception {
+		Stream headerStream = this.headerStream;
+		this.headerDeadline = 0;
+		// the blocks of all the streams share the state of the decoder
+		this.decoder.decode(this.headerBlock, 0, this.headerBlockLength, this);
+		this.headerStream = null;
+		if (headerStream != null) {
+			headerStream.headersComplete = true;
+		} else if (stream != null && this.headerEndStream) {
+			// end of the trailer fields
+			stream.remoteClosed = true;
+		}
+	}
+
+	@Override
+	public void onHeaderField(String name, String value) {
+		Stream stream = this.headerStream;
+		if (stream == null || stream.error != null) {
+			return;
+		}
+		RequestLimits limits = this.limits;
+		if (name.startsWith(PSEUDO_HEADER_PREFIX)) {
+			if (++stream.pseudoFieldCount > MAX_PSEUDO_HEADER_FIELDS) {
+				stream.error = HTTPConstants.HTTP_STATUS_BADREQUEST;
+			} else if (value.length() > limits.getMaxURILength()) {
+				stream.error = HTTPConstants.HTTP_STATUS_URI_TOO_LONG;
+			}
+		} else {
+			stream.headerSize += name.length() + value.length();
+			if (stream.fieldCount - stream.pseudoFieldCount >= limits.getMaxHeaderFields()
+					|| stream.headerSize > limits.getMaxHeaderSize()) {
+				stream.error = HTTPConstants.HTTP_STATUS_REQUEST_HEADER_FIELDS_TOO_LARGE;
+			}
+		}
+		if (stream.error != null) {
+			// the fields are not needed anymore
+			stream.fields = null;
+			return;
+		}
+		stream.addField(name, value);
+	}
+
+	private void onPriority(int streamId, int length) throws HTTP2Exception {
+		if (streamId == 0) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+		}
+		if (length != PRIORITY_SIZE) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_FRAME_SIZE);
+		}
+		Stream stream = getStream(streamId);
+		// the priorities of the idle and closed streams are not kept
+		if (stream != null) {
+			byte[] payload = this.payload;
+			int dependency = readInt(payload, 0) & STREAM_ID_MASK;
+			stream.dependency = dependency == streamId ? 0 : dependency;
+			stream.weight = (payload[INT_SIZE] & BYTE_MASK) + 1;
+		}
+	}
+
+	private void onRstStream(int streamId, int length) throws HTTP2Exception {
+		if (streamId == 0 || streamId > this.lastStreamId) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+		}
+		if (length != INT_SIZE) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_FRAME_SIZE);
+		}
+		Stream stream = getStream(streamId);
+		if (stream != null) {
+			stream.reset = true;
+			if (stream != this.currentStream) {
+				closeStream(stream);
+			}
+		}
+	}
+
+	private void onSettings(int streamId, int flags, int length) throws IOException {
+		if (streamId != 0) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+		}
+		if ((flags & HTTP2Constants.FLAG_ACK) != 0) {
+			if (length != 0) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_FRAME_SIZE);
+			}
+			if (!this.settingsAcknowledged) {
+				// the client now uses the initial window of the server
+				this.settingsAcknowledged = true;
+				int delta = INITIAL_WINDOW_SIZE - this.localInitialWindowSize;
+				this.localInitialWindowSize = INITIAL_WINDOW_SIZE;
+				Stream[] streams = this.streams;
+				for (int i = 0, n = this.streamCount; i < n; i++) {
+					streams[i].receiveWindow += delta;
+				}
+			}
+			return;
+		}
+		if (length % SETTING_SIZE != 0) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_FRAME_SIZE);
+		}
+		applySettings(this.payload, length);
+		this.settingsReceived = true;
+		writeFrameHeader(0, HTTP2Constants.TYPE_SETTINGS, HTTP2Constants.FLAG_ACK, 0);
+	}
+
+	private void applySettings(byte[] settings, int length) throws HTTP2Exception {
+		for (int i = 0; i < length; i += SETTING_SIZE) {
+			int identifier = ((settings[i] & BYTE_MASK) << 8) | (settings[i + 1] & BYTE_MASK);
+			int value = readInt(settings, i + 2);
+			switch (identifier) {
+			case HTTP2Constants.SETTINGS_ENABLE_PUSH:
+				// the server does not push
+				if (value != 0 && value != 1) {
+					throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+				}
+				break;
+			case HTTP2Constants.SETTINGS_INITIAL_WINDOW_SIZE:
+				if (value < 0) {
+					// larger than the maximum window size
+					throw new HTTP2Exception(HTTP2Constants.ERROR_FLOW_CONTROL);
+				}
+				int delta = value - this.peerInitialWindowSize;
+				this.peerInitialWindowSize = value;
+				Stream[] streams = this.streams;
+				for (int j = 0, n = this.streamCount; j < n; j++) {
+					Stream stream = streams[j];
+					if ((long) stream.sendWindow + delta > HTTP2Constants.MAX_WINDOW_SIZE) {
+						throw new HTTP2Exception(HTTP2Constants.ERROR_FLOW_CONTROL);
+					}
+					stream.sendWindow += delta;
+				}
+				break;
+			case HTTP2Constants.SETTINGS_MAX_FRAME_SIZE:
+				if (value < HTTP2Constants.DEFAULT_MAX_FRAME_SIZE || value > HTTP2Constants.MAX_MAX_FRAME_SIZE) {
+					throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+				}
+				this.peerMaxFrameSize = value;
+				break;
+			default:
+				// the encoder does not use the dynamic table, the other settings are advisory or unknown
+				break;
+			}
+		}
+	}
+
+	private void onPing(int streamId, int flags, int length) throws IOException {
+		if (streamId != 0) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+		}
+		if (length != PING_SIZE) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_FRAME_SIZE);
+		}
+		if ((flags & HTTP2Constants.FLAG_ACK) == 0) {
+			writeFrame(0, HTTP2Constants.TYPE_PING, HTTP2Constants.FLAG_ACK, this.payload, 0, PING_SIZE);
+		}
+	}
+
+	private void onWindowUpdate(int streamId, int length) throws IOException {
+		if (length != INT_SIZE) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_FRAME_SIZE);
+		}
+		int increment = readInt(this.payload, 0) & STREAM_ID_MASK;
+		if (streamId == 0) {
+			if (increment == 0) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+			}
+			if ((long) this.sendWindow + increment > HTTP2Constants.MAX_WINDOW_SIZE) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_FLOW_CONTROL);
+			}
+			this.sendWindow += increment;
+			return;
+		}
+		Stream stream = getStream(streamId);
+		if (stream == null) {
+			// closed stream, the client may not know it yet
+			return;
+		}
+		if (increment == 0) {
+			resetStream(stream, HTTP2Constants.ERROR_PROTOCOL);
+		} else if ((long) stream.sendWindow + increment > HTTP2Constants.MAX_WINDOW_SIZE) {
+			resetStream(stream, HTTP2Constants.ERROR_FLOW_CONTROL);
+		} else {
+			stream.sendWindow += increment;
+		}
+	}
+
+	/**
+	 * Gets the length of the padding at the end of a frame, following its pad length field.
+	 */
+	private int getPadding(int flags, int length) throws HTTP2Exception {
+		if ((flags & HTTP2Constants.FLAG_PADDED) == 0) {
+			return 0;
+		}
+		if (length == 0) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_FRAME_SIZE);
+		}
+		int padding = this.payload[0] & BYTE_MASK;
+		if (padding >= length) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_PROTOCOL);
+		}
+		return padding;
+	}
+
+	private Stream openStream(int id, boolean endStream) {
+		Stream stream = new Stream(id, this.localInitialWindowSize, this.peerInitialWindowSize);
+		stream.remoteClosed = endStream;
+		this.streams[this.streamCount++] = stream;
+		if (id > this.lastStreamId) {
+			this.lastStreamId = id;
+		}
+		return stream;
+	}
+
+	private Stream getStream(int id) {
+		Stream[] streams = this.streams;
+		for (int i = 0, n = this.streamCount; i < n; i++) {
+			Stream stream = streams[i];
+			if (stream.id == id) {
+				return stream;
+			}
+		}
+		return null;
+	}
+
+	private void closeStream(Stream stream) {
+		Stream[] streams = this.streams;
+		int count = this.streamCount;
+		for (int i = 0; i < count; i++) {
+			if (streams[i] == stream) {
+				streams[i] = streams[--count];
+				streams[count] = null;
+				this.streamCount = count;
+				if (count == 0) {
+					this.idleStartTime = Util.platformTimeMillis();
+				}
+				break;
+			}
+		}
+		if (stream == this.currentStream) {
+			this.currentStream = null;
+		}
+		if (stream == this.headerStream) {
+			// the header block is still decoded
+			this.headerStream = null;
+		}
+	}
+
+	private void resetStream(Stream stream, int errorCode) throws IOException {
+		writeRstStream(stream.id, errorCode);
+		stream.reset = true;
+		if (stream != this.currentStream) {
+			closeStream(stream);
+		}
+	}
+
+	/**
+	 * Credits the flow-control window of a stream with the bytes consumed by the request handler.
+	 */
+	private void creditStream(Stream stream, int length) throws IOException {
+		int consumed = stream.consumedBytes + length;
+		if (consumed >= this.localInitialWindowSize / 2 && !stream.remoteClosed) {
+			writeWindowUpdate(stream.id, consumed);
+			stream.receiveWindow += consumed;
+			consumed = 0;
+		}
+		stream.consumedBytes = consumed;
+	}
+
+	private void writeSettings() throws IOException {
+		byte[] payload = new byte[SETTING_SIZE * 2];
+		writeSetting(payload, 0, HTTP2Constants.SETTINGS_MAX_CONCURRENT_STREAMS, MAX_CONCURRENT_STREAMS);
+		writeSetting(payload, SETTING_SIZE, HTTP2Constants.SETTINGS_INITIAL_WINDOW_SIZE, INITIAL_WINDOW_SIZE);
+		writeFrame(0, HTTP2Constants.TYPE_SETTINGS, 0, payload, 0, payload.length);
+	}
+
+	private static void writeSetting(byte[] payload, int offset, int identifier, int value) {
+		payload[offset] = (byte) (identifier >> 8);
+		payload[offset + 1] = (byte) identifier;
+		writeInt(payload, offset + 2, value);
+	}
+
+	private void writeHeaders(int streamId, byte[] block, int length, boolean endStream) throws IOException {
+		int maxFrameSize = this.peerMaxFrameSize;
+		int type = HTTP2Constants.TYPE_HEADERS;
+		int flags = endStream ? HTTP2Constants.FLAG_END_STREAM : 0;
+		int offset = 0;
+		do {
+			int size = Math.min(length - offset, maxFrameSize);
+			if (offset + size == length) {
+				flags |= HTTP2Constants.FLAG_END_HEADERS;
+			}
+			writeFrame(streamId, type, flags, block, offset, size);
+			// the rest of the block is sent in continuation frames
+			type = HTTP2Constants.TYPE_CONTINUATION;
+			flags = 0;
+			offset += size;
+		} while (offset < length);
+	}
+
+	/**
+	 * Sends data frames, waiting for the flow-control windows of the stream and the connection.
+	 */
+	private void writeData(Stream stream, byte[] data, int length, boolean endStream) throws IOException {
+		if (length == 0 && !endStream) {
+			return;
+		}
+		int offset = 0;
+		do {
+			if (stream.reset) {
+				throw new IOException(STREAM_RESET);
+			}
+			int size = Math.min(Math.min(length - offset, this.peerMaxFrameSize),
+					Math.min(stream.sendWindow, this.sendWindow));
+			if (size <= 0 && offset < length) {
+				// the buffered frames are sent before waiting for a window update
+				readFrame();
+				continue;
+			}
+			size = Math.max(size, 0);
+			boolean last = endStream && offset + size == length;
+			writeFrame(stream.id, HTTP2Constants.TYPE_DATA, last ? HTTP2Constants.FLAG_END_STREAM : 0, data, offset,
+					size);
+			stream.sendWindow -= size;
+			this.sendWindow -= size;
+			offset += size;
+		} while (offset < length);
+	}
+
+	private void writeWindowUpdate(int streamId, int increment) throws IOException {
+		byte[] payload = new byte[INT_SIZE];
+		writeInt(payload, 0, increment);
+		writeFrame(streamId, HTTP2Constants.TYPE_WINDOW_UPDATE, 0, payload, 0, INT_SIZE);
+	}
+
+	private void writeRstStream(int streamId, int errorCode) throws IOException {
+		byte[] payload = new byte[INT_SIZE];
+		writeInt(payload, 0, errorCode);
+		writeFrame(streamId, HTTP2Constants.TYPE_RST_STREAM, 0, payload, 0, INT_SIZE);
+	}
+
+	private void writeGoAway(int errorCode) throws IOException {
+		byte[] payload = new byte[GOAWAY_SIZE];
+		writeInt(payload, 0, this.lastStreamId);
+		writeInt(payload, INT_SIZE, errorCode);
+		writeFrame(0, HTTP2Constants.TYPE_GOAWAY, 0, payload, 0, GOAWAY_SIZE);
+	}
+
+	private void writeFrame(int streamId, int type, int flags, byte[] payload, int offset, int length)
+			throws IOException {
+		writeFrameHeader(streamId, type, flags, length);
+		try {
+			this.output.write(payload, offset, length);
+		} catch (IOException e) {
+			this.failure = e;
+			throw e;
+		}
+	}
+
+	private void writeFrameHeader(int streamId, int type, int flags, int length) throws IOException {
+		byte[] header = this.outputFrameHeader;
+		header[0] = (byte) (length >> 16);
+		header[1] = (byte) (length >> 8);
+		header[2] = (byte) length;
+		header[3] = (byte) type;
+		header[4] = (byte) flags;
+		writeInt(header, 5, streamId);
+		try {
+			this.output.write(header, 0, HTTP2Constants.FRAME_HEADER_SIZE);
+		} catch (IOException e) {
+			this.failure = e;
+			throw e;
+		}
+	}
+
+	private void readFully(byte[] buffer, int length) throws IOException {
+		InputStream input = this.input;
+		int offset = 0;
+		while (offset < length) {
+			int read = input.read(buffer, offset, length - offset);
+			if (read == -1) {
+				throw new EOFException();
+			}
+			offset += read;
+		}
+	}
+
+	private static int readInt(byte[] buffer, int offset) {
+		return ((buffer[offset] & BYTE_MASK) << 24) | ((buffer[offset + 1] & BYTE_MASK) << 16)
+				| ((buffer[offset + 2] & BYTE_MASK) << 8) | (buffer[offset + 3] & BYTE_MASK);
+	}
+
+	private static void writeInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >> 24);
+		buffer[offset + 1] = (byte) (value >> 16);
+		buffer[offset + 2] = (byte) (value >> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * The state of a stream opened by the client.
+	 */
+	private static final class Stream {
+
+		private final int id;
+
+		/**
+		 * The names and the values of the header fields, alternately.
+		 */
+		private String[] fields;
+		private int fieldCount;
+		private int pseudoFieldCount;
+		private int headerSize;
+
+		/**
+		 * The status of the response when the header exceeds the limits, or <code>null</code>.
+		 */
+		private String error;
+
+		/**
+		 * The priority of the stream.
+		 */
+		private int dependency;
+		private int weight;
+
+		/**
+		 * The body received and not read yet.
+		 */
+		private byte[] data;
+		private int dataStart;
+		private int dataEnd;
+
+		private int receiveWindow;
+		private int consumedBytes;
+		private int sendWindow;
+
+		/**
+		 * The time at which the processing of the stream has started, in milliseconds, and the number of bytes of the
+		 * body received since then.
+		 */
+		private long bodyStartTime;
+		private long bodyBytes;
+
+		/**
+		 * Whether the stream is the request upgrading the connection, already parsed.
+		 */
+		private boolean upgraded;
+		private boolean headersComplete;
+		private boolean remoteClosed;
+		private boolean reset;
+
+		private Stream(int id, int receiveWindow, int sendWindow) {
+			this.id = id;
+			this.receiveWindow = receiveWindow;
+			this.sendWindow = sendWindow;
+			this.weight = HTTP2Constants.DEFAULT_WEIGHT;
+			this.fields = new String[INITIAL_FIELDS_CAPACITY];
+		}
+
+		private void addField(String name, String value) {
+			String[] fields = this.fields;
+			int index = this.fieldCount * 2;
+			if (index == fields.length) {
+				fields = new String[index * 2];
+				System.arraycopy(this.fields, 0, fields, 0, index);
+				this.fields = fields;
+			}
+			fields[index] = name;
+			fields[index + 1] = value;
+			this.fieldCount++;
+		}
+
+		private void append(byte[] bytes, int offset, int length) {
+			byte[] data = this.data;
+			int start = this.dataStart;
+			int end = this.dataEnd;
+			if (data == null || end + length > data.length) {
+				int size = end - start;
+				if (data == null || size + length > data.length) {
+					// the body is bounded by the flow-control window
+					byte[] newData = new byte[Math.max(size + length, data == null ? length : data.length * 2)];
+					if (data != null) {
+						System.arraycopy(data, start, newData, 0, size);
+					}
+					data = newData;
+					this.data = data;
+				} else {
+					System.arraycopy(data, start, data, 0, size);
+				}
+				start = 0;
+				end = size;
+				this.dataStart = 0;
+			}
+			System.arraycopy(bytes, offset, data, end, length);
+			this.dataEnd = end + length;
+		}
+
+	}
+
+	/**
+	 * The body of the stream being processed, reading the frames until its data is received.
+	 */
+	private final class StreamInputStream extends InputStream {
+
+		private final Stream stream;
+
+		private StreamInputStream(Stream stream) {
+			this.stream = stream;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!waitForData()) {
+				return -1;
+			}
+			Stream stream = this.stream;
+			int b = stream.data[stream.dataStart++] & BYTE_MASK;
+			creditStream(stream, 1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!waitForData()) {
+				return -1;
+			}
+			Stream stream = this.stream;
+			int read = Math.min(len, stream.dataEnd - stream.dataStart);
+			System.arraycopy(stream.data, stream.dataStart, b, off, read);
+			stream.dataStart += read;
+			creditStream(stream, read);
+			return read;
+		}
+
+		@Override
+		public int available() {
+			Stream stream = this.stream;
+			return stream.dataEnd - stream.dataStart;
+		}
+
+		private boolean waitForData() throws IOException {
+			Stream stream = this.stream;
+			while (stream.dataStart == stream.dataEnd) {
+				if (stream.reset) {
+					throw new IOException(STREAM_RESET);
+				}
+				if (stream.remoteClosed) {
+					return false;
+				}
+				readFrame(stream);
+			}
+			return true;
+		}
+
+	}
+
+	/**
+	 * The body of the response of the stream being processed, sent in data frames.
+	 */
+	private final class StreamOutputStream extends OutputStream {
+
+		private final Stream stream;
+		private int count;
+		private boolean closed;
+
+		private StreamOutputStream(Stream stream) {
+			this.stream = stream;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			byte[] buffer = HTTP2Connection.this.dataBuffer;
+			if (this.count == buffer.length) {
+				flushData();
+			}
+			buffer[this.count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			byte[] buffer = HTTP2Connection.this.dataBuffer;
+			while (len > 0) {
+				if (this.count == buffer.length) {
+					flushData();
+				}
+				int size = Math.min(len, buffer.length - this.count);
+				System.arraycopy(b, off, buffer, this.count, size);
+				this.count += size;
+				off += size;
+				len -= size;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			flushData();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!this.closed) {
+				this.closed = true;
+				int count = this.count;
+				this.count = 0;
+				writeData(this.stream, HTTP2Connection.this.dataBuffer, count, true);
+			}
+		}
+
+		private void flushData() throws IOException {
+			if (this.closed) {
+				throw new IOException();
+			}
+			int count = this.count;
+			this.count = 0;
+			writeData(this.stream, HTTP2Connection.this.dataBuffer, count, false);
+		}
+
+	}
+
+}
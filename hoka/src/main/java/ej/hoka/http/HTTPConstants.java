@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2009-2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2009-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -12,6 +12,14 @@ package ej.hoka.http;
  */
 public final class HTTPConstants {
 
+	/**
+	 * HTTP code 100: the client can send the body of the request.
+	 */
+	public static final String HTTP_STATUS_CONTINUE = "100 Continue"; //$NON-NLS-1$
+	/**
+	 * HTTP code 101: the connection switches to the protocol requested by the client.
+	 */
+	public static final String HTTP_STATUS_SWITCHING_PROTOCOLS = "101 Switching Protocols"; //$NON-NLS-1$
 	/**
 	 * HTTP code 200: the response has been found and correctly sent.
 	 */
@@ -52,10 +60,26 @@ public final class HTTPConstants {
 	 * HTTP code 408: the client initiated the connection but didn't send the request (idle connection).
 	 */
 	public static final String HTTP_STATUS_REQUESTTIMEOUT = "408 Request Timeout"; //$NON-NLS-1$
+	/**
+	 * HTTP code 413: the request body is larger than the server is willing to process.
+	 */
+	public static final String HTTP_STATUS_PAYLOAD_TOO_LARGE = "413 Payload Too Large"; //$NON-NLS-1$
+	/**
+	 * HTTP code 414: the URI of the request is too long.
+	 */
+	public static final String HTTP_STATUS_URI_TOO_LONG = "414 URI Too Long"; //$NON-NLS-1$
 	/**
 	 * HTTP code 415: the requested resource type is not supported.
 	 */
 	public static final String HTTP_STATUS_MEDIA_TYPE = "415 Unsupported Media Type"; //$NON-NLS-1$
+	/**
+	 * HTTP code 429: the client has sent too many requests in a given amount of time.
+	 */
+	public static final String HTTP_STATUS_TOO_MANY_REQUESTS = "429 Too Many Requests"; //$NON-NLS-1$
+	/**
+	 * HTTP code 431: the header fields of the request are too large.
+	 */
+	public static final String HTTP_STATUS_REQUEST_HEADER_FIELDS_TOO_LARGE = "431 Request Header Fields Too Large"; //$NON-NLS-1$
 	/**
 	 * HTTP code 500: the server has encountered an error while generating the response.
 	 */
@@ -121,10 +145,30 @@ public final class HTTPConstants {
 	 * Value for HTTP header field "Connection" (<code>close</code>).
 	 */
 	public static final String FIELD_CONNECTION_VALUE_CLOSE = "close"; //$NON-NLS-1$
+	/**
+	 * HTTP header field (in lower case) <code>expect</code>.
+	 */
+	public static final String FIELD_EXPECT = "expect"; //$NON-NLS-1$
+	/**
+	 * Value for HTTP header field "Expect" (<code>100-continue</code>).
+	 */
+	public static final String FIELD_EXPECT_VALUE_CONTINUE = "100-continue"; //$NON-NLS-1$
 	/**
 	 * HTTP header field (in lower case) <code>cookie</code>.
 	 */
 	public static final String FIELD_COOKIES = "cookie"; //$NON-NLS-1$
+	/**
+	 * HTTP header field (in lower case) <code>authorization</code>.
+	 */
+	public static final String FIELD_AUTHORIZATION = "authorization"; //$NON-NLS-1$
+	/**
+	 * HTTP header field (in lower case) <code>host</code>.
+	 */
+	public static final String FIELD_HOST = "host"; //$NON-NLS-1$
+	/**
+	 * HTTP header field (in lower case) <code>upgrade</code>.
+	 */
+	public static final String FIELD_UPGRADE = "upgrade"; //$NON-NLS-1$
 
 	/**
 	 * The "end of line" CR + LF.
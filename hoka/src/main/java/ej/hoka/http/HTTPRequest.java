@@ -1,14 +1,17 @@
 /*
  * Java
  *
- * Copyright 2009-2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2009-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
 package ej.hoka.http;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -20,9 +23,15 @@ import ej.hoka.http.encoding.IHTTPEncodingHandler;
 import ej.hoka.http.encoding.IHTTPTransferCodingHandler;
 import ej.hoka.http.encoding.UnsupportedHTTPEncodingException;
 import ej.hoka.http.support.URLDecoder;
+import ej.hoka.io.ContinueInputStream;
+import ej.hoka.io.SizeLimitedInputStream;
 
 /**
  * Represents a HTTP Request.
+ * <p>
+ * The {@link HTTPServer} reuses the same instance, with its internal maps and buffers, for all the requests processed
+ * by a job. Therefore, a request and the maps it returns must not be referenced once the response has been returned by
+ * the {@link ej.hoka.http.requesthandler.RequestHandler}.
  */
 public class HTTPRequest {
 
@@ -88,7 +97,53 @@ public class HTTPRequest {
 
 	private static final int INITIAL_MAP_CAPACITY = 10;
 	private static final int INITIAL_URI_CAPACITY = 64;
+	private static final int MAX_METHOD_LENGTH = 7;
 	private static final int VERSION_SIZE = 10;
+	private static final int VERSION_LENGTH = VERSION_SIZE - 2;
+
+	private static final String VERSION_HTTP_1_1 = "HTTP/1.1"; //$NON-NLS-1$
+	private static final String VERSION_HTTP_1_0 = "HTTP/1.0"; //$NON-NLS-1$
+	private static final String VERSION_HTTP_2_0 = "HTTP/2.0"; //$NON-NLS-1$
+
+	/**
+	 * The pseudo-header fields of the HTTP/2 requests.
+	 */
+	private static final String PSEUDO_HEADER_PREFIX = ":"; //$NON-NLS-1$
+	private static final String PSEUDO_HEADER_METHOD = ":method"; //$NON-NLS-1$
+	private static final String PSEUDO_HEADER_PATH = ":path"; //$NON-NLS-1$
+	private static final String PSEUDO_HEADER_AUTHORITY = ":authority"; //$NON-NLS-1$
+
+	/**
+	 * The separators of the values of a header field combined in one value.
+	 */
+	private static final String VALUE_SEPARATOR = ", "; //$NON-NLS-1$
+	private static final String COOKIE_SEPARATOR = "; "; //$NON-NLS-1$
+
+	private static final RequestLimits DEFAULT_LIMITS = new RequestLimits();
+
+	/**
+	 * The interim response sent before reading a body expected to be accepted first.
+	 */
+	private static final byte[] CONTINUE_RESPONSE = (VERSION_HTTP_1_1 + ' ' + HTTPConstants.HTTP_STATUS_CONTINUE
+			+ HTTPConstants.END_OF_LINE + HTTPConstants.END_OF_LINE).getBytes();
+
+	/**
+	 * The header field names that are commonly sent by the clients, in lower case. The parser uses these instances
+	 * instead of allocating a new string for each of these header fields.
+	 */
+	private static final String[] COMMON_FIELDS = { "host", //$NON-NLS-1$
+			"user-agent", //$NON-NLS-1$
+			"accept", //$NON-NLS-1$
+			"accept-language", //$NON-NLS-1$
+			HTTPConstants.FIELD_ACCEPT_ENCODING, HTTPConstants.FIELD_CONNECTION, HTTPConstants.FIELD_CONTENT_LENGTH,
+			HTTPConstants.FIELD_CONTENT_TYPE, HTTPConstants.FIELD_CONTENT_ENCODING,
+			HTTPConstants.FIELD_TRANSFER_ENCODING, HTTPConstants.FIELD_COOKIES, HTTPConstants.FIELD_IF_NONE_MATCH,
+			HTTPConstants.FIELD_AUTHORIZATION, HTTPConstants.FIELD_EXPECT,
+			"cache-control", //$NON-NLS-1$
+			"referer", //$NON-NLS-1$
+			"origin", //$NON-NLS-1$
+			"pragma", //$NON-NLS-1$
+			"upgrade-insecure-requests" }; //$NON-NLS-1$
 
 	/**
 	 * Request method code.
@@ -98,37 +153,90 @@ public class HTTPRequest {
 	 * @see HTTPRequest#PUT
 	 * @see HTTPRequest#DELETE
 	 */
-	private final int method;
+	private int method;
 
 	/**
 	 * Request URI.
 	 */
-	private final String uri;
+	private String uri;
 
 	/**
 	 * Parsed request parameters.
 	 */
 	private final Map<String, String> parameters;
 
+	/**
+	 * Read-only view of {@link #parameters}.
+	 */
+	private final Map<String, String> parametersView;
+
 	/**
 	 * HTTP Request version String.
 	 */
-	private final String version;
+	private String version;
 
 	/**
 	 * Parsed request headers.
 	 */
 	private final Map<String, String> header;
 
+	/**
+	 * Read-only view of {@link #header}.
+	 */
+	private final Map<String, String> headerView;
+
 	/**
 	 * The {@link InputStream} to use.
 	 */
-	private final InputStream body;
+	private InputStream body;
+
+	/**
+	 * The stream limiting the size of a body without length, or <code>null</code>.
+	 */
+	private SizeLimitedInputStream bodyLimit;
+
+	/**
+	 * The stream sending the interim response when the client waits for it before sending the body, or
+	 * <code>null</code>.
+	 */
+	private ContinueInputStream bodyContinue;
+
+	/**
+	 * The output stream of the connection, to send the interim responses, or <code>null</code>.
+	 */
+	private OutputStream interimOutput;
+
+	/**
+	 * The address of the client, set for each connection.
+	 */
+	private InetAddress remoteAddress;
+
+	/**
+	 * The trace of the current request, or <code>null</code> if it is not sampled.
+	 */
+	private RequestTrace trace;
+
+	/**
+	 * The limits checked while parsing the requests.
+	 */
+	private RequestLimits limits;
 
 	/**
 	 * Parsed request cookies. Lazily computed.
 	 */
-	private Map<String, String> cookies;
+	private final Map<String, String> cookies;
+
+	/**
+	 * Whether the {@link #cookies} have been parsed for the current request.
+	 */
+	private boolean cookiesParsed;
+
+	/**
+	 * Buffers reused to parse the request line and the header fields.
+	 */
+	private final StringBuilder sbKey;
+	private final StringBuilder sbValue;
+	private final byte[] versionBuffer;
 
 	/**
 	 * Constructs a new instance of HTTPRequest.
@@ -143,15 +251,228 @@ public class HTTPRequest {
 	 *             if parsing the request failed.
 	 */
 	protected HTTPRequest(InputStream inputStream, HTTPEncodingRegistry encodingRegistry) throws IOException {
-		this.method = parseMethod(inputStream);
+		this();
+		parse(inputStream, encodingRegistry);
+	}
+
+	/**
+	 * Constructs an empty request, to be filled by {@link #parse(InputStream, HTTPEncodingRegistry)}.
+	 */
+	/* default */ HTTPRequest() {
 		this.parameters = new HashMap<>(INITIAL_MAP_CAPACITY);
-		this.uri = parseURI(inputStream, this.parameters);
+		this.parametersView = Collections.unmodifiableMap(this.parameters);
+		this.header = new HashMap<>(INITIAL_MAP_CAPACITY); // most HTTP requests have less than 10 header fields
+		this.headerView = Collections.unmodifiableMap(this.header);
+		this.cookies = new HashMap<>();
+		this.sbKey = new StringBuilder(INITIAL_URI_CAPACITY);
+		this.sbValue = new StringBuilder(INITIAL_STRING_BUILDER_CAPACITY);
+		this.versionBuffer = new byte[VERSION_SIZE];
+		this.limits = DEFAULT_LIMITS;
+	}
+
+	/**
+	 * Parses the next request from the input stream, replacing the content of this request.
+	 *
+	 * @param inputStream
+	 *            the input stream of the request.
+	 * @param encodingRegistry
+	 *            the register of available encoding and transfer coding handlers.
+	 * @throws IOException
+	 *             if connection is lost during processing the request.
+	 * @throws IllegalArgumentException
+	 *             if parsing the request failed.
+	 */
+	/* default */ void parse(InputStream inputStream, HTTPEncodingRegistry encodingRegistry) throws IOException {
+		reset();
+
+		this.method = parseMethod(inputStream);
+		this.uri = parseURI(inputStream);
 		this.version = parseVersion(inputStream);
-		this.header = parseHeaderFields(inputStream);
+		parseHeaderFields(inputStream);
 
 		this.body = getContentEncodingStream(inputStream, encodingRegistry);
 	}
 
+	/**
+	 * Fills this request with the header fields of an HTTP/2 stream, replacing its content.
+	 * <p>
+	 * The pseudo-header fields give the method, the URI and the host of the request. The values of the other fields
+	 * with the same name are combined. The limits of the header have already been checked while the fields were
+	 * decoded.
+	 *
+	 * @param fields
+	 *            the names and the values of the header fields, alternately.
+	 * @param fieldCount
+	 *            the number of fields.
+	 * @param body
+	 *            the input stream of the body of the stream.
+	 * @param encodingRegistry
+	 *            the register of available encoding handlers.
+	 * @throws IOException
+	 *             if the connection is lost.
+	 * @throws IllegalArgumentException
+	 *             if the request is malformed.
+	 */
+	/* default */ void parseHTTP2(String[] fields, int fieldCount, InputStream body,
+			HTTPEncodingRegistry encodingRegistry) throws IOException {
+		reset();
+
+		Map<String, String> header = this.header;
+		String path = null;
+		String authority = null;
+		for (int i = 0, n = fieldCount * 2; i < n; i += 2) {
+			String name = fields[i];
+			String value = fields[i + 1];
+			if (name.startsWith(PSEUDO_HEADER_PREFIX)) {
+				if (name.equals(PSEUDO_HEADER_METHOD)) {
+					StringBuilder builder = this.sbKey;
+					builder.setLength(0);
+					builder.append(value);
+					this.method = toMethod(builder);
+				} else if (name.equals(PSEUDO_HEADER_PATH)) {
+					path = value;
+				} else if (name.equals(PSEUDO_HEADER_AUTHORITY)) {
+					authority = value;
+				}
+				// the scheme is the one of the connection
+				continue;
+			}
+			name = name.toLowerCase();
+			String previous = header.get(name);
+			if (previous != null) {
+				// the cookies may be split in several fields to be compressed separately
+				value = previous + (name.equals(HTTPConstants.FIELD_COOKIES) ? COOKIE_SEPARATOR : VALUE_SEPARATOR)
+						+ value;
+			}
+			header.put(name, value);
+		}
+		if (this.method == 0 || path == null || path.length() == 0) {
+			throw new IllegalArgumentException(MALFORMED_HTTP_REQUEST);
+		}
+		if (authority != null && !header.containsKey(HTTPConstants.FIELD_HOST)) {
+			header.put(HTTPConstants.FIELD_HOST, authority);
+		}
+		// the URI is terminated by a space, like in a request line
+		this.uri = parseURI(new ByteArrayInputStream((path + SPACE_CHAR).getBytes()));
+		this.version = VERSION_HTTP_2_0;
+
+		// the end of the body is given by the stream
+		checkContentLength();
+		this.body = decodeBody(body, true, encodingRegistry);
+	}
+
+	/**
+	 * Reads the remaining bytes of the body, so that the next request can be parsed from the same input stream.
+	 *
+	 * @throws IOException
+	 *             if connection is lost while reading the body.
+	 */
+	/* default */ void finish() throws IOException {
+		InputStream body = this.body;
+		if (body != null) {
+			this.body = null;
+			body.close();
+		}
+	}
+
+	/**
+	 * Clears the content of this request while keeping the internal maps and buffers.
+	 */
+	/* default */ void reset() {
+		this.method = 0;
+		this.uri = null;
+		this.version = null;
+		this.body = null;
+		this.bodyLimit = null;
+		this.bodyContinue = null;
+		this.parameters.clear();
+		this.header.clear();
+		this.cookies.clear();
+		this.cookiesParsed = false;
+	}
+
+	/**
+	 * Sets the address of the client sending the next requests.
+	 *
+	 * @param remoteAddress
+	 *            the address of the client.
+	 */
+	/* default */ void setRemoteAddress(InetAddress remoteAddress) {
+		this.remoteAddress = remoteAddress;
+	}
+
+	/**
+	 * Returns the address of the client which sent the request.
+	 *
+	 * @return the address of the client, or <code>null</code> if unknown.
+	 */
+	public InetAddress getRemoteAddress() {
+		return this.remoteAddress;
+	}
+
+	/**
+	 * Returns whether the body of the request has exceeded the maximum size while it was read. In that case, the rest of
+	 * the body cannot be read and the connection has to be closed.
+	 *
+	 * @return {@code true} if the body is too large, {@code false} otherwise.
+	 */
+	/* default */ boolean isBodyTooLarge() {
+		SizeLimitedInputStream bodyLimit = this.bodyLimit;
+		return bodyLimit != null && bodyLimit.isExceeded();
+	}
+
+	/**
+	 * Returns whether the client is still waiting for the server to accept the body before sending it, the body not
+	 * having been read. In that case, the body is not sent and the connection has to be closed.
+	 *
+	 * @return {@code true} if the body has not been requested from the client, {@code false} otherwise.
+	 */
+	/* default */ boolean isContinuePending() {
+		ContinueInputStream bodyContinue = this.bodyContinue;
+		return bodyContinue != null && bodyContinue.isPending();
+	}
+
+	/**
+	 * Sets the output stream of the connection, used to send the interim response requested by the next requests with
+	 * the "Expect: 100-continue" header field.
+	 *
+	 * @param interimOutput
+	 *            the output stream of the connection, or <code>null</code> to never send interim responses.
+	 */
+	/* default */ void setInterimOutput(OutputStream interimOutput) {
+		this.interimOutput = interimOutput;
+	}
+
+	/**
+	 * Sets the limits checked while parsing the next requests.
+	 *
+	 * @param limits
+	 *            the limits.
+	 */
+	/* default */ void setLimits(RequestLimits limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * Sets the trace of the request.
+	 *
+	 * @param trace
+	 *            the trace, or <code>null</code> if the request is not sampled.
+	 */
+	/* default */ void setTrace(RequestTrace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * Returns the trace of the request, to mark the phases known by the request handlers.
+	 *
+	 * @return the trace, or <code>null</code> if the request is not traced.
+	 * @see RequestTrace#ROUTED
+	 */
+	public RequestTrace getTrace() {
+		return this.trace;
+	}
+
 	/**
 	 * Returns the request method as an integer value which is one of {@link #POST}, {@link #GET}, {@link #PUT} or
 	 * {@link #DELETE}.
@@ -177,7 +498,7 @@ public class HTTPRequest {
 	 * @return a {@link Map} of (String,String) representing the HTTP query parameters.
 	 */
 	public Map<String, String> getParameters() {
-		return Collections.unmodifiableMap(this.parameters);
+		return this.parametersView;
 	}
 
 	/**
@@ -189,13 +510,25 @@ public class HTTPRequest {
 		return this.version;
 	}
 
+	/**
+	 * Returns the length of the body given by the Content-Length header field.
+	 *
+	 * @return the length of the body, or <code>-1</code> if the request has no Content-Length header field.
+	 * @throws IllegalArgumentException
+	 *             if the value of the field is not a positive integer.
+	 */
+	public long getContentLength() {
+		String contentLength = getHeaderField(HTTPConstants.FIELD_CONTENT_LENGTH);
+		return contentLength == null ? -1 : parseContentLength(contentLength);
+	}
+
 	/**
 	 * Returns all HTTP header fields of the request.
 	 *
 	 * @return a {@link Map} of (String,String) representing the HTTP header fields (may be empty).
 	 */
 	public Map<String, String> getHeader() {
-		return Collections.unmodifiableMap(this.header);
+		return this.headerView;
 	}
 
 	/**
@@ -221,8 +554,9 @@ public class HTTPRequest {
 	 * @return a {@link Map} of (String,String) representing the HTTP cookies (may be empty)
 	 */
 	public Map<String, String> getCookies() {
-		if (this.cookies == null) {
-			this.cookies = parseCookies(this.header.get(HTTPConstants.FIELD_COOKIES));
+		if (!this.cookiesParsed) {
+			parseCookies(this.header.get(HTTPConstants.FIELD_COOKIES), this.cookies, null);
+			this.cookiesParsed = true;
 		}
 		return this.cookies;
 	}
@@ -240,7 +574,11 @@ public class HTTPRequest {
 		if (name == null) {
 			return null;
 		}
-		return getCookies().get(name);
+		if (this.cookiesParsed) {
+			return this.cookies.get(name);
+		}
+		// only the value of the cookie is extracted, the other cookies are not parsed
+		return parseCookies(this.header.get(HTTPConstants.FIELD_COOKIES), null, name);
 	}
 
 	/**
@@ -278,8 +616,60 @@ public class HTTPRequest {
 			throw new UnsupportedHTTPEncodingException(HTTPConstants.HTTP_STATUS_NOTIMPLEMENTED,
 					HTTPConstants.FIELD_TRANSFER_ENCODING + RESPONSE_COLON + transferEncoding);
 		}
+
+		long length = checkContentLength();
+
 		in = transferCodingHandler.open(this, in);
 
+		OutputStream interimOutput = this.interimOutput;
+		if (interimOutput != null && (transferEncoding != null || length > 0) && expectsContinue()) {
+			// the body is requested from the client when the request handler reads it, once the request is accepted
+			ContinueInputStream bodyContinue = new ContinueInputStream(in, interimOutput, CONTINUE_RESPONSE);
+			this.bodyContinue = bodyContinue;
+			in = bodyContinue;
+		}
+
+		// the size of the body is only known once it has been read
+		return decodeBody(in, length == -1, encodingRegistry);
+	}
+
+	/**
+	 * Checks the value of the Content-Length header field against the maximum size of the body, so that a body too
+	 * large is rejected before it is read.
+	 *
+	 * @return the length of the body, <code>-1</code> if unknown.
+	 * @throws RequestLimitException
+	 *             if the body is too large.
+	 */
+	private long checkContentLength() {
+		long length = getContentLength();
+		long maxBodySize = this.limits.getMaxBodySize();
+		if (maxBodySize != 0 && length > maxBodySize) {
+			throw new RequestLimitException(HTTPConstants.HTTP_STATUS_PAYLOAD_TOO_LARGE);
+		}
+		return length;
+	}
+
+	/**
+	 * Limits the size of the body and decodes its content coding.
+	 *
+	 * @param in
+	 *            the input stream of the body, once its transfer coding is decoded.
+	 * @param limitSize
+	 *            whether the size of the body has to be limited while it is read.
+	 * @return the input stream of the decoded body.
+	 * @throws IOException
+	 *             when I/O Error occurs.
+	 */
+	private InputStream decodeBody(InputStream in, boolean limitSize, HTTPEncodingRegistry encodingRegistry)
+			throws IOException {
+		long maxBodySize = this.limits.getMaxBodySize();
+		if (maxBodySize != 0 && limitSize) {
+			SizeLimitedInputStream bodyLimit = new SizeLimitedInputStream(in, maxBodySize);
+			this.bodyLimit = bodyLimit;
+			in = bodyLimit;
+		}
+
 		// 2) content encoding
 		String contentEncoding = getHeaderField(HTTPConstants.FIELD_CONTENT_ENCODING);
 		if (contentEncoding != null) {
@@ -294,6 +684,77 @@ public class HTTPRequest {
 		return in;
 	}
 
+	/**
+	 * Returns whether the client allows the connection to be kept open after the response (RFC 7230 6.3): an HTTP/1.1
+	 * connection persists unless the request has the "close" connection option, an HTTP/1.0 connection only persists
+	 * when the request has the "keep-alive" connection option.
+	 *
+	 * @return {@code true} if the connection may be kept open, {@code false} otherwise.
+	 */
+	/* default */ boolean isPersistent() {
+		String connection = getHeaderField(HTTPConstants.FIELD_CONNECTION);
+		if (VERSION_HTTP_1_1.equals(this.version)) {
+			return !hasConnectionOption(connection, HTTPConstants.FIELD_CONNECTION_VALUE_CLOSE);
+		} else {
+			return hasConnectionOption(connection, HTTPConstants.FIELD_CONNECTION_VALUE_KEEP_ALIVE);
+		}
+	}
+
+	/**
+	 * Checks whether the comma-separated list of the Connection header field contains an option, ignoring the case.
+	 */
+	private static boolean hasConnectionOption(String connection, String option) {
+		if (connection == null) {
+			return false;
+		}
+		int length = connection.length();
+		int start = 0;
+		while (start <= length) {
+			int end = connection.indexOf(',', start);
+			if (end == -1) {
+				end = length;
+			}
+			if (connection.substring(start, end).trim().equalsIgnoreCase(option)) {
+				return true;
+			}
+			start = end + 1;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether the client waits for the interim response before sending the body. The HTTP/1.0 clients do not
+	 * understand the interim responses (RFC 7231 5.1.1).
+	 *
+	 * @return {@code true} if the request has the "Expect: 100-continue" header field, {@code false} otherwise.
+	 */
+	private boolean expectsContinue() {
+		return VERSION_HTTP_1_1.equals(this.version) && HTTPConstants.FIELD_EXPECT_VALUE_CONTINUE
+				.equalsIgnoreCase(getHeaderField(HTTPConstants.FIELD_EXPECT));
+	}
+
+	/**
+	 * Parses the value of the Content-Length header field.
+	 *
+	 * @param contentLength
+	 *            the value of the field.
+	 * @return the length of the body.
+	 * @throws IllegalArgumentException
+	 *             if the value is not a positive integer.
+	 */
+	private static long parseContentLength(String contentLength) {
+		long length;
+		try {
+			length = Long.parseLong(contentLength);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(MALFORMED_HTTP_REQUEST);
+		}
+		if (length < 0) {
+			throw new IllegalArgumentException(MALFORMED_HTTP_REQUEST);
+		}
+		return length;
+	}
+
 	/**
 	 * First step is to extract the method. The HTTP server supports only the GET and POST methods. It can be written
 	 * upper case or lower case depending of the client.
@@ -304,27 +765,42 @@ public class HTTPRequest {
 	 * @throws IOException
 	 *             if connection has been lost.
 	 */
-	private static int parseMethod(InputStream input) throws IOException {
-		StringBuilder builder = new StringBuilder();
+	private int parseMethod(InputStream input) throws IOException {
+		StringBuilder builder = this.sbKey;
+		builder.setLength(0);
 		int read;
 		while ((read = input.read()) != ' ') {
 			if (read == -1) {
 				throw new IOException(CONNECTION_LOST);
 			}
+			if (builder.length() == MAX_METHOD_LENGTH) {
+				// longer than all the supported methods
+				throw new IllegalArgumentException(MALFORMED_HTTP_REQUEST);
+			}
 			builder.append((char) read);
 		}
+		return toMethod(builder);
+	}
 
-		String inputMethod = builder.toString().toUpperCase();
-		switch (inputMethod) {
-		case HTTPConstants.HTTP_METHOD_GET:
+	/**
+	 * Gets the value of a method, written upper case or lower case.
+	 *
+	 * @param builder
+	 *            the name of the method.
+	 * @return one of {@link #GET}, {@link #POST}, {@link #PUT} or {@link #DELETE}.
+	 * @throws IllegalArgumentException
+	 *             if the method is not supported.
+	 */
+	private static int toMethod(StringBuilder builder) {
+		if (equalsIgnoreCase(builder, HTTPConstants.HTTP_METHOD_GET)) {
 			return GET;
-		case HTTPConstants.HTTP_METHOD_POST:
+		} else if (equalsIgnoreCase(builder, HTTPConstants.HTTP_METHOD_POST)) {
 			return POST;
-		case HTTPConstants.HTTP_METHOD_PUT:
+		} else if (equalsIgnoreCase(builder, HTTPConstants.HTTP_METHOD_PUT)) {
 			return PUT;
-		case HTTPConstants.HTTP_METHOD_DELETE:
+		} else if (equalsIgnoreCase(builder, HTTPConstants.HTTP_METHOD_DELETE)) {
 			return DELETE;
-		default:
+		} else {
 			throw new IllegalArgumentException(MALFORMED_HTTP_REQUEST);
 		}
 	}
@@ -337,9 +813,14 @@ public class HTTPRequest {
 	 * @return {@code true} if succeed, {@code false} otherwise
 	 * @throws IOException
 	 *             if connection has been lost.
+	 * @throws RequestLimitException
+	 *             if the URI is too long.
 	 */
-	private static String parseURI(InputStream input, Map<String, String> parameters) throws IOException {
-		StringBuilder sb = new StringBuilder(Math.min(INITIAL_URI_CAPACITY, input.available()));
+	private String parseURI(InputStream input) throws IOException {
+		StringBuilder sb = this.sbKey;
+		sb.setLength(0);
+		int maxLength = this.limits.getMaxURILength();
+		boolean hasParameters = false;
 		// main loop
 		loop: while (true) {
 			// the stream should now be something like
@@ -351,8 +832,7 @@ public class HTTPRequest {
 
 			switch (i) {
 			case QUESTION_MARK_CHAR:
-				// parse parameters
-				ParameterParser.parseParameters(input, parameters);
+				hasParameters = true;
 				break loop;
 			case SPACE_CHAR:
 				break loop;
@@ -362,15 +842,26 @@ public class HTTPRequest {
 				break;
 
 			}
+			if (sb.length() >= maxLength) {
+				throw new RequestLimitException(HTTPConstants.HTTP_STATUS_URI_TOO_LONG);
+			}
 			sb.append((char) i); // assuming ASCII
 
 		}
 
-		return sb.toString();
+		String uri = sb.toString();
+		if (hasParameters) {
+			// parse parameters
+			if (ParameterParser.parseParameters(input, this.parameters, this.sbKey, this.sbValue,
+					maxLength - uri.length()) == -1) {
+				throw new RequestLimitException(HTTPConstants.HTTP_STATUS_URI_TOO_LONG);
+			}
+		}
+		return uri;
 	}
 
-	private static String parseVersion(InputStream input) throws IOException {
-		byte[] version = new byte[VERSION_SIZE]; // HTTPx.y\r\n
+	private String parseVersion(InputStream input) throws IOException {
+		byte[] version = this.versionBuffer; // HTTPx.y\r\n
 		int readBytes = 0;
 		while (readBytes < VERSION_SIZE) {
 			int r = input.read(version, readBytes, VERSION_SIZE - readBytes);
@@ -380,7 +871,12 @@ public class HTTPRequest {
 			}
 			readBytes += r;
 		}
-		return new String(version, 0, VERSION_SIZE - 2);
+		if (startsWith(version, VERSION_HTTP_1_1)) {
+			return VERSION_HTTP_1_1;
+		} else if (startsWith(version, VERSION_HTTP_1_0)) {
+			return VERSION_HTTP_1_0;
+		}
+		return new String(version, 0, VERSION_LENGTH);
 	}
 
 	/**
@@ -388,18 +884,23 @@ public class HTTPRequest {
 	 *
 	 * @param input
 	 *            {@link InputStream} that contains the HTTP request
-	 * @return
 	 * @throws IOException
 	 *             if connection has been lost
+	 * @throws RequestLimitException
+	 *             if the header has too many fields or is too large.
 	 */
-	private static Map<String, String> parseHeaderFields(InputStream input) throws IOException {
+	private void parseHeaderFields(InputStream input) throws IOException {
 		// headers is a hashmap
 		// the stream look like "foo:bar zor:zorvalue "
-		HashMap<String, String> header = new HashMap<>(INITIAL_MAP_CAPACITY); // most HTTP requests have less
-		// than 10 header fields
+		Map<String, String> header = this.header;
+		int remainingFields = this.limits.getMaxHeaderFields();
+		// the characters of the names and values, and the ignored spaces
+		int remainingSize = this.limits.getMaxHeaderSize();
 
-		StringBuilder sbKey = new StringBuilder(INITIAL_STRING_BUILDER_CAPACITY);
-		StringBuilder sbValue = new StringBuilder(INITIAL_STRING_BUILDER_CAPACITY);
+		StringBuilder sbKey = this.sbKey;
+		StringBuilder sbValue = this.sbValue;
+		sbKey.setLength(0);
+		sbValue.setLength(0);
 		StringBuilder curBuffer = sbKey;
 		boolean pendingSpace = false;
 		// read char before entering the loop. This allows to loop without
@@ -437,6 +938,9 @@ public class HTTPRequest {
 				// A single space will be appended to curBuffer only when
 				// something else than a space is appended.
 				pendingSpace = true;
+				if (--remainingSize < 0) {
+					throw new RequestLimitException(HTTPConstants.HTTP_STATUS_REQUEST_HEADER_FIELDS_TOO_LARGE);
+				}
 				// ignore this char: read next one and loop
 				i = input.read();
 				continue loop;
@@ -467,13 +971,16 @@ public class HTTPRequest {
 				 * if the key ends with asterisk "*", this means an RFC5987 encoded header value. Since the RFC5987 is
 				 * not implemented, these kind of header fields are ignored
 				 */
+				if (--remainingFields < 0) {
+					throw new RequestLimitException(HTTPConstants.HTTP_STATUS_REQUEST_HEADER_FIELDS_TOO_LARGE);
+				}
 				if (sbKey.charAt(sbKey.length() - 1) != '*') {
-					header.put(sbKey.toString().toLowerCase(), sbValue.toString());
+					header.put(getFieldName(sbKey), sbValue.toString());
 				}
 
 				// reuse buffers
-				sbValue.delete(0, sbValue.length());
-				sbKey.delete(0, sbKey.length());
+				sbValue.setLength(0);
+				sbKey.setLength(0);
 				curBuffer = sbKey;
 
 				// loop without reading a new character (already read to
@@ -488,32 +995,135 @@ public class HTTPRequest {
 					curBuffer.append(SPACE_CHAR);
 				}
 			}
+			if (--remainingSize < 0) {
+				throw new RequestLimitException(HTTPConstants.HTTP_STATUS_REQUEST_HEADER_FIELDS_TOO_LARGE);
+			}
 			curBuffer.append((char) i);
 			// read next char
 			i = input.read();
 		}
 
-		return header;
 	}
 
-	private static Map<String, String> parseCookies(String cookiesHeader) {
-		Map<String, String> cookies = new HashMap<>();
+	/**
+	 * Gets the lower case name of a header field.
+	 *
+	 * @param name
+	 *            the name as sent by the client.
+	 * @return the lower case name.
+	 */
+	private static String getFieldName(StringBuilder name) {
+		for (String commonField : COMMON_FIELDS) {
+			if (equalsIgnoreCase(name, commonField)) {
+				return commonField;
+			}
+		}
+		return name.toString().toLowerCase();
+	}
+
+	private static boolean equalsIgnoreCase(StringBuilder builder, String string) {
+		int length = string.length();
+		if (builder.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			char c1 = builder.charAt(i);
+			char c2 = string.charAt(i);
+			if (c1 != c2 && Character.toLowerCase(c1) != Character.toLowerCase(c2)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean startsWith(byte[] bytes, String string) {
+		for (int i = string.length() - 1; i >= 0; i--) {
+			if (bytes[i] != string.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
 
+	/**
+	 * Parses the cookies of the header field in a single pass (RFC 6265, 5.4).
+	 * <p>
+	 * The spaces around the names and the values are ignored, as well as the double quotes around the values and the
+	 * cookies without value. When a name appears several times, the first value is kept.
+	 *
+	 * @param cookiesHeader
+	 *            the value of the cookie header field, may be <code>null</code>.
+	 * @param cookies
+	 *            the map filled with all the cookies, if <code>name</code> is <code>null</code>.
+	 * @param name
+	 *            the name of the cookie to find, or <code>null</code> to parse all the cookies.
+	 * @return the value of the cookie named <code>name</code>, or <code>null</code> if not found.
+	 */
+	private static String parseCookies(String cookiesHeader, Map<String, String> cookies, String name) {
 		if (cookiesHeader == null) {
-			return cookies;
+			return null;
 		}
 
-		int prev = 0;
-		int next;
+		int length = cookiesHeader.length();
+		int index = 0;
+		while (index < length) {
+			index = skipSpaces(cookiesHeader, index, length);
+			int nameStart = index;
+			char c;
+			while (index < length && (c = cookiesHeader.charAt(index)) != '=' && c != ';') {
+				index++;
+			}
+			int nameEnd = trimSpaces(cookiesHeader, nameStart, index);
+
+			if (index < length && cookiesHeader.charAt(index) == '=') {
+				index = skipSpaces(cookiesHeader, index + 1, length);
+				int valueStart = index;
+				while (index < length && cookiesHeader.charAt(index) != ';') {
+					index++;
+				}
+				int valueEnd = trimSpaces(cookiesHeader, valueStart, index);
+				if (valueEnd - valueStart >= 2 && cookiesHeader.charAt(valueStart) == '"'
+						&& cookiesHeader.charAt(valueEnd - 1) == '"') {
+					valueStart++;
+					valueEnd--;
+				}
 
-		while (prev != -1 && (next = cookiesHeader.indexOf('=', prev)) != -1) {
-			String name = cookiesHeader.substring(prev, next);
-			String value = cookiesHeader.substring(next + 1);
-			cookies.put(name, value);
-			prev = cookiesHeader.indexOf(';', next);
+				int nameLength = nameEnd - nameStart;
+				if (name != null) {
+					if (nameLength == name.length() && cookiesHeader.startsWith(name, nameStart)) {
+						return cookiesHeader.substring(valueStart, valueEnd);
+					}
+				} else if (nameLength > 0) {
+					String cookieName = cookiesHeader.substring(nameStart, nameEnd);
+					if (!cookies.containsKey(cookieName)) {
+						cookies.put(cookieName, cookiesHeader.substring(valueStart, valueEnd));
+					}
+				}
+			}
+			index++; // skip the semicolon
 		}
+		return null;
+	}
+
+	private static int skipSpaces(String string, int index, int end) {
+		while (index < end && isSpace(string.charAt(index))) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Gets the end of a substring without its trailing spaces.
+	 */
+	private static int trimSpaces(String string, int start, int end) {
+		while (end > start && isSpace(string.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
 
-		return cookies;
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == TABULATION_CHAR;
 	}
 
 }
@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2009-2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2009-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -13,11 +13,11 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import ej.hoka.http.encoding.HTTPEncodingRegistry;
 import ej.hoka.http.encoding.IHTTPEncodingHandler;
 import ej.hoka.http.support.MIMEUtils;
+import ej.hoka.http2.HPACKEncoder;
 import ej.hoka.log.Messages;
 import ej.util.message.Level;
 
@@ -41,6 +41,43 @@ public class HTTPResponse {
 	 */
 	private static final String RESPONSE_CONTENTTYPE = HTTPConstants.FIELD_CONTENT_TYPE + RESPONSE_COLON;
 
+	/**
+	 * The Connection: String.
+	 */
+	private static final String RESPONSE_CONNECTION = HTTPConstants.FIELD_CONNECTION + RESPONSE_COLON;
+
+	/**
+	 * The Set-Cookie header field.
+	 */
+	private static final String FIELD_SET_COOKIE = "set-cookie"; //$NON-NLS-1$
+
+	/**
+	 * The Set-Cookie: String.
+	 */
+	private static final String RESPONSE_SET_COOKIE = FIELD_SET_COOKIE + RESPONSE_COLON;
+
+	/**
+	 * The pseudo-header field of the status, in an HTTP/2 header block.
+	 */
+	private static final String PSEUDO_HEADER_STATUS = ":status"; //$NON-NLS-1$
+
+	private static final int STATUS_CODE_LENGTH = 3;
+
+	/**
+	 * The header fields specific to an HTTP/1.1 connection, not sent in HTTP/2 (RFC 7540 8.1.2.2).
+	 */
+	private static final String[] CONNECTION_FIELDS = { HTTPConstants.FIELD_CONNECTION, "keep-alive", //$NON-NLS-1$
+			HTTPConstants.FIELD_TRANSFER_ENCODING, HTTPConstants.FIELD_UPGRADE, "proxy-connection" }; //$NON-NLS-1$
+
+	private static final char COOKIE_VALUE_SEPARATOR = '=';
+
+	/**
+	 * The separator of the values of a header field combined in one line.
+	 */
+	private static final String VALUE_SEPARATOR = ", "; //$NON-NLS-1$
+
+	private static final int INITIAL_HEADER_CAPACITY = 4;
+
 	/**
 	 * The status.
 	 */
@@ -52,7 +89,7 @@ public class HTTPResponse {
 	private String mimeType;
 
 	/**
-	 * Unique field to store the data object to be used, it can be either a byte[] or an InputStream.
+	 * Unique field to store the data object to be used, it can be either a byte[], an InputStream or a BodyWriter.
 	 */
 	private Object data;
 
@@ -62,9 +99,20 @@ public class HTTPResponse {
 	private long length = -1; // -1 means unknown
 
 	/**
-	 * HTTP Response headers.
+	 * HTTP Response header fields, in the order they are added. A name may appear several times, with distinct
+	 * values. Allocated when the first field is added.
+	 */
+	private String[] headerNames;
+	private String[] headerValues;
+	private int headerCount;
+
+	/**
+	 * The cookies set by this response and their values, <code>null</code> to delete the cookie. Allocated when the
+	 * first cookie is set.
 	 */
-	private final HashMap<String, String> header = new HashMap<>(5);
+	private Cookie[] cookies;
+	private String[] cookieValues;
+	private int cookieCount;
 
 	/**
 	 * Creates an empty {@link HTTPResponse}.
@@ -175,6 +223,29 @@ public class HTTPResponse {
 		setMimeType(mimeType);
 	}
 
+	/**
+	 * Creates a new {@link HTTPResponse} whose body is generated by the {@link BodyWriter} <code>body</code> while the
+	 * response is sent.
+	 * <p>
+	 * The body is sent with the chunked transfer coding, without being stored in memory.
+	 *
+	 * @param status
+	 *            the status of the response.
+	 * @param mimeType
+	 *            the mime type of the response.
+	 * @param body
+	 *            the {@link BodyWriter} generating the response data.
+	 */
+	public HTTPResponse(String status, String mimeType, BodyWriter body) {
+		if (body == null) {
+			throw new IllegalArgumentException();
+		}
+		this.data = body;
+		setLength(-1);
+		setStatus(status);
+		setMimeType(mimeType);
+	}
+
 	/**
 	 * Creates a {@link HTTPResponse} with given status and empty body.
 	 *
@@ -188,37 +259,211 @@ public class HTTPResponse {
 
 	/**
 	 * Adds a response header field.
+	 * <p>
+	 * The values of the fields with the same name, ignoring case, are replaced by this value. Use
+	 * {@link #appendHeaderField(String, String)} to send several values.
 	 *
 	 * @param name
 	 *            name of the header field to set.
 	 * @param value
 	 *            value of the header filed.
+	 * @throws IllegalArgumentException
+	 *             if the name or the value contains a character that cannot be sent in a header field.
 	 */
 	public void addHeaderField(String name, String value) {
-		this.header.put(name, value);
+		checkHeaderField(name, value);
+		int index = indexOfHeaderField(name, 0);
+		if (index < 0) {
+			appendHeaderField(name, value);
+			return;
+		}
+		this.headerValues[index] = value;
+		// remove the other occurrences
+		while ((index = indexOfHeaderField(name, index + 1)) >= 0) {
+			removeHeaderField(index);
+			index--;
+		}
 	}
 
 	/**
-	 * Returns the response header.
+	 * Appends a response header field, after the fields already added, even if a field has the same name.
+	 *
+	 * @param name
+	 *            name of the header field to append.
+	 * @param value
+	 *            value of the header filed.
+	 * @throws IllegalArgumentException
+	 *             if the name or the value contains a character that cannot be sent in a header field.
+	 */
+	public void appendHeaderField(String name, String value) {
+		checkHeaderField(name, value);
+		String[] names = this.headerNames;
+		int count = this.headerCount;
+		if (names == null) {
+			this.headerNames = new String[INITIAL_HEADER_CAPACITY];
+			this.headerValues = new String[INITIAL_HEADER_CAPACITY];
+		} else if (count == names.length) {
+			String[] newNames = new String[count * 2];
+			System.arraycopy(names, 0, newNames, 0, count);
+			String[] newValues = new String[count * 2];
+			System.arraycopy(this.headerValues, 0, newValues, 0, count);
+			this.headerNames = newNames;
+			this.headerValues = newValues;
+		}
+		this.headerNames[count] = name;
+		this.headerValues[count] = value;
+		this.headerCount = count + 1;
+	}
+
+	/**
+	 * Removes the response header fields with the given name, ignoring case.
+	 *
+	 * @param name
+	 *            name of the header field to remove.
+	 */
+	public void removeHeaderField(String name) {
+		int index = 0;
+		while ((index = indexOfHeaderField(name, index)) >= 0) {
+			removeHeaderField(index);
+		}
+	}
+
+	private void removeHeaderField(int index) {
+		int count = this.headerCount - 1;
+		System.arraycopy(this.headerNames, index + 1, this.headerNames, index, count - index);
+		System.arraycopy(this.headerValues, index + 1, this.headerValues, index, count - index);
+		this.headerNames[count] = null;
+		this.headerValues[count] = null;
+		this.headerCount = count;
+	}
+
+	/**
+	 * Checks that a header field can be written as is: the header is encoded in ISO-8859-1, one byte per character,
+	 * and a line break would end the field.
+	 */
+	private static void checkHeaderField(String name, String value) {
+		int nameLength = name.length();
+		if (nameLength == 0) {
+			throw new IllegalArgumentException(name);
+		}
+		for (int i = nameLength - 1; i >= 0; i--) {
+			char c = name.charAt(i);
+			if (c <= ' ' || c >= 0x7F || c == ':') {
+				throw new IllegalArgumentException(name);
+			}
+		}
+		for (int i = value.length() - 1; i >= 0; i--) {
+			char c = value.charAt(i);
+			if ((c < ' ' && c != '\t') || c == 0x7F || c > 0xFF) {
+				throw new IllegalArgumentException(value);
+			}
+		}
+	}
+
+	private int indexOfHeaderField(String name, int from) {
+		String[] names = this.headerNames;
+		for (int i = from, n = this.headerCount; i < n; i++) {
+			if (names[i].equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Sets a cookie, sent in its own <code>Set-Cookie</code> header field.
+	 * <p>
+	 * Setting a cookie with the same name replaces its value.
+	 *
+	 * @param cookie
+	 *            the name and the attributes of the cookie.
+	 * @param value
+	 *            the value of the cookie.
+	 * @throws IllegalArgumentException
+	 *             if the value contains a character not allowed in a cookie value.
+	 */
+	public void setCookie(Cookie cookie, String value) {
+		for (int i = value.length() - 1; i >= 0; i--) {
+			char c = value.charAt(i);
+			if (c <= ' ' || c == '"' || c == ',' || c == ';' || c == '\\' || c >= 0x7F) {
+				throw new IllegalArgumentException(value);
+			}
+		}
+		putCookie(cookie, value);
+	}
+
+	/**
+	 * Deletes a cookie from the client, by setting it with an expiration date in the past.
+	 *
+	 * @param cookie
+	 *            the name and the attributes of the cookie.
+	 */
+	public void deleteCookie(Cookie cookie) {
+		putCookie(cookie, null);
+	}
+
+	private void putCookie(Cookie cookie, String value) {
+		Cookie[] cookies = this.cookies;
+		int count = this.cookieCount;
+		String name = cookie.getName();
+		for (int i = 0; i < count; i++) {
+			if (cookies[i].getName().equals(name)) {
+				cookies[i] = cookie;
+				this.cookieValues[i] = value;
+				return;
+			}
+		}
+
+		if (cookies == null) {
+			cookies = new Cookie[1];
+			this.cookieValues = new String[1];
+		} else if (count == cookies.length) {
+			cookies = new Cookie[count * 2];
+			System.arraycopy(this.cookies, 0, cookies, 0, count);
+			String[] cookieValues = new String[count * 2];
+			System.arraycopy(this.cookieValues, 0, cookieValues, 0, count);
+			this.cookieValues = cookieValues;
+		}
+		cookies[count] = cookie;
+		this.cookieValues[count] = value;
+		this.cookies = cookies;
+		this.cookieCount = count + 1;
+	}
+
+	/**
+	 * Returns a copy of the response header.
+	 * <p>
+	 * The values of the fields with the same name, ignoring case, are combined, separated by commas.
 	 *
 	 * @return a {@link Map} of (String,String) representing the HTTP header fields (may be empty).
 	 */
 	public Map<String, String> getHeader() {
-		return (Map<String, String>) this.header.clone();
+		int count = this.headerCount;
+		HashMap<String, String> header = new HashMap<>(count);
+		for (int i = 0; i < count; i++) {
+			// the name of the first occurrence, ignoring case
+			String name = this.headerNames[indexOfHeaderField(this.headerNames[i], 0)];
+			String previous = header.get(name);
+			String value = this.headerValues[i];
+			header.put(name, previous == null ? value : previous + VALUE_SEPARATOR + value);
+		}
+		return header;
 	}
 
 	/**
-	 * Returns the header field value associated to the given header field <code>key</code>.
+	 * Returns the header field value associated to the given header field <code>key</code>, ignoring case.
 	 *
 	 * @param key
 	 *            a header field name (if <code>null</code>, <code>null</code> is returned).
-	 * @return the replied header field value, <code>null</code> if the header field is not found.
+	 * @return the replied header field value, the first one if the field has several values, <code>null</code> if the
+	 *         header field is not found.
 	 */
 	public String getHeaderField(String key) {
 		if (key == null) {
 			return null;
 		}
-		return this.header.get(key.toLowerCase());
+		int index = indexOfHeaderField(key, 0);
+		return index < 0 ? null : this.headerValues[index];
 	}
 
 	/**
@@ -306,9 +551,9 @@ public class HTTPResponse {
 	 */
 	private void setLength(long length) {
 		if (length < 0) {
-			this.header.remove(HTTPConstants.FIELD_CONTENT_LENGTH);
+			removeHeaderField(HTTPConstants.FIELD_CONTENT_LENGTH);
 		} else {
-			this.header.put(HTTPConstants.FIELD_CONTENT_LENGTH, Long.toString(length));
+			addHeaderField(HTTPConstants.FIELD_CONTENT_LENGTH, Long.toString(length));
 		}
 		this.length = length;
 	}
@@ -318,8 +563,13 @@ public class HTTPResponse {
 	 *
 	 * @param mimeType
 	 *            the response MIME-TYPE to set.
+	 * @throws IllegalArgumentException
+	 *             if the MIME-TYPE contains a character that cannot be sent in a header field.
 	 */
 	public final void setMimeType(String mimeType) {
+		if (mimeType != null) {
+			checkHeaderField(HTTPConstants.FIELD_CONTENT_TYPE, mimeType);
+		}
 		this.mimeType = mimeType;
 	}
 
@@ -338,26 +588,30 @@ public class HTTPResponse {
 	 * Sends the {@link HTTPResponse} to the {@link OutputStream}.
 	 * <p>
 	 * If the data of this response is an {@link InputStream}, closes it.
+	 * <p>
+	 * The <code>connection</code>, <code>content-encoding</code> and <code>transfer-encoding</code> header fields are
+	 * written according to the parameters rather than stored in this response, since the same response instance may be
+	 * sent concurrently on several connections.
 	 *
+	 * @param buffer
+	 *            the buffer used to write the header and to copy the data stream, reused from one response to another.
+	 * @param keepAlive
+	 *            whether the connection is kept open after this response.
 	 * @throws IOException
 	 *
 	 */
 	/* default */ void sendResponse(OutputStream outputStream, IHTTPEncodingHandler encodingHandler,
-			HTTPEncodingRegistry encodingRegistry, int bufferSize) throws IOException {
-		if (encodingHandler != null) {
-			addHeaderField(HTTPConstants.FIELD_CONTENT_ENCODING, encodingHandler.getId());
-		}
-
-		long length = getLength();
+			HTTPEncodingRegistry encodingRegistry, byte[] buffer, boolean keepAlive) throws IOException {
+		String contentEncoding = encodingHandler != null ? encodingHandler.getId() : null;
 
-		if (length < 0) {
+		String transferEncoding = null;
+		if (getLength() < 0) {
 			// data will be transmitted using chunked transfer coding
 			// only when dataStream is used, the size is known otherwise
-			addHeaderField(HTTPConstants.FIELD_TRANSFER_ENCODING,
-					encodingRegistry.getChunkedTransferCodingHandler().getId());
+			transferEncoding = encodingRegistry.getChunkedTransferCodingHandler().getId();
 		} // else the length is already defined in a header by the response
 
-		writeHTTPHeader(outputStream);
+		writeHTTPHeader(outputStream, buffer, keepAlive, contentEncoding, transferEncoding);
 
 		Object data = this.data;
 		// only one of the next data can be defined.
@@ -371,9 +625,11 @@ public class HTTPResponse {
 		if (data instanceof byte[]) {
 			byte[] dataArray = (byte[]) data;
 			sendRawDataResponse(dataArray, outputStream, encodingHandler, encodingRegistry);
+		} else if (data instanceof BodyWriter) {
+			sendBodyWriterResponse((BodyWriter) data, outputStream, encodingHandler, encodingRegistry);
 		} else if (data != null) {
 			try (InputStream dataStream = (InputStream) data) {
-				sendInputStreamResponse(dataStream, outputStream, encodingHandler, encodingRegistry, bufferSize);
+				sendInputStreamResponse(dataStream, outputStream, encodingHandler, encodingRegistry, buffer);
 			}
 		}
 
@@ -394,13 +650,12 @@ public class HTTPResponse {
 	}
 
 	private void sendInputStreamResponse(InputStream dataStream, OutputStream outputStream,
-			IHTTPEncodingHandler encodingHandler, HTTPEncodingRegistry encodingRegistry, int bufferSize) {
+			IHTTPEncodingHandler encodingHandler, HTTPEncodingRegistry encodingRegistry, byte[] readBuffer) {
 		try (OutputStream dataOutput = (this.length == -1)
 				? encodingRegistry.getChunkedTransferCodingHandler().open(this, outputStream)
 				: encodingRegistry.getIdentityTransferCodingHandler().open(this, outputStream)) {
 			try (OutputStream ecodedOutput = (encodingHandler != null) ? encodingHandler.open(dataOutput) : null) {
 				OutputStream output = (ecodedOutput != null) ? ecodedOutput : dataOutput;
-				final byte[] readBuffer = new byte[bufferSize];
 				while (true) {
 					int len = dataStream.read(readBuffer);
 
@@ -417,40 +672,251 @@ public class HTTPResponse {
 		}
 	}
 
+	private void sendBodyWriterResponse(BodyWriter bodyWriter, OutputStream outputStream,
+			IHTTPEncodingHandler encodingHandler, HTTPEncodingRegistry encodingRegistry) {
+		try (OutputStream dataOutput = encodingRegistry.getChunkedTransferCodingHandler().open(this, outputStream)) {
+			try (OutputStream ecodedOutput = (encodingHandler != null) ? encodingHandler.open(dataOutput) : null) {
+				bodyWriter.write((ecodedOutput != null) ? ecodedOutput : dataOutput);
+			}
+		} catch (Throwable t) {
+			Messages.LOGGER.log(Level.SEVERE, Messages.CATEGORY_HOKA, Messages.ERROR_UNKNOWN, t);
+		}
+	}
+
+	/**
+	 * Encodes the status and the header of this response in a header block of an HTTP/2 stream.
+	 * <p>
+	 * The header fields specific to a connection are not encoded, they are meaningless in HTTP/2. The
+	 * <code>content-encoding</code> header field is written according to the parameter rather than stored in this
+	 * response, like in {@link #sendResponse(OutputStream, IHTTPEncodingHandler, HTTPEncodingRegistry, byte[], boolean)}.
+	 *
+	 * @param encoder
+	 *            the encoder of the header block.
+	 * @param contentEncoding
+	 *            the content coding applied to the body, replacing the one of the response, or <code>null</code>.
+	 */
+	/* default */ void encodeHTTP2Header(HPACKEncoder encoder, String contentEncoding) {
+		String status = getStatus();
+		encoder.encode(PSEUDO_HEADER_STATUS, status.substring(0, Math.min(status.length(), STATUS_CODE_LENGTH)));
+
+		if (this.mimeType != null) {
+			encoder.encode(HTTPConstants.FIELD_CONTENT_TYPE, this.mimeType);
+		}
+
+		String[] names = this.headerNames;
+		String[] values = this.headerValues;
+		for (int i = 0, n = this.headerCount; i < n; i++) {
+			String name = names[i];
+			if (isConnectionField(name) || (contentEncoding != null
+					// the length of the encoded body is unknown
+					&& (name.equalsIgnoreCase(HTTPConstants.FIELD_CONTENT_ENCODING)
+							|| name.equalsIgnoreCase(HTTPConstants.FIELD_CONTENT_LENGTH)))) {
+				continue;
+			}
+			encoder.encode(name, values[i]);
+		}
+		if (contentEncoding != null) {
+			encoder.encode(HTTPConstants.FIELD_CONTENT_ENCODING, contentEncoding);
+		}
+
+		Cookie[] cookies = this.cookies;
+		String[] cookieValues = this.cookieValues;
+		for (int i = 0, n = this.cookieCount; i < n; i++) {
+			Cookie cookie = cookies[i];
+			String value = cookieValues[i];
+			StringBuilder builder = new StringBuilder(cookie.getName()).append(COOKIE_VALUE_SEPARATOR);
+			if (value != null) {
+				builder.append(value).append(cookie.getAttributes());
+			} else {
+				builder.append(cookie.getDeletionAttributes());
+			}
+			encoder.encode(FIELD_SET_COOKIE, builder.toString());
+		}
+	}
+
+	private static boolean isConnectionField(String name) {
+		for (String connectionField : CONNECTION_FIELDS) {
+			if (name.equalsIgnoreCase(connectionField)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether this response has a body, even empty.
+	 *
+	 * @return {@code true} if this response has data, {@code false} otherwise.
+	 */
+	/* default */ boolean hasBody() {
+		return this.data != null;
+	}
+
+	/**
+	 * Writes the body of this response to the output stream of an HTTP/2 stream, then closes it to end the stream, even
+	 * if the stream of the content coding does not close it.
+	 * <p>
+	 * If the data of this response is an {@link InputStream}, closes it. Unlike in HTTP/1.1, the output stream is not
+	 * closed when the data cannot be read: the body would look complete to the client.
+	 *
+	 * @param output
+	 *            the output stream of the HTTP/2 stream, splitting the body in frames.
+	 * @param encodingHandler
+	 *            the content coding applied to the body, or <code>null</code>.
+	 * @param buffer
+	 *            the buffer used to copy the data stream.
+	 * @throws IOException
+	 *             if the data cannot be read or the body cannot be sent.
+	 */
+	/* default */ void writeHTTP2Body(OutputStream output, IHTTPEncodingHandler encodingHandler, byte[] buffer)
+			throws IOException {
+		OutputStream bodyOutput = encodingHandler != null ? encodingHandler.open(output) : output;
+		Object data = this.data;
+		if (data instanceof byte[]) {
+			bodyOutput.write((byte[]) data);
+		} else if (data instanceof BodyWriter) {
+			((BodyWriter) data).write(bodyOutput);
+		} else if (data != null) {
+			try (InputStream dataStream = (InputStream) data) {
+				int len;
+				while ((len = dataStream.read(buffer)) >= 0) {
+					bodyOutput.write(buffer, 0, len);
+				}
+			}
+		}
+		bodyOutput.close();
+		// an encoding handler may not close the stream it wraps, whose closing ends the stream
+		output.close();
+	}
+
+	/**
+	 * Closes the data of this response when it is not sent.
+	 */
+	/* default */ void closeBody() {
+		Object data = this.data;
+		if (data instanceof InputStream) {
+			try {
+				((InputStream) data).close();
+			} catch (IOException e) {
+				// the data is not needed anymore
+			}
+		}
+	}
+
 	/**
 	 * Writes the HTTP Header using the {@link OutputStream} <code>output</code>.
+	 * <p>
+	 * The header is encoded in <code>buffer</code>, which is written to <code>output</code> when full.
 	 *
 	 * @param output
 	 *            {@link OutputStream}
+	 * @param buffer
+	 *            the buffer used to encode the header.
+	 * @param keepAlive
+	 *            whether the connection is kept open after this response.
+	 * @param contentEncoding
+	 *            the content coding applied to the body, replacing the one of the response, or <code>null</code>.
+	 * @param transferEncoding
+	 *            the transfer coding applied to the body, replacing the one of the response, or <code>null</code>.
 	 * @throws IOException
 	 *             when the connection is lost
 	 */
-	private void writeHTTPHeader(OutputStream output) throws IOException {
-		final byte[] eofHeader = HTTPConstants.END_OF_LINE.getBytes();
+	private void writeHTTPHeader(OutputStream output, byte[] buffer, boolean keepAlive, String contentEncoding,
+			String transferEncoding) throws IOException {
+		String eofHeader = HTTPConstants.END_OF_LINE;
 
-		output.write(RESPONSE_HTTP11.getBytes());
-		output.write(getStatus().getBytes());
-		output.write(' ');
-		output.write(eofHeader);
+		int length = 0;
+		length = write(output, buffer, length, RESPONSE_HTTP11);
+		length = write(output, buffer, length, getStatus());
+		length = write(output, buffer, length, " "); //$NON-NLS-1$
+		length = write(output, buffer, length, eofHeader);
 
 		if (this.mimeType != null) {
-			output.write(RESPONSE_CONTENTTYPE.getBytes());
-			output.write(this.mimeType.getBytes());
-			output.write(eofHeader);
+			length = write(output, buffer, length, RESPONSE_CONTENTTYPE);
+			length = write(output, buffer, length, this.mimeType);
+			length = write(output, buffer, length, eofHeader);
 		}
 
-		// add header parameters
-		Map<String, String> header = getHeader();
-		for (Entry<String, String> entry : header.entrySet()) {
-			String key = entry.getKey();
-			String value = entry.getValue();
-			output.write(key.getBytes());
-			output.write(RESPONSE_COLON.getBytes());
-			output.write(value.getBytes());
-			output.write(eofHeader);
+		// add header parameters, in order
+		String[] names = this.headerNames;
+		String[] values = this.headerValues;
+		for (int i = 0, n = this.headerCount; i < n; i++) {
+			String name = names[i];
+			if (name.equalsIgnoreCase(HTTPConstants.FIELD_CONNECTION)
+					|| (contentEncoding != null && name.equalsIgnoreCase(HTTPConstants.FIELD_CONTENT_ENCODING))
+					|| (transferEncoding != null && name.equalsIgnoreCase(HTTPConstants.FIELD_TRANSFER_ENCODING))) {
+				continue;
+			}
+			length = writeHeaderField(output, buffer, length, name, values[i]);
+		}
+		if (contentEncoding != null) {
+			length = writeHeaderField(output, buffer, length, HTTPConstants.FIELD_CONTENT_ENCODING, contentEncoding);
 		}
+		if (transferEncoding != null) {
+			length = writeHeaderField(output, buffer, length, HTTPConstants.FIELD_TRANSFER_ENCODING, transferEncoding);
+		}
+
+		// one header field per cookie, written by parts
+		Cookie[] cookies = this.cookies;
+		String[] cookieValues = this.cookieValues;
+		for (int i = 0, n = this.cookieCount; i < n; i++) {
+			Cookie cookie = cookies[i];
+			String value = cookieValues[i];
+			length = write(output, buffer, length, RESPONSE_SET_COOKIE);
+			length = write(output, buffer, length, cookie.getName());
+			length = write(output, buffer, length, COOKIE_VALUE_SEPARATOR);
+			if (value != null) {
+				length = write(output, buffer, length, value);
+				length = write(output, buffer, length, cookie.getAttributes());
+			} else {
+				length = write(output, buffer, length, cookie.getDeletionAttributes());
+			}
+			length = write(output, buffer, length, eofHeader);
+		}
+
+		length = write(output, buffer, length, RESPONSE_CONNECTION);
+		length = write(output, buffer, length, keepAlive ? HTTPConstants.FIELD_CONNECTION_VALUE_KEEP_ALIVE
+				: HTTPConstants.FIELD_CONNECTION_VALUE_CLOSE);
+		length = write(output, buffer, length, eofHeader);
+
+		length = write(output, buffer, length, eofHeader);
+		output.write(buffer, 0, length);
+	}
 
-		output.write(eofHeader);
+	private static int writeHeaderField(OutputStream output, byte[] buffer, int length, String name, String value)
+			throws IOException {
+		length = write(output, buffer, length, name);
+		length = write(output, buffer, length, RESPONSE_COLON);
+		length = write(output, buffer, length, value);
+		return write(output, buffer, length, HTTPConstants.END_OF_LINE);
+	}
+
+	/**
+	 * Encodes a string in the buffer, writing the buffer to the output stream each time it is full.
+	 * <p>
+	 * The characters are encoded in ISO-8859-1: the header fields are checked when they are set.
+	 *
+	 * @return the new length of the data in the buffer.
+	 */
+	private static int write(OutputStream output, byte[] buffer, int length, String string) throws IOException {
+		int bufferLength = buffer.length;
+		for (int i = 0, n = string.length(); i < n; i++) {
+			if (length == bufferLength) {
+				output.write(buffer, 0, length);
+				length = 0;
+			}
+			buffer[length++] = (byte) string.charAt(i);
+		}
+		return length;
+	}
+
+	private static int write(OutputStream output, byte[] buffer, int length, char c) throws IOException {
+		if (length == buffer.length) {
+			output.write(buffer, 0, length);
+			length = 0;
+		}
+		buffer[length++] = (byte) c;
+		return length;
 	}
 
 	private static void writeAndFlush(byte[] data, OutputStream stream) throws IOException {
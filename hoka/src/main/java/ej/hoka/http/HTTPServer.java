@@ -7,23 +7,29 @@
  */
 package ej.hoka.http;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.util.HashMap;
 
 import javax.net.ServerSocketFactory;
 
+import ej.bon.Util;
 import ej.hoka.http.encoding.HTTPEncodingRegistry;
 import ej.hoka.http.encoding.IHTTPEncodingHandler;
 import ej.hoka.http.encoding.UnsupportedHTTPEncodingException;
 import ej.hoka.http.requesthandler.RequestHandler;
 import ej.hoka.http.requesthandler.RequestHandlerComposite;
 import ej.hoka.http.requesthandler.ResourceRequestHandler;
+import ej.hoka.io.CountingInputStream;
+import ej.hoka.io.CountingOutputStream;
+import ej.hoka.io.DeadlineInputStream;
+import ej.hoka.io.PipelineInputStream;
+import ej.hoka.io.PipelineOutputStream;
+import ej.hoka.log.AccessLog;
 import ej.hoka.log.Messages;
+import ej.hoka.metrics.ServerMetrics;
 import ej.hoka.tcp.TCPServer;
 import ej.util.message.Level;
 
@@ -37,7 +43,14 @@ import ej.util.message.Level;
  * <li>Supports parameter parsing of GET and POST methods</li>
  * <li>Supports both dynamic content and file serving</li>
  * <li>Never caches anything</li>
- * <li>Doesn't limit bandwidth, request time or simultaneous connections</li>
+ * <li>Doesn't limit bandwidth or simultaneous connections</li>
+ * <li>Keeps the persistent connections open on their job, waiting for their next request until the keep-alive timeout
+ * of the {@link RequestLimits}</li>
+ * <li>Limits the time to receive the requests and their size, see {@link RequestLimits}</li>
+ * <li>Processes the pipelined requests in order, sending their responses together: the response of a request whose
+ * next request has already been received is held until that request is processed</li>
+ * <li>Answers "Expect: 100-continue" with an interim response only when the request handler reads the body</li>
+ * <li>Supports HTTP/2 over cleartext TCP when enabled, see {@link #setHTTP2Enabled(boolean)}</li>
  * <li>Contains a built-in list of most common MIME types</li>
  * <li>All header names are converted to lower case</li>
  * </ul>
@@ -114,6 +127,36 @@ public class HTTPServer {
 
 	private boolean sendStackTraceOnException;
 
+	/**
+	 * The metrics updated by this server, or <code>null</code>.
+	 */
+	private ServerMetrics metrics;
+
+	/**
+	 * The limits on the time and the size of the requests.
+	 */
+	private RequestLimits requestLimits;
+
+	/**
+	 * The access log, or <code>null</code>.
+	 */
+	private AccessLog accessLog;
+
+	/**
+	 * The listener of the request traces, or <code>null</code>.
+	 */
+	private RequestTraceListener traceListener;
+
+	/**
+	 * The number of requests processed by a job for each sampled request.
+	 */
+	private int traceSamplingPeriod;
+
+	/**
+	 * Whether the connections may use HTTP/2.
+	 */
+	private boolean http2Enabled;
+
 	/**
 	 * Constructs the underlying {@link TCPServer} and the HTTP server that manage jobs to handle the connections from
 	 * the {@link TCPServer}.
@@ -183,7 +226,8 @@ public class HTTPServer {
 	 * @param serverSocketFactory
 	 *            the {@link ServerSocketFactory}.
 	 * @param keepAliveDuration
-	 *            the timeout duration for idling persistent connections.
+	 *            the timeout duration for idling persistent connections, during which an idle connection holds its
+	 *            job.
 	 */
 	public HTTPServer(int port, int maxSimultaneousConnection, int jobCount, RequestHandler requestHandler,
 			ServerSocketFactory serverSocketFactory, int keepAliveDuration) {
@@ -239,6 +283,88 @@ public class HTTPServer {
 		this.encodingRegistry = encodingRegistry;
 
 		this.sendStackTraceOnException = false;
+		this.requestLimits = new RequestLimits();
+	}
+
+	/**
+	 * Sets the metrics updated by this server and its {@link TCPServer}: the connections, the requests per method, the
+	 * responses per status, the transferred bytes and the durations of the requests.
+	 * <p>
+	 * The metrics have to be set before starting the server. When no metrics are set, the server does not measure
+	 * anything.
+	 *
+	 * @param metrics
+	 *            the metrics, or <code>null</code> to disable them.
+	 */
+	public void setMetrics(ServerMetrics metrics) {
+		this.metrics = metrics;
+		this.server.setMetrics(metrics);
+	}
+
+	/**
+	 * Sets the limits on the time and the size of the requests.
+	 * <p>
+	 * A request exceeding a time limit is answered with {@link HTTPConstants#HTTP_STATUS_REQUESTTIMEOUT}, and a request
+	 * exceeding a size limit with the status given by its {@link RequestLimitException}, without reading the rest of
+	 * the request. In both cases, the connection is closed. The limits have to be set before starting the server.
+	 *
+	 * @param requestLimits
+	 *            the limits.
+	 */
+	public void setRequestLimits(RequestLimits requestLimits) {
+		if (requestLimits == null) {
+			throw new NullPointerException();
+		}
+		this.requestLimits = requestLimits;
+	}
+
+	/**
+	 * Sets the access log of this server, writing one line per request.
+	 * <p>
+	 * The access log has to be set before starting the server, and started by the application. When an access log is
+	 * set, the responses are not logged by the {@link Messages#LOGGER} anymore, except the internal errors.
+	 *
+	 * @param accessLog
+	 *            the access log, or <code>null</code> to log the responses with the {@link Messages#LOGGER}.
+	 */
+	public void setAccessLog(AccessLog accessLog) {
+		this.accessLog = accessLog;
+	}
+
+	/**
+	 * Sets the listener of the request traces, giving the time spent in each phase of the sampled requests.
+	 * <p>
+	 * Each job samples one request out of <code>samplingPeriod</code>. The listener has to be set before starting the
+	 * server. When no listener is set, the requests are not traced.
+	 *
+	 * @param listener
+	 *            the listener, or <code>null</code> to disable the tracing.
+	 * @param samplingPeriod
+	 *            the number of requests processed by a job for each sampled request, <code>1</code> to trace all the
+	 *            requests.
+	 * @see RequestTrace
+	 */
+	public void setRequestTraceListener(RequestTraceListener listener, int samplingPeriod) {
+		if (samplingPeriod <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.traceListener = listener;
+		this.traceSamplingPeriod = samplingPeriod;
+	}
+
+	/**
+	 * Sets whether the connections may use HTTP/2 over cleartext TCP ("h2c").
+	 * <p>
+	 * When enabled, a connection switches to HTTP/2 when the client starts it with the HTTP/2 connection preface (prior
+	 * knowledge), or when its first HTTP/1.1 request asks to upgrade it to "h2c". The streams of a connection are
+	 * processed one at a time by its job, in the order given by their priorities, and their responses share the
+	 * connection. HTTP/2 is disabled by default, and has to be enabled before starting the server.
+	 *
+	 * @param enabled
+	 *            {@code true} to accept HTTP/2 connections, {@code false} to only accept HTTP/1.x.
+	 */
+	public void setHTTP2Enabled(boolean enabled) {
+		this.http2Enabled = enabled;
 	}
 
 	/**
@@ -287,6 +413,8 @@ public class HTTPServer {
 		return new Runnable() {
 			@Override
 			public void run() {
+				// The request, its attributes and the buffers are reused by all the requests processed by this job.
+				JobContext context = new JobContext(getBufferSize());
 				while (true) {
 					try (Socket connection = HTTPServer.this.server.getNextStreamConnection()) {
 						if (connection == null) {
@@ -297,7 +425,7 @@ public class HTTPServer {
 						Messages.LOGGER.log(Level.FINE, Messages.CATEGORY_HOKA, Messages.PROCESS_CONNECTION,
 								Integer.valueOf(connection.hashCode()), connection.getInetAddress().toString());
 
-						handleConnection(connection);
+						handleConnection(connection, context);
 
 						Messages.LOGGER.log(Level.FINE, Messages.CATEGORY_HOKA, Messages.CONNECTION_CLOSED,
 								Integer.valueOf(connection.hashCode()), connection.getInetAddress().toString());
@@ -309,24 +437,90 @@ public class HTTPServer {
 		};
 	}
 
-	private void handleConnection(Socket connection) {
-		try (InputStream inputStream = new BufferedInputStream(connection.getInputStream(), getBufferSize());
-				OutputStream outputStream = connection.getOutputStream()) {
+	private void handleConnection(Socket connection, JobContext context) {
+		HTTPRequest request = context.request;
+		request.setRemoteAddress(connection.getInetAddress());
+		ServerMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.onConnectionOpened();
+		}
+		RequestTraceListener traceListener = this.traceListener;
+		RequestLimits limits = this.requestLimits;
+		request.setLimits(limits);
+		try (DeadlineInputStream connectionInputStream = new DeadlineInputStream(connection,
+				getInputStream(connection, metrics));
+				PipelineInputStream inputStream = new PipelineInputStream(connectionInputStream, getBufferSize());
+				PipelineOutputStream outputStream = new PipelineOutputStream(getOutputStream(connection, metrics),
+						context.outputBuffer)) {
+			// the responses written while the next requests are in the input buffer are sent before reading more
+			connectionInputStream.setPendingOutput(outputStream);
+			request.setInterimOutput(outputStream);
 			boolean keepAlive;
+			// an HTTP/2 connection starts with its preface instead of a request
+			boolean first = this.http2Enabled;
 			do {
-				HTTPRequest request = null;
 				HTTPResponse response;
 				IHTTPEncodingHandler encodingHandler = null;
 				String responseMessage;
+				// the time at which the request has been parsed, in nanoseconds, or -1
+				long startTime = -1;
+				RequestTrace trace = traceListener == null ? null : sample(context);
+				request.setTrace(trace);
 
 				try {
-					request = new HTTPRequest(inputStream, this.encodingRegistry);
+					connectionInputStream.expectRequest(limits.getKeepAliveTimeout(), limits.getHeadTimeout());
+					if (inputStream.available() > 0) {
+						// received with the previous request
+						connectionInputStream.startRequest();
+					}
+					if (first) {
+						first = false;
+						if (HTTP2Connection.hasPreface(inputStream)) {
+							// the connection sets the deadlines of its frames
+							new HTTP2Connection(this, connection, context, inputStream, connectionInputStream,
+									outputStream).run(null);
+							return;
+						}
+					}
+					request.parse(inputStream, this.encodingRegistry);
+					if (request.isContinuePending()) {
+						// the client sends the body once the request handler reads it and the interim response is
+						// written
+						connectionInputStream.deferBody(limits.getBodyTimeout(), limits.getMinimumBodyRate(),
+								limits.getBodyRateGracePeriod());
+					} else {
+						connectionInputStream.startBody(limits.getBodyTimeout(), limits.getMinimumBodyRate(),
+								limits.getBodyRateGracePeriod());
+					}
+
+					if (this.http2Enabled) {
+						byte[] settings = HTTP2Connection.getUpgradeSettings(request);
+						if (settings != null) {
+							new HTTP2Connection(this, connection, context, inputStream, connectionInputStream,
+									outputStream).run(settings);
+							return;
+						}
+					}
+
+					if (trace != null) {
+						trace.mark(RequestTrace.PARSED);
+					}
+
+					startTime = onRequest(request);
 
-					response = this.rootRequestHandler.process(request, new HashMap<String, String>());
+					response = process(request, context);
+
+					if (trace != null) {
+						trace.mark(RequestTrace.HANDLED);
+					}
 
 					encodingHandler = this.encodingRegistry
 							.getEncodingHandler(request.getHeaderField(HTTPConstants.FIELD_ACCEPT_ENCODING));
 
+					if (trace != null) {
+						trace.mark(RequestTrace.NEGOTIATED);
+					}
+
 					if (encodingHandler == null && CalibrationConstants.STRICT_ACCEPT_ENCODING_COMPLIANCE) {
 						// RFC2616 14.3
 						response = RESPONSE_NOT_ACCEPTABLE;
@@ -338,23 +532,34 @@ public class HTTPServer {
 						 * network.http.accept-encoding=gzip,deflate,identity }
 						 */
 
-					String requestConnectionHeader = request.getHeaderField(HTTPConstants.FIELD_CONNECTION);
 					String responseConnectionHeader = response.getHeaderField(HTTPConstants.FIELD_CONNECTION);
-					keepAlive = HTTPConstants.FIELD_CONNECTION_VALUE_KEEP_ALIVE
-							.equalsIgnoreCase(requestConnectionHeader)
-							&& !HTTPConstants.FIELD_CONNECTION_VALUE_CLOSE.equalsIgnoreCase(responseConnectionHeader);
+					keepAlive = request.isPersistent()
+							&& !HTTPConstants.FIELD_CONNECTION_VALUE_CLOSE.equalsIgnoreCase(responseConnectionHeader)
+							// the rest of a body too large is not read
+							&& !request.isBodyTooLarge()
+							// the body not requested from the client may be sent or not
+							&& !request.isContinuePending();
 					responseMessage = request.getURI();
+				} catch (RequestLimitException e) {
+					responseMessage = e.getMessage();
+					response = HTTPResponse.createError(e.getStatus(), responseMessage);
+					// the rest of the request is not read
+					keepAlive = false;
 				} catch (IllegalArgumentException e) {
 					responseMessage = e.getMessage();
 					response = HTTPResponse.createError(HTTPConstants.HTTP_STATUS_BADREQUEST, responseMessage);
-					keepAlive = request != null && request.getHeaderField(HTTPConstants.FIELD_CONNECTION)
-							.equalsIgnoreCase(HTTPConstants.FIELD_CONNECTION_VALUE_KEEP_ALIVE);
+					// the end of the request cannot be found in the stream
+					keepAlive = false;
 				} catch (UnsupportedHTTPEncodingException e) {
 					responseMessage = e.getMessage();
 					response = HTTPResponse.createError(HTTPConstants.HTTP_STATUS_NOTIMPLEMENTED, responseMessage);
-					keepAlive = request != null && request.getHeaderField(HTTPConstants.FIELD_CONNECTION)
-							.equalsIgnoreCase(HTTPConstants.FIELD_CONNECTION_VALUE_KEEP_ALIVE);
+					// the body cannot be decoded to find the end of the request
+					keepAlive = false;
 				} catch (SocketTimeoutException e) {
+					if (connectionInputStream.getRequestStartTime() == 0) {
+						// idle connection, closed without response
+						return;
+					}
 					responseMessage = ""; //$NON-NLS-1$
 					response = RESPONSE_REQUEST_TIMEOUT;
 					keepAlive = false;
@@ -362,38 +567,222 @@ public class HTTPServer {
 					throw e;
 				} catch (final Throwable e) {
 					responseMessage = e.getMessage();
-					if (this.sendStackTraceOnException) {
-						response = HTTPResponse.createError(HTTPConstants.HTTP_STATUS_INTERNALERROR,
-								getHtmlExceptionStackTrace(e));
-					} else {
-						response = RESPONSE_INTERNAL_ERROR;
-					}
-					keepAlive = false;
-				} finally {
-					// TODO : Remove to allow Keep-Alive
+					response = createInternalError(e);
 					keepAlive = false;
 				}
 
-				String connectionHeader = keepAlive ? HTTPConstants.FIELD_CONNECTION_VALUE_KEEP_ALIVE
-						: HTTPConstants.FIELD_CONNECTION_VALUE_CLOSE;
-				response.addHeaderField(HTTPConstants.FIELD_CONNECTION, connectionHeader);
+				if (trace != null) {
+					trace.setTime(RequestTrace.STARTED, connectionInputStream.getRequestStartTime());
+				}
 
 				String status = response.getStatus();
-				Messages.LOGGER.log(
-						status.equals(HTTPConstants.HTTP_STATUS_OK) ? Level.FINE
-								: status.equals(HTTPConstants.HTTP_STATUS_INTERNALERROR) ? Level.SEVERE : Level.INFO,
-						Messages.CATEGORY_HOKA, Messages.HTTP_RESPONSE, Integer.valueOf(connection.hashCode()),
-						connection.getInetAddress().toString(), status, responseMessage);
+				logResponse(connection, status, responseMessage);
+
+				// held while the next request may have been received, which is checked again once the rest of the
+				// body is consumed
+				outputStream.setFlushDeferred(keepAlive && inputStream.hasBufferedHead());
+				response.sendResponse(outputStream, encodingHandler, this.encodingRegistry, context.buffer, keepAlive);
+				outputStream.setFlushDeferred(false);
+
+				recordResponse(request, status, startTime);
+
+				if (trace != null) {
+					trace.mark(RequestTrace.SENT);
+					notifyTrace(traceListener, request, response, trace);
+				}
 
-				response.sendResponse(outputStream, encodingHandler, this.encodingRegistry, getBufferSize());
+				if (keepAlive) {
+					// consume the rest of the body to reach the next request
+					request.finish();
+					if (!inputStream.hasBufferedHead()) {
+						// the response of a pipelined request is sent with the next ones, so that it waits for them to
+						// be processed (head-of-line blocking) but shares their packets
+						outputStream.flushPending();
+					}
+				}
 			} while (keepAlive);
 		} catch (IOException e) {
 			// connection lost
 			Messages.LOGGER.log(Level.INFO, Messages.CATEGORY_HOKA, Messages.CONNECTION_LOST,
 					Integer.valueOf(connection.hashCode()), connection.getInetAddress().toString());
+		} finally {
+			if (metrics != null) {
+				metrics.onConnectionClosed();
+			}
+		}
+	}
+
+	/**
+	 * Records the start of a parsed request in the metrics.
+	 *
+	 * @param request
+	 *            the request.
+	 * @return the time at which the request has been parsed, in nanoseconds, or <code>-1</code> if the responses are
+	 *         neither measured nor logged.
+	 */
+	/* default */ long onRequest(HTTPRequest request) {
+		ServerMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.onRequest(request.getMethod());
+		} else if (this.accessLog == null) {
+			return -1;
+		}
+		// the time waiting for the request on an idle connection is not measured
+		return Util.platformTimeNanos();
+	}
+
+	/**
+	 * Processes a parsed request with the request handlers.
+	 *
+	 * @param request
+	 *            the request.
+	 * @param context
+	 *            the context of the job, whose attributes are cleared.
+	 * @return the response of the request handlers.
+	 * @throws RequestLimitException
+	 *             if the body of the request has exceeded its maximum size while it was read, whatever the response of
+	 *             the request handlers.
+	 */
+	/* default */ HTTPResponse process(HTTPRequest request, JobContext context) {
+		context.attributes.clear();
+		HTTPResponse response;
+		try {
+			response = this.rootRequestHandler.process(request, context.attributes);
+		} catch (RuntimeException e) {
+			checkBodySize(request);
+			throw e;
+		}
+		// a request handler may have caught the exception thrown while reading the body
+		checkBodySize(request);
+		return response;
+	}
+
+	private static void checkBodySize(HTTPRequest request) {
+		if (request.isBodyTooLarge()) {
+			throw new RequestLimitException(HTTPConstants.HTTP_STATUS_PAYLOAD_TOO_LARGE);
+		}
+	}
+
+	/**
+	 * Creates the response to a request whose processing has thrown an exception.
+	 *
+	 * @param e
+	 *            the exception.
+	 * @return the response, with the stack trace of the exception if the server sends it.
+	 * @see #sendStackTraceOnException(boolean)
+	 */
+	/* default */ HTTPResponse createInternalError(Throwable e) {
+		if (this.sendStackTraceOnException) {
+			return HTTPResponse.createError(HTTPConstants.HTTP_STATUS_INTERNALERROR, getHtmlExceptionStackTrace(e));
+		} else {
+			return RESPONSE_INTERNAL_ERROR;
+		}
+	}
+
+	/**
+	 * Logs a response with the {@link Messages#LOGGER}, unless it is written to the access log.
+	 *
+	 * @param connection
+	 *            the connection of the request.
+	 * @param status
+	 *            the status of the response.
+	 * @param message
+	 *            the message of the response, usually the URI of the request.
+	 */
+	/* default */ void logResponse(Socket connection, String status, String message) {
+		if (this.accessLog == null || status.equals(HTTPConstants.HTTP_STATUS_INTERNALERROR)) {
+			Messages.LOGGER.log(
+					status.equals(HTTPConstants.HTTP_STATUS_OK) ? Level.FINE
+							: status.equals(HTTPConstants.HTTP_STATUS_INTERNALERROR) ? Level.SEVERE : Level.INFO,
+					Messages.CATEGORY_HOKA, Messages.HTTP_RESPONSE, Integer.valueOf(connection.hashCode()),
+					connection.getInetAddress().toString(), status, message);
+		}
+	}
+
+	/**
+	 * Records a sent response in the metrics and the access log.
+	 *
+	 * @param request
+	 *            the request.
+	 * @param status
+	 *            the status of the response.
+	 * @param startTime
+	 *            the time returned by {@link #onRequest(HTTPRequest)}, or <code>-1</code> if the request has not been
+	 *            parsed.
+	 */
+	/* default */ void recordResponse(HTTPRequest request, String status, long startTime) {
+		ServerMetrics metrics = this.metrics;
+		AccessLog accessLog = this.accessLog;
+		if (metrics == null && accessLog == null) {
+			return;
+		}
+		boolean parsed = startTime != -1;
+		long duration = parsed ? (Util.platformTimeNanos() - startTime) / 1000 : -1;
+		if (metrics != null) {
+			metrics.onResponse(status, duration);
+		}
+		if (accessLog != null) {
+			accessLog.log(request.getRemoteAddress(), parsed ? request.getMethod() : 0,
+					parsed ? request.getURI() : null, status, duration);
+		}
+	}
+
+	/**
+	 * Gets the registry of the encoding handlers of this server.
+	 *
+	 * @return the registry.
+	 */
+	/* default */ HTTPEncodingRegistry getEncodingRegistry() {
+		return this.encodingRegistry;
+	}
+
+	/**
+	 * Gets the limits on the time and the size of the requests.
+	 *
+	 * @return the limits.
+	 */
+	/* default */ RequestLimits getRequestLimits() {
+		return this.requestLimits;
+	}
+
+	/**
+	 * Decides whether the next request of a job is traced.
+	 *
+	 * @param context
+	 *            the context of the job.
+	 * @return the trace of the request, reset, or <code>null</code> if the request is not sampled.
+	 */
+	private RequestTrace sample(JobContext context) {
+		if (--context.traceCountdown > 0) {
+			return null;
+		}
+		context.traceCountdown = this.traceSamplingPeriod;
+		RequestTrace trace = context.trace;
+		// started once the first bytes of the request are received
+		trace.reset();
+		return trace;
+	}
+
+	private static void notifyTrace(RequestTraceListener listener, HTTPRequest request, HTTPResponse response,
+			RequestTrace trace) {
+		try {
+			listener.onRequestTraced(request, response, trace);
+		} catch (RuntimeException e) {
+			// the connection is still usable
+			Messages.LOGGER.log(Level.WARNING, Messages.CATEGORY_HOKA, Messages.ERROR_UNKNOWN, e);
 		}
 	}
 
+	private static InputStream getInputStream(Socket connection, ServerMetrics metrics) throws IOException {
+		InputStream inputStream = connection.getInputStream();
+		return metrics == null ? inputStream : new CountingInputStream(inputStream, metrics.getReceivedBytes());
+	}
+
+	private static OutputStream getOutputStream(Socket connection, ServerMetrics metrics) throws IOException {
+		OutputStream outputStream = connection.getOutputStream();
+		return metrics == null ? outputStream : new CountingOutputStream(outputStream, metrics.getSentBytes());
+	}
+
 	private int getBufferSize() {
 		return Integer.getInteger(BUFFER_SIZE_PROPERTY, BUFFER_SIZE).intValue();
 	}
@@ -0,0 +1,63 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http;
+
+import ej.hoka.http.requesthandler.RequestAttributes;
+
+/**
+ * The objects reused by a job of the {@link HTTPServer} for all the requests it processes.
+ * <p>
+ * A context is only accessed by the thread of its job.
+ */
+/* default */ final class JobContext {
+
+	/**
+	 * The request, parsed again for each request.
+	 */
+	/* default */ final HTTPRequest request;
+
+	/**
+	 * The attributes, cleared before each request.
+	 */
+	/* default */ final RequestAttributes attributes;
+
+	/**
+	 * The buffer used to write the responses.
+	 */
+	/* default */ final byte[] buffer;
+
+	/**
+	 * The buffer of the responses not sent yet.
+	 */
+	/* default */ final byte[] outputBuffer;
+
+	/**
+	 * The trace of the sampled requests.
+	 */
+	/* default */ final RequestTrace trace;
+
+	/**
+	 * The number of requests to process before sampling the next one.
+	 */
+	/* default */ int traceCountdown;
+
+	/**
+	 * Constructs the context of a job.
+	 *
+	 * @param bufferSize
+	 *            the size of the buffers used to write the responses.
+	 */
+	/* default */ JobContext(int bufferSize) {
+		this.request = new HTTPRequest();
+		this.attributes = new RequestAttributes();
+		this.buffer = new byte[bufferSize];
+		this.outputBuffer = new byte[bufferSize];
+		this.trace = new RequestTrace();
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http;
+
+/**
+ * This exception is thrown when a request exceeds one of its {@link RequestLimits} while it is parsed, or when its body
+ * exceeds the maximum size while it is read by the request handlers.
+ * <p>
+ * The rest of the request is not read: the {@link HTTPServer} answers with the status of the exception and closes the
+ * connection.
+ */
+public class RequestLimitException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 2364717498156247135L;
+
+	/**
+	 * The status of the response.
+	 */
+	private final String status;
+
+	/**
+	 * Creates a new {@link RequestLimitException}.
+	 *
+	 * @param status
+	 *            the status of the response, for example {@link HTTPConstants#HTTP_STATUS_PAYLOAD_TOO_LARGE}.
+	 */
+	public RequestLimitException(String status) {
+		super(status);
+		this.status = status;
+	}
+
+	/**
+	 * Gets the status of the response.
+	 *
+	 * @return the status.
+	 */
+	public String getStatus() {
+		return this.status;
+	}
+
+}
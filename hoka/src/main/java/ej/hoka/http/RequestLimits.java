@@ -0,0 +1,283 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http;
+
+/**
+ * The limits on the time and the size of the requests, protecting the jobs of the {@link HTTPServer} from the clients
+ * sending their requests slowly or sending huge requests.
+ * <p>
+ * The timeout of the {@link ej.hoka.tcp.TCPServer} only bounds the wait for each read from the connection. These
+ * limits bound the time to wait for a request on an idle connection, the total time to receive the head of a request
+ * (its request line and header fields), and the time to receive its body, either as a total duration or as a minimum
+ * data rate.
+ * <p>
+ * The size limits bound the memory used to parse a request, and allow to reject a request as soon as it is too large.
+ * <p>
+ * A {@link RequestLimits} is immutable: each <code>with</code> method returns a copy with the given limit. For
+ * example:
+ *
+ * <pre>
+ * server.setRequestLimits(new RequestLimits().withHeadTimeout(5000).withMaxHeaderFields(32));
+ * </pre>
+ *
+ * @see HTTPServer#setRequestLimits(RequestLimits)
+ */
+public final class RequestLimits {
+
+	private static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 5000; // 5s
+	private static final int DEFAULT_HEAD_TIMEOUT = 20000; // 20s
+	private static final int DEFAULT_MINIMUM_BODY_RATE = 128; // bytes per second
+	private static final int DEFAULT_BODY_RATE_GRACE_PERIOD = 5000; // 5s
+	private static final int DEFAULT_MAX_HEADER_FIELDS = 100;
+	private static final int DEFAULT_MAX_HEADER_SIZE = 8192;
+	private static final int DEFAULT_MAX_URI_LENGTH = 4096;
+
+	private final int keepAliveTimeout;
+	private final int headTimeout;
+	private final int bodyTimeout;
+	private final int minimumBodyRate;
+	private final int bodyRateGracePeriod;
+	private final int maxHeaderFields;
+	private final int maxHeaderSize;
+	private final int maxURILength;
+	private final long maxBodySize;
+
+	/**
+	 * Creates the default limits: a request started within 5 seconds, a URI of at most 4096 characters, a head received
+	 * in 20 seconds with at most 100 header fields and 8 kB of header, and a body of any size received at 128 bytes per
+	 * second after 5 seconds.
+	 */
+	public RequestLimits() {
+		this(DEFAULT_KEEP_ALIVE_TIMEOUT, DEFAULT_HEAD_TIMEOUT, 0, DEFAULT_MINIMUM_BODY_RATE,
+				DEFAULT_BODY_RATE_GRACE_PERIOD, DEFAULT_MAX_HEADER_FIELDS, DEFAULT_MAX_HEADER_SIZE,
+				DEFAULT_MAX_URI_LENGTH, 0);
+	}
+
+	private RequestLimits(int keepAliveTimeout, int headTimeout, int bodyTimeout, int minimumBodyRate,
+			int bodyRateGracePeriod, int maxHeaderFields, int maxHeaderSize, int maxURILength, long maxBodySize) {
+		this.keepAliveTimeout = keepAliveTimeout;
+		this.headTimeout = headTimeout;
+		this.bodyTimeout = bodyTimeout;
+		this.minimumBodyRate = minimumBodyRate;
+		this.bodyRateGracePeriod = bodyRateGracePeriod;
+		this.maxHeaderFields = maxHeaderFields;
+		this.maxHeaderSize = maxHeaderSize;
+		this.maxURILength = maxURILength;
+		this.maxBodySize = maxBodySize;
+	}
+
+	/**
+	 * Creates a copy of these limits with the given time to wait for the first bytes of a request, on a new connection
+	 * or on a connection kept alive after a response. A connection still idle after this time is closed without
+	 * response, so that it does not hold its job until the timeout of the socket.
+	 *
+	 * @param keepAliveTimeout
+	 *            the timeout in milliseconds, <code>0</code> for no timeout.
+	 * @return the new limits.
+	 */
+	public RequestLimits withKeepAliveTimeout(int keepAliveTimeout) {
+		checkPositive(keepAliveTimeout);
+		return new RequestLimits(keepAliveTimeout, this.headTimeout, this.bodyTimeout, this.minimumBodyRate,
+				this.bodyRateGracePeriod, this.maxHeaderFields, this.maxHeaderSize, this.maxURILength,
+				this.maxBodySize);
+	}
+
+	/**
+	 * Creates a copy of these limits with the given time to receive the head of a request. The time starts when the
+	 * first bytes of the request are received.
+	 *
+	 * @param headTimeout
+	 *            the timeout in milliseconds, <code>0</code> for no timeout.
+	 * @return the new limits.
+	 */
+	public RequestLimits withHeadTimeout(int headTimeout) {
+		checkPositive(headTimeout);
+		return new RequestLimits(this.keepAliveTimeout, headTimeout, this.bodyTimeout, this.minimumBodyRate,
+				this.bodyRateGracePeriod, this.maxHeaderFields, this.maxHeaderSize, this.maxURILength,
+				this.maxBodySize);
+	}
+
+	/**
+	 * Creates a copy of these limits with the given time to receive the body of a request, including the time spent by
+	 * the request handlers before reading it, except when the client waits for the "100 Continue" interim response:
+	 * the time then starts when the interim response is sent.
+	 *
+	 * @param bodyTimeout
+	 *            the timeout in milliseconds, <code>0</code> for no timeout.
+	 * @return the new limits.
+	 */
+	public RequestLimits withBodyTimeout(int bodyTimeout) {
+		checkPositive(bodyTimeout);
+		return new RequestLimits(this.keepAliveTimeout, this.headTimeout, bodyTimeout, this.minimumBodyRate,
+				this.bodyRateGracePeriod, this.maxHeaderFields, this.maxHeaderSize, this.maxURILength,
+				this.maxBodySize);
+	}
+
+	/**
+	 * Creates a copy of these limits with the given minimum rate of the body. After the grace period, the bytes of the
+	 * body read so far must have been received at least at this rate.
+	 *
+	 * @param minimumBodyRate
+	 *            the rate in bytes per second, <code>0</code> for no minimum rate.
+	 * @param gracePeriod
+	 *            the time allowed before the first bytes, in milliseconds.
+	 * @return the new limits.
+	 */
+	public RequestLimits withMinimumBodyRate(int minimumBodyRate, int gracePeriod) {
+		checkPositive(minimumBodyRate);
+		checkPositive(gracePeriod);
+		return new RequestLimits(this.keepAliveTimeout, this.headTimeout, this.bodyTimeout, minimumBodyRate,
+				gracePeriod, this.maxHeaderFields, this.maxHeaderSize, this.maxURILength, this.maxBodySize);
+	}
+
+	/**
+	 * Creates a copy of these limits with the given maximum number of header fields.
+	 *
+	 * @param maxHeaderFields
+	 *            the maximum number of header fields of a request.
+	 * @return the new limits.
+	 */
+	public RequestLimits withMaxHeaderFields(int maxHeaderFields) {
+		checkPositive(maxHeaderFields);
+		return new RequestLimits(this.keepAliveTimeout, this.headTimeout, this.bodyTimeout, this.minimumBodyRate,
+				this.bodyRateGracePeriod, maxHeaderFields, this.maxHeaderSize, this.maxURILength, this.maxBodySize);
+	}
+
+	/**
+	 * Creates a copy of these limits with the given maximum size of the header.
+	 *
+	 * @param maxHeaderSize
+	 *            the maximum number of characters of the header fields of a request, names and values.
+	 * @return the new limits.
+	 */
+	public RequestLimits withMaxHeaderSize(int maxHeaderSize) {
+		checkPositive(maxHeaderSize);
+		return new RequestLimits(this.keepAliveTimeout, this.headTimeout, this.bodyTimeout, this.minimumBodyRate,
+				this.bodyRateGracePeriod, this.maxHeaderFields, maxHeaderSize, this.maxURILength, this.maxBodySize);
+	}
+
+	/**
+	 * Creates a copy of these limits with the given maximum length of the URI.
+	 *
+	 * @param maxURILength
+	 *            the maximum number of decoded characters of the URI of a request, path and parameters.
+	 * @return the new limits.
+	 */
+	public RequestLimits withMaxURILength(int maxURILength) {
+		checkPositive(maxURILength);
+		return new RequestLimits(this.keepAliveTimeout, this.headTimeout, this.bodyTimeout, this.minimumBodyRate,
+				this.bodyRateGracePeriod, this.maxHeaderFields, this.maxHeaderSize, maxURILength, this.maxBodySize);
+	}
+
+	/**
+	 * Creates a copy of these limits with the given maximum size of the body.
+	 * <p>
+	 * A request declaring a larger <code>Content-Length</code> is rejected before its body is read. A chunked body is
+	 * read until it exceeds the limit: the request handler then gets a
+	 * {@link ej.hoka.http.body.PayloadTooLargeException}.
+	 *
+	 * @param maxBodySize
+	 *            the maximum number of bytes of the body of a request, <code>0</code> for no limit.
+	 * @return the new limits.
+	 */
+	public RequestLimits withMaxBodySize(long maxBodySize) {
+		if (maxBodySize < 0) {
+			throw new IllegalArgumentException();
+		}
+		return new RequestLimits(this.keepAliveTimeout, this.headTimeout, this.bodyTimeout, this.minimumBodyRate,
+				this.bodyRateGracePeriod, this.maxHeaderFields, this.maxHeaderSize, this.maxURILength, maxBodySize);
+	}
+
+	/**
+	 * Gets the time to wait for the first bytes of a request.
+	 *
+	 * @return the timeout in milliseconds, <code>0</code> for no timeout.
+	 */
+	public int getKeepAliveTimeout() {
+		return this.keepAliveTimeout;
+	}
+
+	/**
+	 * Gets the time to receive the head of a request.
+	 *
+	 * @return the timeout in milliseconds, <code>0</code> for no timeout.
+	 */
+	public int getHeadTimeout() {
+		return this.headTimeout;
+	}
+
+	/**
+	 * Gets the time to receive the body of a request.
+	 *
+	 * @return the timeout in milliseconds, <code>0</code> for no timeout.
+	 */
+	public int getBodyTimeout() {
+		return this.bodyTimeout;
+	}
+
+	/**
+	 * Gets the minimum rate of the body of a request.
+	 *
+	 * @return the rate in bytes per second, <code>0</code> for no minimum rate.
+	 */
+	public int getMinimumBodyRate() {
+		return this.minimumBodyRate;
+	}
+
+	/**
+	 * Gets the time allowed before checking the minimum rate of the body.
+	 *
+	 * @return the grace period in milliseconds.
+	 */
+	public int getBodyRateGracePeriod() {
+		return this.bodyRateGracePeriod;
+	}
+
+	/**
+	 * Gets the maximum number of header fields of a request.
+	 *
+	 * @return the maximum number of header fields.
+	 */
+	public int getMaxHeaderFields() {
+		return this.maxHeaderFields;
+	}
+
+	/**
+	 * Gets the maximum size of the header of a request.
+	 *
+	 * @return the maximum number of characters of the header fields.
+	 */
+	public int getMaxHeaderSize() {
+		return this.maxHeaderSize;
+	}
+
+	/**
+	 * Gets the maximum length of the URI of a request.
+	 *
+	 * @return the maximum number of decoded characters of the URI.
+	 */
+	public int getMaxURILength() {
+		return this.maxURILength;
+	}
+
+	/**
+	 * Gets the maximum size of the body of a request.
+	 *
+	 * @return the maximum number of bytes of the body, <code>0</code> for no limit.
+	 */
+	public long getMaxBodySize() {
+		return this.maxBodySize;
+	}
+
+	private static void checkPositive(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+}
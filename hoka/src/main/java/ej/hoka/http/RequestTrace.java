@@ -0,0 +1,125 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http;
+
+import ej.bon.Util;
+
+/**
+ * The times at which a request reached each phase of its processing, in nanoseconds.
+ * <p>
+ * A trace is reused by a job of the {@link HTTPServer} for all the requests it samples, and is only valid during the
+ * call to {@link RequestTraceListener#onRequestTraced(HTTPRequest, HTTPResponse, RequestTrace)}. The phases not
+ * reached by the request, for example when it cannot be parsed, have no time.
+ * <p>
+ * The {@link #ROUTED} phase is marked by the request handlers able to tell the routing from the processing, such as
+ * the {@link ej.hoka.rest.RestRequestHandler} once it has found the endpoint.
+ *
+ * @see HTTPServer#setRequestTraceListener(RequestTraceListener, int)
+ */
+public final class RequestTrace {
+
+	/**
+	 * The phase at which the first bytes of the request are received. The time waiting for the request on an idle
+	 * connection is not part of the trace.
+	 */
+	public static final int STARTED = 0;
+	/**
+	 * The phase after parsing the request line and header.
+	 */
+	public static final int PARSED = 1;
+	/**
+	 * The phase after finding the handler of the request.
+	 */
+	public static final int ROUTED = 2;
+	/**
+	 * The phase after the request handlers have returned the response.
+	 */
+	public static final int HANDLED = 3;
+	/**
+	 * The phase after choosing the content encoding of the response.
+	 */
+	public static final int NEGOTIATED = 4;
+	/**
+	 * The phase after sending the response.
+	 */
+	public static final int SENT = 5;
+
+	private static final int PHASE_COUNT = 6;
+
+	private final long[] times;
+
+	/**
+	 * Creates an empty trace.
+	 */
+	/* default */ RequestTrace() {
+		this.times = new long[PHASE_COUNT];
+	}
+
+	/**
+	 * Marks the current time as the time at which the request reached a phase.
+	 *
+	 * @param phase
+	 *            the phase, one of {@link #STARTED}, {@link #PARSED}, {@link #ROUTED}, {@link #HANDLED},
+	 *            {@link #NEGOTIATED} or {@link #SENT}.
+	 */
+	public void mark(int phase) {
+		this.times[phase] = Util.platformTimeNanos();
+	}
+
+	/**
+	 * Sets the time at which the request reached a phase.
+	 *
+	 * @param phase
+	 *            the phase.
+	 * @param time
+	 *            the time in nanoseconds, or <code>0</code> if the phase has not been reached.
+	 */
+	/* default */ void setTime(int phase, long time) {
+		this.times[phase] = time;
+	}
+
+	/**
+	 * Gets the time at which the request reached a phase.
+	 *
+	 * @param phase
+	 *            the phase.
+	 * @return the time in nanoseconds, or <code>0</code> if the phase has not been reached.
+	 */
+	public long getTime(int phase) {
+		return this.times[phase];
+	}
+
+	/**
+	 * Gets the time elapsed between two phases.
+	 *
+	 * @param from
+	 *            the first phase.
+	 * @param to
+	 *            the last phase.
+	 * @return the duration in nanoseconds, or <code>-1</code> if one of the phases has not been reached.
+	 */
+	public long getDuration(int from, int to) {
+		long fromTime = this.times[from];
+		long toTime = this.times[to];
+		if (fromTime == 0 || toTime == 0) {
+			return -1;
+		}
+		return toTime - fromTime;
+	}
+
+	/**
+	 * Clears the times of all the phases.
+	 */
+	/* default */ void reset() {
+		long[] times = this.times;
+		for (int i = times.length - 1; i >= 0; i--) {
+			times[i] = 0;
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http;
+
+/**
+ * Receives the traces of the requests sampled by the {@link HTTPServer}.
+ * <p>
+ * The listener is called by the job which processed the request, after sending the response and before reading the
+ * next request of the connection: it should return quickly, and copy what it keeps from the trace, which is reused.
+ *
+ * @see HTTPServer#setRequestTraceListener(RequestTraceListener, int)
+ */
+public interface RequestTraceListener {
+
+	/**
+	 * Called when a sampled request has been processed.
+	 *
+	 * @param request
+	 *            the request, partially parsed if the trace has no {@link RequestTrace#PARSED} time.
+	 * @param response
+	 *            the response sent.
+	 * @param trace
+	 *            the times of the phases of the request.
+	 */
+	void onRequestTraced(HTTPRequest request, HTTPResponse response, RequestTrace trace);
+
+}
@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2018-2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2018-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -9,35 +9,34 @@ package ej.hoka.http.body;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
-import ej.hoka.http.HTTPConstants;
-
 /**
  * A part of a multipart HTTP request.
  */
 public class HTTPPart extends InputStream {
 
-	private static final String APPOSTROPHE = "\""; //$NON-NLS-1$
-	private static final String VALUE_ESCAPE = ";\r"; //$NON-NLS-1$
-	private static final String KEY_ESCAPE = ":="; //$NON-NLS-1$
-	private static final String ESCAPE = '\n' + HTTPConstants.END_OF_LINE;
+	private static final char APPOSTROPHE = '"';
 	private final Map<String, String> headers;
 	private final MultiPartBodyParser.MultiPartBuffer multiPart;
+	/**
+	 * The index of this part in the multipart buffer.
+	 */
+	private final int index;
 	private boolean isFinished;
 	private boolean headerParsed;
-	private boolean isInit;
 
 	/**
 	 * Instantiates a {@link HTTPPart}.
 	 *
 	 * @param multiPart
-	 *            the shared multipart buffer.
+	 *            the shared multipart buffer, positioned at the beginning of the headers of the part.
 	 */
 	/* default */ HTTPPart(MultiPartBodyParser.MultiPartBuffer multiPart) {
 		this.multiPart = multiPart;
-		this.isInit = false;
+		this.index = multiPart.getPartCount();
 		this.isFinished = false;
 		this.headers = new HashMap<>();
 		this.headerParsed = false;
@@ -54,6 +53,9 @@ public class HTTPPart extends InputStream {
 
 	/**
 	 * Parse the headers. This method must be called before the first read.
+	 * <p>
+	 * Each header line is split into attributes at the semicolons that are not quoted, the name of an attribute ends at
+	 * the first colon or equal sign. The headers end with an empty line.
 	 *
 	 * @return the headers.
 	 * @throws IOException
@@ -61,54 +63,70 @@ public class HTTPPart extends InputStream {
 	 */
 	/* default */ synchronized Map<String, String> parseHeaders() throws IOException {
 		if (!this.headerParsed) {
-			init();
 			this.headerParsed = true;
+			MultiPartBodyParser.MultiPartBuffer multiPart = this.multiPart;
 			StringBuilder key = new StringBuilder();
 			StringBuilder value = new StringBuilder();
 			boolean isKey = true;
-			int escapePos = 0;
-			int doRead = 0;
-			while (escapePos < ESCAPE.length() && this.multiPart.hasData()) {
-				doRead = this.multiPart.read();
-				if (doRead == ESCAPE.charAt(escapePos)) {
-					escapePos++;
-				} else {
-					escapePos = 0;
-					if (isKey) {
-						if (KEY_ESCAPE.indexOf(doRead) != -1) {
-							isKey = false;
-						} else {
-							key.append((char) (doRead & 0xFF));
-						}
+			boolean isQuoted = false;
+			boolean isEmptyLine = true;
+			int doRead;
+			while ((doRead = multiPart.readRaw()) != -1) {
+				if (doRead == '\r') {
+					continue;
+				}
+				if (doRead == '\n') {
+					if (isEmptyLine) {
+						break;
+					}
+					putHeader(key, value);
+					isKey = true;
+					isQuoted = false;
+					isEmptyLine = true;
+					continue;
+				}
+				isEmptyLine = false;
+				if (isKey) {
+					if (doRead == ':' || doRead == '=') {
+						isKey = false;
 					} else {
-						if (VALUE_ESCAPE.indexOf(doRead) != -1) {
-							isKey = true;
-							String valueString = value.toString().trim();
-							if (valueString.startsWith(APPOSTROPHE) && valueString.endsWith(APPOSTROPHE)) {
-								valueString = valueString.substring(1, valueString.length() - 1);
-							}
-							this.headers.put(key.toString().trim(), valueString.trim());
-							key = new StringBuilder();
-							value = new StringBuilder();
-						} else {
-							value.append((char) (doRead & 0xFF));
-						}
+						key.append((char) doRead);
+					}
+				} else if (doRead == ';' && !isQuoted) {
+					putHeader(key, value);
+					isKey = true;
+				} else {
+					if (doRead == APPOSTROPHE) {
+						isQuoted = !isQuoted;
 					}
+					value.append((char) doRead);
 				}
 			}
 		}
 		return this.headers;
 	}
 
+	private void putHeader(StringBuilder key, StringBuilder value) {
+		String keyString = key.toString().trim();
+		if (!keyString.isEmpty()) {
+			String valueString = value.toString().trim();
+			int length = valueString.length();
+			if (length >= 2 && valueString.charAt(0) == APPOSTROPHE && valueString.charAt(length - 1) == APPOSTROPHE) {
+				valueString = valueString.substring(1, length - 1).trim();
+			}
+			this.headers.put(keyString, valueString);
+		}
+		key.setLength(0);
+		value.setLength(0);
+	}
+
 	@Override
 	public int read() throws IOException {
 		int read = -1;
-		if (!this.isFinished && this.multiPart.hasData()) {
-			init();
-			if (this.multiPart.getBoundaryIndex(1) == -1) {
-				read = this.multiPart.read();
-			} else {
-				checkEnd();
+		if (isReadable()) {
+			read = this.multiPart.read();
+			if (read == -1) {
+				this.isFinished = true;
 			}
 		}
 		return read;
@@ -117,25 +135,54 @@ public class HTTPPart extends InputStream {
 	@Override
 	public int read(byte[] b, int off, int len) throws IOException {
 		int read = -1;
-		if (!this.isFinished && this.multiPart.hasData()) {
-			init();
+		if (isReadable()) {
 			read = this.multiPart.read(b, off, len);
 			if (read == -1) {
-				checkEnd();
+				this.isFinished = true;
 			}
 		}
 		return read;
 	}
 
-	private void checkEnd() {
-		this.isFinished = true;
+	@Override
+	public int available() throws IOException {
+		return isReadable() ? this.multiPart.available() : 0;
 	}
 
-	private synchronized void init() throws IOException {
-		if (!this.isInit) {
-			this.multiPart.skipToBoundary();
-			this.isInit = true;
+	/**
+	 * Writes the remaining data of this part to an output stream.
+	 * <p>
+	 * The data is written by blocks directly from the buffer of the multipart body, without copy.
+	 *
+	 * @param out
+	 *            the output stream, or <code>null</code> to discard the data.
+	 * @param limit
+	 *            the maximum number of bytes to transfer.
+	 * @return the number of bytes transferred.
+	 * @throws PayloadTooLargeException
+	 *             if the part has more than <code>limit</code> remaining bytes.
+	 * @throws IOException
+	 *             if an IOException occurs during read or write.
+	 */
+	public long transferTo(OutputStream out, long limit) throws IOException {
+		long transferred = 0;
+		if (isReadable()) {
+			transferred = this.multiPart.transferTo(out, limit);
+			this.isFinished = true;
+		}
+		return transferred;
+	}
+
+	private boolean isReadable() {
+		if (this.isFinished) {
+			return false;
+		}
+		if (this.multiPart.getPartCount() != this.index) {
+			// The multipart body has moved to another part.
+			this.isFinished = true;
+			return false;
 		}
+		return true;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,75 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http.body;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import ej.hoka.json.JsonReader;
+
+/**
+ * A body parser for JSON bodies, returning a {@link JsonReader} that pulls the tokens from the body stream.
+ * <p>
+ * The body is not consumed by this parser: it is read incrementally while the returned reader is used, without being
+ * copied into a string.
+ */
+public class JsonBodyParser implements BodyParser<JsonReader> {
+
+	private static final int DEFAULT_BUFFER_SIZE = 512;
+	private static final int DEFAULT_MAX_DEPTH = 32;
+	private static final int DEFAULT_MAX_VALUE_LENGTH = 4096;
+
+	private final int bufferSize;
+	private final int maxDepth;
+	private final int maxValueLength;
+
+	/**
+	 * Creates a JSON body parser with a buffer of 512 bytes, a maximum depth of 32 nested arrays or objects and a
+	 * maximum value length of 4096 characters.
+	 */
+	public JsonBodyParser() {
+		this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 * Creates a JSON body parser with a maximum value length of 4096 characters.
+	 *
+	 * @param bufferSize
+	 *            the size of the read buffer of the readers.
+	 * @param maxDepth
+	 *            the maximum number of nested arrays or objects.
+	 */
+	public JsonBodyParser(int bufferSize, int maxDepth) {
+		this(bufferSize, maxDepth, DEFAULT_MAX_VALUE_LENGTH);
+	}
+
+	/**
+	 * Creates a JSON body parser.
+	 *
+	 * @param bufferSize
+	 *            the size of the read buffer of the readers.
+	 * @param maxDepth
+	 *            the maximum number of nested arrays or objects.
+	 * @param maxValueLength
+	 *            the maximum number of characters of a name, a string or a number.
+	 */
+	public JsonBodyParser(int bufferSize, int maxDepth, int maxValueLength) {
+		if (bufferSize <= 0 || maxDepth <= 0 || maxValueLength <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.bufferSize = bufferSize;
+		this.maxDepth = maxDepth;
+		this.maxValueLength = maxValueLength;
+	}
+
+	@Override
+	public JsonReader parseBody(InputStream inputStream, String contentType) throws IOException {
+		return new JsonReader(inputStream, this.bufferSize, this.maxDepth, this.maxValueLength);
+	}
+
+}
@@ -9,6 +9,7 @@ package ej.hoka.http.body;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import ej.hoka.http.HTTPConstants;
 import ej.hoka.http.body.MultiPartBodyParser.MultiPartBody;
@@ -47,38 +48,41 @@ public class MultiPartBodyParser implements BodyParser<MultiPartBody> {
 		MultiPartBuffer buffer = null;
 		if ((contentType != null) && contentType.startsWith(MIMEUtils.MIME_MULTIPART_FORM_ENCODED_DATA)) {
 			String boundary = contentType.substring(contentType.indexOf(';') + 1);
-			buffer = new MultiPartBuffer();
-			buffer.boundary = HTTPConstants.END_OF_LINE + "--" //$NON-NLS-1$
-					+ boundary.substring(boundary.indexOf(BOUNDARY) + BOUNDARY.length());
-			buffer.stream = inputStream;
-			buffer.buffer = new byte[Integer.getInteger(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE).intValue()];
-			/**
-			 * The first boundary does not have the line jump, artificially add it to have a generic behaviour.
-			 */
-			buffer.buffer[0] = '\r';
-			buffer.buffer[1] = '\n';
-			buffer.lengthAvailable = 2;
+			boundary = boundary.substring(boundary.indexOf(BOUNDARY) + BOUNDARY.length());
+			buffer = new MultiPartBuffer(inputStream, boundary,
+					Integer.getInteger(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE).intValue());
 		}
 		return new MultiPartBody(buffer);
 	}
 
 	/**
 	 * A shared buffer used by the multipart.
+	 * <p>
+	 * The parts are separated by a delimiter made of a line break, two hyphens and the boundary. The delimiter is
+	 * searched in the raw bytes of the buffer with the Boyer-Moore-Horspool algorithm. The result of a search is kept
+	 * until the bytes it covers are consumed, so that reading the content of a part does not search the buffer again
+	 * for each byte.
 	 */
 	static class MultiPartBuffer {
 
+		private static final int SEARCH_TABLE_SIZE = 256;
+
 		/**
 		 * The input stream.
 		 */
-		private InputStream stream;
+		private final InputStream stream;
 		/**
-		 * The boundaries pattern.
+		 * The delimiter pattern: CRLF, two hyphens and the boundary.
 		 */
-		private String boundary;
+		private final byte[] delimiter;
+		/**
+		 * The shift to apply when a search mismatches, indexed by the value of the last byte of the compared window.
+		 */
+		private final int[] shifts;
 		/**
 		 * The buffer of the data read.
 		 */
-		private byte[] buffer;
+		private final byte[] buffer;
 		/**
 		 * The offset position within the buffer.
 		 */
@@ -87,21 +91,79 @@ public class MultiPartBodyParser implements BodyParser<MultiPartBody> {
 		 * The number of bytes available within the buffer.
 		 */
 		private int lengthAvailable;
+		/**
+		 * Whether the end of the input stream has been reached.
+		 */
+		private boolean endOfStream;
+		/**
+		 * The index of the next delimiter, relative to {@link #offset}, or <code>-1</code> if it has not been found
+		 * in the buffered data.
+		 */
+		private int delimiterIndex;
+		/**
+		 * The number of bytes after {@link #offset} that are known to belong to the current part.
+		 */
+		private int safeLength;
+		/**
+		 * Whether the closing delimiter has been read.
+		 */
+		private boolean finished;
+		/**
+		 * The number of parts started, used to detect reads on a part that is not the current one anymore.
+		 */
+		private int partCount;
+		/**
+		 * The number of bytes read with {@link #readRaw()} since the last call to {@link #limitRaw(int)}.
+		 */
+		private int rawCount;
+		/**
+		 * The maximum number of bytes that can be read with {@link #readRaw()}.
+		 */
+		private int rawLimit = Integer.MAX_VALUE;
 
 		/**
-		 * Checks whether more data is available in the input stream.
+		 * Creates a multipart buffer.
 		 *
-		 * @return {@code true} if more data is available in the input stream.
-		 * @throws IOException
-		 *             if an {@link IOException} happens.
+		 * @param stream
+		 *            the input stream.
+		 * @param boundary
+		 *            the boundary, as given in the content type.
+		 * @param bufferSize
+		 *            the size of the buffer.
 		 */
-		public boolean hasData() throws IOException {
-			return this.buffer != null && this.boundary != null
-					&& (this.lengthAvailable > 0 || (this.stream != null && this.stream.available() > 0));
+		/* default */ MultiPartBuffer(InputStream stream, String boundary, int bufferSize) {
+			String delimiterString = HTTPConstants.END_OF_LINE + "--" + boundary; //$NON-NLS-1$
+			int delimiterLength = delimiterString.length();
+			byte[] delimiter = new byte[delimiterLength];
+			for (int i = 0; i < delimiterLength; i++) {
+				delimiter[i] = (byte) delimiterString.charAt(i);
+			}
+
+			int last = delimiterLength - 1;
+			int[] shifts = new int[SEARCH_TABLE_SIZE];
+			for (int i = 0; i < SEARCH_TABLE_SIZE; i++) {
+				shifts[i] = delimiterLength;
+			}
+			for (int i = 0; i < last; i++) {
+				shifts[delimiter[i] & 0xFF] = last - i;
+			}
+
+			this.stream = stream;
+			this.delimiter = delimiter;
+			this.shifts = shifts;
+			// The buffer must be able to hold a delimiter and the bytes preceding it.
+			this.buffer = new byte[Math.max(bufferSize, 2 * delimiterLength)];
+			/**
+			 * The first boundary does not have the line jump, artificially add it to have a generic behaviour.
+			 */
+			this.buffer[0] = '\r';
+			this.buffer[1] = '\n';
+			this.lengthAvailable = 2;
+			this.delimiterIndex = -1;
 		}
 
 		/**
-		 * Reads some bytes from the buffer.
+		 * Reads some bytes of the current part.
 		 *
 		 * @param b
 		 *            the target buffer.
@@ -109,121 +171,284 @@ public class MultiPartBodyParser implements BodyParser<MultiPartBody> {
 		 *            the offset.
 		 * @param len
 		 *            the length.
-		 * @return the number of bytes read.
+		 * @return the number of bytes read, or <code>-1</code> at the end of the part.
 		 * @throws IOException
 		 *             if an {@link IOException} happens.
 		 */
 		public int read(byte[] b, int off, int len) throws IOException {
-			buffer(len);
-			int read = -1;
-			int toRead = len;
-
-			int boundaryIndex = this.getBoundaryIndex(toRead);
-			if (boundaryIndex != -1) {
-				toRead = boundaryIndex;
-			} else {
-				toRead = Math.min(toRead, this.lengthAvailable - this.boundary.length());
+			if (len == 0) {
+				return 0;
 			}
-			if (toRead > 0) {
-				System.arraycopy(this.buffer, this.offset, b, off, toRead);
-				this.offset += toRead;
-				this.lengthAvailable -= toRead;
-				read = toRead;
+			int toRead = Math.min(readable(), len);
+			if (toRead == 0) {
+				return -1;
 			}
-			return read;
+			System.arraycopy(this.buffer, this.offset, b, off, toRead);
+			consume(toRead);
+			return toRead;
 		}
 
 		/**
-		 * Reads a byte in the buffer.
+		 * Reads a byte of the current part.
 		 *
-		 * @return the byte read, -1 if not found.
+		 * @return the byte read, or <code>-1</code> at the end of the part.
 		 * @throws IOException
-		 *             if an {@link IOException} occures.
+		 *             if an {@link IOException} occurs.
 		 */
 		public int read() throws IOException {
-			this.buffer(1);
-			int read;
-			read = this.buffer[this.offset] & 0xFF;
-			this.offset++;
-			this.lengthAvailable--;
+			if (readable() == 0) {
+				return -1;
+			}
+			int read = this.buffer[this.offset] & 0xFF;
+			consume(1);
 			return read;
 		}
 
 		/**
-		 * Consumes the data up to after the next boundary.
+		 * Gets the number of bytes of the current part that can be read without blocking.
 		 *
+		 * @return the number of bytes available.
+		 */
+		public int available() {
+			return this.safeLength;
+		}
+
+		/**
+		 * Writes the remaining data of the current part to an output stream, directly from the buffer.
+		 *
+		 * @param out
+		 *            the output stream, or <code>null</code> to discard the data.
+		 * @param limit
+		 *            the maximum number of bytes to transfer.
+		 * @return the number of bytes transferred.
+		 * @throws PayloadTooLargeException
+		 *             if the part has more than <code>limit</code> remaining bytes.
+		 * @throws IOException
+		 *             if an {@link IOException} occurs.
+		 */
+		public long transferTo(OutputStream out, long limit) throws IOException {
+			long transferred = 0;
+			int length;
+			while ((length = readable()) > 0) {
+				// checked before the block is written, so that the output never receives more than the limit
+				if (length > limit - transferred) {
+					throw new PayloadTooLargeException(limit);
+				}
+				if (out != null) {
+					out.write(this.buffer, this.offset, length);
+				}
+				transferred += length;
+				consume(length);
+			}
+			return transferred;
+		}
+
+		/**
+		 * Consumes the remaining data of the current part and the delimiter that follows it.
+		 *
+		 * @return {@code true} if a new part starts after the delimiter, {@code false} if the delimiter is the closing
+		 *         one or if the end of the stream is reached.
 		 * @throws IOException
 		 *             if an {@link IOException} occurs
 		 */
-		public void skipToBoundary() throws IOException {
-			this.buffer(1);
-			int boundaryIndex = getBoundaryIndex(this.lengthAvailable);
-			int boundaryLength = this.boundary.length();
-			while (boundaryIndex == -1
-					&& (this.lengthAvailable > 0 || (this.stream != null && this.stream.available() > 0))) {
-				System.arraycopy(this.buffer, this.offset + this.lengthAvailable - boundaryLength, this.buffer, 0,
-						boundaryLength);
-				this.lengthAvailable = boundaryLength;
-				this.offset = 0;
-				boundaryIndex = getBoundaryIndex(this.lengthAvailable);
+		public boolean nextPart() throws IOException {
+			if (this.finished) {
+				return false;
+			}
+
+			int toSkip;
+			while ((toSkip = readable()) > 0) {
+				consume(toSkip);
+			}
+
+			if (this.delimiterIndex != 0) {
+				// truncated body
+				this.finished = true;
+				return false;
+			}
+
+			int delimiterLength = this.delimiter.length;
+			this.offset += delimiterLength;
+			this.lengthAvailable -= delimiterLength;
+			invalidate();
+
+			int first = readRaw();
+			int second = readRaw();
+			if (first == -1 || (first == '-' && second == '-')) {
+				// closing delimiter
+				this.finished = true;
+				return false;
 			}
-			if (boundaryIndex != -1) {
-				int offset = boundaryIndex + boundaryLength + 2;
-				this.offset += offset;
-				this.lengthAvailable -= offset;
+			// skip the transport padding up to the line break
+			while (second != '\n' && second != -1) {
+				second = readRaw();
 			}
+
+			this.partCount++;
+			return true;
 		}
 
 		/**
-		 * Gets the next boundary index within the length specified.
+		 * Gets the number of parts started.
 		 *
-		 * @param length
-		 *            the length to check.
-		 * @return the next boundary index, or -1 if not found.
+		 * @return the index of the current part.
+		 */
+		public int getPartCount() {
+			return this.partCount;
+		}
+
+		/**
+		 * Limits the number of bytes read with {@link #readRaw()}, from now on.
+		 *
+		 * @param limit
+		 *            the maximum number of bytes.
+		 */
+		public void limitRaw(int limit) {
+			this.rawCount = 0;
+			this.rawLimit = limit;
+		}
+
+		/**
+		 * Gets the number of bytes read with {@link #readRaw()} since the last call to {@link #limitRaw(int)}.
+		 *
+		 * @return the number of bytes.
+		 */
+		public int getRawCount() {
+			return this.rawCount;
+		}
+
+		/**
+		 * Reads a byte without looking for the delimiter, used to read the headers of a part.
+		 *
+		 * @return the byte read, or <code>-1</code> if the end of the stream is reached.
+		 * @throws PayloadTooLargeException
+		 *             if more bytes than the limit set by {@link #limitRaw(int)} are read.
 		 * @throws IOException
 		 *             if an {@link IOException} occurs.
 		 */
-		public int getBoundaryIndex(int length) throws IOException {
-			this.buffer(1);
+		public int readRaw() throws IOException {
+			if (this.lengthAvailable == 0 && !fill()) {
+				return -1;
+			}
+			if (this.rawCount == this.rawLimit) {
+				throw new PayloadTooLargeException(this.rawLimit);
+			}
+			this.rawCount++;
+			invalidate();
+			int read = this.buffer[this.offset] & 0xFF;
+			this.offset++;
+			this.lengthAvailable--;
+			return read;
+		}
 
-			byte[] buffer = this.buffer;
-			String bufferAsString = new String(buffer, "US-ASCII");
+		/**
+		 * Gets the number of bytes of the current part that can be consumed, buffering and searching the delimiter if
+		 * needed.
+		 *
+		 * @return the number of bytes that can be consumed, <code>0</code> at the end of the part.
+		 * @throws IOException
+		 *             if an {@link IOException} occurs.
+		 */
+		private int readable() throws IOException {
+			while (this.safeLength == 0) {
+				if (this.delimiterIndex == 0 || this.finished) {
+					return 0;
+				}
+				if (this.delimiterIndex == -1 && this.lengthAvailable >= this.delimiter.length) {
+					// data has been consumed without searching, or the previous search is no longer valid
+					search();
+					if (this.safeLength != 0 || this.delimiterIndex == 0) {
+						continue;
+					}
+				}
+				if (this.endOfStream) {
+					return 0;
+				}
+				fill();
+				search();
+			}
+			return this.safeLength;
+		}
+
+		/**
+		 * Consumes bytes of the current part.
+		 *
+		 * @param length
+		 *            the number of bytes to consume, lower than or equal to {@link #safeLength}.
+		 */
+		private void consume(int length) {
+			this.offset += length;
+			this.lengthAvailable -= length;
+			this.safeLength -= length;
+			if (this.delimiterIndex > 0) {
+				this.delimiterIndex -= length;
+			}
+		}
 
-			int max = Math.min(length, this.lengthAvailable - 1 - this.boundary.length());
+		/**
+		 * Forgets the result of the last search.
+		 */
+		private void invalidate() {
+			this.delimiterIndex = -1;
+			this.safeLength = 0;
+		}
 
-			int index = this.offset - 1;
-			while ((index = bufferAsString.indexOf('\r', index + 1)) != -1 && index < max) {
-				if (bufferAsString.startsWith(this.boundary, index)) {
-					return index - this.offset;
+		/**
+		 * Searches the delimiter in the buffered data.
+		 */
+		private void search() {
+			byte[] buffer = this.buffer;
+			byte[] delimiter = this.delimiter;
+			int[] shifts = this.shifts;
+			int last = delimiter.length - 1;
+			int start = this.offset;
+			int end = start + this.lengthAvailable;
+
+			for (int i = start; i + last < end; i += shifts[buffer[i + last] & 0xFF]) {
+				int j = last;
+				while (buffer[i + j] == delimiter[j]) {
+					if (j == 0) {
+						this.delimiterIndex = i - start;
+						this.safeLength = i - start;
+						return;
+					}
+					j--;
 				}
 			}
 
-			return -1;
+			this.delimiterIndex = -1;
+			if (this.endOfStream) {
+				this.safeLength = this.lengthAvailable;
+			} else {
+				// The last bytes may be the beginning of a delimiter.
+				this.safeLength = Math.max(0, this.lengthAvailable - last);
+			}
 		}
 
 		/**
-		 * Buffers the data if needed.
+		 * Moves the available data to the beginning of the buffer and reads the input stream after it.
 		 *
-		 * @param length
-		 *            the size of the data that will be required.
+		 * @return {@code true} if some bytes have been read.
 		 * @throws IOException
 		 *             if the read is not possible.
 		 */
-		private void buffer(int length) throws IOException {
+		private boolean fill() throws IOException {
+			if (this.endOfStream) {
+				return false;
+			}
+			byte[] buffer = this.buffer;
 			int lengthAvailable = this.lengthAvailable;
-			if (this.stream != null && lengthAvailable - this.boundary.length() - 1 < length) {
-				int offset = this.offset;
-				int bufferLength = this.buffer.length;
-				if (offset != 0) {
-					System.arraycopy(this.buffer, offset, this.buffer, 0, lengthAvailable);
-				}
-				int read = this.stream.read(this.buffer, lengthAvailable, bufferLength - lengthAvailable);
-
-				if (read > 0) {
-					this.lengthAvailable += read;
-				}
+			if (this.offset != 0) {
+				System.arraycopy(buffer, this.offset, buffer, 0, lengthAvailable);
 				this.offset = 0;
 			}
+			int read = this.stream.read(buffer, lengthAvailable, buffer.length - lengthAvailable);
+			if (read == -1) {
+				this.endOfStream = true;
+				return false;
+			}
+			this.lengthAvailable += read;
+			return read > 0;
 		}
 
 	}
@@ -235,6 +460,11 @@ public class MultiPartBodyParser implements BodyParser<MultiPartBody> {
 
 		private final MultiPartBuffer buffer;
 
+		/**
+		 * The size of the headers of the current part.
+		 */
+		private int headerSize;
+
 		/**
 		 * Constructs the {@link MultiPartBody} with the specified <code>buffer</code>.
 		 *
@@ -247,23 +477,61 @@ public class MultiPartBodyParser implements BodyParser<MultiPartBody> {
 
 		/**
 		 * Consumes the input stream from the request to get the next {@link HTTPPart} available.
+		 * <p>
+		 * The remaining data of the previous part is skipped, the previous part cannot be read anymore.
 		 *
 		 * @return the next {@link HTTPPart} initialized, <code>null</code> if not found.
 		 * @throws IOException
 		 *             if an {@link IOException} occurs during the parsing of the headers.
 		 */
 		public HTTPPart nextPart() throws IOException {
-			if (this.buffer != null && this.buffer.hasData()) {
-				HTTPPart httpPart = new HTTPPart(this.buffer); // NOSONAR
-				if (httpPart.parseHeaders().size() == 0 && !this.buffer.hasData()) {
-					httpPart.close();
-					httpPart = null;
+			return nextPart(Integer.MAX_VALUE);
+		}
+
+		/**
+		 * Consumes the input stream from the request to get the next {@link HTTPPart} available, limiting the size of
+		 * its headers.
+		 * <p>
+		 * The remaining data of the previous part is skipped, the previous part cannot be read anymore.
+		 *
+		 * @param maxHeaderSize
+		 *            the maximum number of bytes of the headers of the part, including the end of the line of the
+		 *            delimiter that precedes them.
+		 * @return the next {@link HTTPPart} initialized, <code>null</code> if not found.
+		 * @throws PayloadTooLargeException
+		 *             if the headers of the part are larger than the limit.
+		 * @throws IOException
+		 *             if an {@link IOException} occurs during the parsing of the headers.
+		 * @see #getHeaderSize()
+		 */
+		public HTTPPart nextPart(int maxHeaderSize) throws IOException {
+			MultiPartBuffer buffer = this.buffer;
+			if (buffer != null) {
+				buffer.limitRaw(maxHeaderSize);
+				try {
+					if (buffer.nextPart()) {
+						HTTPPart httpPart = new HTTPPart(buffer);
+						httpPart.parseHeaders();
+						return httpPart;
+					}
+				} finally {
+					this.headerSize = buffer.getRawCount();
+					buffer.limitRaw(Integer.MAX_VALUE);
 				}
-				return httpPart;
 			}
 			return null;
 		}
 
+		/**
+		 * Gets the number of bytes read by the last call to {@link #nextPart(int)} outside the content of the parts:
+		 * the end of the line of the delimiter and the headers of the part.
+		 *
+		 * @return the number of bytes.
+		 */
+		public int getHeaderSize() {
+			return this.headerSize;
+		}
+
 	}
 
 }
@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2019-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -83,9 +83,52 @@ public class ParameterParser implements BodyParser<Map<String, String>> {
 	 *             if an error occurs while reading the input stream.
 	 */
 	public static void parseParameters(InputStream input, Map<String, String> parameters) throws IOException {
+		parseParameters(input, parameters, new StringBuilder(16), new StringBuilder(4));
+	}
+
+	/**
+	 * Parses parameters using the given buffers.
+	 *
+	 * @param input
+	 *            the input stream from which parameters should be parsed
+	 * @param parameters
+	 *            the map to populate with the parsed parameters.
+	 * @param sbKey
+	 *            the buffer used to read the parameter names, its content is discarded.
+	 * @param sbValue
+	 *            the buffer used to read the parameter values, its content is discarded.
+	 * @throws IOException
+	 *             if an error occurs while reading the input stream.
+	 */
+	public static void parseParameters(InputStream input, Map<String, String> parameters, StringBuilder sbKey,
+			StringBuilder sbValue) throws IOException {
+		parseParameters(input, parameters, sbKey, sbValue, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Parses parameters using the given buffers, stopping when they are too long.
+	 *
+	 * @param input
+	 *            the input stream from which parameters should be parsed
+	 * @param parameters
+	 *            the map to populate with the parsed parameters.
+	 * @param sbKey
+	 *            the buffer used to read the parameter names, its content is discarded.
+	 * @param sbValue
+	 *            the buffer used to read the parameter values, its content is discarded.
+	 * @param maxLength
+	 *            the maximum number of characters of the parameters, a percent-encoded character counting as one.
+	 * @return the number of characters of the parameters, or <code>-1</code> if it exceeds
+	 *         <code>maxLength</code>, in which case the rest of the parameters is not read.
+	 * @throws IOException
+	 *             if an error occurs while reading the input stream.
+	 */
+	public static int parseParameters(InputStream input, Map<String, String> parameters, StringBuilder sbKey,
+			StringBuilder sbValue, int maxLength) throws IOException {
+		int length = 0;
 		boolean end = false;
-		StringBuilder sbKey = new StringBuilder(16);
-		StringBuilder sbValue = new StringBuilder(4);
+		sbKey.setLength(0);
+		sbValue.setLength(0);
 		StringBuilder curBuffer = sbKey;
 		// parameters is a hash table
 		// the stream looks like
@@ -93,6 +136,9 @@ public class ParameterParser implements BodyParser<Map<String, String>> {
 		loop: while (!end) {
 
 			int i = input.read();
+			if (i != END_OF_FILE && ++length > maxLength) {
+				return -1;
+			}
 			switch (i) {
 			case PERCENTAGE_CHAR:
 				// if a special character is found then replace it by the real
@@ -133,6 +179,7 @@ public class ParameterParser implements BodyParser<Map<String, String>> {
 			curBuffer.append((char) i);
 
 		}
+		return length;
 	}
 
 }
@@ -0,0 +1,53 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http.body;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * The destination of the file parts streamed by a {@link StreamingMultiPartBodyParser}.
+ * <p>
+ * A typical sink writes each part to a file of the file system, or forwards it to another device.
+ */
+public interface PartSink {
+
+	/**
+	 * Opens the stream to which the content of a file part is written.
+	 *
+	 * @param name
+	 *            the name of the form field.
+	 * @param filename
+	 *            the name of the file, as given by the client.
+	 * @param headers
+	 *            the headers of the part.
+	 * @return the stream to write the content to, or <code>null</code> to discard the part.
+	 * @throws IOException
+	 *             if the stream cannot be opened.
+	 */
+	OutputStream open(String name, String filename, Map<String, String> headers) throws IOException;
+
+	/**
+	 * Closes a stream returned by {@link #open(String, String, Map)}.
+	 * <p>
+	 * When the part is not complete, because a limit has been exceeded or the connection has been lost, the data
+	 * already written should be discarded.
+	 *
+	 * @param out
+	 *            the stream to close.
+	 * @param length
+	 *            the number of bytes written.
+	 * @param complete
+	 *            <code>true</code> if the whole part has been written.
+	 * @throws IOException
+	 *             if the stream cannot be closed.
+	 */
+	void close(OutputStream out, long length, boolean complete) throws IOException;
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http.body;
+
+import java.io.IOException;
+
+import ej.hoka.http.HTTPConstants;
+
+/**
+ * This exception is thrown when the body of a request, or a part of it, exceeds a configured size limit, or when a
+ * multipart body has too many parts.
+ * <p>
+ * The rest of the body is not consumed, the request handler should answer with
+ * {@link HTTPConstants#HTTP_STATUS_PAYLOAD_TOO_LARGE} and close the connection.
+ */
+public class PayloadTooLargeException extends IOException {
+
+	private static final long serialVersionUID = -3256219472581624405L;
+
+	/**
+	 * The limit that has been exceeded, in bytes or in parts.
+	 */
+	private final long limit;
+
+	/**
+	 * Creates a new {@link PayloadTooLargeException}.
+	 *
+	 * @param limit
+	 *            the limit that has been exceeded, in bytes or in parts.
+	 */
+	public PayloadTooLargeException(long limit) {
+		this.limit = limit;
+	}
+
+	/**
+	 * Gets the limit that has been exceeded.
+	 *
+	 * @return the limit, in bytes or in parts.
+	 */
+	public long getLimit() {
+		return this.limit;
+	}
+
+	@Override
+	public String getMessage() {
+		return HTTPConstants.HTTP_STATUS_PAYLOAD_TOO_LARGE + ": " + this.limit; //$NON-NLS-1$
+	}
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http.body;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ej.hoka.http.body.MultiPartBodyParser.MultiPartBody;
+import ej.hoka.http.body.StreamingMultiPartBodyParser.MultiPartForm;
+import ej.hoka.http.support.MIMEUtils;
+
+/**
+ * A body parser for {@link MIMEUtils#MIME_MULTIPART_FORM_ENCODED_DATA} that streams the file parts to a
+ * {@link PartSink} and keeps the other form fields in memory.
+ * <p>
+ * The file parts are written by blocks directly from the buffer of the {@link MultiPartBodyParser}, so the memory used
+ * does not depend on the size of the files. The size of each part, of the headers of each part, of each form field and
+ * of the whole body, headers included, are limited, as well as the number of parts: a {@link PayloadTooLargeException}
+ * is thrown when a limit is exceeded.
+ */
+public class StreamingMultiPartBodyParser implements BodyParser<MultiPartForm> {
+
+	private static final String CONTENT_DISPOSITION_NAME = "name"; //$NON-NLS-1$
+	private static final String CONTENT_DISPOSITION_FILENAME = "filename"; //$NON-NLS-1$
+	private static final String FIELD_CONTENT_TYPE = "content-type"; //$NON-NLS-1$
+	private static final String FIELD_ENCODING = "UTF-8"; //$NON-NLS-1$
+
+	/**
+	 * The default maximum size of the headers of a part, in bytes.
+	 */
+	public static final int DEFAULT_MAX_HEADER_SIZE = 1024;
+
+	/**
+	 * The default maximum number of parts.
+	 */
+	public static final int DEFAULT_MAX_PART_COUNT = 64;
+
+	private final PartSink sink;
+	private final long maxPartSize;
+	private final long maxTotalSize;
+	private final int maxFieldSize;
+	private final int maxHeaderSize;
+	private final int maxPartCount;
+
+	/**
+	 * Creates a streaming multipart body parser, with the default limits on the headers of the parts and on their
+	 * number.
+	 *
+	 * @param sink
+	 *            the destination of the file parts.
+	 * @param maxPartSize
+	 *            the maximum size of a file part, in bytes.
+	 * @param maxTotalSize
+	 *            the maximum size of all the parts, headers included, in bytes.
+	 * @param maxFieldSize
+	 *            the maximum size of a form field that is not a file, in bytes.
+	 * @see #DEFAULT_MAX_HEADER_SIZE
+	 * @see #DEFAULT_MAX_PART_COUNT
+	 */
+	public StreamingMultiPartBodyParser(PartSink sink, long maxPartSize, long maxTotalSize, int maxFieldSize) {
+		this(sink, maxPartSize, maxTotalSize, maxFieldSize, DEFAULT_MAX_HEADER_SIZE, DEFAULT_MAX_PART_COUNT);
+	}
+
+	/**
+	 * Creates a streaming multipart body parser.
+	 *
+	 * @param sink
+	 *            the destination of the file parts.
+	 * @param maxPartSize
+	 *            the maximum size of a file part, in bytes.
+	 * @param maxTotalSize
+	 *            the maximum size of all the parts, headers included, in bytes.
+	 * @param maxFieldSize
+	 *            the maximum size of a form field that is not a file, in bytes.
+	 * @param maxHeaderSize
+	 *            the maximum size of the headers of a part, in bytes.
+	 * @param maxPartCount
+	 *            the maximum number of parts.
+	 */
+	public StreamingMultiPartBodyParser(PartSink sink, long maxPartSize, long maxTotalSize, int maxFieldSize,
+			int maxHeaderSize, int maxPartCount) {
+		if (sink == null || maxPartSize < 0 || maxTotalSize < 0 || maxFieldSize < 0 || maxHeaderSize < 0
+				|| maxPartCount < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.sink = sink;
+		this.maxPartSize = maxPartSize;
+		this.maxTotalSize = maxTotalSize;
+		this.maxFieldSize = maxFieldSize;
+		this.maxHeaderSize = maxHeaderSize;
+		this.maxPartCount = maxPartCount;
+	}
+
+	/**
+	 * Parses the whole body, streaming the file parts to the sink.
+	 *
+	 * @throws PayloadTooLargeException
+	 *             if a limit is exceeded.
+	 * @throws IllegalArgumentException
+	 *             if the content type is not {@link MIMEUtils#MIME_MULTIPART_FORM_ENCODED_DATA}.
+	 */
+	@Override
+	public MultiPartForm parseBody(InputStream inputStream, String contentType) throws IOException {
+		if ((contentType == null) || !contentType.startsWith(MIMEUtils.MIME_MULTIPART_FORM_ENCODED_DATA)) {
+			throw new IllegalArgumentException();
+		}
+
+		MultiPartBody body = new MultiPartBodyParser().parseBody(inputStream, contentType);
+		MultiPartForm form = new MultiPartForm();
+		long remaining = this.maxTotalSize;
+		ByteArrayOutputStream fieldBuffer = null;
+
+		int partCount = 0;
+		HTTPPart part;
+		while ((part = nextPart(body, remaining)) != null) {
+			if (++partCount > this.maxPartCount) {
+				throw new PayloadTooLargeException(this.maxPartCount);
+			}
+			remaining -= body.getHeaderSize();
+			Map<String, String> headers = part.getHeaders();
+			String name = getHeader(headers, CONTENT_DISPOSITION_NAME);
+			String filename = getHeader(headers, CONTENT_DISPOSITION_FILENAME);
+
+			if (filename == null) {
+				if (fieldBuffer == null) {
+					fieldBuffer = new ByteArrayOutputStream();
+				} else {
+					fieldBuffer.reset();
+				}
+				remaining -= transfer(part, fieldBuffer, this.maxFieldSize, remaining);
+				if (name != null) {
+					form.fields.put(name, fieldBuffer.toString(FIELD_ENCODING));
+				}
+			} else {
+				long length = transferFile(part, name, filename, headers, remaining);
+				remaining -= length;
+				form.files.add(new FilePart(name, filename, getHeader(headers, FIELD_CONTENT_TYPE), length));
+			}
+		}
+		return form;
+	}
+
+	private HTTPPart nextPart(MultiPartBody body, long remaining) throws IOException {
+		int maxHeaderSize = this.maxHeaderSize;
+		if (remaining < maxHeaderSize) {
+			try {
+				return body.nextPart((int) remaining);
+			} catch (PayloadTooLargeException e) {
+				// report the limit of the whole body
+				throw new PayloadTooLargeException(this.maxTotalSize);
+			}
+		}
+		return body.nextPart(maxHeaderSize);
+	}
+
+	private long transferFile(HTTPPart part, String name, String filename, Map<String, String> headers,
+			long remaining) throws IOException {
+		PartSink sink = this.sink;
+		OutputStream out = sink.open(name, filename, headers);
+		if (out == null) {
+			return transfer(part, null, this.maxPartSize, remaining);
+		}
+
+		long length = 0;
+		boolean complete = false;
+		try {
+			length = transfer(part, out, this.maxPartSize, remaining);
+			complete = true;
+		} finally {
+			sink.close(out, length, complete);
+		}
+		return length;
+	}
+
+	private long transfer(HTTPPart part, OutputStream out, long maxPartSize, long remaining) throws IOException {
+		if (remaining < maxPartSize) {
+			try {
+				return part.transferTo(out, remaining);
+			} catch (PayloadTooLargeException e) {
+				// report the limit of the whole body
+				throw new PayloadTooLargeException(this.maxTotalSize);
+			}
+		}
+		return part.transferTo(out, maxPartSize);
+	}
+
+	/**
+	 * Gets a header of a part, ignoring the case of its name.
+	 */
+	private static String getHeader(Map<String, String> headers, String name) {
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			if (header.getKey().equalsIgnoreCase(name)) {
+				return header.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The result of a {@link StreamingMultiPartBodyParser}.
+	 */
+	public static class MultiPartForm {
+
+		private final Map<String, String> fields;
+		private final List<FilePart> files;
+
+		private MultiPartForm() {
+			this.fields = new HashMap<>();
+			this.files = new ArrayList<>();
+		}
+
+		/**
+		 * Gets the form fields that are not files.
+		 *
+		 * @return the values of the fields, by name.
+		 */
+		public Map<String, String> getFields() {
+			return Collections.unmodifiableMap(this.fields);
+		}
+
+		/**
+		 * Gets the value of a form field that is not a file.
+		 *
+		 * @param name
+		 *            the name of the field.
+		 * @return the value of the field, or <code>null</code> if not found.
+		 */
+		public String getField(String name) {
+			return this.fields.get(name);
+		}
+
+		/**
+		 * Gets the file parts, in the order of the body.
+		 *
+		 * @return the file parts written to the sink or discarded.
+		 */
+		public List<FilePart> getFiles() {
+			return Collections.unmodifiableList(this.files);
+		}
+
+	}
+
+	/**
+	 * The description of a file part streamed to a {@link PartSink}.
+	 */
+	public static class FilePart {
+
+		private final String name;
+		private final String filename;
+		private final String contentType;
+		private final long length;
+
+		private FilePart(String name, String filename, String contentType, long length) {
+			this.name = name;
+			this.filename = filename;
+			this.contentType = contentType;
+			this.length = length;
+		}
+
+		/**
+		 * Gets the name of the form field.
+		 *
+		 * @return the name, or <code>null</code> if not given.
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Gets the name of the file, as given by the client.
+		 *
+		 * @return the file name.
+		 */
+		public String getFilename() {
+			return this.filename;
+		}
+
+		/**
+		 * Gets the content type of the part.
+		 *
+		 * @return the content type, or <code>null</code> if not given.
+		 */
+		public String getContentType() {
+			return this.contentType;
+		}
+
+		/**
+		 * Gets the length of the content of the part.
+		 *
+		 * @return the length, in bytes.
+		 */
+		public long getLength() {
+			return this.length;
+		}
+
+	}
+
+}
@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2009-2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2009-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -11,7 +11,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import ej.hoka.http.HTTPConstants;
 import ej.hoka.http.HTTPRequest;
 import ej.hoka.http.HTTPResponse;
 import ej.hoka.io.IdentityMessageBodyInputStream;
@@ -70,12 +69,7 @@ public class IdentityTransferCodingHandler implements IHTTPTransferCodingHandler
 	 */
 	@Override
 	public InputStream open(HTTPRequest request, InputStream input) throws IOException {
-		int bodyLength = 0;
-		String contentLength = request.getHeaderField(HTTPConstants.FIELD_CONTENT_LENGTH);
-		if (contentLength != null) {
-			bodyLength = Integer.parseInt(contentLength);
-		}
-		return new IdentityMessageBodyInputStream(input, bodyLength);
+		return new IdentityMessageBodyInputStream(input, Math.max(request.getContentLength(), 0));
 	}
 
 	/**
@@ -0,0 +1,441 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http.requesthandler;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ej.hoka.http.HTTPServer;
+
+/**
+ * The attributes populated by the {@link RequestHandler}s while processing a request.
+ * <p>
+ * Well-known attributes are pre-declared with {@link #declareKey(String)}: their values are stored in an array, at the
+ * slot returned on declaration, which avoids hashing the key on each access. Other attributes are stored in a small
+ * list. The attributes are also available through the {@link Map} interface, where a <code>null</code> value stands
+ * for a missing attribute.
+ * <p>
+ * The {@link HTTPServer} uses one instance per job and clears it before processing each request. This class is not
+ * thread-safe.
+ */
+public class RequestAttributes extends AbstractMap<String, String> {
+
+	/**
+	 * Name of the attribute storing the identifier of the authenticated user.
+	 */
+	public static final String USERNAME = "username"; //$NON-NLS-1$
+
+	/**
+	 * Slot of the {@link #USERNAME} attribute.
+	 */
+	public static final int USERNAME_SLOT = 0;
+
+	private static final int INITIAL_EXTRA_CAPACITY = 4;
+
+	/**
+	 * The declared keys, indexed by slot.
+	 */
+	private static String[] declaredKeys = { USERNAME };
+
+	/**
+	 * The values of the declared keys, indexed by slot.
+	 */
+	private String[] values;
+
+	/**
+	 * The keys of the attributes that are not declared.
+	 */
+	private String[] extraKeys;
+
+	/**
+	 * The values of the attributes that are not declared.
+	 */
+	private String[] extraValues;
+
+	/**
+	 * The number of attributes that are not declared.
+	 */
+	private int extraCount;
+
+	/**
+	 * The number of declared attributes that have a value.
+	 */
+	private int slotCount;
+
+	private Set<Map.Entry<String, String>> entrySet;
+
+	/**
+	 * Constructs an empty set of attributes.
+	 */
+	public RequestAttributes() {
+		this.values = new String[declaredKeys.length];
+	}
+
+	/**
+	 * Declares a well-known attribute key.
+	 * <p>
+	 * Keys should be declared once, before starting the server.
+	 *
+	 * @param key
+	 *            the key to declare.
+	 * @return the slot of the key, to use with {@link #get(int)} and {@link #set(int, String)}.
+	 */
+	public static synchronized int declareKey(String key) {
+		if (key == null) {
+			throw new IllegalArgumentException();
+		}
+
+		int slot = getSlot(key);
+		if (slot == -1) {
+			String[] keys = declaredKeys;
+			slot = keys.length;
+			String[] newKeys = new String[slot + 1];
+			System.arraycopy(keys, 0, newKeys, 0, slot);
+			newKeys[slot] = key;
+			declaredKeys = newKeys;
+		}
+		return slot;
+	}
+
+	/**
+	 * Gets the slot of a declared key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return the slot of the key, or <code>-1</code> if the key is not declared.
+	 */
+	public static int getSlot(Object key) {
+		String[] keys = declaredKeys;
+		// Most accesses are done with the declared constants, check the references first.
+		for (int i = keys.length - 1; i >= 0; i--) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		if (key != null) {
+			for (int i = keys.length - 1; i >= 0; i--) {
+				if (keys[i].equals(key)) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the value of a declared attribute.
+	 *
+	 * @param slot
+	 *            the slot of the attribute.
+	 * @return the value, or <code>null</code> if not set.
+	 * @see #declareKey(String)
+	 */
+	public String get(int slot) {
+		String[] values = this.values;
+		return slot < values.length ? values[slot] : null;
+	}
+
+	/**
+	 * Sets the value of a declared attribute.
+	 *
+	 * @param slot
+	 *            the slot of the attribute.
+	 * @param value
+	 *            the value, <code>null</code> to remove the attribute.
+	 * @return the previous value, or <code>null</code> if not set.
+	 * @see #declareKey(String)
+	 */
+	public String set(int slot, String value) {
+		String[] values = this.values;
+		if (slot >= values.length) {
+			if (slot >= declaredKeys.length) {
+				throw new IllegalArgumentException();
+			}
+			String[] newValues = new String[declaredKeys.length];
+			System.arraycopy(values, 0, newValues, 0, values.length);
+			this.values = newValues;
+			values = newValues;
+		}
+
+		String previous = values[slot];
+		values[slot] = value;
+		if (previous == null && value != null) {
+			this.slotCount++;
+		} else if (previous != null && value == null) {
+			this.slotCount--;
+		}
+		return previous;
+	}
+
+	@Override
+	public String get(Object key) {
+		int slot = getSlot(key);
+		if (slot != -1) {
+			return get(slot);
+		}
+		int index = indexOfExtra(key);
+		return index == -1 ? null : this.extraValues[index];
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The attributes cannot be <code>null</code>: putting a <code>null</code> value removes the attribute.
+	 */
+	@Override
+	public String put(String key, String value) {
+		if (key == null) {
+			throw new NullPointerException();
+		}
+		if (value == null) {
+			return remove(key);
+		}
+
+		int slot = getSlot(key);
+		if (slot != -1) {
+			return set(slot, value);
+		}
+
+		int index = indexOfExtra(key);
+		if (index != -1) {
+			String previous = this.extraValues[index];
+			this.extraValues[index] = value;
+			return previous;
+		}
+
+		int count = this.extraCount;
+		if (this.extraKeys == null) {
+			this.extraKeys = new String[INITIAL_EXTRA_CAPACITY];
+			this.extraValues = new String[INITIAL_EXTRA_CAPACITY];
+		} else if (count == this.extraKeys.length) {
+			String[] newKeys = new String[count * 2];
+			String[] newValues = new String[count * 2];
+			System.arraycopy(this.extraKeys, 0, newKeys, 0, count);
+			System.arraycopy(this.extraValues, 0, newValues, 0, count);
+			this.extraKeys = newKeys;
+			this.extraValues = newValues;
+		}
+		this.extraKeys[count] = key;
+		this.extraValues[count] = value;
+		this.extraCount = count + 1;
+		return null;
+	}
+
+	@Override
+	public String remove(Object key) {
+		int slot = getSlot(key);
+		if (slot != -1) {
+			return set(slot, null);
+		}
+
+		int index = indexOfExtra(key);
+		if (index == -1) {
+			return null;
+		}
+		return removeExtra(index);
+	}
+
+	@Override
+	public int size() {
+		return this.slotCount + this.extraCount;
+	}
+
+	/**
+	 * Removes all the attributes.
+	 * <p>
+	 * The internal arrays are kept to be reused by the next request.
+	 */
+	@Override
+	public void clear() {
+		String[] values = this.values;
+		for (int i = values.length - 1; i >= 0; i--) {
+			values[i] = null;
+		}
+		this.slotCount = 0;
+
+		int count = this.extraCount;
+		if (count > 0) {
+			String[] extraKeys = this.extraKeys;
+			String[] extraValues = this.extraValues;
+			for (int i = count - 1; i >= 0; i--) {
+				extraKeys[i] = null;
+				extraValues[i] = null;
+			}
+			this.extraCount = 0;
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		Set<Map.Entry<String, String>> entrySet = this.entrySet;
+		if (entrySet == null) {
+			entrySet = new EntrySet();
+			this.entrySet = entrySet;
+		}
+		return entrySet;
+	}
+
+	private int indexOfExtra(Object key) {
+		String[] extraKeys = this.extraKeys;
+		for (int i = this.extraCount - 1; i >= 0; i--) {
+			if (extraKeys[i].equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private String removeExtra(int index) {
+		String previous = this.extraValues[index];
+		int last = this.extraCount - 1;
+		// The order of the attributes is not significant, move the last one in the freed place.
+		this.extraKeys[index] = this.extraKeys[last];
+		this.extraValues[index] = this.extraValues[last];
+		this.extraKeys[last] = null;
+		this.extraValues[last] = null;
+		this.extraCount = last;
+		return previous;
+	}
+
+	private class EntrySet extends AbstractSet<Map.Entry<String, String>> {
+
+		@Override
+		public Iterator<Map.Entry<String, String>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return RequestAttributes.this.size();
+		}
+
+	}
+
+	/**
+	 * Iterates over the declared attributes, then over the other attributes.
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+
+		/**
+		 * Index of the next entry: slots first, then extra attributes offset by the number of slots.
+		 */
+		private int next;
+		private int current = -1;
+
+		/* default */ EntryIterator() {
+			this.next = seek(0);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.next < getSlotLength() + RequestAttributes.this.extraCount;
+		}
+
+		@Override
+		public Map.Entry<String, String> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int index = this.next;
+			this.current = index;
+			this.next = seek(index + 1);
+
+			int slotLength = getSlotLength();
+			if (index < slotLength) {
+				return new Entry(declaredKeys[index], RequestAttributes.this.values[index]);
+			}
+			index -= slotLength;
+			return new Entry(RequestAttributes.this.extraKeys[index], RequestAttributes.this.extraValues[index]);
+		}
+
+		@Override
+		public void remove() {
+			int index = this.current;
+			if (index == -1) {
+				throw new IllegalStateException();
+			}
+			this.current = -1;
+
+			int slotLength = getSlotLength();
+			if (index < slotLength) {
+				set(index, null);
+			} else {
+				removeExtra(index - slotLength);
+				// The last attribute has been moved at the removed index.
+				this.next = index;
+			}
+		}
+
+		private int getSlotLength() {
+			return RequestAttributes.this.values.length;
+		}
+
+		/**
+		 * Skips the empty slots.
+		 */
+		private int seek(int index) {
+			String[] values = RequestAttributes.this.values;
+			while (index < values.length && values[index] == null) {
+				index++;
+			}
+			return index;
+		}
+
+	}
+
+	private static class Entry implements Map.Entry<String, String> {
+
+		private final String key;
+		private final String value;
+
+		/* default */ Entry(String key, String value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public String getKey() {
+			return this.key;
+		}
+
+		@Override
+		public String getValue() {
+			return this.value;
+		}
+
+		@Override
+		public String setValue(String value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) obj;
+			return this.key.equals(entry.getKey()) && this.value.equals(entry.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return this.key.hashCode() ^ this.value.hashCode();
+		}
+
+	}
+
+}
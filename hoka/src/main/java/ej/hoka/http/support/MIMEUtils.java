@@ -65,6 +65,10 @@ public class MIMEUtils {
 	 * JavaScript code MIME type.
 	 */
 	public static final String MIME_JS = APPLICATION + "x-javascript"; //$NON-NLS-1$
+	/**
+	 * JSON MIME type.
+	 */
+	public static final String MIME_JSON = APPLICATION + "json"; //$NON-NLS-1$
 	/**
 	 * Form Encoded Data MIME type.
 	 */
@@ -90,6 +94,7 @@ public class MIMEUtils {
 		mapFileExtensionToMIMEType('.' + HTML, MIME_HTML);
 		mapFileExtensionToMIMEType(".htm", MIME_HTML); //$NON-NLS-1$
 		mapFileExtensionToMIMEType(".js", MIME_JS); //$NON-NLS-1$
+		mapFileExtensionToMIMEType(".json", MIME_JSON); //$NON-NLS-1$
 		mapFileExtensionToMIMEType(".txt", MIME_PLAINTEXT); //$NON-NLS-1$
 		mapFileExtensionToMIMEType('.' + XML, MIME_XML);
 	}
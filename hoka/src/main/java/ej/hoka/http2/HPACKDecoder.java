@@ -0,0 +1,257 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http2;
+
+/**
+ * Decoder of the header blocks of a connection (HPACK, RFC 7541).
+ * <p>
+ * The dynamic table is shared by all the header blocks received on the connection: every block has to be decoded, in
+ * the order of reception, even the blocks of the refused streams.
+ */
+public class HPACKDecoder {
+
+	/**
+	 * The size added to the length of the name and the value of each entry of the dynamic table.
+	 */
+	private static final int ENTRY_OVERHEAD = 32;
+
+	private static final int BYTE_MASK = 0xff;
+	private static final int INDEXED = 0x80;
+	private static final int LITERAL_WITH_INDEXING = 0x40;
+	private static final int SIZE_UPDATE = 0x20;
+	private static final int HUFFMAN = 0x80;
+	private static final int INDEXED_PREFIX = 7;
+	private static final int LITERAL_WITH_INDEXING_PREFIX = 6;
+	private static final int SIZE_UPDATE_PREFIX = 5;
+	private static final int LITERAL_PREFIX = 4;
+	private static final int STRING_LENGTH_PREFIX = 7;
+	private static final int CONTINUATION_BIT = 0x80;
+	private static final int CONTINUATION_MASK = 0x7f;
+	private static final int CONTINUATION_SHIFT = 7;
+	/**
+	 * The largest shift of the integers, so that they fit in 28 bits.
+	 */
+	private static final int MAX_SHIFT = 21;
+
+	/**
+	 * The maximum size of the dynamic table, set by the settings of the server.
+	 */
+	private final int maxTableSize;
+
+	/**
+	 * The entries of the dynamic table, in a circular array: the newest entry is at {@link #head}.
+	 */
+	private final String[] names;
+	private final String[] values;
+	private int head;
+	private int entryCount;
+
+	/**
+	 * The sum of the sizes of the entries.
+	 */
+	private int tableSize;
+
+	/**
+	 * The maximum size of the table set by the encoder, at most {@link #maxTableSize}.
+	 */
+	private int tableCapacity;
+
+	private final StringBuilder builder;
+
+	/**
+	 * The index of the next byte to decode in the block.
+	 */
+	private int position;
+
+	/**
+	 * Creates a decoder.
+	 *
+	 * @param maxTableSize
+	 *            the maximum size of the dynamic table, advertised in the <code>SETTINGS_HEADER_TABLE_SIZE</code>
+	 *            setting.
+	 */
+	public HPACKDecoder(int maxTableSize) {
+		if (maxTableSize < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.maxTableSize = maxTableSize;
+		this.tableCapacity = maxTableSize;
+		int maxEntries = maxTableSize / ENTRY_OVERHEAD;
+		this.names = new String[maxEntries];
+		this.values = new String[maxEntries];
+		this.builder = new StringBuilder();
+	}
+
+	/**
+	 * Decodes a complete header block.
+	 *
+	 * @param block
+	 *            the array containing the block.
+	 * @param offset
+	 *            the index of the first byte of the block.
+	 * @param length
+	 *            the number of bytes of the block.
+	 * @param listener
+	 *            the listener receiving the decoded header fields.
+	 * @throws HTTP2Exception
+	 *             if the block cannot be decoded, the connection has to be closed with a
+	 *             {@link HTTP2Constants#ERROR_COMPRESSION} error.
+	 */
+	public void decode(byte[] block, int offset, int length, HeaderFieldListener listener) throws HTTP2Exception {
+		int end = offset + length;
+		this.position = offset;
+		boolean fieldDecoded = false;
+		while (this.position < end) {
+			int b = block[this.position] & BYTE_MASK;
+			if ((b & INDEXED) != 0) {
+				int index = decodeInteger(block, end, INDEXED_PREFIX);
+				listener.onHeaderField(getName(index), getValue(index));
+			} else if ((b & LITERAL_WITH_INDEXING) != 0) {
+				int index = decodeInteger(block, end, LITERAL_WITH_INDEXING_PREFIX);
+				String name = index == 0 ? decodeString(block, end) : getName(index);
+				String value = decodeString(block, end);
+				add(name, value);
+				listener.onHeaderField(name, value);
+			} else if ((b & SIZE_UPDATE) != 0) {
+				if (fieldDecoded) {
+					// only allowed at the beginning of a block
+					throw new HTTP2Exception(HTTP2Constants.ERROR_COMPRESSION);
+				}
+				int capacity = decodeInteger(block, end, SIZE_UPDATE_PREFIX);
+				if (capacity > this.maxTableSize) {
+					throw new HTTP2Exception(HTTP2Constants.ERROR_COMPRESSION);
+				}
+				this.tableCapacity = capacity;
+				evict(capacity);
+				continue;
+			} else {
+				// literal without indexing or never indexed
+				int index = decodeInteger(block, end, LITERAL_PREFIX);
+				String name = index == 0 ? decodeString(block, end) : getName(index);
+				listener.onHeaderField(name, decodeString(block, end));
+			}
+			fieldDecoded = true;
+		}
+	}
+
+	private int decodeInteger(byte[] block, int end, int prefixLength) throws HTTP2Exception {
+		int prefixMask = (1 << prefixLength) - 1;
+		int value = block[this.position++] & prefixMask;
+		if (value < prefixMask) {
+			return value;
+		}
+		int shift = 0;
+		int b;
+		do {
+			if (this.position == end || shift > MAX_SHIFT) {
+				throw new HTTP2Exception(HTTP2Constants.ERROR_COMPRESSION);
+			}
+			b = block[this.position++] & BYTE_MASK;
+			value += (b & CONTINUATION_MASK) << shift;
+			shift += CONTINUATION_SHIFT;
+		} while ((b & CONTINUATION_BIT) != 0);
+		return value;
+	}
+
+	private String decodeString(byte[] block, int end) throws HTTP2Exception {
+		if (this.position == end) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_COMPRESSION);
+		}
+		boolean huffman = (block[this.position] & HUFFMAN) != 0;
+		int length = decodeInteger(block, end, STRING_LENGTH_PREFIX);
+		int start = this.position;
+		if (length > end - start) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_COMPRESSION);
+		}
+		this.position = start + length;
+
+		StringBuilder builder = this.builder;
+		builder.setLength(0);
+		if (huffman) {
+			Huffman.decode(block, start, length, builder);
+		} else {
+			for (int i = start, n = start + length; i < n; i++) {
+				builder.append((char) (block[i] & BYTE_MASK));
+			}
+		}
+		return builder.toString();
+	}
+
+	private String getName(int index) throws HTTP2Exception {
+		if (index > 0 && index <= StaticTable.LENGTH) {
+			return StaticTable.getName(index);
+		}
+		return this.names[getDynamicIndex(index)];
+	}
+
+	private String getValue(int index) throws HTTP2Exception {
+		if (index > 0 && index <= StaticTable.LENGTH) {
+			return StaticTable.getValue(index);
+		}
+		return this.values[getDynamicIndex(index)];
+	}
+
+	/**
+	 * Gets the position in the circular array of an entry of the dynamic table.
+	 *
+	 * @param index
+	 *            the index of the entry, following the static table.
+	 * @return the position in {@link #names} and {@link #values}.
+	 * @throws HTTP2Exception
+	 *             if there is no entry at this index.
+	 */
+	private int getDynamicIndex(int index) throws HTTP2Exception {
+		int age = index - StaticTable.LENGTH - 1;
+		if (age < 0 || age >= this.entryCount) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_COMPRESSION);
+		}
+		int position = this.head - age;
+		return position < 0 ? position + this.names.length : position;
+	}
+
+	private void add(String name, String value) {
+		int entrySize = name.length() + value.length() + ENTRY_OVERHEAD;
+		if (entrySize > this.tableCapacity) {
+			// an entry larger than the table empties it
+			evict(0);
+			return;
+		}
+		evict(this.tableCapacity - entrySize);
+		int head = this.head + 1;
+		if (head == this.names.length) {
+			head = 0;
+		}
+		this.head = head;
+		this.names[head] = name;
+		this.values[head] = value;
+		this.entryCount++;
+		this.tableSize += entrySize;
+	}
+
+	/**
+	 * Evicts the oldest entries until the size of the table is at most the given size.
+	 *
+	 * @param size
+	 *            the maximum size of the remaining entries.
+	 */
+	private void evict(int size) {
+		String[] names = this.names;
+		String[] values = this.values;
+		while (this.tableSize > size) {
+			int oldest = this.head - this.entryCount + 1;
+			if (oldest < 0) {
+				oldest += names.length;
+			}
+			this.tableSize -= names[oldest].length() + values[oldest].length() + ENTRY_OVERHEAD;
+			names[oldest] = null;
+			values[oldest] = null;
+			this.entryCount--;
+		}
+	}
+
+}
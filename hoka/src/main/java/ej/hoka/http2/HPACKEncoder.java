@@ -0,0 +1,139 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http2;
+
+/**
+ * Encoder of the header blocks of a connection (HPACK, RFC 7541).
+ * <p>
+ * The fields are encoded with the entries of the static table, otherwise as literals without indexing: the encoder does
+ * not use the dynamic table nor the Huffman code. The blocks are a bit larger, but encoding them needs neither memory
+ * per connection nor any state shared between the streams.
+ */
+public class HPACKEncoder {
+
+	private static final int INITIAL_CAPACITY = 256;
+	private static final int INDEXED = 0x80;
+	private static final int LITERAL = 0x00;
+	private static final int INDEXED_PREFIX = 7;
+	private static final int LITERAL_PREFIX = 4;
+	private static final int STRING_LENGTH_PREFIX = 7;
+	private static final int CONTINUATION_BIT = 0x80;
+	private static final int CONTINUATION_MASK = 0x7f;
+	private static final int CONTINUATION_SHIFT = 7;
+	private static final int MAX_INTEGER_LENGTH = 5;
+
+	private byte[] buffer;
+	private int length;
+
+	/**
+	 * Creates an encoder.
+	 */
+	public HPACKEncoder() {
+		this.buffer = new byte[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Starts a new header block, discarding the encoded one.
+	 */
+	public void reset() {
+		this.length = 0;
+	}
+
+	/**
+	 * Gets the buffer containing the encoded block, from its index <code>0</code>.
+	 *
+	 * @return the buffer.
+	 * @see #getLength()
+	 */
+	public byte[] getBuffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * Gets the length of the encoded block.
+	 *
+	 * @return the number of bytes of the block.
+	 */
+	public int getLength() {
+		return this.length;
+	}
+
+	/**
+	 * Encodes a header field at the end of the block.
+	 *
+	 * @param name
+	 *            the name of the field, converted to lower case.
+	 * @param value
+	 *            the value of the field.
+	 */
+	public void encode(String name, String value) {
+		name = toLowerCase(name);
+		int index = StaticTable.indexOf(name, value);
+		if (index > 0) {
+			encodeInteger(INDEXED, INDEXED_PREFIX, index);
+			return;
+		}
+		if (index < 0) {
+			encodeInteger(LITERAL, LITERAL_PREFIX, -index);
+		} else {
+			encodeInteger(LITERAL, LITERAL_PREFIX, 0);
+			encodeString(name);
+		}
+		encodeString(value);
+	}
+
+	private void encodeString(String string) {
+		int stringLength = string.length();
+		encodeInteger(0, STRING_LENGTH_PREFIX, stringLength);
+		ensureCapacity(stringLength);
+		byte[] buffer = this.buffer;
+		int length = this.length;
+		for (int i = 0; i < stringLength; i++) {
+			buffer[length++] = (byte) string.charAt(i);
+		}
+		this.length = length;
+	}
+
+	private void encodeInteger(int pattern, int prefixLength, int value) {
+		ensureCapacity(MAX_INTEGER_LENGTH);
+		byte[] buffer = this.buffer;
+		int prefixMask = (1 << prefixLength) - 1;
+		if (value < prefixMask) {
+			buffer[this.length++] = (byte) (pattern | value);
+			return;
+		}
+		buffer[this.length++] = (byte) (pattern | prefixMask);
+		value -= prefixMask;
+		while (value > CONTINUATION_MASK) {
+			buffer[this.length++] = (byte) (CONTINUATION_BIT | (value & CONTINUATION_MASK));
+			value >>>= CONTINUATION_SHIFT;
+		}
+		buffer[this.length++] = (byte) value;
+	}
+
+	private void ensureCapacity(int size) {
+		byte[] buffer = this.buffer;
+		int required = this.length + size;
+		if (required > buffer.length) {
+			byte[] newBuffer = new byte[Math.max(required, buffer.length * 2)];
+			System.arraycopy(buffer, 0, newBuffer, 0, this.length);
+			this.buffer = newBuffer;
+		}
+	}
+
+	private static String toLowerCase(String name) {
+		for (int i = name.length() - 1; i >= 0; i--) {
+			char c = name.charAt(i);
+			if (c >= 'A' && c <= 'Z') {
+				return name.toLowerCase();
+			}
+		}
+		return name;
+	}
+
+}
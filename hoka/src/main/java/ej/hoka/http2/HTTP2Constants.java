@@ -0,0 +1,192 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http2;
+
+/**
+ * Constants for HTTP/2 frames, settings and error codes (RFC 7540).
+ */
+public final class HTTP2Constants {
+
+	/**
+	 * The connection preface sent by the client before its first frame.
+	 */
+	public static final String CONNECTION_PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n"; //$NON-NLS-1$
+
+	/**
+	 * The token of the HTTP/2 protocol over cleartext TCP, in the "Upgrade" header field.
+	 */
+	public static final String PROTOCOL_H2C = "h2c"; //$NON-NLS-1$
+
+	/**
+	 * HTTP header field (in lower case) <code>http2-settings</code>, the settings of the client upgrading a connection.
+	 */
+	public static final String FIELD_HTTP2_SETTINGS = "http2-settings"; //$NON-NLS-1$
+
+	/**
+	 * The size of the header of the frames.
+	 */
+	public static final int FRAME_HEADER_SIZE = 9;
+
+	/**
+	 * Frame type <code>DATA</code>.
+	 */
+	public static final int TYPE_DATA = 0x0;
+	/**
+	 * Frame type <code>HEADERS</code>.
+	 */
+	public static final int TYPE_HEADERS = 0x1;
+	/**
+	 * Frame type <code>PRIORITY</code>.
+	 */
+	public static final int TYPE_PRIORITY = 0x2;
+	/**
+	 * Frame type <code>RST_STREAM</code>.
+	 */
+	public static final int TYPE_RST_STREAM = 0x3;
+	/**
+	 * Frame type <code>SETTINGS</code>.
+	 */
+	public static final int TYPE_SETTINGS = 0x4;
+	/**
+	 * Frame type <code>PUSH_PROMISE</code>.
+	 */
+	public static final int TYPE_PUSH_PROMISE = 0x5;
+	/**
+	 * Frame type <code>PING</code>.
+	 */
+	public static final int TYPE_PING = 0x6;
+	/**
+	 * Frame type <code>GOAWAY</code>.
+	 */
+	public static final int TYPE_GOAWAY = 0x7;
+	/**
+	 * Frame type <code>WINDOW_UPDATE</code>.
+	 */
+	public static final int TYPE_WINDOW_UPDATE = 0x8;
+	/**
+	 * Frame type <code>CONTINUATION</code>.
+	 */
+	public static final int TYPE_CONTINUATION = 0x9;
+
+	/**
+	 * Flag <code>END_STREAM</code> of the <code>DATA</code> and <code>HEADERS</code> frames.
+	 */
+	public static final int FLAG_END_STREAM = 0x1;
+	/**
+	 * Flag <code>ACK</code> of the <code>SETTINGS</code> and <code>PING</code> frames.
+	 */
+	public static final int FLAG_ACK = 0x1;
+	/**
+	 * Flag <code>END_HEADERS</code> of the <code>HEADERS</code> and <code>CONTINUATION</code> frames.
+	 */
+	public static final int FLAG_END_HEADERS = 0x4;
+	/**
+	 * Flag <code>PADDED</code> of the <code>DATA</code> and <code>HEADERS</code> frames.
+	 */
+	public static final int FLAG_PADDED = 0x8;
+	/**
+	 * Flag <code>PRIORITY</code> of the <code>HEADERS</code> frames.
+	 */
+	public static final int FLAG_PRIORITY = 0x20;
+
+	/**
+	 * Setting <code>SETTINGS_HEADER_TABLE_SIZE</code>.
+	 */
+	public static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+	/**
+	 * Setting <code>SETTINGS_ENABLE_PUSH</code>.
+	 */
+	public static final int SETTINGS_ENABLE_PUSH = 0x2;
+	/**
+	 * Setting <code>SETTINGS_MAX_CONCURRENT_STREAMS</code>.
+	 */
+	public static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+	/**
+	 * Setting <code>SETTINGS_INITIAL_WINDOW_SIZE</code>.
+	 */
+	public static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+	/**
+	 * Setting <code>SETTINGS_MAX_FRAME_SIZE</code>.
+	 */
+	public static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+	/**
+	 * Setting <code>SETTINGS_MAX_HEADER_LIST_SIZE</code>.
+	 */
+	public static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+	/**
+	 * The default size of the header compression table.
+	 */
+	public static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+	/**
+	 * The default initial size of the flow-control windows.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 65535;
+	/**
+	 * The default and minimum maximum size of the frame payloads.
+	 */
+	public static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+	/**
+	 * The largest maximum size of the frame payloads.
+	 */
+	public static final int MAX_MAX_FRAME_SIZE = 16777215;
+	/**
+	 * The largest size of the flow-control windows.
+	 */
+	public static final int MAX_WINDOW_SIZE = 0x7fffffff;
+	/**
+	 * The default weight of the streams.
+	 */
+	public static final int DEFAULT_WEIGHT = 16;
+
+	/**
+	 * Error code <code>NO_ERROR</code>.
+	 */
+	public static final int ERROR_NO_ERROR = 0x0;
+	/**
+	 * Error code <code>PROTOCOL_ERROR</code>.
+	 */
+	public static final int ERROR_PROTOCOL = 0x1;
+	/**
+	 * Error code <code>INTERNAL_ERROR</code>.
+	 */
+	public static final int ERROR_INTERNAL = 0x2;
+	/**
+	 * Error code <code>FLOW_CONTROL_ERROR</code>.
+	 */
+	public static final int ERROR_FLOW_CONTROL = 0x3;
+	/**
+	 * Error code <code>STREAM_CLOSED</code>.
+	 */
+	public static final int ERROR_STREAM_CLOSED = 0x5;
+	/**
+	 * Error code <code>FRAME_SIZE_ERROR</code>.
+	 */
+	public static final int ERROR_FRAME_SIZE = 0x6;
+	/**
+	 * Error code <code>REFUSED_STREAM</code>.
+	 */
+	public static final int ERROR_REFUSED_STREAM = 0x7;
+	/**
+	 * Error code <code>CANCEL</code>.
+	 */
+	public static final int ERROR_CANCEL = 0x8;
+	/**
+	 * Error code <code>COMPRESSION_ERROR</code>.
+	 */
+	public static final int ERROR_COMPRESSION = 0x9;
+	/**
+	 * Error code <code>ENHANCE_YOUR_CALM</code>.
+	 */
+	public static final int ERROR_ENHANCE_YOUR_CALM = 0xb;
+
+	private HTTP2Constants() {
+		// Forbid instantiation.
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http2;
+
+import java.io.IOException;
+
+/**
+ * This exception is thrown when an HTTP/2 connection has to be closed because of a protocol error.
+ * <p>
+ * The error code is sent to the client in a <code>GOAWAY</code> frame before closing the connection.
+ */
+public class HTTP2Exception extends IOException {
+
+	private static final long serialVersionUID = -5113938047203390377L;
+
+	/**
+	 * The error code.
+	 */
+	private final int errorCode;
+
+	/**
+	 * Creates a new {@link HTTP2Exception}.
+	 *
+	 * @param errorCode
+	 *            the error code, for example {@link HTTP2Constants#ERROR_PROTOCOL}.
+	 */
+	public HTTP2Exception(int errorCode) {
+		super(Integer.toString(errorCode));
+		this.errorCode = errorCode;
+	}
+
+	/**
+	 * Gets the error code sent to the client.
+	 *
+	 * @return the error code.
+	 */
+	public int getErrorCode() {
+		return this.errorCode;
+	}
+
+}
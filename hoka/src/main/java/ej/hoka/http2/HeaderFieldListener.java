@@ -0,0 +1,25 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http2;
+
+/**
+ * Receives the header fields decoded by a {@link HPACKDecoder}.
+ */
+public interface HeaderFieldListener {
+
+	/**
+	 * Called for each header field of a header block, in order.
+	 *
+	 * @param name
+	 *            the name of the field, in lower case for a valid request.
+	 * @param value
+	 *            the value of the field.
+	 */
+	void onHeaderField(String name, String value);
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http2;
+
+/**
+ * Decoder of the Huffman code of the string literals (RFC 7541 Appendix B).
+ * <p>
+ * The code is canonical: the codes of a given length are consecutive and follow the codes of the shorter lengths, in
+ * the order of the symbols. It is therefore fully defined by the length of the code of each symbol, and decoded bit by
+ * bit by comparing the code read so far with the first code of its length, without a decoding tree.
+ */
+/* default */ final class Huffman {
+
+	private static final int EOS = 256;
+	private static final int MAX_CODE_LENGTH = 30;
+	private static final int MAX_PADDING_LENGTH = 7;
+	private static final int BITS_PER_BYTE = 8;
+	private static final int BYTE_MASK = 0xff;
+
+	/**
+	 * The length of the code of each symbol, the 256 octets then EOS.
+	 */
+	private static final byte[] CODE_LENGTHS = {
+			13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+			28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+			6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+			5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+			13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+			7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+			15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+			6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+			20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+			24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+			22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+			21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+			26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+			19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+			20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+			26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+			30 };
+
+	/**
+	 * The first code of each length.
+	 */
+	private static final int[] FIRST_CODES = new int[MAX_CODE_LENGTH + 1];
+	/**
+	 * The number of codes of each length.
+	 */
+	private static final int[] CODE_COUNTS = new int[MAX_CODE_LENGTH + 1];
+	/**
+	 * The index in {@link #SYMBOLS} of the first symbol of each length.
+	 */
+	private static final int[] FIRST_INDEXES = new int[MAX_CODE_LENGTH + 1];
+	/**
+	 * The symbols sorted by the length of their code, then by value.
+	 */
+	private static final char[] SYMBOLS = new char[EOS + 1];
+
+	static {
+		byte[] codeLengths = CODE_LENGTHS;
+		for (int symbol = 0; symbol <= EOS; symbol++) {
+			CODE_COUNTS[codeLengths[symbol]]++;
+		}
+		int code = 0;
+		int index = 0;
+		for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+			FIRST_CODES[length] = code;
+			FIRST_INDEXES[length] = index;
+			code = (code + CODE_COUNTS[length]) << 1;
+			index += CODE_COUNTS[length];
+		}
+		int[] nextIndexes = new int[MAX_CODE_LENGTH + 1];
+		System.arraycopy(FIRST_INDEXES, 0, nextIndexes, 0, nextIndexes.length);
+		for (int symbol = 0; symbol <= EOS; symbol++) {
+			SYMBOLS[nextIndexes[codeLengths[symbol]]++] = (char) symbol;
+		}
+	}
+
+	private Huffman() {
+		// Forbid instantiation.
+	}
+
+	/**
+	 * Decodes a Huffman-encoded string.
+	 *
+	 * @param data
+	 *            the array containing the encoded string.
+	 * @param offset
+	 *            the index of the first byte of the encoded string.
+	 * @param length
+	 *            the number of bytes of the encoded string.
+	 * @param builder
+	 *            the builder to append the decoded characters to.
+	 * @throws HTTP2Exception
+	 *             if the string contains the EOS symbol or is not padded with the most significant bits of EOS.
+	 */
+	/* default */ static void decode(byte[] data, int offset, int length, StringBuilder builder) throws HTTP2Exception {
+		int code = 0;
+		int codeLength = 0;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			int b = data[i] & BYTE_MASK;
+			for (int bit = BITS_PER_BYTE - 1; bit >= 0; bit--) {
+				code = (code << 1) | ((b >>> bit) & 1);
+				codeLength++;
+				int index = code - FIRST_CODES[codeLength];
+				if (index < CODE_COUNTS[codeLength]) {
+					char symbol = SYMBOLS[FIRST_INDEXES[codeLength] + index];
+					if (symbol == EOS) {
+						throw new HTTP2Exception(HTTP2Constants.ERROR_COMPRESSION);
+					}
+					builder.append(symbol);
+					code = 0;
+					codeLength = 0;
+				} else if (codeLength == MAX_CODE_LENGTH) {
+					throw new HTTP2Exception(HTTP2Constants.ERROR_COMPRESSION);
+				}
+			}
+		}
+		// the padding is at most 7 bits, all set
+		if (codeLength > MAX_PADDING_LENGTH || code != (1 << codeLength) - 1) {
+			throw new HTTP2Exception(HTTP2Constants.ERROR_COMPRESSION);
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http2;
+
+/**
+ * The static table of the header fields predefined by HPACK (RFC 7541 Appendix A).
+ */
+/* default */ final class StaticTable {
+
+	/**
+	 * The name and the value of each entry, from the index 1. The value is empty for the entries only defining a name.
+	 */
+	private static final String[][] ENTRIES = {
+			{ ":authority", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":method", "GET" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":method", "POST" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":path", "/" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":path", "/index.html" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":scheme", "http" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":scheme", "https" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":status", "200" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":status", "204" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":status", "206" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":status", "304" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":status", "400" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":status", "404" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ ":status", "500" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "accept-charset", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "accept-encoding", "gzip, deflate" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "accept-language", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "accept-ranges", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "accept", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "access-control-allow-origin", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "age", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "allow", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "authorization", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "cache-control", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "content-disposition", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "content-encoding", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "content-language", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "content-length", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "content-location", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "content-range", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "content-type", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "cookie", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "date", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "etag", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "expect", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "expires", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "from", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "host", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "if-match", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "if-modified-since", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "if-none-match", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "if-range", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "if-unmodified-since", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "last-modified", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "link", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "location", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "max-forwards", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "proxy-authenticate", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "proxy-authorization", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "range", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "referer", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "refresh", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "retry-after", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "server", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "set-cookie", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "strict-transport-security", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "transfer-encoding", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "user-agent", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "vary", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "via", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "www-authenticate", "" }, //$NON-NLS-1$ //$NON-NLS-2$
+	};
+
+	/**
+	 * The number of entries.
+	 */
+	/* default */ static final int LENGTH = ENTRIES.length;
+
+	private StaticTable() {
+		// Forbid instantiation.
+	}
+
+	/**
+	 * Gets the name of an entry.
+	 *
+	 * @param index
+	 *            the index of the entry, from 1.
+	 * @return the name.
+	 */
+	/* default */ static String getName(int index) {
+		return ENTRIES[index - 1][0];
+	}
+
+	/**
+	 * Gets the value of an entry.
+	 *
+	 * @param index
+	 *            the index of the entry, from 1.
+	 * @return the value, empty if the entry only defines a name.
+	 */
+	/* default */ static String getValue(int index) {
+		return ENTRIES[index - 1][1];
+	}
+
+	/**
+	 * Searches an entry by its name, and by its value if possible.
+	 *
+	 * @param name
+	 *            the name.
+	 * @param value
+	 *            the value.
+	 * @return the index of the entry with the same name and value, otherwise the opposite of the index of the first
+	 *         entry with the same name, or <code>0</code> if there is none.
+	 */
+	/* default */ static int indexOf(String name, String value) {
+		String[][] entries = ENTRIES;
+		int nameIndex = 0;
+		for (int i = 0; i < entries.length; i++) {
+			String[] entry = entries[i];
+			if (entry[0].equals(name)) {
+				if (entry[1].equals(value)) {
+					return i + 1;
+				}
+				if (nameIndex == 0) {
+					nameIndex = -(i + 1);
+				}
+			}
+		}
+		return nameIndex;
+	}
+
+}
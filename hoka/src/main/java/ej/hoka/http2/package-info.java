@@ -0,0 +1,11 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+/**
+ * Constants and header compression (HPACK, RFC 7541) of the HTTP/2 protocol (RFC 7540).
+ */
+package ej.hoka.http2;
@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2009-2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2009-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -205,7 +205,9 @@ public class ChunkedMessageBodyInputStream extends InputStream {
 					b = this.is.read();
 					checkPrematureEOF(b);
 					if (b == CARRIAGE_RETURN_CHAR) {
-						// found an empty line : end of body
+						// found an empty line : end of body, consume LF so that the next request can be parsed
+						b = this.is.read();
+						checkPrematureEOF(b);
 						this.state = STATE_END;
 						return false;
 					} else {
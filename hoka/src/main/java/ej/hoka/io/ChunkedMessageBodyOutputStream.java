@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2009-2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2009-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -65,13 +65,17 @@ public class ChunkedMessageBodyOutputStream extends OutputStream {
 
 	/**
 	 * Close this output stream. This method DOES NOT close the underlying stream (i.e. the TCP connection stream). It
-	 * is the responsibility of the HTTPSession to close the underlying stream.
+	 * is the responsibility of the HTTPSession to close the underlying stream. Closing this stream again has no
+	 * effect: the last chunk is only written once.
 	 *
 	 * @throws IOException
 	 *             when an error occurs while closing the stream
 	 */
 	@Override
 	public final void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
 		writePendingBytes();
 		// write last-chunk
 		this.os.write('0');
@@ -0,0 +1,95 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Input stream of a body expected by the client to be accepted before it is sent (<code>Expect: 100-continue</code>).
+ * <p>
+ * The interim response is written to the connection the first time the body is read, so that a request answered
+ * without reading its body does not make the client send it. In that case, closing this stream does not read the rest
+ * of the body: the connection cannot be used for another request.
+ */
+public class ContinueInputStream extends FilterInputStream {
+
+	private final byte[] interimResponse;
+
+	/**
+	 * The stream to write the interim response to, or <code>null</code> once it has been written.
+	 */
+	private OutputStream output;
+
+	/**
+	 * Creates a new instance of {@link ContinueInputStream}.
+	 *
+	 * @param is
+	 *            the underlying {@link InputStream} of the body.
+	 * @param output
+	 *            the {@link OutputStream} of the connection.
+	 * @param interimResponse
+	 *            the bytes of the interim response, with its status line and an empty header.
+	 */
+	public ContinueInputStream(InputStream is, OutputStream output, byte[] interimResponse) {
+		super(is);
+		this.output = output;
+		this.interimResponse = interimResponse;
+	}
+
+	/**
+	 * Returns whether the client is still waiting for the interim response before sending the body.
+	 *
+	 * @return {@code true} if the interim response has not been written, {@code false} otherwise.
+	 */
+	public boolean isPending() {
+		return this.output != null;
+	}
+
+	@Override
+	public int read() throws IOException {
+		sendInterimResponse();
+		return super.read();
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		sendInterimResponse();
+		return super.read(b, off, len);
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		sendInterimResponse();
+		return super.skip(n);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.output == null) {
+			super.close();
+		}
+	}
+
+	private void sendInterimResponse() throws IOException {
+		OutputStream output = this.output;
+		if (output != null) {
+			this.output = null;
+			output.write(this.interimResponse);
+			output.flush();
+		}
+	}
+
+}
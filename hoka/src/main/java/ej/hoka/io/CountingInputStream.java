@@ -0,0 +1,71 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import ej.hoka.metrics.Counter;
+
+/**
+ * Input stream adding the number of bytes read from the underlying {@link InputStream} to a {@link Counter}.
+ * <p>
+ * It is meant to be wrapped in a buffered stream, so that the counter is updated once per buffer.
+ */
+public class CountingInputStream extends FilterInputStream {
+
+	private final Counter counter;
+
+	/**
+	 * Creates a new instance of {@link CountingInputStream}.
+	 *
+	 * @param is
+	 *            the underlying {@link InputStream}.
+	 * @param counter
+	 *            the counter of the read bytes.
+	 */
+	public CountingInputStream(InputStream is, Counter counter) {
+		super(is);
+		this.counter = counter;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1) {
+			this.counter.increment();
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+		if (read > 0) {
+			this.counter.add(read);
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		if (skipped > 0) {
+			this.counter.add(skipped);
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		// the bytes read again would be counted twice
+		return false;
+	}
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import ej.hoka.metrics.Counter;
+
+/**
+ * Output stream adding the number of bytes written to the underlying {@link OutputStream} to a {@link Counter}.
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+	private final Counter counter;
+
+	/**
+	 * Creates a new instance of {@link CountingOutputStream}.
+	 *
+	 * @param os
+	 *            the underlying {@link OutputStream}.
+	 * @param counter
+	 *            the counter of the written bytes.
+	 */
+	public CountingOutputStream(OutputStream os, Counter counter) {
+		super(os);
+		this.counter = counter;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		this.out.write(b);
+		this.counter.increment();
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		// FilterOutputStream writes the bytes one by one
+		this.out.write(b, off, len);
+		this.counter.add(len);
+	}
+
+}
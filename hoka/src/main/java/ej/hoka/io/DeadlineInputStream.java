@@ -0,0 +1,346 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import ej.bon.Util;
+
+/**
+ * Input stream of a connection bounding the total time of a sequence of reads, and not only the time of each read.
+ * <p>
+ * The timeout of the socket given when the stream is created is the maximum time of each read. Before each read from
+ * the underlying stream, the timeout of the socket is reduced to the time remaining before the deadline, so that a
+ * client cannot hold the connection by sending one byte before each read times out. A deadline can be:
+ * <ul>
+ * <li>a fixed time to receive the first bytes of a request, then a fixed time after they are received, see
+ * {@link #expectRequest(int, int)},</li>
+ * <li>a fixed time, and a time extended as the bytes are received at a minimum rate, see
+ * {@link #startBody(int, int, int)}, possibly started at the next read, see {@link #deferBody(int, int, int)},</li>
+ * <li>a time computed by the caller, see {@link #setDeadline(long)}.</li>
+ * </ul>
+ * A {@link SocketTimeoutException} is thrown once the deadline has passed.
+ * <p>
+ * It is meant to be wrapped in a buffered stream, so that the timeout of the socket is only changed once per buffer.
+ * <p>
+ * The responses buffered in a {@link PipelineOutputStream} are sent before each read from the underlying stream, so
+ * that the client is not waiting for them while the connection waits for the next requests, see
+ * {@link #setPendingOutput(PipelineOutputStream)}.
+ */
+public class DeadlineInputStream extends FilterInputStream {
+
+	private static final long MILLISECONDS_PER_SECOND = 1000;
+
+	private final Socket socket;
+
+	/**
+	 * The maximum time of each read, in milliseconds, <code>0</code> for no timeout.
+	 */
+	private final int readTimeout;
+
+	/**
+	 * The timeout currently set to the socket.
+	 */
+	private int socketTimeout;
+
+	/**
+	 * The time to receive the head once its first bytes are received, or <code>0</code>.
+	 */
+	private int pendingTimeout;
+
+	/**
+	 * Whether a request is expected and its first bytes have not been received yet.
+	 */
+	private boolean awaitingRequest;
+
+	/**
+	 * The time at which the first bytes of the request have been received, in nanoseconds, or <code>0</code>.
+	 */
+	private long requestStartTime;
+
+	/**
+	 * The time after which the reads fail, in milliseconds, or <code>0</code>.
+	 */
+	private long deadline;
+
+	/**
+	 * The minimum rate of the reads, in bytes per second, or <code>0</code>.
+	 */
+	private int minimumRate;
+
+	/**
+	 * The time from which the bytes are expected at the minimum rate.
+	 */
+	private long rateStart;
+
+	/**
+	 * The number of bytes read since the minimum rate has been set.
+	 */
+	private long rateBytes;
+
+	/**
+	 * Whether the deadlines of the body are started at the next read from the underlying stream.
+	 */
+	private boolean bodyDeferred;
+
+	/**
+	 * The deadlines of the deferred body: its timeout, minimum rate and grace period.
+	 */
+	private int deferredTimeout;
+	private int deferredRate;
+	private int deferredGracePeriod;
+
+	/**
+	 * The output stream flushed before each read, or <code>null</code>.
+	 */
+	private PipelineOutputStream pendingOutput;
+
+	/**
+	 * Creates a new instance of {@link DeadlineInputStream}, without deadline.
+	 *
+	 * @param socket
+	 *            the socket, whose timeout is the maximum time of each read.
+	 * @param is
+	 *            the input stream of the socket, possibly wrapped.
+	 * @throws IOException
+	 *             if the timeout of the socket cannot be read.
+	 */
+	public DeadlineInputStream(Socket socket, InputStream is) throws IOException {
+		super(is);
+		this.socket = socket;
+		this.readTimeout = socket.getSoTimeout();
+		this.socketTimeout = this.readTimeout;
+	}
+
+	/**
+	 * Sets the output stream of the connection, whose pending bytes are sent before each read from the underlying
+	 * stream.
+	 *
+	 * @param pendingOutput
+	 *            the output stream of the connection, or <code>null</code>.
+	 */
+	public void setPendingOutput(PipelineOutputStream pendingOutput) {
+		this.pendingOutput = pendingOutput;
+	}
+
+	/**
+	 * Waits for a request without deadline, then starts the deadline of its head once its first bytes are received.
+	 *
+	 * @param headTimeout
+	 *            the time to receive the head once its first bytes are received, in milliseconds, <code>0</code> for
+	 *            no deadline.
+	 */
+	public void expectRequest(int headTimeout) {
+		expectRequest(0, headTimeout);
+	}
+
+	/**
+	 * Waits for a request until the idle deadline, then starts the deadline of its head once its first bytes are
+	 * received.
+	 *
+	 * @param idleTimeout
+	 *            the time to receive the first bytes of the request, in milliseconds, <code>0</code> for no deadline.
+	 * @param headTimeout
+	 *            the time to receive the head once its first bytes are received, in milliseconds, <code>0</code> for
+	 *            no deadline.
+	 * @see #getRequestStartTime()
+	 */
+	public void expectRequest(int idleTimeout, int headTimeout) {
+		this.deadline = idleTimeout == 0 ? 0 : Util.platformTimeMillis() + idleTimeout;
+		this.minimumRate = 0;
+		this.pendingTimeout = headTimeout;
+		this.awaitingRequest = true;
+		this.requestStartTime = 0;
+		this.bodyDeferred = false;
+	}
+
+	/**
+	 * Starts the expected request whose first bytes have already been received, for example buffered with the previous
+	 * request. Does nothing if the request has already started.
+	 */
+	public void startRequest() {
+		if (this.awaitingRequest) {
+			onRequestStarted();
+		}
+	}
+
+	/**
+	 * Gets the time at which the first bytes of the expected request have been received.
+	 *
+	 * @return the time in nanoseconds, or <code>0</code> if they have not been received yet, for example when the idle
+	 *         deadline has passed.
+	 * @see Util#platformTimeNanos()
+	 */
+	public long getRequestStartTime() {
+		return this.requestStartTime;
+	}
+
+	/**
+	 * Sets a deadline computed by the caller, for example from the deadlines of the streams multiplexed on the
+	 * connection.
+	 *
+	 * @param deadline
+	 *            the time after which the reads fail, in milliseconds, <code>0</code> for no deadline.
+	 * @see Util#platformTimeMillis()
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+		this.minimumRate = 0;
+		this.pendingTimeout = 0;
+		this.awaitingRequest = false;
+		this.bodyDeferred = false;
+	}
+
+	/**
+	 * Starts the deadlines of a body.
+	 *
+	 * @param timeout
+	 *            the time to receive the body, in milliseconds, <code>0</code> for no deadline.
+	 * @param minimumRate
+	 *            the minimum rate of the body, in bytes per second, <code>0</code> for no minimum rate.
+	 * @param gracePeriod
+	 *            the time allowed before the bytes are expected at the minimum rate, in milliseconds.
+	 */
+	public void startBody(int timeout, int minimumRate, int gracePeriod) {
+		long now = Util.platformTimeMillis();
+		this.pendingTimeout = 0;
+		this.bodyDeferred = false;
+		this.deadline = timeout == 0 ? 0 : now + timeout;
+		this.minimumRate = minimumRate;
+		this.rateStart = now + gracePeriod;
+		this.rateBytes = 0;
+	}
+
+	/**
+	 * Starts the deadlines of a body at the next read from the underlying stream, without deadline until then.
+	 * <p>
+	 * It is used when the client waits for an interim response before sending the body: the connection is read right
+	 * after the interim response is written, so that the time spent by the request handler before asking for the body
+	 * is not counted.
+	 *
+	 * @param timeout
+	 *            the time to receive the body, in milliseconds, <code>0</code> for no deadline.
+	 * @param minimumRate
+	 *            the minimum rate of the body, in bytes per second, <code>0</code> for no minimum rate.
+	 * @param gracePeriod
+	 *            the time allowed before the bytes are expected at the minimum rate, in milliseconds.
+	 * @see ContinueInputStream
+	 */
+	public void deferBody(int timeout, int minimumRate, int gracePeriod) {
+		this.pendingTimeout = 0;
+		this.deadline = 0;
+		this.minimumRate = 0;
+		this.bodyDeferred = true;
+		this.deferredTimeout = timeout;
+		this.deferredRate = minimumRate;
+		this.deferredGracePeriod = gracePeriod;
+	}
+
+	@Override
+	public int read() throws IOException {
+		prepareRead();
+		int b = super.read();
+		if (b != -1) {
+			onRead(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		prepareRead();
+		int read = super.read(b, off, len);
+		if (read > 0) {
+			onRead(read);
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		prepareRead();
+		long skipped = super.skip(n);
+		if (skipped > 0) {
+			onRead(skipped);
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Sends the pending output and sets the timeout of the socket to the time remaining before the deadline.
+	 *
+	 * @throws SocketTimeoutException
+	 *             if the deadline has passed.
+	 * @throws IOException
+	 *             if the pending output cannot be sent or the timeout of the socket cannot be set.
+	 */
+	private void prepareRead() throws IOException {
+		PipelineOutputStream pendingOutput = this.pendingOutput;
+		if (pendingOutput != null) {
+			pendingOutput.flushPending();
+		}
+		if (this.bodyDeferred) {
+			startBody(this.deferredTimeout, this.deferredRate, this.deferredGracePeriod);
+		}
+		long deadline = getDeadline();
+		int timeout = this.readTimeout;
+		if (deadline != 0) {
+			long remaining = deadline - Util.platformTimeMillis();
+			if (remaining <= 0) {
+				throw new SocketTimeoutException();
+			}
+			if (timeout == 0 || remaining < timeout) {
+				timeout = (int) remaining;
+			}
+		}
+		if (timeout != this.socketTimeout) {
+			this.socket.setSoTimeout(timeout);
+			this.socketTimeout = timeout;
+		}
+	}
+
+	private long getDeadline() {
+		long deadline = this.deadline;
+		int minimumRate = this.minimumRate;
+		if (minimumRate != 0) {
+			long rateDeadline = this.rateStart + this.rateBytes * MILLISECONDS_PER_SECOND / minimumRate;
+			if (deadline == 0 || rateDeadline < deadline) {
+				deadline = rateDeadline;
+			}
+		}
+		return deadline;
+	}
+
+	private void onRead(long count) {
+		if (this.awaitingRequest) {
+			onRequestStarted();
+		}
+		this.rateBytes += count;
+	}
+
+	/**
+	 * Replaces the idle deadline by the deadline of the head once its first bytes are received.
+	 */
+	private void onRequestStarted() {
+		int headTimeout = this.pendingTimeout;
+		this.awaitingRequest = false;
+		this.requestStartTime = Util.platformTimeNanos();
+		this.deadline = headTimeout == 0 ? 0 : Util.platformTimeMillis() + headTimeout;
+		this.pendingTimeout = 0;
+	}
+
+}
@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2009-2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2009-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -31,7 +31,7 @@ public class IdentityMessageBodyInputStream extends InputStream {
 	/**
 	 * The number of remaining bytes can be read from the input stream.
 	 */
-	private int remainingBytes;
+	private long remainingBytes;
 
 	/**
 	 * Creates a new instance of {@link IdentityMessageBodyInputStream} with the {@link InputStream} <code>is</code>
@@ -44,6 +44,19 @@ public class IdentityMessageBodyInputStream extends InputStream {
 	 *            the number of bytes can be read from the underlying InputStream.
 	 */
 	public IdentityMessageBodyInputStream(final InputStream is, final int bodyLength) {
+		this(is, (long) bodyLength);
+	}
+
+	/**
+	 * Creates a new instance of {@link IdentityMessageBodyInputStream} with the {@link InputStream} <code>is</code>
+	 * with the predefined length <code>bodyLength</code>, which may exceed the range of an <code>int</code>.
+	 *
+	 * @param is
+	 *            the underlying {@link InputStream} to read the body content of the HTTP message body
+	 * @param bodyLength
+	 *            the number of bytes can be read from the underlying InputStream.
+	 */
+	public IdentityMessageBodyInputStream(final InputStream is, final long bodyLength) {
 		this.is = is;
 		this.remainingBytes = bodyLength;
 	}
@@ -57,7 +70,7 @@ public class IdentityMessageBodyInputStream extends InputStream {
 	 */
 	@Override
 	public int available() throws IOException {
-		return Math.min(this.is.available(), this.remainingBytes);
+		return (int) Math.min(this.is.available(), this.remainingBytes);
 	}
 
 	/**
@@ -87,7 +100,7 @@ public class IdentityMessageBodyInputStream extends InputStream {
 	@Override
 	public void close() throws IOException {
 		if (this.remainingBytes > 0) {
-			byte[] buf = new byte[Math.min(BUFFER_SIZE, this.remainingBytes)];
+			byte[] buf = new byte[(int) Math.min(BUFFER_SIZE, this.remainingBytes)];
 			while (this.remainingBytes > 0) {
 				read(buf);
 			}
@@ -151,7 +164,7 @@ public class IdentityMessageBodyInputStream extends InputStream {
 			return -1;
 		}
 
-		int result = this.is.read(data, offset, Math.min(length, this.remainingBytes));
+		int result = this.is.read(data, offset, (int) Math.min(length, this.remainingBytes));
 		checkPrematureEOF(result);
 
 		this.remainingBytes -= result;
@@ -0,0 +1,63 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.io;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+
+/**
+ * Buffered input stream of a connection, able to tell whether the head of the next request has already been received
+ * with the previous ones.
+ *
+ * @see PipelineOutputStream
+ */
+public class PipelineInputStream extends BufferedInputStream {
+
+	/**
+	 * The line break ending the head of a request, after its last header field.
+	 */
+	private static final byte[] END_OF_HEAD = { '\r', '\n', '\r', '\n' };
+
+	/**
+	 * Creates a new instance of {@link PipelineInputStream}.
+	 *
+	 * @param is
+	 *            the underlying {@link InputStream} of the connection.
+	 * @param size
+	 *            the size of the buffer.
+	 */
+	public PipelineInputStream(InputStream is, int size) {
+		super(is, size);
+	}
+
+	/**
+	 * Returns whether the buffer holds the whole head of the next request, so that it can be parsed without reading the
+	 * connection. The bytes not buffered yet are not read.
+	 *
+	 * @return {@code true} if the end of a request head is in the buffer, {@code false} otherwise.
+	 */
+	public synchronized boolean hasBufferedHead() {
+		byte[] buffer = this.buf;
+		byte[] endOfHead = END_OF_HEAD;
+		int length = endOfHead.length;
+		int matched = 0;
+		for (int i = this.pos, count = this.count; i < count; i++) {
+			byte b = buffer[i];
+			if (b == endOfHead[matched]) {
+				if (++matched == length) {
+					return true;
+				}
+			} else {
+				// the only partial match that can restart is a carriage return
+				matched = b == '\r' ? 1 : 0;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered output stream of a connection, able to defer the flushes while the responses of pipelined requests are
+ * written.
+ * <p>
+ * The header and the body of a response are written to the buffer, and sent at once when the response is flushed. When
+ * the next request has already been received, the flushes are deferred with {@link #setFlushDeferred(boolean)}: the
+ * responses are written in order to the buffer, which is sent when it is full or when {@link #flushPending()} is
+ * called, before waiting for the next requests of the client.
+ *
+ * @see DeadlineInputStream#setPendingOutput(PipelineOutputStream)
+ */
+public class PipelineOutputStream extends OutputStream {
+
+	private final OutputStream os;
+	private final byte[] buffer;
+
+	/**
+	 * The number of bytes in the buffer.
+	 */
+	private int count;
+
+	private boolean flushDeferred;
+
+	/**
+	 * Creates a new instance of {@link PipelineOutputStream}.
+	 *
+	 * @param os
+	 *            the underlying {@link OutputStream} of the connection.
+	 * @param buffer
+	 *            the buffer of the bytes not sent yet.
+	 */
+	public PipelineOutputStream(OutputStream os, byte[] buffer) {
+		this.os = os;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Sets whether the flushes are deferred until the buffer is full or {@link #flushPending()} is called.
+	 * <p>
+	 * The bytes already written are not sent when the flushes stop being deferred, but by the next flush.
+	 *
+	 * @param flushDeferred
+	 *            {@code true} to defer the flushes, {@code false} to send the buffer on each flush.
+	 */
+	public void setFlushDeferred(boolean flushDeferred) {
+		this.flushDeferred = flushDeferred;
+	}
+
+	/**
+	 * Sends the bytes written to the buffer, even when the flushes are deferred.
+	 *
+	 * @throws IOException
+	 *             if the connection is lost.
+	 */
+	public void flushPending() throws IOException {
+		if (this.count > 0) {
+			writeBuffer();
+			this.os.flush();
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (this.count == this.buffer.length) {
+			writeBuffer();
+		}
+		this.buffer[this.count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		byte[] buffer = this.buffer;
+		if (len >= buffer.length) {
+			// no need to copy large arrays
+			writeBuffer();
+			this.os.write(b, off, len);
+			return;
+		}
+		if (len > buffer.length - this.count) {
+			writeBuffer();
+		}
+		System.arraycopy(b, off, buffer, this.count, len);
+		this.count += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (!this.flushDeferred) {
+			writeBuffer();
+			this.os.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushPending();
+		} finally {
+			this.os.close();
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		int count = this.count;
+		if (count > 0) {
+			this.count = 0;
+			this.os.write(this.buffer, 0, count);
+		}
+	}
+
+}
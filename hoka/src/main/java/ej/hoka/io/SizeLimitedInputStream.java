@@ -0,0 +1,109 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import ej.hoka.http.body.PayloadTooLargeException;
+
+/**
+ * Input stream throwing a {@link PayloadTooLargeException} when more than a maximum number of bytes are read from the
+ * underlying {@link InputStream}.
+ * <p>
+ * Once the limit has been exceeded, the rest of the underlying stream is not read, even when this stream is closed:
+ * the connection cannot be used for another request.
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+
+	private final long limit;
+	private long remaining;
+	private boolean exceeded;
+
+	/**
+	 * Creates a new instance of {@link SizeLimitedInputStream}.
+	 *
+	 * @param is
+	 *            the underlying {@link InputStream}.
+	 * @param limit
+	 *            the maximum number of bytes read.
+	 */
+	public SizeLimitedInputStream(InputStream is, long limit) {
+		super(is);
+		this.limit = limit;
+		this.remaining = limit;
+	}
+
+	/**
+	 * Returns whether more than the maximum number of bytes have been read.
+	 *
+	 * @return {@code true} if the limit has been exceeded, {@code false} otherwise.
+	 */
+	public boolean isExceeded() {
+		return this.exceeded;
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkLimit();
+		int b = super.read();
+		if (b != -1) {
+			consume(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkLimit();
+		// read one more byte than remaining, to detect that the limit is exceeded
+		int read = super.read(b, off, this.remaining < len ? (int) this.remaining + 1 : len);
+		if (read > 0) {
+			consume(read);
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		checkLimit();
+		long skipped = super.skip(this.remaining < n ? this.remaining + 1 : n);
+		if (skipped > 0) {
+			consume(skipped);
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!this.exceeded) {
+			super.close();
+		}
+	}
+
+	private void checkLimit() throws PayloadTooLargeException {
+		if (this.exceeded) {
+			throw new PayloadTooLargeException(this.limit);
+		}
+	}
+
+	private void consume(long count) throws PayloadTooLargeException {
+		this.remaining -= count;
+		if (this.remaining < 0) {
+			this.exceeded = true;
+			throw new PayloadTooLargeException(this.limit);
+		}
+	}
+
+}
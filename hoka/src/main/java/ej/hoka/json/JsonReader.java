@@ -0,0 +1,711 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A pull parser reading a UTF-8 JSON document from an {@link InputStream}.
+ * <p>
+ * Each call to {@link #next()} reads the next token of the document. The value of the last {@link #NAME},
+ * {@link #STRING} or {@link #NUMBER} token is decoded in a reused buffer and is available through
+ * {@link #getString()}, {@link #getInt()}, {@link #getLong()} or {@link #getDouble()}. The document is never fully
+ * loaded in memory.
+ * <p>
+ * An {@link IllegalArgumentException} is thrown when the document is malformed, or when a name, a string or a number
+ * is longer than the maximum value length: the memory used does not depend on the document.
+ */
+public class JsonReader implements Closeable {
+
+	/**
+	 * Token at the beginning of an object.
+	 */
+	public static final int BEGIN_OBJECT = 1;
+	/**
+	 * Token at the end of an object.
+	 */
+	public static final int END_OBJECT = 2;
+	/**
+	 * Token at the beginning of an array.
+	 */
+	public static final int BEGIN_ARRAY = 3;
+	/**
+	 * Token at the end of an array.
+	 */
+	public static final int END_ARRAY = 4;
+	/**
+	 * Token of the name of an object member.
+	 */
+	public static final int NAME = 5;
+	/**
+	 * Token of a string value.
+	 */
+	public static final int STRING = 6;
+	/**
+	 * Token of a number value.
+	 */
+	public static final int NUMBER = 7;
+	/**
+	 * Token of the <code>true</code> value.
+	 */
+	public static final int TRUE = 8;
+	/**
+	 * Token of the <code>false</code> value.
+	 */
+	public static final int FALSE = 9;
+	/**
+	 * Token of the <code>null</code> value.
+	 */
+	public static final int NULL = 10;
+	/**
+	 * Token at the end of the document.
+	 */
+	public static final int END_DOCUMENT = 11;
+
+	private static final int DEFAULT_BUFFER_SIZE = 512;
+	private static final int DEFAULT_MAX_DEPTH = 32;
+	private static final int DEFAULT_MAX_VALUE_LENGTH = 4096;
+
+	private static final int SCOPE_EMPTY_DOCUMENT = 0;
+	private static final int SCOPE_NONEMPTY_DOCUMENT = 1;
+	private static final int SCOPE_EMPTY_ARRAY = 2;
+	private static final int SCOPE_NONEMPTY_ARRAY = 3;
+	private static final int SCOPE_EMPTY_OBJECT = 4;
+	private static final int SCOPE_DANGLING_NAME = 5;
+	private static final int SCOPE_NONEMPTY_OBJECT = 6;
+
+	private static final int MIN_TWO_BYTES_CODE_POINT = 0x80;
+	private static final int MIN_THREE_BYTES_CODE_POINT = 0x800;
+	private static final int MIN_SUPPLEMENTARY_CODE_POINT = 0x10000;
+	private static final int MAX_CODE_POINT = 0x10FFFF;
+	private static final int MIN_HIGH_SURROGATE = 0xD800;
+	private static final int MIN_LOW_SURROGATE = 0xDC00;
+	private static final int MAX_LOW_SURROGATE = 0xDFFF;
+
+	private final InputStream input;
+	private final byte[] buffer;
+	private int position;
+	private int limit;
+	/**
+	 * The number of bytes read before the beginning of the buffer, to report the offset of errors.
+	 */
+	private long bufferOffset;
+
+	/**
+	 * The scopes of the enclosing arrays and objects, the current one being at <code>depth - 1</code>.
+	 */
+	private final byte[] scopes;
+	private int depth;
+
+	/**
+	 * The value of the last name, string or number token.
+	 */
+	private final StringBuilder value;
+	private final int maxValueLength;
+	private int token;
+
+	/**
+	 * Creates a JSON reader with a buffer of 512 bytes, a maximum depth of 32 nested arrays or objects and a maximum
+	 * value length of 4096 characters.
+	 *
+	 * @param input
+	 *            the stream to read.
+	 */
+	public JsonReader(InputStream input) {
+		this(input, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 * Creates a JSON reader with a maximum value length of 4096 characters.
+	 *
+	 * @param input
+	 *            the stream to read.
+	 * @param bufferSize
+	 *            the size of the read buffer.
+	 * @param maxDepth
+	 *            the maximum number of nested arrays or objects.
+	 */
+	public JsonReader(InputStream input, int bufferSize, int maxDepth) {
+		this(input, bufferSize, maxDepth, DEFAULT_MAX_VALUE_LENGTH);
+	}
+
+	/**
+	 * Creates a JSON reader.
+	 *
+	 * @param input
+	 *            the stream to read.
+	 * @param bufferSize
+	 *            the size of the read buffer.
+	 * @param maxDepth
+	 *            the maximum number of nested arrays or objects.
+	 * @param maxValueLength
+	 *            the maximum number of characters of a name, a string or a number.
+	 */
+	public JsonReader(InputStream input, int bufferSize, int maxDepth, int maxValueLength) {
+		if (input == null || bufferSize <= 0 || maxDepth <= 0 || maxValueLength <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.input = input;
+		this.buffer = new byte[bufferSize];
+		this.scopes = new byte[maxDepth + 1];
+		this.scopes[0] = SCOPE_EMPTY_DOCUMENT;
+		this.depth = 1;
+		this.value = new StringBuilder();
+		this.maxValueLength = maxValueLength;
+	}
+
+	/**
+	 * Reads the next token.
+	 *
+	 * @return the token read, one of the constants of this class.
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 * @throws IllegalArgumentException
+	 *             if the document is malformed or a value is too long.
+	 */
+	public int next() throws IOException {
+		int token;
+		byte[] scopes = this.scopes;
+		int scopeIndex = this.depth - 1;
+		int c;
+		switch (scopes[scopeIndex]) {
+		case SCOPE_EMPTY_ARRAY:
+			scopes[scopeIndex] = SCOPE_NONEMPTY_ARRAY;
+			c = nextNonWhitespace();
+			token = (c == ']') ? pop(END_ARRAY) : readValue(c);
+			break;
+		case SCOPE_NONEMPTY_ARRAY:
+			c = nextNonWhitespace();
+			if (c == ']') {
+				token = pop(END_ARRAY);
+			} else if (c == ',') {
+				token = readValue(nextNonWhitespace());
+			} else {
+				throw syntaxError();
+			}
+			break;
+		case SCOPE_EMPTY_OBJECT:
+			c = nextNonWhitespace();
+			token = (c == '}') ? pop(END_OBJECT) : readName(c);
+			break;
+		case SCOPE_NONEMPTY_OBJECT:
+			c = nextNonWhitespace();
+			if (c == '}') {
+				token = pop(END_OBJECT);
+			} else if (c == ',') {
+				token = readName(nextNonWhitespace());
+			} else {
+				throw syntaxError();
+			}
+			break;
+		case SCOPE_DANGLING_NAME:
+			if (nextNonWhitespace() != ':') {
+				throw syntaxError();
+			}
+			scopes[scopeIndex] = SCOPE_NONEMPTY_OBJECT;
+			token = readValue(nextNonWhitespace());
+			break;
+		case SCOPE_EMPTY_DOCUMENT:
+			scopes[scopeIndex] = SCOPE_NONEMPTY_DOCUMENT;
+			token = readValue(nextNonWhitespace());
+			break;
+		default: // SCOPE_NONEMPTY_DOCUMENT
+			if (nextNonWhitespace() != -1) {
+				throw syntaxError();
+			}
+			token = END_DOCUMENT;
+			break;
+		}
+		this.token = token;
+		return token;
+	}
+
+	/**
+	 * Gets the last token read.
+	 *
+	 * @return the last token, or <code>0</code> if {@link #next()} has not been called.
+	 */
+	public int getToken() {
+		return this.token;
+	}
+
+	/**
+	 * Gets the number of arrays and objects enclosing the current position.
+	 *
+	 * @return the depth, <code>0</code> at the top level of the document.
+	 */
+	public int getDepth() {
+		return this.depth - 1;
+	}
+
+	/**
+	 * Skips the value following the last token read.
+	 * <p>
+	 * If the last token is a {@link #NAME}, the value of the member is skipped. If the last token is a
+	 * {@link #BEGIN_OBJECT} or a {@link #BEGIN_ARRAY}, the rest of the object or array is skipped. Otherwise, the next
+	 * value is skipped.
+	 *
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 * @throws IllegalArgumentException
+	 *             if the document is malformed.
+	 */
+	public void skipValue() throws IOException {
+		int token = this.token;
+		int level;
+		if (token == BEGIN_OBJECT || token == BEGIN_ARRAY) {
+			level = 1;
+		} else {
+			level = 0;
+			token = next();
+			if (token == BEGIN_OBJECT || token == BEGIN_ARRAY) {
+				level = 1;
+			} else if (token == END_OBJECT || token == END_ARRAY || token == END_DOCUMENT) {
+				throw syntaxError();
+			}
+		}
+		while (level > 0) {
+			token = next();
+			if (token == BEGIN_OBJECT || token == BEGIN_ARRAY) {
+				level++;
+			} else if (token == END_OBJECT || token == END_ARRAY) {
+				level--;
+			}
+		}
+	}
+
+	/**
+	 * Gets the value of the last {@link #NAME}, {@link #STRING} or {@link #NUMBER} token.
+	 *
+	 * @return the value.
+	 */
+	public String getString() {
+		return this.value.toString();
+	}
+
+	/**
+	 * Checks whether the value of the last {@link #NAME} or {@link #STRING} token is equal to a string, without
+	 * creating a {@link String}.
+	 *
+	 * @param string
+	 *            the string to compare.
+	 * @return <code>true</code> if the value is equal to <code>string</code>.
+	 */
+	public boolean valueEquals(String string) {
+		StringBuilder value = this.value;
+		int length = value.length();
+		if (length != string.length()) {
+			return false;
+		}
+		for (int i = length - 1; i >= 0; i--) {
+			if (value.charAt(i) != string.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the value of the last {@link #NUMBER} token as an <code>int</code>.
+	 *
+	 * @return the value.
+	 * @throws NumberFormatException
+	 *             if the value is not an <code>int</code>.
+	 */
+	public int getInt() {
+		long value = getLong();
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new NumberFormatException();
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Gets the value of the last {@link #NUMBER} token as a <code>long</code>.
+	 *
+	 * @return the value.
+	 * @throws NumberFormatException
+	 *             if the value is not a <code>long</code>.
+	 */
+	public long getLong() {
+		StringBuilder value = this.value;
+		int length = value.length();
+		int i = 0;
+		boolean negative = length > 0 && value.charAt(0) == '-';
+		if (negative) {
+			i++;
+		}
+		if (i == length) {
+			throw new NumberFormatException();
+		}
+		// accumulate negatively to reach Long.MIN_VALUE
+		long result = 0;
+		for (; i < length; i++) {
+			int digit = value.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+				throw new NumberFormatException();
+			}
+			result = result * 10 - digit;
+		}
+		if (!negative) {
+			if (result == Long.MIN_VALUE) {
+				throw new NumberFormatException();
+			}
+			result = -result;
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the value of the last {@link #NUMBER} token as a <code>double</code>.
+	 *
+	 * @return the value.
+	 */
+	public double getDouble() {
+		return Double.parseDouble(this.value.toString());
+	}
+
+	/**
+	 * Closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.input.close();
+	}
+
+	private int pop(int token) {
+		this.depth--;
+		return token;
+	}
+
+	private void push(int scope) {
+		int depth = this.depth;
+		if (depth == this.scopes.length) {
+			throw new IllegalArgumentException("JSON nesting too deep at " + getOffset()); //$NON-NLS-1$
+		}
+		this.scopes[depth] = (byte) scope;
+		this.depth = depth + 1;
+	}
+
+	private int readName(int c) throws IOException {
+		if (c != '"') {
+			throw syntaxError();
+		}
+		readString();
+		this.scopes[this.depth - 1] = SCOPE_DANGLING_NAME;
+		return NAME;
+	}
+
+	private int readValue(int c) throws IOException {
+		switch (c) {
+		case '{':
+			push(SCOPE_EMPTY_OBJECT);
+			return BEGIN_OBJECT;
+		case '[':
+			push(SCOPE_EMPTY_ARRAY);
+			return BEGIN_ARRAY;
+		case '"':
+			readString();
+			return STRING;
+		case 't':
+			readLiteral("rue"); //$NON-NLS-1$
+			return TRUE;
+		case 'f':
+			readLiteral("alse"); //$NON-NLS-1$
+			return FALSE;
+		case 'n':
+			readLiteral("ull"); //$NON-NLS-1$
+			return NULL;
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				readNumber(c);
+				return NUMBER;
+			}
+			throw syntaxError();
+		}
+	}
+
+	private void readLiteral(String rest) throws IOException {
+		int length = rest.length();
+		for (int i = 0; i < length; i++) {
+			if (read() != rest.charAt(i)) {
+				throw syntaxError();
+			}
+		}
+	}
+
+	/**
+	 * Reads a number: an optional minus sign, an integer part without leading zeros, an optional fraction and an
+	 * optional exponent.
+	 */
+	private void readNumber(int first) throws IOException {
+		StringBuilder value = this.value;
+		value.setLength(0);
+		value.append((char) first);
+		int c = first;
+		if (c == '-') {
+			c = readNumberChar();
+			if (c < '0' || c > '9') {
+				throw syntaxError();
+			}
+		}
+		if (c == '0') {
+			c = peekNumberChar();
+		} else {
+			c = readDigits();
+		}
+		if (c == '.') {
+			this.position++;
+			appendNumberChar(c);
+			if (!isDigit(readNumberChar())) {
+				throw syntaxError();
+			}
+			c = readDigits();
+		}
+		if (c == 'e' || c == 'E') {
+			this.position++;
+			appendNumberChar(c);
+			c = readNumberChar();
+			if (c == '+' || c == '-') {
+				c = readNumberChar();
+			}
+			if (!isDigit(c)) {
+				throw syntaxError();
+			}
+			c = readDigits();
+		}
+		if (isDigit(c) || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+			// for example a leading zero or a second fraction
+			throw syntaxError();
+		}
+	}
+
+	/**
+	 * Reads the digits following a digit of a number.
+	 *
+	 * @return the character following the digits, not consumed, or <code>-1</code> at the end of the stream.
+	 */
+	private int readDigits() throws IOException {
+		while (true) {
+			int c = peekNumberChar();
+			if (!isDigit(c)) {
+				return c;
+			}
+			this.position++;
+			appendNumberChar(c);
+		}
+	}
+
+	private int peekNumberChar() throws IOException {
+		if (this.position == this.limit && !fill()) {
+			return -1;
+		}
+		return this.buffer[this.position];
+	}
+
+	private int readNumberChar() throws IOException {
+		int c = read();
+		if (c != -1) {
+			appendNumberChar(c);
+		}
+		return c;
+	}
+
+	private void appendNumberChar(int c) {
+		StringBuilder value = this.value;
+		if (value.length() == this.maxValueLength) {
+			throw valueTooLong();
+		}
+		value.append((char) c);
+	}
+
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private void readString() throws IOException {
+		StringBuilder value = this.value;
+		value.setLength(0);
+		int maxValueLength = this.maxValueLength;
+		while (true) {
+			byte[] buffer = this.buffer;
+			int position = this.position;
+			int limit = this.limit;
+			// fast path for the ASCII characters
+			while (position < limit) {
+				int c = buffer[position];
+				if (c == '"' || c == '\\' || c < ' ') {
+					break;
+				}
+				if (value.length() == maxValueLength) {
+					throw valueTooLong();
+				}
+				value.append((char) c);
+				position++;
+			}
+			this.position = position;
+			if (position == limit) {
+				if (!fill()) {
+					throw syntaxError();
+				}
+				continue;
+			}
+
+			int c = buffer[position] & 0xFF;
+			this.position = position + 1;
+			if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				readEscape();
+			} else if (c >= 0x80) {
+				readMultiByte(c);
+			} else {
+				// control character
+				throw syntaxError();
+			}
+		}
+	}
+
+	private void readEscape() throws IOException {
+		int c = read();
+		char escaped;
+		switch (c) {
+		case '"':
+		case '\\':
+		case '/':
+			escaped = (char) c;
+			break;
+		case 'b':
+			escaped = '\b';
+			break;
+		case 'f':
+			escaped = '\f';
+			break;
+		case 'n':
+			escaped = '\n';
+			break;
+		case 'r':
+			escaped = '\r';
+			break;
+		case 't':
+			escaped = '\t';
+			break;
+		case 'u':
+			int code = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = read();
+				if (digit >= '0' && digit <= '9') {
+					digit -= '0';
+				} else if (digit >= 'a' && digit <= 'f') {
+					digit -= 'a' - 10;
+				} else if (digit >= 'A' && digit <= 'F') {
+					digit -= 'A' - 10;
+				} else {
+					throw syntaxError();
+				}
+				code = (code << 4) | digit;
+			}
+			escaped = (char) code;
+			break;
+		default:
+			throw syntaxError();
+		}
+		append(escaped);
+	}
+
+	private void readMultiByte(int first) throws IOException {
+		int codePoint;
+		int continuation;
+		if ((first & 0xE0) == 0xC0) {
+			codePoint = first & 0x1F;
+			continuation = 1;
+		} else if ((first & 0xF0) == 0xE0) {
+			codePoint = first & 0x0F;
+			continuation = 2;
+		} else if ((first & 0xF8) == 0xF0) {
+			codePoint = first & 0x07;
+			continuation = 3;
+		} else {
+			throw syntaxError();
+		}
+		for (int i = 0; i < continuation; i++) {
+			int c = read();
+			if ((c & 0xC0) != 0x80) {
+				throw syntaxError();
+			}
+			codePoint = (codePoint << 6) | (c & 0x3F);
+		}
+
+		// reject the overlong encodings, the surrogates and the code points out of the Unicode range
+		int minCodePoint = continuation == 1 ? MIN_TWO_BYTES_CODE_POINT
+				: continuation == 2 ? MIN_THREE_BYTES_CODE_POINT : MIN_SUPPLEMENTARY_CODE_POINT;
+		if (codePoint < minCodePoint || codePoint > MAX_CODE_POINT
+				|| (codePoint >= MIN_HIGH_SURROGATE && codePoint <= MAX_LOW_SURROGATE)) {
+			throw syntaxError();
+		}
+
+		if (codePoint >= MIN_SUPPLEMENTARY_CODE_POINT) {
+			codePoint -= MIN_SUPPLEMENTARY_CODE_POINT;
+			append((char) (MIN_HIGH_SURROGATE + (codePoint >>> 10)));
+			append((char) (MIN_LOW_SURROGATE + (codePoint & 0x3FF)));
+		} else {
+			append((char) codePoint);
+		}
+	}
+
+	private void append(char c) {
+		StringBuilder value = this.value;
+		if (value.length() == this.maxValueLength) {
+			throw valueTooLong();
+		}
+		value.append(c);
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		while (true) {
+			int c = read();
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+		}
+	}
+
+	private int read() throws IOException {
+		if (this.position == this.limit && !fill()) {
+			return -1;
+		}
+		return this.buffer[this.position++] & 0xFF;
+	}
+
+	private boolean fill() throws IOException {
+		this.bufferOffset += this.limit;
+		this.position = 0;
+		this.limit = 0;
+		int read = this.input.read(this.buffer);
+		if (read <= 0) {
+			return false;
+		}
+		this.limit = read;
+		return true;
+	}
+
+	private long getOffset() {
+		return this.bufferOffset + this.position;
+	}
+
+	private IllegalArgumentException syntaxError() {
+		return new IllegalArgumentException("Malformed JSON at " + getOffset()); //$NON-NLS-1$
+	}
+
+	private IllegalArgumentException valueTooLong() {
+		return new IllegalArgumentException("JSON value longer than " + this.maxValueLength + " at " + getOffset()); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+}
@@ -0,0 +1,420 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A writer encoding a JSON document in UTF-8 to an {@link OutputStream}.
+ * <p>
+ * The document is encoded in a buffer which is written to the stream when full, so that the stream receives large
+ * blocks (for example, one chunk per buffer with the chunked transfer coding). The separators between the values are
+ * added automatically.
+ * <p>
+ * An {@link IllegalStateException} is thrown when a method is called at a place where the document would be
+ * malformed.
+ */
+public class JsonWriter implements Closeable {
+
+	private static final int DEFAULT_BUFFER_SIZE = 512;
+	private static final int DEFAULT_MAX_DEPTH = 32;
+
+	private static final int SCOPE_EMPTY_DOCUMENT = 0;
+	private static final int SCOPE_NONEMPTY_DOCUMENT = 1;
+	private static final int SCOPE_EMPTY_ARRAY = 2;
+	private static final int SCOPE_NONEMPTY_ARRAY = 3;
+	private static final int SCOPE_EMPTY_OBJECT = 4;
+	private static final int SCOPE_DANGLING_NAME = 5;
+	private static final int SCOPE_NONEMPTY_OBJECT = 6;
+
+	private static final int MAX_UTF8_LENGTH = 3;
+	private static final int MIN_SUPPLEMENTARY_CODE_POINT = 0x10000;
+	private static final int MIN_HIGH_SURROGATE = 0xD800;
+	private static final int MIN_LOW_SURROGATE = 0xDC00;
+	private static final int MAX_LOW_SURROGATE = 0xDFFF;
+	private static final int UNICODE_ESCAPE_LENGTH = 6;
+	private static final char[] HEXA_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd',
+			'e', 'f' };
+
+	private final OutputStream output;
+	private final byte[] buffer;
+	private int position;
+
+	private final byte[] scopes;
+	private int depth;
+
+	/**
+	 * Creates a JSON writer with a buffer of 512 bytes and a maximum depth of 32 nested arrays or objects.
+	 *
+	 * @param output
+	 *            the stream to write to.
+	 */
+	public JsonWriter(OutputStream output) {
+		this(output, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 * Creates a JSON writer.
+	 *
+	 * @param output
+	 *            the stream to write to.
+	 * @param bufferSize
+	 *            the size of the write buffer, at least 6 bytes.
+	 * @param maxDepth
+	 *            the maximum number of nested arrays or objects.
+	 */
+	public JsonWriter(OutputStream output, int bufferSize, int maxDepth) {
+		if (output == null || bufferSize < UNICODE_ESCAPE_LENGTH || maxDepth <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.output = output;
+		this.buffer = new byte[bufferSize];
+		this.scopes = new byte[maxDepth + 1];
+		this.scopes[0] = SCOPE_EMPTY_DOCUMENT;
+		this.depth = 1;
+	}
+
+	/**
+	 * Begins an object.
+	 *
+	 * @return this writer.
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	public JsonWriter beginObject() throws IOException {
+		return open(SCOPE_EMPTY_OBJECT, '{');
+	}
+
+	/**
+	 * Ends the current object.
+	 *
+	 * @return this writer.
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	public JsonWriter endObject() throws IOException {
+		return close(SCOPE_EMPTY_OBJECT, SCOPE_NONEMPTY_OBJECT, '}');
+	}
+
+	/**
+	 * Begins an array.
+	 *
+	 * @return this writer.
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	public JsonWriter beginArray() throws IOException {
+		return open(SCOPE_EMPTY_ARRAY, '[');
+	}
+
+	/**
+	 * Ends the current array.
+	 *
+	 * @return this writer.
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	public JsonWriter endArray() throws IOException {
+		return close(SCOPE_EMPTY_ARRAY, SCOPE_NONEMPTY_ARRAY, ']');
+	}
+
+	/**
+	 * Writes the name of an object member, must be followed by its value.
+	 *
+	 * @param name
+	 *            the name of the member.
+	 * @return this writer.
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	public JsonWriter name(String name) throws IOException {
+		if (name == null) {
+			throw new IllegalArgumentException();
+		}
+		int scopeIndex = this.depth - 1;
+		int scope = this.scopes[scopeIndex];
+		if (scope == SCOPE_NONEMPTY_OBJECT) {
+			writeByte(',');
+		} else if (scope != SCOPE_EMPTY_OBJECT) {
+			throw new IllegalStateException();
+		}
+		this.scopes[scopeIndex] = SCOPE_DANGLING_NAME;
+		writeString(name);
+		writeByte(':');
+		return this;
+	}
+
+	/**
+	 * Writes a string value.
+	 *
+	 * @param value
+	 *            the value, <code>null</code> to write a <code>null</code> value.
+	 * @return this writer.
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	public JsonWriter value(String value) throws IOException {
+		if (value == null) {
+			return nullValue();
+		}
+		beforeValue();
+		writeString(value);
+		return this;
+	}
+
+	/**
+	 * Writes a boolean value.
+	 *
+	 * @param value
+	 *            the value.
+	 * @return this writer.
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	public JsonWriter value(boolean value) throws IOException {
+		beforeValue();
+		writeAscii(value ? "true" : "false"); //$NON-NLS-1$ //$NON-NLS-2$
+		return this;
+	}
+
+	/**
+	 * Writes an integer value.
+	 *
+	 * @param value
+	 *            the value.
+	 * @return this writer.
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	public JsonWriter value(long value) throws IOException {
+		beforeValue();
+		writeAscii(Long.toString(value));
+		return this;
+	}
+
+	/**
+	 * Writes a decimal value.
+	 *
+	 * @param value
+	 *            the value, must be finite.
+	 * @return this writer.
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	public JsonWriter value(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			throw new IllegalArgumentException();
+		}
+		beforeValue();
+		writeAscii(Double.toString(value));
+		return this;
+	}
+
+	/**
+	 * Writes a <code>null</code> value.
+	 *
+	 * @return this writer.
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	public JsonWriter nullValue() throws IOException {
+		beforeValue();
+		writeAscii("null"); //$NON-NLS-1$
+		return this;
+	}
+
+	/**
+	 * Writes the buffered data to the stream and flushes it.
+	 *
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	public void flush() throws IOException {
+		writeBuffer();
+		this.output.flush();
+	}
+
+	/**
+	 * Writes the buffered data to the stream and closes it.
+	 *
+	 * @throws IOException
+	 *             if an {@link IOException} occurs.
+	 */
+	@Override
+	public void close() throws IOException {
+		writeBuffer();
+		this.output.close();
+	}
+
+	private JsonWriter open(int scope, char c) throws IOException {
+		beforeValue();
+		int depth = this.depth;
+		if (depth == this.scopes.length) {
+			throw new IllegalStateException();
+		}
+		this.scopes[depth] = (byte) scope;
+		this.depth = depth + 1;
+		writeByte(c);
+		return this;
+	}
+
+	private JsonWriter close(int emptyScope, int nonEmptyScope, char c) throws IOException {
+		int scope = this.scopes[this.depth - 1];
+		if (scope != emptyScope && scope != nonEmptyScope) {
+			throw new IllegalStateException();
+		}
+		this.depth--;
+		writeByte(c);
+		return this;
+	}
+
+	private void beforeValue() throws IOException {
+		int scopeIndex = this.depth - 1;
+		switch (this.scopes[scopeIndex]) {
+		case SCOPE_EMPTY_DOCUMENT:
+			this.scopes[scopeIndex] = SCOPE_NONEMPTY_DOCUMENT;
+			break;
+		case SCOPE_EMPTY_ARRAY:
+			this.scopes[scopeIndex] = SCOPE_NONEMPTY_ARRAY;
+			break;
+		case SCOPE_NONEMPTY_ARRAY:
+			writeByte(',');
+			break;
+		case SCOPE_DANGLING_NAME:
+			this.scopes[scopeIndex] = SCOPE_NONEMPTY_OBJECT;
+			break;
+		default:
+			// a name is expected or the document is complete
+			throw new IllegalStateException();
+		}
+	}
+
+	private void writeString(String string) throws IOException {
+		writeByte('"');
+		int length = string.length();
+		for (int i = 0; i < length; i++) {
+			char c = string.charAt(i);
+			if (c == '"' || c == '\\') {
+				writeByte('\\');
+				writeByte(c);
+			} else if (c < ' ') {
+				writeControl(c);
+			} else if (c < 0x80) {
+				writeByte(c);
+			} else {
+				if (writeMultiByte(string, i, c)) {
+					// the low surrogate has been written
+					i++;
+				}
+			}
+		}
+		writeByte('"');
+	}
+
+	private void writeControl(char c) throws IOException {
+		switch (c) {
+		case '\n':
+			writeByte('\\');
+			writeByte('n');
+			break;
+		case '\r':
+			writeByte('\\');
+			writeByte('r');
+			break;
+		case '\t':
+			writeByte('\\');
+			writeByte('t');
+			break;
+		default:
+			writeUnicodeEscape(c);
+			break;
+		}
+	}
+
+	private void writeUnicodeEscape(char c) throws IOException {
+		ensureCapacity(UNICODE_ESCAPE_LENGTH);
+		byte[] buffer = this.buffer;
+		int position = this.position;
+		buffer[position++] = '\\';
+		buffer[position++] = 'u';
+		buffer[position++] = (byte) HEXA_DIGITS[c >> 12];
+		buffer[position++] = (byte) HEXA_DIGITS[(c >> 8) & 0xF];
+		buffer[position++] = (byte) HEXA_DIGITS[(c >> 4) & 0xF];
+		buffer[position++] = (byte) HEXA_DIGITS[c & 0xF];
+		this.position = position;
+	}
+
+	/**
+	 * Writes a non-ASCII character, combined with the next one if they form a surrogate pair. A surrogate which is not
+	 * part of a pair cannot be encoded in UTF-8: it is written as a <code>\\uXXXX</code> escape.
+	 *
+	 * @return <code>true</code> if the next character has been written.
+	 */
+	private boolean writeMultiByte(String string, int index, char c) throws IOException {
+		int codePoint = c;
+		boolean pair = false;
+		if (c >= MIN_HIGH_SURROGATE && c < MIN_LOW_SURROGATE && index + 1 < string.length()) {
+			char low = string.charAt(index + 1);
+			if (low >= MIN_LOW_SURROGATE && low <= MAX_LOW_SURROGATE) {
+				codePoint = MIN_SUPPLEMENTARY_CODE_POINT + ((c - MIN_HIGH_SURROGATE) << 10) + (low - MIN_LOW_SURROGATE);
+				pair = true;
+			}
+		}
+		if (!pair && c >= MIN_HIGH_SURROGATE && c <= MAX_LOW_SURROGATE) {
+			writeUnicodeEscape(c);
+			return false;
+		}
+
+		ensureCapacity(MAX_UTF8_LENGTH + 1);
+		byte[] buffer = this.buffer;
+		int position = this.position;
+		if (codePoint < 0x800) {
+			buffer[position++] = (byte) (0xC0 | (codePoint >> 6));
+		} else if (codePoint < MIN_SUPPLEMENTARY_CODE_POINT) {
+			buffer[position++] = (byte) (0xE0 | (codePoint >> 12));
+			buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+		} else {
+			buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+			buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+			buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+		}
+		buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+		this.position = position;
+		return pair;
+	}
+
+	private void writeAscii(String string) throws IOException {
+		int length = string.length();
+		for (int i = 0; i < length; i++) {
+			writeByte(string.charAt(i));
+		}
+	}
+
+	private void writeByte(char c) throws IOException {
+		if (this.position == this.buffer.length) {
+			writeBuffer();
+		}
+		this.buffer[this.position++] = (byte) c;
+	}
+
+	private void ensureCapacity(int length) throws IOException {
+		if (this.position + length > this.buffer.length) {
+			writeBuffer();
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		if (this.position > 0) {
+			this.output.write(this.buffer, 0, this.position);
+			this.position = 0;
+		}
+	}
+
+}
@@ -0,0 +1,409 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+
+import ej.bon.Util;
+import ej.util.message.Level;
+
+/**
+ * An access log, writing one line per request to rolling files.
+ * <p>
+ * Logging a request only stores its fields in a ring buffer: the lines are formatted and written by a background
+ * thread, by batches. When the buffer is full, because the storage is slower than the requests, the new records are
+ * dropped and counted.
+ * <p>
+ * Each line holds the date of the response (ISO 8601, UTC), the address of the client, the method, the URI, the
+ * status code and the duration of the request in microseconds, separated by spaces. The unknown fields are written as
+ * <code>-</code>:
+ *
+ * <pre>
+ * 2020-06-15T08:30:00.125Z 192.168.1.10 GET /index.html 200 830
+ * </pre>
+ *
+ * @see ej.hoka.http.HTTPServer#setAccessLog(AccessLog)
+ */
+public class AccessLog {
+
+	private static final int DEFAULT_CAPACITY = 256;
+	private static final int DEFAULT_BATCH_SIZE = 32;
+	private static final long DEFAULT_FLUSH_PERIOD = 1000; // in milliseconds
+	private static final long DEFAULT_MAX_FILE_SIZE = 1024 * 1024;
+
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+	private static final String[] METHODS = { "-", "POST", "GET", "PUT", "DELETE" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	private static final char[] HEXADECIMAL_DIGITS = "0123456789ABCDEF".toCharArray(); //$NON-NLS-1$
+	private static final long MILLISECONDS_PER_DAY = 24 * 60 * 60 * 1000;
+
+	private final AccessLogStorage storage;
+	private final int batchSize;
+	private final long flushPeriod;
+	private final long maxFileSize;
+
+	/**
+	 * The ring buffer of the records waiting to be written, also the lock of the buffer.
+	 */
+	private final Records ring;
+	private int head;
+	private int size;
+	private long droppedCount;
+
+	/**
+	 * The records being written, only used by the writer thread.
+	 */
+	private final Records batch;
+	private final StringBuilder line;
+	private OutputStream output;
+	private long fileSize;
+
+	private volatile boolean running;
+	private Thread writer;
+
+	/**
+	 * Constructs an {@link AccessLog} buffering 256 records, written every second or by batches of 32, in files of 1
+	 * MB.
+	 *
+	 * @param storage
+	 *            the storage of the log files.
+	 */
+	public AccessLog(AccessLogStorage storage) {
+		this(storage, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_PERIOD, DEFAULT_MAX_FILE_SIZE);
+	}
+
+	/**
+	 * Constructs an {@link AccessLog}.
+	 *
+	 * @param storage
+	 *            the storage of the log files.
+	 * @param capacity
+	 *            the maximum number of records waiting to be written.
+	 * @param batchSize
+	 *            the number of records waking up the writer thread, and the maximum number written at once.
+	 * @param flushPeriod
+	 *            the maximum time a record waits before being written, in milliseconds.
+	 * @param maxFileSize
+	 *            the size of a log file from which it is rolled, in bytes.
+	 */
+	public AccessLog(AccessLogStorage storage, int capacity, int batchSize, long flushPeriod, long maxFileSize) {
+		if (capacity <= 0 || batchSize <= 0 || batchSize > capacity || flushPeriod <= 0 || maxFileSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.storage = storage;
+		this.batchSize = batchSize;
+		this.flushPeriod = flushPeriod;
+		this.maxFileSize = maxFileSize;
+		this.ring = new Records(capacity);
+		this.batch = new Records(batchSize);
+		this.line = new StringBuilder();
+	}
+
+	/**
+	 * Starts the thread writing the records.
+	 */
+	public synchronized void start() {
+		if (this.running) {
+			throw new IllegalStateException(Messages.BUILDER.buildMessage(Level.SEVERE, Messages.CATEGORY_HOKA,
+					Messages.MULTIPLE_START_FORBIDDEN));
+		}
+		this.running = true;
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "AccessLogWriter"); //$NON-NLS-1$
+		this.writer.start();
+	}
+
+	/**
+	 * Stops the thread writing the records, once the pending records are written, and closes the log file.
+	 */
+	public synchronized void stop() {
+		if (!this.running) {
+			return;
+		}
+		this.running = false;
+		synchronized (this.ring) {
+			this.ring.notifyAll();
+		}
+		try {
+			this.writer.join();
+		} catch (InterruptedException e) {
+			// nothing to do on interrupted exception
+		}
+	}
+
+	/**
+	 * Logs a request.
+	 *
+	 * @param address
+	 *            the address of the client, or <code>null</code> if unknown.
+	 * @param method
+	 *            the method of the request, as defined in {@link ej.hoka.http.HTTPRequest}.
+	 * @param uri
+	 *            the URI of the request, or <code>null</code> if unknown.
+	 * @param status
+	 *            the status of the response, starting with its code.
+	 * @param duration
+	 *            the duration of the request in microseconds, or <code>-1</code> if unknown.
+	 */
+	public void log(InetAddress address, int method, String uri, String status, long duration) {
+		long time = Util.currentTimeMillis();
+		Records ring = this.ring;
+		synchronized (ring) {
+			int capacity = ring.times.length;
+			if (this.size == capacity) {
+				this.droppedCount++;
+				return;
+			}
+			int index = this.head + this.size;
+			if (index >= capacity) {
+				index -= capacity;
+			}
+			ring.times[index] = time;
+			ring.addresses[index] = address;
+			ring.methods[index] = method;
+			ring.uris[index] = uri;
+			ring.statuses[index] = status;
+			ring.durations[index] = duration;
+			if (++this.size == this.batchSize) {
+				ring.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of records dropped because the buffer was full.
+	 *
+	 * @return the number of dropped records.
+	 */
+	public long getDroppedCount() {
+		synchronized (this.ring) {
+			return this.droppedCount;
+		}
+	}
+
+	private void write() {
+		Records ring = this.ring;
+		Records batch = this.batch;
+		while (true) {
+			int count;
+			synchronized (ring) {
+				if (this.size < this.batchSize && this.running) {
+					try {
+						ring.wait(this.flushPeriod);
+					} catch (InterruptedException e) {
+						// write the pending records
+					}
+				}
+				count = Math.min(this.size, this.batchSize);
+				int capacity = ring.times.length;
+				int head = this.head;
+				for (int i = 0; i < count; i++) {
+					batch.move(i, ring, head);
+					if (++head == capacity) {
+						head = 0;
+					}
+				}
+				this.head = head;
+				this.size -= count;
+				if (count == 0 && !this.running) {
+					break;
+				}
+			}
+			if (count > 0) {
+				write(count);
+			}
+		}
+		close();
+	}
+
+	private void write(int count) {
+		Records batch = this.batch;
+		StringBuilder line = this.line;
+		for (int i = 0; i < count; i++) {
+			batch.append(i, line);
+			batch.clear(i);
+		}
+		try {
+			byte[] bytes = line.toString().getBytes(ENCODING);
+			OutputStream output = this.output;
+			if (output == null) {
+				output = this.storage.open();
+				this.output = output;
+			}
+			output.write(bytes);
+			output.flush();
+			this.fileSize += bytes.length;
+			if (this.fileSize >= this.maxFileSize) {
+				close();
+				this.storage.roll();
+			}
+		} catch (IOException e) {
+			// the batch is lost, the log file is opened again by the next one
+			Messages.LOGGER.log(Level.WARNING, Messages.CATEGORY_HOKA, Messages.ACCESS_LOG_ERROR, e);
+			close();
+		} finally {
+			line.setLength(0);
+		}
+	}
+
+	private void close() {
+		OutputStream output = this.output;
+		if (output != null) {
+			this.output = null;
+			this.fileSize = 0;
+			try {
+				output.close();
+			} catch (IOException e) {
+				Messages.LOGGER.log(Level.WARNING, Messages.CATEGORY_HOKA, Messages.ACCESS_LOG_ERROR, e);
+			}
+		}
+	}
+
+	/**
+	 * Appends a date as <code>yyyy-mm-ddThh:mm:ss.sssZ</code>.
+	 *
+	 * @param builder
+	 *            the builder to append to.
+	 * @param time
+	 *            the number of milliseconds since the epoch, positive.
+	 */
+	/* default */ static void appendDate(StringBuilder builder, long time) {
+		long days = time / MILLISECONDS_PER_DAY;
+		int milliseconds = (int) (time - days * MILLISECONDS_PER_DAY);
+
+		// convert the days to a civil date, with the years starting on March 1st
+		long shiftedDays = days + 719468; // from 0000-03-01
+		long era = shiftedDays / 146097;
+		int dayOfEra = (int) (shiftedDays - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int shiftedMonth = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+		int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+		long year = era * 400 + yearOfEra + (month <= 2 ? 1 : 0);
+
+		builder.append(year).append('-');
+		appendPadded(builder, month, 2);
+		builder.append('-');
+		appendPadded(builder, day, 2);
+		builder.append('T');
+		appendPadded(builder, milliseconds / 3600000, 2);
+		builder.append(':');
+		appendPadded(builder, milliseconds / 60000 % 60, 2);
+		builder.append(':');
+		appendPadded(builder, milliseconds / 1000 % 60, 2);
+		builder.append('.');
+		appendPadded(builder, milliseconds % 1000, 3);
+		builder.append('Z');
+	}
+
+	/**
+	 * Appends a string, escaping the spaces and the control characters so that a record stays on one line.
+	 *
+	 * @param builder
+	 *            the builder to append to.
+	 * @param value
+	 *            the string to append.
+	 */
+	private static void appendEscaped(StringBuilder builder, String value) {
+		for (int i = 0, n = value.length(); i < n; i++) {
+			char c = value.charAt(i);
+			if (c <= ' ' || c == 0x7F) {
+				builder.append('%').append(HEXADECIMAL_DIGITS[c >> 4]).append(HEXADECIMAL_DIGITS[c & 0xF]);
+			} else {
+				builder.append(c);
+			}
+		}
+	}
+
+	private static void appendPadded(StringBuilder builder, int value, int digits) {
+		for (int limit = 10; --digits > 0; limit *= 10) {
+			if (value < limit) {
+				builder.append('0');
+			}
+		}
+		builder.append(value);
+	}
+
+	/**
+	 * Records stored in parallel arrays, so that logging a request does not allocate memory.
+	 */
+	private static final class Records {
+
+		/* default */ final long[] times;
+		/* default */ final InetAddress[] addresses;
+		/* default */ final int[] methods;
+		/* default */ final String[] uris;
+		/* default */ final String[] statuses;
+		/* default */ final long[] durations;
+
+		/* default */ Records(int capacity) {
+			this.times = new long[capacity];
+			this.addresses = new InetAddress[capacity];
+			this.methods = new int[capacity];
+			this.uris = new String[capacity];
+			this.statuses = new String[capacity];
+			this.durations = new long[capacity];
+		}
+
+		/* default */ void move(int index, Records from, int fromIndex) {
+			this.times[index] = from.times[fromIndex];
+			this.addresses[index] = from.addresses[fromIndex];
+			this.methods[index] = from.methods[fromIndex];
+			this.uris[index] = from.uris[fromIndex];
+			this.statuses[index] = from.statuses[fromIndex];
+			this.durations[index] = from.durations[fromIndex];
+			from.clear(fromIndex);
+		}
+
+		/* default */ void clear(int index) {
+			// allow GC
+			this.addresses[index] = null;
+			this.uris[index] = null;
+			this.statuses[index] = null;
+		}
+
+		/* default */ void append(int index, StringBuilder builder) {
+			appendDate(builder, this.times[index]);
+			builder.append(' ');
+
+			InetAddress address = this.addresses[index];
+			builder.append(address == null ? "-" : address.getHostAddress()).append(' '); //$NON-NLS-1$
+
+			int method = this.methods[index];
+			builder.append(METHODS[method > 0 && method < METHODS.length ? method : 0]).append(' ');
+
+			String uri = this.uris[index];
+			if (uri == null) {
+				builder.append('-');
+			} else {
+				appendEscaped(builder, uri);
+			}
+			builder.append(' ');
+
+			String status = this.statuses[index];
+			int end = status.indexOf(' ');
+			builder.append(status, 0, end == -1 ? status.length() : end).append(' ');
+
+			long duration = this.durations[index];
+			if (duration < 0) {
+				builder.append('-');
+			} else {
+				builder.append(duration);
+			}
+			builder.append('\n');
+		}
+
+	}
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The storage of the files of an {@link AccessLog}.
+ * <p>
+ * A typical implementation appends to a file, and rolls it by renaming it with a sequence number, deleting the
+ * oldest files beyond a maximum count.
+ */
+public interface AccessLogStorage {
+
+	/**
+	 * Opens the current log file for appending.
+	 *
+	 * @return the stream to append the records to.
+	 * @throws IOException
+	 *             if the log file cannot be opened.
+	 */
+	OutputStream open() throws IOException;
+
+	/**
+	 * Archives the current log file, which has been closed, so that the next call to {@link #open()} starts a new file.
+	 *
+	 * @throws IOException
+	 *             if the log file cannot be archived.
+	 */
+	void roll() throws IOException;
+
+}
@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2018-2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2018-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -40,6 +40,31 @@ public final class Messages {
 	 */
 	public static final int DIRECTORY_TRAVERSAL_URI = -4;
 
+	/**
+	 * The session journal cannot be read or written.
+	 */
+	public static final int SESSION_JOURNAL_ERROR = -5;
+
+	/**
+	 * A session invalidation cannot be sent to or received from a peer.
+	 */
+	public static final int SESSION_PEER_ERROR = -6;
+
+	/**
+	 * The access log cannot be written.
+	 */
+	public static final int ACCESS_LOG_ERROR = -7;
+
+	/**
+	 * An HTTP/2 connection is closed because of an error of the protocol.
+	 */
+	public static final int HTTP2_ERROR = -8;
+
+	/**
+	 * A connection from an address that is not a session peer is rejected.
+	 */
+	public static final int SESSION_PEER_REJECTED = -9;
+
 	/**
 	 * Unknown error.
 	 */
@@ -0,0 +1,89 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.metrics;
+
+/**
+ * A counter updated concurrently by the jobs of the server.
+ * <p>
+ * The value is split into stripes selected by the updating thread, each stripe being guarded by its own lock, so that
+ * concurrent updates rarely contend. The value of the counter is the sum of the stripes, computed when it is read.
+ */
+public class Counter implements Gauge {
+
+	private static final int STRIPE_COUNT = 8;
+
+	private final Cell[] cells;
+
+	/**
+	 * Creates a counter with a zero value.
+	 */
+	public Counter() {
+		Cell[] cells = new Cell[STRIPE_COUNT];
+		for (int i = 0; i < STRIPE_COUNT; i++) {
+			cells[i] = new Cell();
+		}
+		this.cells = cells;
+	}
+
+	/**
+	 * Adds one to this counter.
+	 */
+	public void increment() {
+		add(1);
+	}
+
+	/**
+	 * Adds a value to this counter.
+	 *
+	 * @param value
+	 *            the value to add, negative to decrease the counter.
+	 */
+	public void add(long value) {
+		Cell cell = this.cells[getStripe()];
+		synchronized (cell) {
+			cell.value += value;
+		}
+	}
+
+	@Override
+	public long getValue() {
+		long value = 0;
+		for (Cell cell : this.cells) {
+			synchronized (cell) {
+				value += cell.value;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Gets the stripe of the current thread.
+	 *
+	 * @return the index of the stripe.
+	 */
+	/* default */ static int getStripe() {
+		int hash = System.identityHashCode(Thread.currentThread());
+		return (hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1);
+	}
+
+	/**
+	 * Gets the number of stripes.
+	 *
+	 * @return the number of stripes.
+	 */
+	/* default */ static int getStripeCount() {
+		return STRIPE_COUNT;
+	}
+
+	private static final class Cell {
+
+		/* default */ long value;
+
+	}
+
+}
@@ -0,0 +1,22 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.metrics;
+
+/**
+ * A metric whose value is read when the metrics are exported, such as the size of a queue.
+ */
+public interface Gauge {
+
+	/**
+	 * Gets the current value of this gauge.
+	 *
+	 * @return the value.
+	 */
+	long getValue();
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.metrics;
+
+/**
+ * A histogram of values counted in fixed buckets, typically durations.
+ * <p>
+ * Each bucket counts the values less than or equal to its upper bound and greater than the previous bound, a last
+ * bucket counting the values greater than all the bounds. The counts are split into stripes like a {@link Counter}.
+ */
+public class Histogram {
+
+	/**
+	 * The default upper bounds of the buckets of durations, in microseconds: from 100 microseconds to 10 seconds.
+	 */
+	public static final long[] DEFAULT_DURATION_BOUNDS = { 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000,
+			100000, 250000, 500000, 1000000, 2500000, 5000000, 10000000 };
+
+	private final long[] bounds;
+	private final Stripe[] stripes;
+
+	/**
+	 * Creates a histogram of durations in microseconds, with the default buckets.
+	 *
+	 * @see #DEFAULT_DURATION_BOUNDS
+	 */
+	public Histogram() {
+		this(DEFAULT_DURATION_BOUNDS);
+	}
+
+	/**
+	 * Creates a histogram.
+	 *
+	 * @param bounds
+	 *            the upper bounds of the buckets, in increasing order.
+	 * @throws IllegalArgumentException
+	 *             if the bounds are not in increasing order.
+	 */
+	public Histogram(long[] bounds) {
+		for (int i = 1; i < bounds.length; i++) {
+			if (bounds[i] <= bounds[i - 1]) {
+				throw new IllegalArgumentException();
+			}
+		}
+		this.bounds = bounds.clone();
+
+		int stripeCount = Counter.getStripeCount();
+		Stripe[] stripes = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe(bounds.length + 1);
+		}
+		this.stripes = stripes;
+	}
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value
+	 *            the value.
+	 */
+	public void record(long value) {
+		// binary search of the first bound greater than or equal to the value
+		long[] bounds = this.bounds;
+		int low = 0;
+		int high = bounds.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (bounds[middle] < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		Stripe stripe = this.stripes[Counter.getStripe()];
+		synchronized (stripe) {
+			stripe.counts[low]++;
+			stripe.sum += value;
+		}
+	}
+
+	/**
+	 * Gets the upper bounds of the buckets.
+	 *
+	 * @return a copy of the bounds.
+	 */
+	public long[] getBounds() {
+		return this.bounds.clone();
+	}
+
+	/**
+	 * Gets the number of values recorded in each bucket, the last bucket counting the values greater than all the
+	 * bounds.
+	 *
+	 * @return the counts, one more than the bounds.
+	 */
+	public long[] getCounts() {
+		long[] counts = new long[this.bounds.length + 1];
+		for (Stripe stripe : this.stripes) {
+			synchronized (stripe) {
+				for (int i = 0; i < counts.length; i++) {
+					counts[i] += stripe.counts[i];
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Gets the number of recorded values.
+	 *
+	 * @return the count.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (long bucketCount : getCounts()) {
+			count += bucketCount;
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the sum of the recorded values.
+	 *
+	 * @return the sum.
+	 */
+	public long getSum() {
+		long sum = 0;
+		for (Stripe stripe : this.stripes) {
+			synchronized (stripe) {
+				sum += stripe.sum;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Estimates a percentile of the recorded values, as the upper bound of the bucket containing it.
+	 *
+	 * @param percentile
+	 *            the percentile, between 0 and 100 (for example 99.9).
+	 * @return the upper bound of the bucket containing the percentile, {@link Long#MAX_VALUE} if it is greater than
+	 *         all the bounds, or <code>0</code> if no value has been recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long[] counts = getCounts();
+		long count = 0;
+		for (long bucketCount : counts) {
+			count += bucketCount;
+		}
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(count * percentile / 100);
+		long cumulated = 0;
+		for (int i = 0; i < this.bounds.length; i++) {
+			cumulated += counts[i];
+			if (cumulated >= rank) {
+				return this.bounds[i];
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	private static final class Stripe {
+
+		/* default */ final long[] counts;
+		/* default */ long sum;
+
+		/* default */ Stripe(int bucketCount) {
+			this.counts = new long[bucketCount];
+		}
+
+	}
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the metrics of a registry in a format read by a monitoring system.
+ *
+ * @see PrometheusExporter
+ */
+public interface MetricsExporter {
+
+	/**
+	 * Gets the MIME type of the exported metrics.
+	 *
+	 * @return the MIME type.
+	 */
+	String getMimeType();
+
+	/**
+	 * Writes the current values of the metrics.
+	 *
+	 * @param registry
+	 *            the registry of the metrics.
+	 * @param output
+	 *            the stream to write to.
+	 * @throws IOException
+	 *             if an error occurs while writing.
+	 */
+	void export(MetricsRegistry registry, OutputStream output) throws IOException;
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A registry of named metrics, read by a {@link MetricsExporter}.
+ * <p>
+ * A metric is identified by its name and its labels, formatted as <code>name="value"</code> pairs separated by commas
+ * (see {@link #label(String, String)}). The metrics sharing a name are kept together, in registration order.
+ * <p>
+ * The metrics are registered once, typically when the application starts, and then updated without accessing the
+ * registry.
+ */
+public class MetricsRegistry {
+
+	private final List<Metric> metrics;
+
+	/**
+	 * Creates an empty registry.
+	 */
+	public MetricsRegistry() {
+		this.metrics = new ArrayList<>();
+	}
+
+	/**
+	 * Gets or creates a counter without labels.
+	 *
+	 * @param name
+	 *            the name of the counter.
+	 * @param help
+	 *            the description of the counter.
+	 * @return the counter.
+	 */
+	public Counter counter(String name, String help) {
+		return counter(name, null, help);
+	}
+
+	/**
+	 * Gets or creates a counter.
+	 *
+	 * @param name
+	 *            the name of the counter.
+	 * @param labels
+	 *            the formatted labels, or <code>null</code>.
+	 * @param help
+	 *            the description of the counter.
+	 * @return the counter.
+	 * @throws IllegalArgumentException
+	 *             if a metric of another type has the same name and labels.
+	 */
+	public synchronized Counter counter(String name, String labels, String help) {
+		Metric metric = get(name, labels);
+		if (metric == null) {
+			Counter counter = new Counter();
+			add(new Metric(name, labels, help, Metric.TYPE_COUNTER, counter));
+			return counter;
+		}
+		if (metric.type != Metric.TYPE_COUNTER) {
+			throw new IllegalArgumentException(name);
+		}
+		return (Counter) metric.value;
+	}
+
+	/**
+	 * Gets or creates a histogram of durations with the default buckets.
+	 *
+	 * @param name
+	 *            the name of the histogram.
+	 * @param labels
+	 *            the formatted labels, or <code>null</code>.
+	 * @param help
+	 *            the description of the histogram.
+	 * @return the histogram.
+	 * @throws IllegalArgumentException
+	 *             if a metric of another type has the same name and labels.
+	 * @see Histogram#DEFAULT_DURATION_BOUNDS
+	 */
+	public Histogram histogram(String name, String labels, String help) {
+		return histogram(name, labels, help, Histogram.DEFAULT_DURATION_BOUNDS);
+	}
+
+	/**
+	 * Gets or creates a histogram.
+	 *
+	 * @param name
+	 *            the name of the histogram.
+	 * @param labels
+	 *            the formatted labels, or <code>null</code>.
+	 * @param help
+	 *            the description of the histogram.
+	 * @param bounds
+	 *            the upper bounds of the buckets, used if the histogram is created.
+	 * @return the histogram.
+	 * @throws IllegalArgumentException
+	 *             if a metric of another type has the same name and labels.
+	 */
+	public synchronized Histogram histogram(String name, String labels, String help, long[] bounds) {
+		Metric metric = get(name, labels);
+		if (metric == null) {
+			Histogram histogram = new Histogram(bounds);
+			add(new Metric(name, labels, help, Metric.TYPE_HISTOGRAM, histogram));
+			return histogram;
+		}
+		if (metric.type != Metric.TYPE_HISTOGRAM) {
+			throw new IllegalArgumentException(name);
+		}
+		return (Histogram) metric.value;
+	}
+
+	/**
+	 * Registers a gauge, replacing the gauge with the same name and labels.
+	 *
+	 * @param name
+	 *            the name of the gauge.
+	 * @param labels
+	 *            the formatted labels, or <code>null</code>.
+	 * @param help
+	 *            the description of the gauge.
+	 * @param gauge
+	 *            the gauge.
+	 * @throws IllegalArgumentException
+	 *             if a metric of another type has the same name and labels.
+	 */
+	public synchronized void gauge(String name, String labels, String help, Gauge gauge) {
+		Metric metric = get(name, labels);
+		if (metric != null) {
+			if (metric.type != Metric.TYPE_GAUGE) {
+				throw new IllegalArgumentException(name);
+			}
+			this.metrics.remove(metric);
+		}
+		add(new Metric(name, labels, help, Metric.TYPE_GAUGE, gauge));
+	}
+
+	/**
+	 * Gets the registered metrics.
+	 *
+	 * @return a snapshot of the metrics, the metrics sharing a name being contiguous.
+	 */
+	public synchronized List<Metric> getMetrics() {
+		return new ArrayList<>(this.metrics);
+	}
+
+	/**
+	 * Formats a label.
+	 *
+	 * @param name
+	 *            the name of the label.
+	 * @param value
+	 *            the value of the label, escaped if needed.
+	 * @return the formatted label.
+	 */
+	public static String label(String name, String value) {
+		StringBuilder builder = new StringBuilder(name.length() + value.length() + 3);
+		builder.append(name).append('=').append('"');
+		for (int i = 0, n = value.length(); i < n; i++) {
+			char c = value.charAt(i);
+			if (c == '\\' || c == '"') {
+				builder.append('\\').append(c);
+			} else if (c == '\n') {
+				builder.append('\\').append('n');
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.append('"').toString();
+	}
+
+	private Metric get(String name, String labels) {
+		for (Metric metric : this.metrics) {
+			if (metric.name.equals(name) && (labels == null ? metric.labels == null : labels.equals(metric.labels))) {
+				return metric;
+			}
+		}
+		return null;
+	}
+
+	private void add(Metric metric) {
+		List<Metric> metrics = this.metrics;
+		// insert after the last metric with the same name
+		for (int i = metrics.size() - 1; i >= 0; i--) {
+			if (metrics.get(i).name.equals(metric.name)) {
+				metrics.add(i + 1, metric);
+				return;
+			}
+		}
+		metrics.add(metric);
+	}
+
+	/**
+	 * A registered metric.
+	 */
+	public static final class Metric {
+
+		/**
+		 * The type of the {@link Counter} metrics.
+		 */
+		public static final int TYPE_COUNTER = 1;
+		/**
+		 * The type of the {@link Gauge} metrics.
+		 */
+		public static final int TYPE_GAUGE = 2;
+		/**
+		 * The type of the {@link Histogram} metrics.
+		 */
+		public static final int TYPE_HISTOGRAM = 3;
+
+		/* default */ final String name;
+		/* default */ final String labels;
+		/* default */ final String help;
+		/* default */ final int type;
+		/* default */ final Object value;
+
+		/* default */ Metric(String name, String labels, String help, int type, Object value) {
+			this.name = name;
+			this.labels = labels;
+			this.help = help;
+			this.type = type;
+			this.value = value;
+		}
+
+		/**
+		 * Gets the name of this metric.
+		 *
+		 * @return the name.
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Gets the labels of this metric.
+		 *
+		 * @return the formatted labels, or <code>null</code>.
+		 */
+		public String getLabels() {
+			return this.labels;
+		}
+
+		/**
+		 * Gets the description of this metric.
+		 *
+		 * @return the description.
+		 */
+		public String getHelp() {
+			return this.help;
+		}
+
+		/**
+		 * Gets the type of this metric.
+		 *
+		 * @return {@link #TYPE_COUNTER}, {@link #TYPE_GAUGE} or {@link #TYPE_HISTOGRAM}.
+		 */
+		public int getType() {
+			return this.type;
+		}
+
+		/**
+		 * Gets the value of a counter or a gauge.
+		 *
+		 * @return the current value.
+		 * @throws IllegalStateException
+		 *             if this metric is a histogram.
+		 */
+		public long getValue() {
+			if (this.type == TYPE_HISTOGRAM) {
+				throw new IllegalStateException();
+			}
+			return ((Gauge) this.value).getValue();
+		}
+
+		/**
+		 * Gets the histogram of this metric.
+		 *
+		 * @return the histogram.
+		 * @throws IllegalStateException
+		 *             if this metric is not a histogram.
+		 */
+		public Histogram getHistogram() {
+			if (this.type != TYPE_HISTOGRAM) {
+				throw new IllegalStateException();
+			}
+			return (Histogram) this.value;
+		}
+
+	}
+
+}
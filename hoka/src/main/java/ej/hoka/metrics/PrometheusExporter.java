@@ -0,0 +1,148 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import ej.hoka.metrics.MetricsRegistry.Metric;
+
+/**
+ * Exports the metrics in the Prometheus text format (version 0.0.4).
+ * <p>
+ * The histograms are exported as cumulative buckets labeled with their upper bound (<code>le</code>), followed by the
+ * sum and the count of the values.
+ */
+public class PrometheusExporter implements MetricsExporter {
+
+	/**
+	 * The MIME type of the Prometheus text format.
+	 */
+	public static final String MIME_TYPE = "text/plain; version=0.0.4; charset=utf-8"; //$NON-NLS-1$
+
+	private static final int FLUSH_THRESHOLD = 1024;
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+	private static final String HELP = "# HELP "; //$NON-NLS-1$
+	private static final String TYPE = "# TYPE "; //$NON-NLS-1$
+	private static final String COUNTER = " counter"; //$NON-NLS-1$
+	private static final String GAUGE = " gauge"; //$NON-NLS-1$
+	private static final String HISTOGRAM = " histogram"; //$NON-NLS-1$
+	private static final String BUCKET_SUFFIX = "_bucket"; //$NON-NLS-1$
+	private static final String SUM_SUFFIX = "_sum"; //$NON-NLS-1$
+	private static final String COUNT_SUFFIX = "_count"; //$NON-NLS-1$
+	private static final String UPPER_BOUND = "le"; //$NON-NLS-1$
+	private static final String INFINITY = "+Inf"; //$NON-NLS-1$
+
+	@Override
+	public String getMimeType() {
+		return MIME_TYPE;
+	}
+
+	@Override
+	public void export(MetricsRegistry registry, OutputStream output) throws IOException {
+		StringBuilder builder = new StringBuilder();
+		String previousName = null;
+		for (Metric metric : registry.getMetrics()) {
+			String name = metric.getName();
+			if (!name.equals(previousName)) {
+				// the metrics sharing a name are contiguous, they are described once
+				appendDescription(builder, metric);
+				previousName = name;
+			}
+
+			if (metric.getType() == Metric.TYPE_HISTOGRAM) {
+				appendHistogram(builder, metric);
+			} else {
+				appendSample(builder, name, null, metric.getLabels(), metric.getValue());
+			}
+
+			if (builder.length() >= FLUSH_THRESHOLD) {
+				// write the metrics by blocks, so that the builder stays small
+				write(builder, output);
+			}
+		}
+		write(builder, output);
+	}
+
+	private static void write(StringBuilder builder, OutputStream output) throws IOException {
+		output.write(builder.toString().getBytes(ENCODING));
+		builder.setLength(0);
+	}
+
+	private static void appendDescription(StringBuilder builder, Metric metric) {
+		String name = metric.getName();
+		String help = metric.getHelp();
+		if (help != null) {
+			builder.append(HELP).append(name).append(' ');
+			for (int i = 0, n = help.length(); i < n; i++) {
+				char c = help.charAt(i);
+				if (c == '\\') {
+					builder.append('\\').append('\\');
+				} else if (c == '\n') {
+					builder.append('\\').append('n');
+				} else {
+					builder.append(c);
+				}
+			}
+			builder.append('\n');
+		}
+		builder.append(TYPE).append(name);
+		switch (metric.getType()) {
+		case Metric.TYPE_COUNTER:
+			builder.append(COUNTER);
+			break;
+		case Metric.TYPE_GAUGE:
+			builder.append(GAUGE);
+			break;
+		default:
+			builder.append(HISTOGRAM);
+			break;
+		}
+		builder.append('\n');
+	}
+
+	private static void appendHistogram(StringBuilder builder, Metric metric) {
+		String name = metric.getName();
+		String labels = metric.getLabels();
+		Histogram histogram = metric.getHistogram();
+		long[] bounds = histogram.getBounds();
+		long[] counts = histogram.getCounts();
+		long sum = histogram.getSum();
+
+		String bucketName = name + BUCKET_SUFFIX;
+		long cumulativeCount = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulativeCount += counts[i];
+			String bound = i < bounds.length ? Long.toString(bounds[i]) : INFINITY;
+			String bucketLabels = MetricsRegistry.label(UPPER_BOUND, bound);
+			appendSample(builder, bucketName, labels, bucketLabels, cumulativeCount);
+		}
+		appendSample(builder, name + SUM_SUFFIX, null, labels, sum);
+		appendSample(builder, name + COUNT_SUFFIX, null, labels, cumulativeCount);
+	}
+
+	private static void appendSample(StringBuilder builder, String name, String labels, String extraLabels,
+			long value) {
+		builder.append(name);
+		if (labels != null || extraLabels != null) {
+			builder.append('{');
+			if (labels != null) {
+				builder.append(labels);
+				if (extraLabels != null) {
+					builder.append(',');
+				}
+			}
+			if (extraLabels != null) {
+				builder.append(extraLabels);
+			}
+			builder.append('}');
+		}
+		builder.append(' ').append(value).append('\n');
+	}
+
+}
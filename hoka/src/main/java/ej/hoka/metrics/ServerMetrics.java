@@ -0,0 +1,231 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.metrics;
+
+/**
+ * The metrics updated by the servers: connections, requests, responses, transferred bytes and durations.
+ * <p>
+ * The metrics are registered in the given registry when this object is created, then updated by the servers it is set
+ * to. The durations are in microseconds:
+ * <ul>
+ * <li><code>hoka_connections_accepted_total</code>: the accepted connections,</li>
+ * <li><code>hoka_connections_rejected_total</code>: the connections closed because too many were pending,</li>
+ * <li><code>hoka_connections_active</code>: the connections being processed,</li>
+ * <li><code>hoka_connections_pending</code>: the accepted connections waiting to be processed,</li>
+ * <li><code>hoka_requests_total</code>: the requests, per method,</li>
+ * <li><code>hoka_responses_total</code>: the responses, per status code,</li>
+ * <li><code>hoka_received_bytes_total</code> and <code>hoka_sent_bytes_total</code>: the transferred bytes,</li>
+ * <li><code>hoka_request_duration_microseconds</code>: the time to process a request and send its response,</li>
+ * <li><code>hoka_endpoint_duration_microseconds</code>: the time spent in each REST endpoint.</li>
+ * </ul>
+ *
+ * @see ej.hoka.http.HTTPServer#setMetrics(ServerMetrics)
+ * @see ej.hoka.rest.RestRequestHandler#setMetrics(ServerMetrics)
+ */
+public class ServerMetrics {
+
+	private static final String METHOD = "method"; //$NON-NLS-1$
+	private static final String STATUS = "status"; //$NON-NLS-1$
+	private static final String ENDPOINT = "endpoint"; //$NON-NLS-1$
+	private static final String[] METHODS = { "OTHER", "POST", "GET", "PUT", "DELETE" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	private static final int MAX_STATUS_CODE = 599;
+
+	private static final String CONNECTIONS_ACCEPTED = "hoka_connections_accepted_total"; //$NON-NLS-1$
+	private static final String CONNECTIONS_REJECTED = "hoka_connections_rejected_total"; //$NON-NLS-1$
+	private static final String CONNECTIONS_ACTIVE = "hoka_connections_active"; //$NON-NLS-1$
+	private static final String CONNECTIONS_PENDING = "hoka_connections_pending"; //$NON-NLS-1$
+	private static final String REQUESTS = "hoka_requests_total"; //$NON-NLS-1$
+	private static final String RESPONSES = "hoka_responses_total"; //$NON-NLS-1$
+	private static final String RECEIVED_BYTES = "hoka_received_bytes_total"; //$NON-NLS-1$
+	private static final String SENT_BYTES = "hoka_sent_bytes_total"; //$NON-NLS-1$
+	private static final String REQUEST_DURATION = "hoka_request_duration_microseconds"; //$NON-NLS-1$
+	private static final String ENDPOINT_DURATION = "hoka_endpoint_duration_microseconds"; //$NON-NLS-1$
+
+	private final MetricsRegistry registry;
+
+	private final Counter acceptedConnections;
+	private final Counter rejectedConnections;
+	private final Counter activeConnections;
+	private final Counter[] requests;
+	/**
+	 * The responses per status code, created on the first response with each code.
+	 */
+	private final Counter[] responses;
+	private final Counter receivedBytes;
+	private final Counter sentBytes;
+	private final Histogram requestDuration;
+
+	/**
+	 * Creates the metrics of the servers and registers them.
+	 *
+	 * @param registry
+	 *            the registry of the metrics.
+	 */
+	public ServerMetrics(MetricsRegistry registry) {
+		this.registry = registry;
+		this.acceptedConnections = registry.counter(CONNECTIONS_ACCEPTED, "Accepted connections."); //$NON-NLS-1$
+		this.rejectedConnections = registry.counter(CONNECTIONS_REJECTED,
+				"Connections closed because too many were pending."); //$NON-NLS-1$
+		Counter activeConnections = new Counter();
+		registry.gauge(CONNECTIONS_ACTIVE, null, "Connections being processed.", activeConnections); //$NON-NLS-1$
+		this.activeConnections = activeConnections;
+
+		Counter[] requests = new Counter[METHODS.length];
+		for (int i = 0; i < METHODS.length; i++) {
+			requests[i] = registry.counter(REQUESTS, MetricsRegistry.label(METHOD, METHODS[i]),
+					"Requests per method."); //$NON-NLS-1$
+		}
+		this.requests = requests;
+		this.responses = new Counter[MAX_STATUS_CODE + 1];
+
+		this.receivedBytes = registry.counter(RECEIVED_BYTES, "Bytes received."); //$NON-NLS-1$
+		this.sentBytes = registry.counter(SENT_BYTES, "Bytes sent."); //$NON-NLS-1$
+		this.requestDuration = registry.histogram(REQUEST_DURATION, null,
+				"Time to process a request and send its response."); //$NON-NLS-1$
+	}
+
+	/**
+	 * Gets the registry of these metrics.
+	 *
+	 * @return the registry.
+	 */
+	public MetricsRegistry getRegistry() {
+		return this.registry;
+	}
+
+	/**
+	 * Registers the gauge of the connections waiting to be processed.
+	 *
+	 * @param pendingConnections
+	 *            the gauge.
+	 */
+	public void setPendingConnections(Gauge pendingConnections) {
+		this.registry.gauge(CONNECTIONS_PENDING, null, "Accepted connections waiting to be processed.", //$NON-NLS-1$
+				pendingConnections);
+	}
+
+	/**
+	 * Called when a connection is accepted.
+	 */
+	public void onConnectionAccepted() {
+		this.acceptedConnections.increment();
+	}
+
+	/**
+	 * Called when a connection is rejected.
+	 */
+	public void onConnectionRejected() {
+		this.rejectedConnections.increment();
+	}
+
+	/**
+	 * Called when a connection starts being processed.
+	 */
+	public void onConnectionOpened() {
+		this.activeConnections.increment();
+	}
+
+	/**
+	 * Called when a connection has been processed.
+	 */
+	public void onConnectionClosed() {
+		this.activeConnections.add(-1);
+	}
+
+	/**
+	 * Called when a request has been parsed.
+	 *
+	 * @param method
+	 *            the method of the request, as defined in {@link ej.hoka.http.HTTPRequest}.
+	 */
+	public void onRequest(int method) {
+		Counter[] requests = this.requests;
+		requests[method > 0 && method < requests.length ? method : 0].increment();
+	}
+
+	/**
+	 * Called when a response has been sent.
+	 *
+	 * @param status
+	 *            the status of the response, starting with its code.
+	 * @param duration
+	 *            the time to process the request and send the response, in microseconds, or <code>-1</code> if the
+	 *            request could not be parsed.
+	 */
+	public void onResponse(String status, long duration) {
+		int code = parseStatusCode(status);
+		if (code >= 0) {
+			getResponseCounter(code).increment();
+		}
+		if (duration >= 0) {
+			this.requestDuration.record(duration);
+		}
+	}
+
+	/**
+	 * Gets the counter of the received bytes.
+	 *
+	 * @return the counter.
+	 */
+	public Counter getReceivedBytes() {
+		return this.receivedBytes;
+	}
+
+	/**
+	 * Gets the counter of the sent bytes.
+	 *
+	 * @return the counter.
+	 */
+	public Counter getSentBytes() {
+		return this.sentBytes;
+	}
+
+	/**
+	 * Gets or creates the histogram of the durations of an endpoint.
+	 *
+	 * @param uri
+	 *            the URI of the endpoint.
+	 * @return the histogram, in microseconds.
+	 */
+	public Histogram getEndpointDuration(String uri) {
+		return this.registry.histogram(ENDPOINT_DURATION, MetricsRegistry.label(ENDPOINT, uri),
+				"Time spent in the endpoint."); //$NON-NLS-1$
+	}
+
+	private Counter getResponseCounter(int code) {
+		Counter[] responses = this.responses;
+		Counter counter = responses[code];
+		if (counter == null) {
+			synchronized (responses) {
+				counter = responses[code];
+				if (counter == null) {
+					counter = this.registry.counter(RESPONSES, MetricsRegistry.label(STATUS, Integer.toString(code)),
+							"Responses per status code."); //$NON-NLS-1$
+					responses[code] = counter;
+				}
+			}
+		}
+		return counter;
+	}
+
+	private static int parseStatusCode(String status) {
+		if (status == null || status.length() < 3) {
+			return -1;
+		}
+		int code = 0;
+		for (int i = 0; i < 3; i++) {
+			int digit = status.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			code = code * 10 + digit;
+		}
+		return code <= MAX_STATUS_CODE ? code : -1;
+	}
+
+}
@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2016-2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2016-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -13,6 +13,7 @@ import ej.hoka.http.HTTPConstants;
 import ej.hoka.http.HTTPRequest;
 import ej.hoka.http.HTTPResponse;
 import ej.hoka.log.Messages;
+import ej.hoka.metrics.Histogram;
 import ej.util.message.Level;
 
 /**
@@ -38,6 +39,11 @@ public class RestEndpoint {
 
 	private final boolean isGlobal;
 
+	/**
+	 * The histogram of the time spent in this endpoint, set by the {@link RestRequestHandler}, or <code>null</code>.
+	 */
+	/* default */ volatile Histogram duration;
+
 	/**
 	 * Creates a new endpoint at given URI.
 	 * <p>
@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2016-2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2016-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -10,9 +10,13 @@ package ej.hoka.rest;
 import java.util.Map;
 
 import ej.basictool.map.PackedMap;
+import ej.bon.Util;
 import ej.hoka.http.HTTPRequest;
 import ej.hoka.http.HTTPResponse;
+import ej.hoka.http.RequestTrace;
 import ej.hoka.http.requesthandler.RequestHandler;
+import ej.hoka.metrics.Histogram;
+import ej.hoka.metrics.ServerMetrics;
 
 /**
  * A request handler that exposes a REST API. Handles GET, POST, PUT and DELETE operations on endpoints.
@@ -29,6 +33,11 @@ public class RestRequestHandler implements RequestHandler {
 
 	private final PackedMap<String, RestEndpoint> endpoints;
 
+	/**
+	 * The metrics measuring the duration of the endpoints, or <code>null</code>.
+	 */
+	private ServerMetrics metrics;
+
 	/**
 	 * Constructs a REST request handler with no endpoint.
 	 *
@@ -46,9 +55,26 @@ public class RestRequestHandler implements RequestHandler {
 	 *            the endpoint to add.
 	 */
 	public synchronized void addEndpoint(RestEndpoint endpoint) {
+		ServerMetrics metrics = this.metrics;
+		if (metrics != null) {
+			endpoint.duration = metrics.getEndpointDuration(endpoint.getURI());
+		}
 		this.endpoints.put(endpoint.getURI(), endpoint);
 	}
 
+	/**
+	 * Sets the metrics measuring the time spent in each endpoint of this handler.
+	 *
+	 * @param metrics
+	 *            the metrics, or <code>null</code> to disable them.
+	 */
+	public synchronized void setMetrics(ServerMetrics metrics) {
+		this.metrics = metrics;
+		for (RestEndpoint endpoint : this.endpoints.values()) {
+			endpoint.duration = metrics == null ? null : metrics.getEndpointDuration(endpoint.getURI());
+		}
+	}
+
 	@Override
 	public HTTPResponse process(HTTPRequest request, Map<String, String> attributes) {
 		RestEndpoint endpoint = getEndpointFromURI(request.getURI());
@@ -57,6 +83,25 @@ public class RestRequestHandler implements RequestHandler {
 			return null;
 		}
 
+		RequestTrace trace = request.getTrace();
+		if (trace != null) {
+			trace.mark(RequestTrace.ROUTED);
+		}
+
+		Histogram duration = endpoint.duration;
+		if (duration == null) {
+			return process(endpoint, request, attributes);
+		}
+
+		long startTime = Util.platformTimeNanos();
+		try {
+			return process(endpoint, request, attributes);
+		} finally {
+			duration.record((Util.platformTimeNanos() - startTime) / 1000);
+		}
+	}
+
+	private static HTTPResponse process(RestEndpoint endpoint, HTTPRequest request, Map<String, String> attributes) {
 		switch (request.getMethod()) {
 		case HTTPRequest.GET:
 			return endpoint.get(request, attributes);
@@ -0,0 +1,75 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.rest.endpoint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import ej.hoka.http.BodyWriter;
+import ej.hoka.http.HTTPConstants;
+import ej.hoka.http.HTTPRequest;
+import ej.hoka.http.HTTPResponse;
+import ej.hoka.metrics.MetricsExporter;
+import ej.hoka.metrics.MetricsRegistry;
+import ej.hoka.metrics.PrometheusExporter;
+import ej.hoka.rest.RestEndpoint;
+
+/**
+ * An endpoint exposing the metrics of a registry, for example to be scraped by Prometheus.
+ * <p>
+ * The metrics are read when the response body is written, so that the endpoint does not buffer them.
+ */
+public class MetricsEndpoint extends RestEndpoint {
+
+	private final BodyWriter body;
+	private final String mimeType;
+
+	/**
+	 * Instantiates a {@link MetricsEndpoint} exporting the metrics in the Prometheus text format.
+	 *
+	 * @param uri
+	 *            the uri, cannot be <code>null</code>.
+	 * @param registry
+	 *            the registry of the metrics to export.
+	 * @throws IllegalArgumentException
+	 *             if URI is empty
+	 */
+	public MetricsEndpoint(String uri, MetricsRegistry registry) {
+		this(uri, registry, new PrometheusExporter());
+	}
+
+	/**
+	 * Instantiates a {@link MetricsEndpoint}.
+	 *
+	 * @param uri
+	 *            the uri, cannot be <code>null</code>.
+	 * @param registry
+	 *            the registry of the metrics to export.
+	 * @param exporter
+	 *            the exporter writing the metrics.
+	 * @throws IllegalArgumentException
+	 *             if URI is empty
+	 */
+	public MetricsEndpoint(String uri, final MetricsRegistry registry, final MetricsExporter exporter) {
+		super(uri);
+		this.mimeType = exporter.getMimeType();
+		this.body = new BodyWriter() {
+			@Override
+			public void write(OutputStream output) throws IOException {
+				exporter.export(registry, output);
+			}
+		};
+	}
+
+	@Override
+	public HTTPResponse get(HTTPRequest request, Map<String, String> attributes) {
+		return new HTTPResponse(HTTPConstants.HTTP_STATUS_OK, this.mimeType, this.body);
+	}
+
+}
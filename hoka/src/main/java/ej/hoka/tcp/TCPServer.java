@@ -1,7 +1,7 @@
 /*
  * Java
  *
- * Copyright 2009-2019 MicroEJ Corp. All rights reserved.
+ * Copyright 2009-2020 MicroEJ Corp. All rights reserved.
  * This library is provided in source code for use, modification and test, subject to license terms.
  * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
  */
@@ -14,6 +14,8 @@ import java.net.Socket;
 import javax.net.ServerSocketFactory;
 
 import ej.hoka.log.Messages;
+import ej.hoka.metrics.Gauge;
+import ej.hoka.metrics.ServerMetrics;
 import ej.util.message.Level;
 
 /**
@@ -74,6 +76,11 @@ public class TCPServer {
 	 */
 	private int lastReadPtr;
 
+	/**
+	 * The metrics updated by this server, or <code>null</code>.
+	 */
+	private ServerMetrics metrics;
+
 	/**
 	 * Constructs a new instance of {@link TCPServer} using environment's default socket factory.
 	 *
@@ -126,6 +133,26 @@ public class TCPServer {
 		this.timeout = timeout;
 	}
 
+	/**
+	 * Sets the metrics updated by this server: the accepted, rejected and pending connections.
+	 * <p>
+	 * The metrics have to be set before starting the server.
+	 *
+	 * @param metrics
+	 *            the metrics, or <code>null</code> to disable them.
+	 */
+	public void setMetrics(ServerMetrics metrics) {
+		if (metrics != null) {
+			metrics.setPendingConnections(new Gauge() {
+				@Override
+				public long getValue() {
+					return getPendingConnectionCount();
+				}
+			});
+		}
+		this.metrics = metrics;
+	}
+
 	/**
 	 * Starts the {@link TCPServer}. The {@link TCPServer} can be started only once. Calling this method while the
 	 * {@link TCPServer} is already running causes a {@link IllegalStateException}.
@@ -191,6 +218,10 @@ public class TCPServer {
 	 *            {@link Socket} to add
 	 */
 	public void addConnection(Socket connection) {
+		ServerMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.onConnectionAccepted();
+		}
 		synchronized (this.streamConnections) {
 			int nextPtr = this.lastAddedPtr + 1;
 			if (nextPtr == this.streamConnections.length) {
@@ -200,6 +231,9 @@ public class TCPServer {
 			if (nextPtr == this.lastReadPtr) {
 				Messages.LOGGER.log(Level.SEVERE, Messages.CATEGORY_HOKA, Messages.TOO_MANY_CONNECTION,
 						connection.getInetAddress().toString(), Integer.valueOf(this.maxOpenedConnections));
+				if (metrics != null) {
+					metrics.onConnectionRejected();
+				}
 				tooManyOpenConnections(connection);
 				return;
 			}
@@ -243,6 +277,22 @@ public class TCPServer {
 		}
 	}
 
+	/**
+	 * Gets the number of connections waiting to be processed.
+	 *
+	 * @return the number of connections returned by {@link #getNextStreamConnection()} without blocking.
+	 */
+	public int getPendingConnectionCount() {
+		Socket[] streamConnections = this.streamConnections;
+		if (streamConnections == null) {
+			return 0;
+		}
+		synchronized (streamConnections) {
+			int count = this.lastAddedPtr - this.lastReadPtr;
+			return count < 0 ? count + streamConnections.length : count;
+		}
+	}
+
 	/**
 	 * Returns {@code true} if the {@link TCPServer} is stopped.
 	 *
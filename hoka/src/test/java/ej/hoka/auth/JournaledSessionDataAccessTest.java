@@ -0,0 +1,360 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.auth;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the replay and the compaction of the journal of a {@link JournaledSessionDataAccess}, including after a crash.
+ */
+public class JournaledSessionDataAccessTest {
+
+	private static final long ONE_HOUR = 3600L;
+	private static final int MAX_SESSIONS = 1000;
+	private static final int NO_COMPACTION = 100000;
+
+	private MemoryStorage storage;
+	private long expiration;
+
+	/**
+	 * Creates an empty storage.
+	 */
+	@Before
+	public void setUp() {
+		this.storage = new MemoryStorage();
+		this.expiration = System.currentTimeMillis() / 1000 + ONE_HOUR;
+	}
+
+	/**
+	 * Tests that the sessions added, refreshed and removed are restored by a new instance.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testReplay() throws IOException {
+		JournaledSessionDataAccess sessions = open(NO_COMPACTION);
+		sessions.addSession(new Session("alice", "a", this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+		sessions.addSession(new Session("bob", "b", this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+		sessions.addSession(new Session("carol", "c", this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+		sessions.refreshSession("b", this.expiration + 1); //$NON-NLS-1$
+		sessions.removeSession(sessions.getSessionByID("c")); //$NON-NLS-1$
+		// no close: the records must be durable when the changes return
+
+		JournaledSessionDataAccess restored = open(NO_COMPACTION);
+		Assert.assertEquals(2, restored.getSessions().size());
+		Assert.assertEquals("alice", restored.getSessionByID("a").userID); //$NON-NLS-1$ //$NON-NLS-2$
+		Assert.assertEquals(this.expiration + 1, restored.getSessionByID("b").sessionExpiration); //$NON-NLS-1$
+		Assert.assertNull(restored.getSessionByID("c")); //$NON-NLS-1$
+	}
+
+	/**
+	 * Tests that a record partially written before a crash is ignored, the previous ones being restored.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testReplayPartialRecord() throws IOException {
+		JournaledSessionDataAccess sessions = open(NO_COMPACTION);
+		sessions.addSession(new Session("alice", "a", this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+		int length = this.storage.journal.size();
+		sessions.addSession(new Session("bob", "b", this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+
+		for (int cut = length; cut < this.storage.journal.size(); cut++) {
+			MemoryStorage crashed = new MemoryStorage();
+			crashed.journal.write(this.storage.journal.toByteArray(), 0, cut);
+			JournaledSessionDataAccess restored = new JournaledSessionDataAccess(crashed,
+					new InMemorySessionDataAccess(), NO_COMPACTION);
+			restored.open();
+			Assert.assertNotNull(restored.getSessionByID("a")); //$NON-NLS-1$
+			Assert.assertNull(restored.getSessionByID("b")); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Tests that the replay stops at a record whose checksum does not match.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testReplayCorruptedRecord() throws IOException {
+		JournaledSessionDataAccess sessions = open(NO_COMPACTION);
+		sessions.addSession(new Session("alice", "a", this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+		int length = this.storage.journal.size();
+		sessions.addSession(new Session("bob", "b", this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+		sessions.addSession(new Session("carol", "c", this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+
+		byte[] journal = this.storage.journal.toByteArray();
+		// a byte of the payload of the second record
+		journal[length + 6] ^= 1;
+		this.storage.journal.reset();
+		this.storage.journal.write(journal, 0, journal.length);
+
+		JournaledSessionDataAccess restored = open(NO_COMPACTION);
+		Assert.assertNotNull(restored.getSessionByID("a")); //$NON-NLS-1$
+		Assert.assertNull(restored.getSessionByID("b")); //$NON-NLS-1$
+		Assert.assertNull(restored.getSessionByID("c")); //$NON-NLS-1$
+	}
+
+	/**
+	 * Tests that the compaction keeps only the active sessions.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testCompaction() throws IOException {
+		JournaledSessionDataAccess sessions = open(NO_COMPACTION);
+		for (int i = 0; i < 10; i++) {
+			sessions.addSession(new Session("user" + i, "id" + i, this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		for (int i = 0; i < 8; i++) {
+			sessions.removeSession(sessions.getSessionByID("id" + i)); //$NON-NLS-1$
+		}
+		sessions.addSession(new Session("expired", "old", 1)); //$NON-NLS-1$ //$NON-NLS-2$
+		int length = this.storage.journal.size();
+
+		sessions.compactJournal();
+		Assert.assertTrue(this.storage.journal.size() < length / 4);
+		sessions.addSession(new Session("alice", "a", this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+
+		JournaledSessionDataAccess restored = open(NO_COMPACTION);
+		Assert.assertEquals(3, restored.getSessions().size());
+		Assert.assertNotNull(restored.getSessionByID("id8")); //$NON-NLS-1$
+		Assert.assertNotNull(restored.getSessionByID("id9")); //$NON-NLS-1$
+		Assert.assertNotNull(restored.getSessionByID("a")); //$NON-NLS-1$
+		Assert.assertNull(restored.getSessionByID("old")); //$NON-NLS-1$
+	}
+
+	/**
+	 * Tests that the journal is compacted when it holds more than twice the number of sessions.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testAutomaticCompaction() throws IOException {
+		JournaledSessionDataAccess sessions = open(4);
+		sessions.addSession(new Session("alice", "a", this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+		for (int i = 0; i < 10; i++) {
+			sessions.refreshSession("a", this.expiration + i); //$NON-NLS-1$
+		}
+		Assert.assertTrue(this.storage.commitCount > 1);
+
+		JournaledSessionDataAccess restored = open(NO_COMPACTION);
+		Assert.assertEquals(1, restored.getSessions().size());
+		Assert.assertEquals(this.expiration + 9, restored.getSessionByID("a").sessionExpiration); //$NON-NLS-1$
+	}
+
+	/**
+	 * Tests that a crash before the compacted journal is committed restores the former journal.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testCrashDuringCompaction() throws IOException {
+		JournaledSessionDataAccess sessions = open(NO_COMPACTION);
+		sessions.addSession(new Session("alice", "a", this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+		sessions.addSession(new Session("bob", "b", this.expiration)); //$NON-NLS-1$ //$NON-NLS-2$
+
+		this.storage.failCommit = true;
+		try {
+			sessions.compactJournal();
+			Assert.fail();
+		} catch (IOException e) {
+			// expected
+		}
+		this.storage.failCommit = false;
+
+		JournaledSessionDataAccess restored = open(NO_COMPACTION);
+		Assert.assertEquals(2, restored.getSessions().size());
+	}
+
+	/**
+	 * Tests that a change whose pending record is discarded by a compaction returns only once the compacted journal is
+	 * committed.
+	 *
+	 * @throws Exception
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testChangeDurableAfterCompaction() throws Exception {
+		final JournaledSessionDataAccess sessions = open(1);
+		final MemoryStorage storage = this.storage;
+		final Session alice = new Session("alice", "a", this.expiration); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// the first change owns the journal and blocks in its flush
+		storage.blockFlush = true;
+		Thread adder = start(new Runnable() {
+			@Override
+			public void run() {
+				sessions.addSession(alice);
+			}
+		});
+		storage.awaitBlocked();
+
+		// the removal stays pending until the journal is compacted, after the flush of the first change
+		storage.blockCommit = true;
+		Thread remover = start(new Runnable() {
+			@Override
+			public void run() {
+				sessions.removeSession(alice);
+			}
+		});
+		while (sessions.getSessionByID("a") != null) { //$NON-NLS-1$
+			Thread.sleep(1);
+		}
+		Thread.sleep(50);
+		storage.blockFlush = false;
+		storage.release();
+
+		storage.awaitBlocked();
+		// wakes the waiting thread up, as a spurious wakeup would
+		remover.interrupt();
+		remover.join(200);
+		Assert.assertTrue("returned before the compacted journal is committed", remover.isAlive()); //$NON-NLS-1$
+		// a crash now restores the former journal, where the session is not removed
+		Assert.assertNotNull(open(storage.copy()).getSessionByID("a")); //$NON-NLS-1$
+
+		storage.blockCommit = false;
+		storage.release();
+		adder.join();
+		remover.join();
+		Assert.assertNull(open(storage.copy()).getSessionByID("a")); //$NON-NLS-1$
+	}
+
+	private JournaledSessionDataAccess open(int minCompactionRecords) throws IOException {
+		JournaledSessionDataAccess sessions = new JournaledSessionDataAccess(this.storage,
+				new InMemorySessionDataAccess(4, MAX_SESSIONS, 16), minCompactionRecords);
+		sessions.open();
+		return sessions;
+	}
+
+	private static JournaledSessionDataAccess open(MemoryStorage storage) throws IOException {
+		JournaledSessionDataAccess sessions = new JournaledSessionDataAccess(storage, new InMemorySessionDataAccess(),
+				NO_COMPACTION);
+		sessions.open();
+		return sessions;
+	}
+
+	private static Thread start(Runnable runnable) {
+		Thread thread = new Thread(runnable);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * A journal storage in memory, whose flushes and commits can be blocked or fail.
+	 */
+	private static class MemoryStorage implements SessionJournalStorage {
+
+		/* default */ final ByteArrayOutputStream journal = new ByteArrayOutputStream();
+		private ByteArrayOutputStream compacted;
+		/* default */ int commitCount;
+		/* default */ volatile boolean failCommit;
+		/* default */ volatile boolean blockFlush;
+		/* default */ volatile boolean blockCommit;
+		private boolean blocked;
+
+		@Override
+		public InputStream openJournal() {
+			synchronized (this) {
+				return this.journal.size() == 0 ? null : new ByteArrayInputStream(this.journal.toByteArray());
+			}
+		}
+
+		@Override
+		public OutputStream appendJournal() {
+			return new OutputStream() {
+				@Override
+				public void write(int b) {
+					synchronized (MemoryStorage.this) {
+						MemoryStorage.this.journal.write(b);
+					}
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) {
+					synchronized (MemoryStorage.this) {
+						MemoryStorage.this.journal.write(b, off, len);
+					}
+				}
+
+				@Override
+				public void flush() {
+					if (MemoryStorage.this.blockFlush) {
+						block();
+					}
+				}
+			};
+		}
+
+		@Override
+		public OutputStream createCompactedJournal() {
+			this.compacted = new ByteArrayOutputStream();
+			return this.compacted;
+		}
+
+		@Override
+		public void commitCompactedJournal() throws IOException {
+			if (this.failCommit) {
+				throw new IOException();
+			}
+			if (this.blockCommit) {
+				block();
+			}
+			synchronized (this) {
+				this.journal.reset();
+				this.journal.write(this.compacted.toByteArray(), 0, this.compacted.size());
+				this.commitCount++;
+			}
+		}
+
+		/* default */ synchronized MemoryStorage copy() {
+			MemoryStorage copy = new MemoryStorage();
+			copy.journal.write(this.journal.toByteArray(), 0, this.journal.size());
+			return copy;
+		}
+
+		private synchronized void block() {
+			this.blocked = true;
+			notifyAll();
+			while (this.blocked) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					throw new AssertionError(e);
+				}
+			}
+		}
+
+		/* default */ synchronized void awaitBlocked() throws InterruptedException {
+			while (!this.blocked) {
+				wait();
+			}
+		}
+
+		/* default */ synchronized void release() {
+			this.blocked = false;
+			notifyAll();
+		}
+
+	}
+
+}
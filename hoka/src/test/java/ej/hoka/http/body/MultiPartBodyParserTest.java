@@ -0,0 +1,249 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http.body;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import ej.hoka.http.body.MultiPartBodyParser.MultiPartBody;
+
+/**
+ * Tests the search of the multipart delimiter by {@link MultiPartBodyParser}, whatever the size of the buffer and of
+ * the reads from the body.
+ */
+public class MultiPartBodyParserTest {
+
+	private static final String BUFFER_SIZE_PROPERTY = "hoka.buffer.size"; //$NON-NLS-1$
+	private static final String BOUNDARY = "XyZ"; //$NON-NLS-1$
+	private static final String CONTENT_TYPE = "multipart/form-data; boundary=" + BOUNDARY; //$NON-NLS-1$
+	private static final String DELIMITER = "\r\n--" + BOUNDARY; //$NON-NLS-1$
+	/**
+	 * The smallest buffer, holding a delimiter and the bytes preceding it.
+	 */
+	private static final int MIN_BUFFER_SIZE = 2 * DELIMITER.length();
+	private static final int MAX_BUFFER_SIZE = 40;
+	private static final int MAX_READ_SIZE = 20;
+
+	/**
+	 * Restores the default size of the buffer.
+	 */
+	@After
+	public void tearDown() {
+		System.clearProperty(BUFFER_SIZE_PROPERTY);
+	}
+
+	/**
+	 * Tests the content and the headers of several parts.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testParts() throws IOException {
+		String body = "--XyZ\r\n" //$NON-NLS-1$
+				+ "Content-Disposition: form-data; name=\"a\"\r\n\r\n" //$NON-NLS-1$
+				+ "first\r\n" //$NON-NLS-1$
+				+ "--XyZ\r\n" //$NON-NLS-1$
+				+ "Content-Disposition: form-data; name=\"b\"; filename=\"b.txt\"\r\n" //$NON-NLS-1$
+				+ "Content-Type: text/plain\r\n\r\n" //$NON-NLS-1$
+				+ "second\r\nline\r\n" //$NON-NLS-1$
+				+ "--XyZ--\r\n"; //$NON-NLS-1$
+		MultiPartBody multiPart = parse(body.getBytes(), Integer.MAX_VALUE);
+
+		HTTPPart part = multiPart.nextPart();
+		Assert.assertNotNull(part);
+		Assert.assertEquals("a", part.getHeaders().get("name")); //$NON-NLS-1$ //$NON-NLS-2$
+		Assert.assertEquals("first", readPart(part)); //$NON-NLS-1$
+
+		part = multiPart.nextPart();
+		Assert.assertNotNull(part);
+		Assert.assertEquals("b.txt", part.getHeaders().get("filename")); //$NON-NLS-1$ //$NON-NLS-2$
+		Assert.assertEquals("text/plain", part.getHeaders().get("Content-Type")); //$NON-NLS-1$ //$NON-NLS-2$
+		Assert.assertEquals("second\r\nline", readPart(part)); //$NON-NLS-1$
+
+		Assert.assertNull(multiPart.nextPart());
+	}
+
+	/**
+	 * Tests the parts whose content contains the beginning of a delimiter, whatever the size of the buffer and of the
+	 * reads, so that the delimiter and its prefixes straddle two reads at every position.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testDelimiterAcrossReads() throws IOException {
+		String[] contents = { "", //$NON-NLS-1$
+				"x", //$NON-NLS-1$
+				"\r", //$NON-NLS-1$
+				"\r\n--Xy", //$NON-NLS-1$
+				"a\r\n--XyA\r\n-", //$NON-NLS-1$
+				"-XyZ\r\n--X\r\n--XyY", //$NON-NLS-1$
+				"0123456789abcdefghijklmnopqrstuvwxyz0123456789\r\n", //$NON-NLS-1$
+		};
+		byte[] body = buildBody(contents);
+		for (int bufferSize = MIN_BUFFER_SIZE; bufferSize <= MAX_BUFFER_SIZE; bufferSize++) {
+			for (int readSize = 1; readSize <= MAX_READ_SIZE; readSize++) {
+				System.setProperty(BUFFER_SIZE_PROPERTY, Integer.toString(bufferSize));
+				MultiPartBody multiPart = parse(body, readSize);
+				for (int i = 0; i < contents.length; i++) {
+					HTTPPart part = multiPart.nextPart();
+					String message = "buffer " + bufferSize //$NON-NLS-1$
+							+ ", read " + readSize + ", part " + i; //$NON-NLS-1$ //$NON-NLS-2$
+					Assert.assertNotNull(message, part);
+					Assert.assertEquals(message, contents[i], readPart(part));
+				}
+				Assert.assertNull(multiPart.nextPart());
+			}
+		}
+	}
+
+	/**
+	 * Tests that a part can be read byte per byte, and that the bytes of all values are kept.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testBinaryContent() throws IOException {
+		byte[] content = new byte[512];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		body.write(("--" + BOUNDARY + "\r\n\r\n").getBytes()); //$NON-NLS-1$ //$NON-NLS-2$
+		body.write(content);
+		body.write((DELIMITER + "--\r\n").getBytes()); //$NON-NLS-1$
+		System.setProperty(BUFFER_SIZE_PROPERTY, Integer.toString(MIN_BUFFER_SIZE));
+		MultiPartBody multiPart = parse(body.toByteArray(), 3);
+
+		HTTPPart part = multiPart.nextPart();
+		ByteArrayOutputStream read = new ByteArrayOutputStream();
+		int b;
+		while ((b = part.read()) != -1) {
+			read.write(b);
+		}
+		Assert.assertArrayEquals(content, read.toByteArray());
+		Assert.assertNull(multiPart.nextPart());
+	}
+
+	/**
+	 * Tests that the unread content of a part is skipped by the next part.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testSkipPart() throws IOException {
+		byte[] body = buildBody(new String[] { "skipped\r\n--XyY content", "read" }); //$NON-NLS-1$ //$NON-NLS-2$
+		System.setProperty(BUFFER_SIZE_PROPERTY, Integer.toString(MIN_BUFFER_SIZE));
+		MultiPartBody multiPart = parse(body, 5);
+
+		HTTPPart skipped = multiPart.nextPart();
+		Assert.assertEquals('s', skipped.read());
+		HTTPPart part = multiPart.nextPart();
+		Assert.assertEquals("read", readPart(part)); //$NON-NLS-1$
+		// the previous part cannot be read anymore
+		Assert.assertEquals(-1, skipped.read());
+	}
+
+	/**
+	 * Tests that a body truncated before its closing delimiter ends the last part at the end of the stream.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testTruncatedBody() throws IOException {
+		String body = "--XyZ\r\n\r\ncontent\r\n--X"; //$NON-NLS-1$
+		System.setProperty(BUFFER_SIZE_PROPERTY, Integer.toString(MIN_BUFFER_SIZE));
+		MultiPartBody multiPart = parse(body.getBytes(), 4);
+
+		HTTPPart part = multiPart.nextPart();
+		Assert.assertEquals("content\r\n--X", readPart(part)); //$NON-NLS-1$
+		Assert.assertNull(multiPart.nextPart());
+	}
+
+	/**
+	 * Tests that {@link HTTPPart#transferTo(java.io.OutputStream, long)} writes the whole part, whatever the size of the
+	 * reads.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testTransferTo() throws IOException {
+		String content = "0123456789\r\n--XyY0123456789\r\n--Xy0123456789"; //$NON-NLS-1$
+		byte[] body = buildBody(new String[] { content, "next" }); //$NON-NLS-1$
+		for (int readSize = 1; readSize <= MAX_READ_SIZE; readSize++) {
+			System.setProperty(BUFFER_SIZE_PROPERTY, Integer.toString(MIN_BUFFER_SIZE));
+			MultiPartBody multiPart = parse(body, readSize);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			Assert.assertEquals(content.length(), multiPart.nextPart().transferTo(out, content.length()));
+			Assert.assertEquals(content, out.toString());
+			Assert.assertEquals("next", readPart(multiPart.nextPart())); //$NON-NLS-1$
+		}
+	}
+
+	private static MultiPartBody parse(byte[] body, int readSize) throws IOException {
+		return new MultiPartBodyParser().parseBody(new ChunkedInputStream(body, readSize), CONTENT_TYPE);
+	}
+
+	private static byte[] buildBody(String[] contents) {
+		StringBuilder body = new StringBuilder();
+		for (String content : contents) {
+			body.append("--").append(BOUNDARY).append("\r\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			body.append("Content-Disposition: form-data; name=\"p\"\r\n\r\n"); //$NON-NLS-1$
+			body.append(content).append("\r\n"); //$NON-NLS-1$
+		}
+		body.append("--").append(BOUNDARY).append("--\r\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		return body.toString().getBytes();
+	}
+
+	private static String readPart(HTTPPart part) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[3];
+		int read;
+		while ((read = part.read(buffer, 0, buffer.length)) != -1) {
+			content.write(buffer, 0, read);
+		}
+		return content.toString();
+	}
+
+	/**
+	 * An input stream returning at most a given number of bytes per read, like a connection receiving small packets.
+	 */
+	/* default */ static class ChunkedInputStream extends InputStream {
+
+		private final InputStream input;
+		private final int readSize;
+
+		/* default */ ChunkedInputStream(byte[] data, int readSize) {
+			this.input = new ByteArrayInputStream(data);
+			this.readSize = readSize;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return this.input.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return this.input.read(b, off, Math.min(len, this.readSize));
+		}
+
+	}
+
+}
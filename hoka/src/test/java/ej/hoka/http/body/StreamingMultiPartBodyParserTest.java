@@ -0,0 +1,298 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http.body;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ej.hoka.http.body.StreamingMultiPartBodyParser.FilePart;
+import ej.hoka.http.body.StreamingMultiPartBodyParser.MultiPartForm;
+
+/**
+ * Tests the limits of a {@link StreamingMultiPartBodyParser}: the size of each part, of each form field, of the headers
+ * of each part and of the whole body, and the number of parts.
+ */
+public class StreamingMultiPartBodyParserTest {
+
+	private static final String BUFFER_SIZE_PROPERTY = "hoka.buffer.size"; //$NON-NLS-1$
+	/**
+	 * A buffer smaller than the parts, so that they are transferred in several blocks.
+	 */
+	private static final int BUFFER_SIZE = 32;
+	private static final String BOUNDARY = "b0uNd"; //$NON-NLS-1$
+	private static final String CONTENT_TYPE = "multipart/form-data; boundary=" + BOUNDARY; //$NON-NLS-1$
+	private static final int NO_LIMIT = Integer.MAX_VALUE;
+	private static final int MAX_HEADER_SIZE = 256;
+	private static final int MAX_PART_COUNT = 8;
+
+	private MemorySink sink;
+
+	/**
+	 * Creates an empty sink and reduces the size of the buffer.
+	 */
+	@Before
+	public void setUp() {
+		this.sink = new MemorySink();
+		System.setProperty(BUFFER_SIZE_PROPERTY, Integer.toString(BUFFER_SIZE));
+	}
+
+	/**
+	 * Restores the default size of the buffer.
+	 */
+	@After
+	public void tearDown() {
+		System.clearProperty(BUFFER_SIZE_PROPERTY);
+	}
+
+	/**
+	 * Tests that the file parts are streamed to the sink and the other fields are kept in the form.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testFieldsAndFiles() throws IOException {
+		String file = repeat('f', 100);
+		byte[] body = new BodyBuilder().field("title", "hello") //$NON-NLS-1$ //$NON-NLS-2$
+				.file("upload", "a.txt", file).field("empty", "").build(); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		MultiPartForm form = parse(body, NO_LIMIT, NO_LIMIT, NO_LIMIT);
+
+		Assert.assertEquals("hello", form.getField("title")); //$NON-NLS-1$ //$NON-NLS-2$
+		Assert.assertEquals("", form.getField("empty")); //$NON-NLS-1$ //$NON-NLS-2$
+		Assert.assertEquals(1, form.getFiles().size());
+		FilePart filePart = form.getFiles().get(0);
+		Assert.assertEquals("upload", filePart.getName()); //$NON-NLS-1$
+		Assert.assertEquals("a.txt", filePart.getFilename()); //$NON-NLS-1$
+		Assert.assertEquals("text/plain", filePart.getContentType()); //$NON-NLS-1$
+		Assert.assertEquals(file.length(), filePart.getLength());
+		Assert.assertEquals(file, this.sink.content.toString());
+		Assert.assertTrue(this.sink.complete);
+	}
+
+	/**
+	 * Tests that a file part of exactly the maximum size is accepted, and that a larger one is rejected without writing
+	 * more than the maximum size to the sink.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testMaxPartSize() throws IOException {
+		int maxPartSize = 100;
+		byte[] body = new BodyBuilder().file("upload", "a.txt", repeat('f', maxPartSize)).build(); //$NON-NLS-1$ //$NON-NLS-2$
+		Assert.assertEquals(maxPartSize, parse(body, maxPartSize, NO_LIMIT, NO_LIMIT).getFiles().get(0).getLength());
+
+		this.sink = new MemorySink();
+		body = new BodyBuilder().file("upload", "a.txt", repeat('f', maxPartSize + 1)).build(); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTooLarge(body, maxPartSize, NO_LIMIT, NO_LIMIT, maxPartSize);
+		Assert.assertTrue(this.sink.content.size() <= maxPartSize);
+		Assert.assertTrue(this.sink.closed);
+		Assert.assertFalse(this.sink.complete);
+	}
+
+	/**
+	 * Tests that a discarded file part is still limited.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testMaxDiscardedPartSize() throws IOException {
+		this.sink.discard = true;
+		byte[] body = new BodyBuilder().file("upload", "a.txt", repeat('f', 50)).build(); //$NON-NLS-1$ //$NON-NLS-2$
+		Assert.assertEquals(50, parse(body, 50, NO_LIMIT, NO_LIMIT).getFiles().get(0).getLength());
+		assertTooLarge(body, 49, NO_LIMIT, NO_LIMIT, 49);
+	}
+
+	/**
+	 * Tests that a form field of exactly the maximum size is accepted, and that a larger one is rejected.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testMaxFieldSize() throws IOException {
+		int maxFieldSize = 40;
+		String value = repeat('v', maxFieldSize);
+		byte[] body = new BodyBuilder().field("name", value).build(); //$NON-NLS-1$
+		Assert.assertEquals(value, parse(body, NO_LIMIT, NO_LIMIT, maxFieldSize).getField("name")); //$NON-NLS-1$
+
+		body = new BodyBuilder().field("name", value + 'v').build(); //$NON-NLS-1$
+		assertTooLarge(body, NO_LIMIT, NO_LIMIT, maxFieldSize, maxFieldSize);
+	}
+
+	/**
+	 * Tests that the total size counts all the parts, their headers included, even when each part is within its own
+	 * limit, and that the sink never receives more than the total size.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testMaxTotalSize() throws IOException {
+		String file = repeat('f', 100);
+		byte[] body = new BodyBuilder().file("first", "a.txt", file) //$NON-NLS-1$ //$NON-NLS-2$
+				.file("second", "b.txt", file).build(); //$NON-NLS-1$ //$NON-NLS-2$
+		// the whole body except the delimiters and the line break that ends it
+		String delimiter = "\r\n--" + BOUNDARY; //$NON-NLS-1$
+		int total = body.length - (delimiter.length() - 2) - 2 * delimiter.length() - 2;
+		Assert.assertEquals(2, parse(body, NO_LIMIT, total, NO_LIMIT).getFiles().size());
+		assertTooLarge(body, NO_LIMIT, total - 1, NO_LIMIT, total - 1);
+
+		// the contents alone are within the limit, the headers are not
+		int maxTotalSize = 2 * file.length() + 10;
+		this.sink = new MemorySink();
+		assertTooLarge(body, file.length(), maxTotalSize, NO_LIMIT, maxTotalSize);
+		Assert.assertTrue(this.sink.written <= maxTotalSize);
+
+		// the second file exceeds the remaining size
+		maxTotalSize = total - 10;
+		this.sink = new MemorySink();
+		assertTooLarge(body, file.length(), maxTotalSize, NO_LIMIT, maxTotalSize);
+		Assert.assertTrue(this.sink.written <= maxTotalSize);
+		Assert.assertFalse(this.sink.complete);
+	}
+
+	/**
+	 * Tests that the headers of a part are limited.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testMaxHeaderSize() throws IOException {
+		String longName = repeat('n', MAX_HEADER_SIZE);
+		byte[] body = new BodyBuilder().field(longName, "value").build(); //$NON-NLS-1$
+		assertTooLarge(body, NO_LIMIT, NO_LIMIT, NO_LIMIT, MAX_HEADER_SIZE);
+	}
+
+	/**
+	 * Tests that the number of parts is limited.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testMaxPartCount() throws IOException {
+		BodyBuilder builder = new BodyBuilder();
+		for (int i = 0; i < MAX_PART_COUNT; i++) {
+			builder.field("f" + i, "v"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		Assert.assertEquals(MAX_PART_COUNT, parse(builder.build(), NO_LIMIT, NO_LIMIT, NO_LIMIT).getFields().size());
+
+		builder.field("last", "v"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTooLarge(builder.build(), NO_LIMIT, NO_LIMIT, NO_LIMIT, MAX_PART_COUNT);
+	}
+
+	private MultiPartForm parse(byte[] body, long maxPartSize, long maxTotalSize, int maxFieldSize)
+			throws IOException {
+		StreamingMultiPartBodyParser parser = new StreamingMultiPartBodyParser(this.sink, maxPartSize, maxTotalSize,
+				maxFieldSize, MAX_HEADER_SIZE, MAX_PART_COUNT);
+		return parser.parseBody(new ByteArrayInputStream(body), CONTENT_TYPE);
+	}
+
+	private void assertTooLarge(byte[] body, long maxPartSize, long maxTotalSize, int maxFieldSize, long limit)
+			throws IOException {
+		try {
+			parse(body, maxPartSize, maxTotalSize, maxFieldSize);
+			Assert.fail();
+		} catch (PayloadTooLargeException e) {
+			Assert.assertEquals(limit, e.getLimit());
+		}
+	}
+
+	private static String repeat(char c, int count) {
+		StringBuilder builder = new StringBuilder(count);
+		for (int i = 0; i < count; i++) {
+			builder.append(c);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Builds a multipart body.
+	 */
+	private static class BodyBuilder {
+
+		private final StringBuilder body = new StringBuilder();
+
+		/* default */ BodyBuilder field(String name, String value) {
+			this.body.append("--").append(BOUNDARY).append("\r\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			this.body.append("Content-Disposition: form-data; name=\"").append(name) //$NON-NLS-1$
+					.append("\"\r\n\r\n"); //$NON-NLS-1$
+			this.body.append(value).append("\r\n"); //$NON-NLS-1$
+			return this;
+		}
+
+		/* default */ BodyBuilder file(String name, String filename, String content) {
+			this.body.append("--").append(BOUNDARY).append("\r\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			this.body.append("Content-Disposition: form-data; name=\"").append(name) //$NON-NLS-1$
+					.append("\"; filename=\"").append(filename).append("\"\r\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			this.body.append("Content-Type: text/plain\r\n\r\n"); //$NON-NLS-1$
+			this.body.append(content).append("\r\n"); //$NON-NLS-1$
+			return this;
+		}
+
+		/* default */ byte[] build() {
+			return (this.body.toString() + "--" + BOUNDARY + "--\r\n").getBytes(); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+	}
+
+	/**
+	 * A sink keeping the content of the last file part in memory.
+	 */
+	private static class MemorySink implements PartSink {
+
+		private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+		private boolean discard;
+		private boolean closed;
+		private boolean complete;
+		/**
+		 * The number of bytes written to all the parts.
+		 */
+		private long written;
+
+		@Override
+		public OutputStream open(String name, String filename, Map<String, String> headers) {
+			if (this.discard) {
+				return null;
+			}
+			this.content.reset();
+			this.closed = false;
+			return new OutputStream() {
+				@Override
+				public void write(int b) {
+					write(new byte[] { (byte) b }, 0, 1);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) {
+					MemorySink.this.content.write(b, off, len);
+					MemorySink.this.written += len;
+				}
+			};
+		}
+
+		@Override
+		public void close(OutputStream out, long length, boolean complete) {
+			this.closed = true;
+			this.complete = complete;
+		}
+
+	}
+
+}
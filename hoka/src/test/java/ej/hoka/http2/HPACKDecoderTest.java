@@ -0,0 +1,323 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests a {@link HPACKDecoder} with the examples of RFC 7541 Appendix C, then with malformed header blocks.
+ * <p>
+ * The examples are decoded in sequence with the same decoder, so that the dynamic table built by the first blocks,
+ * and the evictions caused by the next ones, are checked by the fields of the following blocks.
+ */
+public class HPACKDecoderTest {
+
+	private static final int DEFAULT_TABLE_SIZE = 4096;
+	/**
+	 * The size of the dynamic table of the examples of the responses, so that entries are evicted.
+	 */
+	private static final int SMALL_TABLE_SIZE = 256;
+
+	private static final String[] FIRST_REQUEST = { ":method", "GET", //$NON-NLS-1$ //$NON-NLS-2$
+			":scheme", "http", //$NON-NLS-1$ //$NON-NLS-2$
+			":path", "/", //$NON-NLS-1$ //$NON-NLS-2$
+			":authority", "www.example.com", //$NON-NLS-1$ //$NON-NLS-2$
+	};
+	private static final String[] SECOND_REQUEST = { ":method", "GET", //$NON-NLS-1$ //$NON-NLS-2$
+			":scheme", "http", //$NON-NLS-1$ //$NON-NLS-2$
+			":path", "/", //$NON-NLS-1$ //$NON-NLS-2$
+			":authority", "www.example.com", //$NON-NLS-1$ //$NON-NLS-2$
+			"cache-control", "no-cache", //$NON-NLS-1$ //$NON-NLS-2$
+	};
+	private static final String[] THIRD_REQUEST = { ":method", "GET", //$NON-NLS-1$ //$NON-NLS-2$
+			":scheme", "https", //$NON-NLS-1$ //$NON-NLS-2$
+			":path", "/index.html", //$NON-NLS-1$ //$NON-NLS-2$
+			":authority", "www.example.com", //$NON-NLS-1$ //$NON-NLS-2$
+			"custom-key", "custom-value", //$NON-NLS-1$ //$NON-NLS-2$
+	};
+
+	private static final String[] FIRST_RESPONSE = { ":status", "302", //$NON-NLS-1$ //$NON-NLS-2$
+			"cache-control", "private", //$NON-NLS-1$ //$NON-NLS-2$
+			"date", "Mon, 21 Oct 2013 20:13:21 GMT", //$NON-NLS-1$ //$NON-NLS-2$
+			"location", "https://www.example.com", //$NON-NLS-1$ //$NON-NLS-2$
+	};
+	private static final String[] SECOND_RESPONSE = { ":status", "307", //$NON-NLS-1$ //$NON-NLS-2$
+			"cache-control", "private", //$NON-NLS-1$ //$NON-NLS-2$
+			"date", "Mon, 21 Oct 2013 20:13:21 GMT", //$NON-NLS-1$ //$NON-NLS-2$
+			"location", "https://www.example.com", //$NON-NLS-1$ //$NON-NLS-2$
+	};
+	private static final String[] THIRD_RESPONSE = { ":status", "200", //$NON-NLS-1$ //$NON-NLS-2$
+			"cache-control", "private", //$NON-NLS-1$ //$NON-NLS-2$
+			"date", "Mon, 21 Oct 2013 20:13:22 GMT", //$NON-NLS-1$ //$NON-NLS-2$
+			"location", "https://www.example.com", //$NON-NLS-1$ //$NON-NLS-2$
+			"content-encoding", "gzip", //$NON-NLS-1$ //$NON-NLS-2$
+			"set-cookie", "foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1", //$NON-NLS-1$ //$NON-NLS-2$
+	};
+
+	/**
+	 * Tests the literal header field with indexing (C.2.1), without indexing (C.2.2), never indexed (C.2.3) and the
+	 * indexed header field (C.2.4).
+	 *
+	 * @throws HTTP2Exception
+	 *             if a block cannot be decoded.
+	 */
+	@Test
+	public void testRepresentations() throws HTTP2Exception {
+		HPACKDecoder decoder = new HPACKDecoder(DEFAULT_TABLE_SIZE);
+		assertDecoded(decoder, "400a 6375 7374 6f6d 2d6b 6579 0d63 7573 746f 6d2d 6865 6164 6572", //$NON-NLS-1$
+				new String[] { "custom-key", "custom-header" }); //$NON-NLS-1$ //$NON-NLS-2$
+		// the field has been added to the dynamic table
+		assertDecoded(decoder, "be", //$NON-NLS-1$
+				new String[] { "custom-key", "custom-header" }); //$NON-NLS-1$ //$NON-NLS-2$
+
+		decoder = new HPACKDecoder(DEFAULT_TABLE_SIZE);
+		assertDecoded(decoder, "040c 2f73 616d 706c 652f 7061 7468", //$NON-NLS-1$
+				new String[] { ":path", "/sample/path" }); //$NON-NLS-1$ //$NON-NLS-2$
+		// the field has not been added to the dynamic table
+		assertMalformed(decoder, "be"); //$NON-NLS-1$
+
+		decoder = new HPACKDecoder(DEFAULT_TABLE_SIZE);
+		assertDecoded(decoder, "1008 7061 7373 776f 7264 0673 6563 7265 74", //$NON-NLS-1$
+				new String[] { "password", "secret" }); //$NON-NLS-1$ //$NON-NLS-2$
+		assertMalformed(decoder, "be"); //$NON-NLS-1$
+
+		decoder = new HPACKDecoder(DEFAULT_TABLE_SIZE);
+		assertDecoded(decoder, "82", new String[] { ":method", "GET" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	/**
+	 * Tests the requests without Huffman coding (C.3).
+	 *
+	 * @throws HTTP2Exception
+	 *             if a block cannot be decoded.
+	 */
+	@Test
+	public void testRequests() throws HTTP2Exception {
+		HPACKDecoder decoder = new HPACKDecoder(DEFAULT_TABLE_SIZE);
+		assertDecoded(decoder, "8286 8441 0f77 7777 2e65 7861 6d70 6c65 2e63 6f6d", FIRST_REQUEST); //$NON-NLS-1$
+		assertDecoded(decoder, "8286 84be 5808 6e6f 2d63 6163 6865", SECOND_REQUEST); //$NON-NLS-1$
+		assertDecoded(decoder, "8287 85bf 400a 6375 7374 6f6d 2d6b 6579 0c63 7573 746f 6d2d 7661 6c75 65", //$NON-NLS-1$
+				THIRD_REQUEST);
+		// the dynamic table holds the three added fields, the newest first
+		assertDecoded(decoder, "be bf c0", new String[] { //$NON-NLS-1$
+				"custom-key", "custom-value", //$NON-NLS-1$ //$NON-NLS-2$
+				"cache-control", "no-cache", //$NON-NLS-1$ //$NON-NLS-2$
+				":authority", "www.example.com", //$NON-NLS-1$ //$NON-NLS-2$
+		});
+		assertMalformed(decoder, "c1"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Tests the requests with Huffman coding (C.4).
+	 *
+	 * @throws HTTP2Exception
+	 *             if a block cannot be decoded.
+	 */
+	@Test
+	public void testHuffmanRequests() throws HTTP2Exception {
+		HPACKDecoder decoder = new HPACKDecoder(DEFAULT_TABLE_SIZE);
+		assertDecoded(decoder, "8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff", FIRST_REQUEST); //$NON-NLS-1$
+		assertDecoded(decoder, "8286 84be 5886 a8eb 1064 9cbf", SECOND_REQUEST); //$NON-NLS-1$
+		assertDecoded(decoder, "8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf", //$NON-NLS-1$
+				THIRD_REQUEST);
+	}
+
+	/**
+	 * Tests the responses without Huffman coding, with a dynamic table of 256 bytes (C.5).
+	 *
+	 * @throws HTTP2Exception
+	 *             if a block cannot be decoded.
+	 */
+	@Test
+	public void testResponses() throws HTTP2Exception {
+		HPACKDecoder decoder = new HPACKDecoder(SMALL_TABLE_SIZE);
+		assertDecoded(decoder, "4803 3330 3258 0770 7269 7661 7465 611d" //$NON-NLS-1$
+				+ "4d6f 6e2c 2032 3120 4f63 7420 3230 3133" //$NON-NLS-1$
+				+ "2032 303a 3133 3a32 3120 474d 546e 1768" //$NON-NLS-1$
+				+ "7474 7073 3a2f 2f77 7777 2e65 7861 6d70" //$NON-NLS-1$
+				+ "6c65 2e63 6f6d", FIRST_RESPONSE); //$NON-NLS-1$
+		// ":status: 307" evicts ":status: 302"
+		assertDecoded(decoder, "4803 3330 37c1 c0bf", SECOND_RESPONSE); //$NON-NLS-1$
+		assertDecoded(decoder, "88c1 611d 4d6f 6e2c 2032 3120 4f63 7420" //$NON-NLS-1$
+				+ "3230 3133 2032 303a 3133 3a32 3220 474d" //$NON-NLS-1$
+				+ "54c0 5a04 677a 6970 7738 666f 6f3d 4153" //$NON-NLS-1$
+				+ "444a 4b48 514b 425a 584f 5157 454f 5049" //$NON-NLS-1$
+				+ "5541 5851 5745 4f49 553b 206d 6178 2d61" //$NON-NLS-1$
+				+ "6765 3d33 3630 303b 2076 6572 7369 6f6e" //$NON-NLS-1$
+				+ "3d31", THIRD_RESPONSE); //$NON-NLS-1$
+		assertThirdResponseTable(decoder);
+	}
+
+	/**
+	 * Tests the responses with Huffman coding, with a dynamic table of 256 bytes (C.6).
+	 *
+	 * @throws HTTP2Exception
+	 *             if a block cannot be decoded.
+	 */
+	@Test
+	public void testHuffmanResponses() throws HTTP2Exception {
+		HPACKDecoder decoder = new HPACKDecoder(SMALL_TABLE_SIZE);
+		assertDecoded(decoder, "4882 6402 5885 aec3 771a 4b61 96d0 7abe" //$NON-NLS-1$
+				+ "9410 54d4 44a8 2005 9504 0b81 66e0 82a6" //$NON-NLS-1$
+				+ "2d1b ff6e 919d 29ad 1718 63c7 8f0b 97c8" //$NON-NLS-1$
+				+ "e9ae 82ae 43d3", FIRST_RESPONSE); //$NON-NLS-1$
+		assertDecoded(decoder, "4883 640e ffc1 c0bf", SECOND_RESPONSE); //$NON-NLS-1$
+		assertDecoded(decoder, "88c1 6196 d07a be94 1054 d444 a820 0595" //$NON-NLS-1$
+				+ "040b 8166 e084 a62d 1bff c05a 839b d9ab" //$NON-NLS-1$
+				+ "77ad 94e7 821d d7f2 e6c7 b335 dfdf cd5b" //$NON-NLS-1$
+				+ "3960 d5af 2708 7f36 72c1 ab27 0fb5 291f" //$NON-NLS-1$
+				+ "9587 3160 65c0 03ed 4ee5 b106 3d50 07", THIRD_RESPONSE); //$NON-NLS-1$
+		assertThirdResponseTable(decoder);
+	}
+
+	/**
+	 * Tests that a dynamic table size update evicts the entries, and that it is limited by the maximum size of the
+	 * table.
+	 *
+	 * @throws HTTP2Exception
+	 *             if a block cannot be decoded.
+	 */
+	@Test
+	public void testTableSizeUpdate() throws HTTP2Exception {
+		HPACKDecoder decoder = new HPACKDecoder(DEFAULT_TABLE_SIZE);
+		assertDecoded(decoder, "8286 8441 0f77 7777 2e65 7861 6d70 6c65 2e63 6f6d", FIRST_REQUEST); //$NON-NLS-1$
+		// a size update to the maximum size keeps the entries
+		assertDecoded(decoder, "3fe1 1fbe", //$NON-NLS-1$
+				new String[] { ":authority", "www.example.com" }); //$NON-NLS-1$ //$NON-NLS-2$
+		// a size update to 0 empties the table
+		assertMalformed(decoder, "20be"); //$NON-NLS-1$
+		// a field larger than the empty table is not added
+		assertDecoded(decoder, "2040 036b 6579 0576 616c 7565", //$NON-NLS-1$
+				new String[] { "key", "value" }); //$NON-NLS-1$ //$NON-NLS-2$
+		assertMalformed(decoder, "be"); //$NON-NLS-1$
+
+		// larger than the maximum size
+		assertMalformed(new HPACKDecoder(DEFAULT_TABLE_SIZE), "3fe2 1f"); //$NON-NLS-1$
+		// after a header field
+		assertMalformed(new HPACKDecoder(DEFAULT_TABLE_SIZE), "8220"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Tests the blocks that cannot be decoded.
+	 */
+	@Test
+	public void testMalformedBlocks() {
+		// index 0
+		assertMalformed(new HPACKDecoder(DEFAULT_TABLE_SIZE), "80"); //$NON-NLS-1$
+		// index beyond the static table, the dynamic table being empty
+		assertMalformed(new HPACKDecoder(DEFAULT_TABLE_SIZE), "be"); //$NON-NLS-1$
+		// truncated integer
+		assertMalformed(new HPACKDecoder(DEFAULT_TABLE_SIZE), "ff"); //$NON-NLS-1$
+		assertMalformed(new HPACKDecoder(DEFAULT_TABLE_SIZE), "ff80"); //$NON-NLS-1$
+		// integer larger than 28 bits
+		assertMalformed(new HPACKDecoder(DEFAULT_TABLE_SIZE), "ff80 8080 8080 01"); //$NON-NLS-1$
+		// missing name, value and truncated string
+		assertMalformed(new HPACKDecoder(DEFAULT_TABLE_SIZE), "40"); //$NON-NLS-1$
+		assertMalformed(new HPACKDecoder(DEFAULT_TABLE_SIZE), "4003 6b65 79"); //$NON-NLS-1$
+		assertMalformed(new HPACKDecoder(DEFAULT_TABLE_SIZE), "4005 7661 6c"); //$NON-NLS-1$
+		// Huffman-encoded value padded with zeros
+		assertMalformed(new HPACKDecoder(DEFAULT_TABLE_SIZE), "0481 18"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Tests that the blocks of a {@link HPACKEncoder} are decoded, with the fields of the static table and the
+	 * literals.
+	 *
+	 * @throws HTTP2Exception
+	 *             if a block cannot be decoded.
+	 */
+	@Test
+	public void testEncoder() throws HTTP2Exception {
+		String longValue = new String(new char[200]).replace('\0', 'v');
+		String[] fields = { ":status", "200", //$NON-NLS-1$ //$NON-NLS-2$
+				":status", "201", //$NON-NLS-1$ //$NON-NLS-2$
+				"content-type", "text/plain", //$NON-NLS-1$ //$NON-NLS-2$
+				"x-custom", longValue, //$NON-NLS-1$
+				"x-empty", "", //$NON-NLS-1$ //$NON-NLS-2$
+		};
+		HPACKEncoder encoder = new HPACKEncoder();
+		for (int i = 0; i < fields.length; i += 2) {
+			encoder.encode(fields[i], fields[i + 1]);
+		}
+		encoder.encode("Content-Length", "0"); //$NON-NLS-1$ //$NON-NLS-2$
+		FieldList decoded = new FieldList();
+		new HPACKDecoder(DEFAULT_TABLE_SIZE).decode(encoder.getBuffer(), 0, encoder.getLength(), decoded);
+
+		Assert.assertEquals(fields.length + 2, decoded.fields.size());
+		for (int i = 0; i < fields.length; i++) {
+			Assert.assertEquals(fields[i], decoded.fields.get(i));
+		}
+		Assert.assertEquals("content-length", decoded.fields.get(fields.length)); //$NON-NLS-1$
+		Assert.assertEquals("0", decoded.fields.get(fields.length + 1)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Checks the dynamic table after the third response: the oldest entries have been evicted, so that only
+	 * "set-cookie", "content-encoding" and "date" remain, in this order.
+	 */
+	private static void assertThirdResponseTable(HPACKDecoder decoder) throws HTTP2Exception {
+		assertDecoded(decoder, "be bf c0", new String[] { "set-cookie", //$NON-NLS-1$ //$NON-NLS-2$
+				"foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1", //$NON-NLS-1$
+				"content-encoding", "gzip", //$NON-NLS-1$ //$NON-NLS-2$
+				"date", "Mon, 21 Oct 2013 20:13:22 GMT", //$NON-NLS-1$ //$NON-NLS-2$
+		});
+		assertMalformed(decoder, "c1"); //$NON-NLS-1$
+	}
+
+	private static void assertDecoded(HPACKDecoder decoder, String hex, String[] expected) throws HTTP2Exception {
+		byte[] block = fromHex(hex);
+		FieldList decoded = new FieldList();
+		decoder.decode(block, 0, block.length, decoded);
+		Assert.assertEquals(hex, expected.length, decoded.fields.size());
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertEquals(hex, expected[i], decoded.fields.get(i));
+		}
+	}
+
+	private static void assertMalformed(HPACKDecoder decoder, String hex) {
+		byte[] block = fromHex(hex);
+		try {
+			decoder.decode(block, 0, block.length, new FieldList());
+			Assert.fail(hex);
+		} catch (HTTP2Exception e) {
+			Assert.assertEquals(hex, HTTP2Constants.ERROR_COMPRESSION, e.getErrorCode());
+		}
+	}
+
+	/**
+	 * Converts hexadecimal digits to bytes, ignoring the spaces.
+	 */
+	/* default */ static byte[] fromHex(String hex) {
+		String digits = hex.replace(" ", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		byte[] bytes = new byte[digits.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(digits.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+
+	/**
+	 * A listener keeping the names and the values of the decoded fields.
+	 */
+	private static class FieldList implements HeaderFieldListener {
+
+		private final List<String> fields = new ArrayList<>();
+
+		@Override
+		public void onHeaderField(String name, String value) {
+			this.fields.add(name);
+			this.fields.add(value);
+		}
+
+	}
+
+}
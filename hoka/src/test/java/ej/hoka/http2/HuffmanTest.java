@@ -0,0 +1,92 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http2;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the decoding of the Huffman code by {@link Huffman}, with the strings of RFC 7541 Appendix C and with the
+ * invalid paddings.
+ */
+public class HuffmanTest {
+
+	/**
+	 * Tests the strings of the examples of RFC 7541 Appendix C.
+	 *
+	 * @throws HTTP2Exception
+	 *             if a string cannot be decoded.
+	 */
+	@Test
+	public void testExamples() throws HTTP2Exception {
+		assertDecoded("", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		assertDecoded("f1e3 c2e5 f23a 6ba0 ab90 f4ff", "www.example.com"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertDecoded("a8eb 1064 9cbf", "no-cache"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertDecoded("25a8 49e9 5ba9 7d7f", "custom-key"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertDecoded("25a8 49e9 5bb8 e8b4 bf", "custom-value"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertDecoded("6402", "302"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertDecoded("aec3 771a 4b", "private"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertDecoded("d07a be94 1054 d444 a820 0595 040b 8166 e082 a62d 1bff", //$NON-NLS-1$
+				"Mon, 21 Oct 2013 20:13:21 GMT"); //$NON-NLS-1$
+		assertDecoded("9d29 ad17 1863 c78f 0b97 c8e9 ae82 ae43 d3", //$NON-NLS-1$
+				"https://www.example.com"); //$NON-NLS-1$
+		assertDecoded("9bd9 ab", "gzip"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertDecoded("94e7 821d d7f2 e6c7 b335 dfdf cd5b 3960 d5af 2708 7f36 72c1" //$NON-NLS-1$
+				+ "ab27 0fb5 291f 9587 3160 65c0 03ed 4ee5 b106 3d50 07", //$NON-NLS-1$
+				"foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Tests the symbols whose codes have the shortest and the longest lengths, whatever their position in the bytes.
+	 *
+	 * @throws HTTP2Exception
+	 *             if a string cannot be decoded.
+	 */
+	@Test
+	public void testCodeLengths() throws HTTP2Exception {
+		// '0' is 00000 (5 bits), '\0' is 1ff8 (13 bits), '\n' is 3ffffffc (30 bits)
+		assertDecoded("07", "0"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertDecoded("0001", "000"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertDecoded("ffff fff3", "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertDecoded("07ff ffff 9f", "0\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertDecoded("ffc7", "\0"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Tests the strings that cannot be decoded.
+	 */
+	@Test
+	public void testMalformed() {
+		// EOS
+		assertMalformed("ffff ffff"); //$NON-NLS-1$
+		// padding of 8 bits
+		assertMalformed("ff"); //$NON-NLS-1$
+		assertMalformed("f1e3 c2e5 f23a 6ba0 ab90 f4ff ff"); //$NON-NLS-1$
+		// padding not made of the most significant bits of EOS
+		assertMalformed("00"); //$NON-NLS-1$
+		assertMalformed("f1e3 c2e5 f23a 6ba0 ab90 f4fe"); //$NON-NLS-1$
+	}
+
+	private static void assertDecoded(String hex, String expected) throws HTTP2Exception {
+		byte[] data = HPACKDecoderTest.fromHex(hex);
+		StringBuilder builder = new StringBuilder();
+		Huffman.decode(data, 0, data.length, builder);
+		Assert.assertEquals(hex, expected, builder.toString());
+	}
+
+	private static void assertMalformed(String hex) {
+		byte[] data = HPACKDecoderTest.fromHex(hex);
+		try {
+			Huffman.decode(data, 0, data.length, new StringBuilder());
+			Assert.fail(hex);
+		} catch (HTTP2Exception e) {
+			Assert.assertEquals(hex, HTTP2Constants.ERROR_COMPRESSION, e.getErrorCode());
+		}
+	}
+
+}
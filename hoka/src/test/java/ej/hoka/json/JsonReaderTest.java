@@ -0,0 +1,440 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the tokens, the values and the errors of a {@link JsonReader}, whatever the size of its buffer.
+ */
+public class JsonReaderTest {
+
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+	private static final int BUFFER_SIZE = 512;
+	private static final int MAX_DEPTH = 32;
+	private static final int MAX_VALUE_LENGTH = 4096;
+
+	private static final String DOCUMENT = "{\"name\": \"caf\u00e9 \ud83d\ude00\", \"count\": 42, " //$NON-NLS-1$
+			+ "\"ratio\": -1.5e3,\n" //$NON-NLS-1$
+			+ "\t\"tags\": [\"a\", [], {}, true, false, null], \"nested\": {\"empty\": \"\"}}"; //$NON-NLS-1$
+
+	/**
+	 * Tests the tokens and the values of a document.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testTokens() throws IOException {
+		JsonReader reader = reader(DOCUMENT, BUFFER_SIZE);
+		Assert.assertEquals(JsonReader.BEGIN_OBJECT, reader.next());
+		Assert.assertEquals(1, reader.getDepth());
+		assertName(reader, "name"); //$NON-NLS-1$
+		assertString(reader, "caf\u00e9 \ud83d\ude00"); //$NON-NLS-1$
+		assertName(reader, "count"); //$NON-NLS-1$
+		Assert.assertEquals(JsonReader.NUMBER, reader.next());
+		Assert.assertEquals(42, reader.getInt());
+		assertName(reader, "ratio"); //$NON-NLS-1$
+		Assert.assertEquals(JsonReader.NUMBER, reader.next());
+		Assert.assertEquals(-1500.0, reader.getDouble(), 0);
+		assertName(reader, "tags"); //$NON-NLS-1$
+		Assert.assertEquals(JsonReader.BEGIN_ARRAY, reader.next());
+		Assert.assertEquals(2, reader.getDepth());
+		assertString(reader, "a"); //$NON-NLS-1$
+		Assert.assertEquals(JsonReader.BEGIN_ARRAY, reader.next());
+		Assert.assertEquals(JsonReader.END_ARRAY, reader.next());
+		Assert.assertEquals(JsonReader.BEGIN_OBJECT, reader.next());
+		Assert.assertEquals(JsonReader.END_OBJECT, reader.next());
+		Assert.assertEquals(JsonReader.TRUE, reader.next());
+		Assert.assertEquals(JsonReader.FALSE, reader.next());
+		Assert.assertEquals(JsonReader.NULL, reader.next());
+		Assert.assertEquals(JsonReader.END_ARRAY, reader.next());
+		assertName(reader, "nested"); //$NON-NLS-1$
+		Assert.assertEquals(JsonReader.BEGIN_OBJECT, reader.next());
+		assertName(reader, "empty"); //$NON-NLS-1$
+		assertString(reader, ""); //$NON-NLS-1$
+		Assert.assertEquals(JsonReader.END_OBJECT, reader.next());
+		Assert.assertEquals(JsonReader.END_OBJECT, reader.next());
+		Assert.assertEquals(0, reader.getDepth());
+		Assert.assertEquals(JsonReader.END_DOCUMENT, reader.next());
+		Assert.assertEquals(JsonReader.END_DOCUMENT, reader.getToken());
+	}
+
+	/**
+	 * Tests that the tokens and the values do not depend on the size of the buffer, so that the strings, the numbers,
+	 * the literals and the multi-byte characters straddle two reads at every position.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testBufferSizes() throws IOException {
+		String expected = dump(reader(DOCUMENT, BUFFER_SIZE));
+		for (int bufferSize = 1; bufferSize < 16; bufferSize++) {
+			Assert.assertEquals("buffer " + bufferSize, expected, dump(reader(DOCUMENT, bufferSize))); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Tests the top-level values other than objects.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testTopLevelValues() throws IOException {
+		JsonReader reader = reader(" 12 ", BUFFER_SIZE); //$NON-NLS-1$
+		Assert.assertEquals(JsonReader.NUMBER, reader.next());
+		Assert.assertEquals(12, reader.getInt());
+		Assert.assertEquals(JsonReader.END_DOCUMENT, reader.next());
+
+		reader = reader("\"s\"", BUFFER_SIZE); //$NON-NLS-1$
+		assertString(reader, "s"); //$NON-NLS-1$
+		Assert.assertEquals(JsonReader.END_DOCUMENT, reader.next());
+
+		reader = reader("null", 1); //$NON-NLS-1$
+		Assert.assertEquals(JsonReader.NULL, reader.next());
+		Assert.assertEquals(JsonReader.END_DOCUMENT, reader.next());
+	}
+
+	/**
+	 * Tests the conversion of the numbers, including the limits of the <code>int</code> and <code>long</code> types.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testNumbers() throws IOException {
+		Assert.assertEquals(0, readNumber("0").getInt()); //$NON-NLS-1$
+		Assert.assertEquals(0, readNumber("-0").getInt()); //$NON-NLS-1$
+		Assert.assertEquals(Integer.MAX_VALUE, readNumber("2147483647").getInt()); //$NON-NLS-1$
+		Assert.assertEquals(Integer.MIN_VALUE, readNumber("-2147483648").getInt()); //$NON-NLS-1$
+		Assert.assertEquals(Long.MAX_VALUE, readNumber("9223372036854775807").getLong()); //$NON-NLS-1$
+		Assert.assertEquals(Long.MIN_VALUE, readNumber("-9223372036854775808").getLong()); //$NON-NLS-1$
+		Assert.assertEquals(0.25, readNumber("25E-2").getDouble(), 0); //$NON-NLS-1$
+		Assert.assertEquals(1e10, readNumber("1e+10").getDouble(), 0); //$NON-NLS-1$
+		Assert.assertEquals("-0.50", readNumber("-0.50").getString()); //$NON-NLS-1$ //$NON-NLS-2$
+
+		String[] notInts = {
+				"2147483648", //$NON-NLS-1$
+				"-2147483649", //$NON-NLS-1$
+				"1.5", //$NON-NLS-1$
+				"1e2" //$NON-NLS-1$
+		};
+		for (String number : notInts) {
+			try {
+				readNumber(number).getInt();
+				Assert.fail(number);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+		String[] notLongs = {
+				"9223372036854775808", //$NON-NLS-1$
+				"-9223372036854775809", //$NON-NLS-1$
+				"99999999999999999999" //$NON-NLS-1$
+		};
+		for (String number : notLongs) {
+			try {
+				readNumber(number).getLong();
+				Assert.fail(number);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Tests that the malformed numbers are rejected.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testMalformedNumbers() throws IOException {
+		String[] numbers = {
+				"-", //$NON-NLS-1$
+				"01", //$NON-NLS-1$
+				"-01", //$NON-NLS-1$
+				"1.", //$NON-NLS-1$
+				"1.e3", //$NON-NLS-1$
+				".5", //$NON-NLS-1$
+				"1e", //$NON-NLS-1$
+				"1e+", //$NON-NLS-1$
+				"1.2.3", //$NON-NLS-1$
+				"+1", //$NON-NLS-1$
+				"1-2", //$NON-NLS-1$
+				"0x10" //$NON-NLS-1$
+		};
+		for (String number : numbers) {
+			assertMalformed('[' + number + ']');
+		}
+	}
+
+	/**
+	 * Tests the escape sequences of the strings.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testEscapes() throws IOException {
+		JsonReader reader = reader("\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u00e9\\u00E9\\ud83d\\ude00\"", 3); //$NON-NLS-1$
+		assertString(reader, "\"\\/\b\f\n\r\t\u00e9\u00e9\ud83d\ude00"); //$NON-NLS-1$
+
+		String[] strings = {
+				"\"\\x\"", //$NON-NLS-1$
+				"\"\\u12\"", //$NON-NLS-1$
+				"\"\\u12g4\"", //$NON-NLS-1$
+				"\"a\nb\"", //$NON-NLS-1$
+				"\"\t\"", //$NON-NLS-1$
+				"\"unterminated" //$NON-NLS-1$
+		};
+		for (String string : strings) {
+			assertMalformed(string);
+		}
+	}
+
+	/**
+	 * Tests the decoding of UTF-8 and the rejection of the invalid sequences: overlong encodings, surrogates, code
+	 * points out of the Unicode range, and truncated or unexpected continuation bytes.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testUtf8() throws IOException {
+		String decoded = "\u00e9\u20ac\ud800\udc00\udbff\udfff"; //$NON-NLS-1$
+		assertString(reader('"' + decoded + '"', 1), decoded);
+
+		byte[][] invalid = { { (byte) 0xC0, (byte) 0x80 }, // overlong NUL
+				{ (byte) 0xE0, (byte) 0x80, (byte) 0xAF }, // overlong '/'
+				{ (byte) 0xED, (byte) 0xA0, (byte) 0x80 }, // high surrogate
+				{ (byte) 0xED, (byte) 0xBF, (byte) 0xBF }, // low surrogate
+				{ (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80 }, // beyond U+10FFFF
+				{ (byte) 0xF8, (byte) 0x88, (byte) 0x80, (byte) 0x80, (byte) 0x80 }, // five bytes
+				{ (byte) 0x80 }, // continuation byte first
+				{ (byte) 0xC3, 'a' }, // missing continuation byte
+				{ (byte) 0xE2, (byte) 0x82 }, // truncated at the end of the string
+		};
+		for (byte[] bytes : invalid) {
+			byte[] document = new byte[bytes.length + 2];
+			document[0] = '"';
+			System.arraycopy(bytes, 0, document, 1, bytes.length);
+			document[document.length - 1] = '"';
+			try {
+				JsonReader reader = new JsonReader(new ByteArrayInputStream(document), 2, MAX_DEPTH);
+				reader.next();
+				Assert.fail(toHex(bytes));
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Tests that the malformed documents are rejected.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testMalformedDocuments() throws IOException {
+		String[] documents = { "", //$NON-NLS-1$
+				"[1,]", //$NON-NLS-1$
+				"[,1]", //$NON-NLS-1$
+				"[1 2]", //$NON-NLS-1$
+				"{\"a\" 1}", //$NON-NLS-1$
+				"{\"a\":1,}", //$NON-NLS-1$
+				"{a:1}", //$NON-NLS-1$
+				"{\"a\":1", //$NON-NLS-1$
+				"[1}", //$NON-NLS-1$
+				"{\"a\":1]", //$NON-NLS-1$
+				"[tru]", //$NON-NLS-1$
+				"[nul]", //$NON-NLS-1$
+				"[True]", //$NON-NLS-1$
+				"1 2", //$NON-NLS-1$
+				"{} {}", //$NON-NLS-1$
+				"[] x", //$NON-NLS-1$
+		};
+		for (String document : documents) {
+			assertMalformed(document);
+		}
+	}
+
+	/**
+	 * Tests that the names, strings and numbers are limited to the maximum value length.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testMaxValueLength() throws IOException {
+		int maxValueLength = 8;
+		String[] accepted = {
+				"\"12345678\"", //$NON-NLS-1$
+				"12345678", //$NON-NLS-1$
+				"\"\\u00e92345678\"", //$NON-NLS-1$
+				"\"\ud83d\ude00345678\"" //$NON-NLS-1$
+		};
+		for (String document : accepted) {
+			JsonReader reader = new JsonReader(stream(document), 2, MAX_DEPTH, maxValueLength);
+			reader.next();
+			Assert.assertEquals(document, maxValueLength, reader.getString().length());
+		}
+		String[] rejected = {
+				"\"123456789\"", //$NON-NLS-1$
+				"123456789", //$NON-NLS-1$
+				"-12345678", //$NON-NLS-1$
+				"1.2345678", //$NON-NLS-1$
+				"{\"123456789\":1}", //$NON-NLS-1$
+				"\"1234567\ud83d\ude00\"" //$NON-NLS-1$
+		};
+		for (String document : rejected) {
+			JsonReader reader = new JsonReader(stream(document), 2, MAX_DEPTH, maxValueLength);
+			try {
+				dump(reader);
+				Assert.fail(document);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Tests that the nesting of arrays and objects is limited to the maximum depth.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testMaxDepth() throws IOException {
+		int maxDepth = 4;
+		String document = "[{\"a\":[[]]}]"; //$NON-NLS-1$
+		dump(new JsonReader(stream(document), BUFFER_SIZE, maxDepth));
+		try {
+			dump(new JsonReader(stream("[{\"a\":[[[]]]}]"), BUFFER_SIZE, maxDepth)); //$NON-NLS-1$
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests the skipping of values, members, and the rest of objects and arrays.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testSkipValue() throws IOException {
+		String document = "{\"skipped\": {\"a\": [1, {\"b\": []}]}, \"rest\": [1, 2], \"kept\": 3}"; //$NON-NLS-1$
+		JsonReader reader = reader(document, 4);
+		Assert.assertEquals(JsonReader.BEGIN_OBJECT, reader.next());
+		assertName(reader, "skipped"); //$NON-NLS-1$
+		reader.skipValue();
+		assertName(reader, "rest"); //$NON-NLS-1$
+		Assert.assertEquals(JsonReader.BEGIN_ARRAY, reader.next());
+		// the rest of the array
+		reader.skipValue();
+		assertName(reader, "kept"); //$NON-NLS-1$
+		Assert.assertEquals(JsonReader.NUMBER, reader.next());
+		Assert.assertEquals(3, reader.getInt());
+		Assert.assertEquals(JsonReader.END_OBJECT, reader.next());
+		Assert.assertEquals(JsonReader.END_DOCUMENT, reader.next());
+
+		reader = reader("[]", BUFFER_SIZE); //$NON-NLS-1$
+		Assert.assertEquals(JsonReader.BEGIN_ARRAY, reader.next());
+		Assert.assertEquals(JsonReader.END_ARRAY, reader.next());
+		try {
+			reader.skipValue();
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests the comparison of a value without creating a string.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	@Test
+	public void testValueEquals() throws IOException {
+		JsonReader reader = reader("\"caf\\u00e9\"", BUFFER_SIZE); //$NON-NLS-1$
+		reader.next();
+		Assert.assertTrue(reader.valueEquals("caf\u00e9")); //$NON-NLS-1$
+		Assert.assertFalse(reader.valueEquals("cafe")); //$NON-NLS-1$
+		Assert.assertFalse(reader.valueEquals("caf")); //$NON-NLS-1$
+	}
+
+	private static JsonReader reader(String document, int bufferSize) throws UnsupportedEncodingException {
+		return new JsonReader(stream(document), bufferSize, MAX_DEPTH, MAX_VALUE_LENGTH);
+	}
+
+	private static ByteArrayInputStream stream(String document) throws UnsupportedEncodingException {
+		return new ByteArrayInputStream(document.getBytes(ENCODING));
+	}
+
+	private static JsonReader readNumber(String number) throws IOException {
+		JsonReader reader = reader(number, BUFFER_SIZE);
+		Assert.assertEquals(number, JsonReader.NUMBER, reader.next());
+		Assert.assertEquals(number, JsonReader.END_DOCUMENT, reader.next());
+		return reader;
+	}
+
+	private static void assertName(JsonReader reader, String name) throws IOException {
+		Assert.assertEquals(JsonReader.NAME, reader.next());
+		Assert.assertEquals(name, reader.getString());
+	}
+
+	private static void assertString(JsonReader reader, String string) throws IOException {
+		Assert.assertEquals(JsonReader.STRING, reader.next());
+		Assert.assertEquals(string, reader.getString());
+	}
+
+	private static void assertMalformed(String document) throws IOException {
+		try {
+			dump(reader(document, 2));
+			Assert.fail(document);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Reads a whole document and describes its tokens and values.
+	 */
+	private static String dump(JsonReader reader) throws IOException {
+		StringBuilder dump = new StringBuilder();
+		int token;
+		while ((token = reader.next()) != JsonReader.END_DOCUMENT) {
+			dump.append(token);
+			if (token == JsonReader.NAME || token == JsonReader.STRING || token == JsonReader.NUMBER) {
+				dump.append('=').append(reader.getString());
+			}
+			dump.append(' ');
+		}
+		return dump.toString();
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(Integer.toHexString(b & 0xFF)).append(' ');
+		}
+		return hex.toString();
+	}
+
+}
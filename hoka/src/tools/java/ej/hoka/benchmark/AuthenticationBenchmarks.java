@@ -0,0 +1,91 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.benchmark;
+
+import java.util.List;
+import java.util.Random;
+
+import ej.bon.Timer;
+import ej.hoka.auth.CoarseClock;
+import ej.hoka.auth.InMemorySessionDataAccess;
+import ej.hoka.auth.SessionAuthenticator;
+
+/**
+ * The benchmarks of the authentication of the sessions, by one thread then by several threads at once.
+ */
+public final class AuthenticationBenchmarks {
+
+	private static final int SESSION_COUNT = 1000;
+	private static final long SESSION_LIFETIME = 3600; // 1h
+	private static final int CONTENDED_THREAD_COUNT = 4;
+	/**
+	 * A prime number, so that the threads look up the sessions in different orders.
+	 */
+	private static final int STRIDE = 7919;
+
+	private AuthenticationBenchmarks() {
+		// Forbid instantiation.
+	}
+
+	/**
+	 * Adds the benchmarks of this class to a list.
+	 *
+	 * @param benchmarks
+	 *            the list to add the benchmarks to.
+	 */
+	public static void addTo(List<Benchmark> benchmarks) {
+		benchmarks.add(new AuthenticateBenchmark("auth.session.authenticate", 1)); //$NON-NLS-1$
+		benchmarks.add(new AuthenticateBenchmark("auth.session.authenticate.contended", //$NON-NLS-1$
+				CONTENDED_THREAD_COUNT));
+	}
+
+	/**
+	 * Authenticates the active sessions of an in-memory database, with the coarse clock started like on a server.
+	 */
+	private static class AuthenticateBenchmark extends Benchmark {
+
+		private Timer timer;
+		private CoarseClock clock;
+		private SessionAuthenticator authenticator;
+		private String[] sessionIDs;
+
+		/* default */ AuthenticateBenchmark(String name, int threadCount) {
+			super(name, threadCount);
+		}
+
+		@Override
+		public void setUp() {
+			this.timer = new Timer();
+			this.clock = new CoarseClock();
+			this.clock.start(this.timer);
+			SessionAuthenticator authenticator = new SessionAuthenticator(new Random(), SESSION_LIFETIME,
+					new InMemorySessionDataAccess(getThreadCount()), this.clock);
+			String[] sessionIDs = new String[SESSION_COUNT];
+			for (int i = 0; i < SESSION_COUNT; i++) {
+				sessionIDs[i] = authenticator.login("user" + i); //$NON-NLS-1$
+			}
+			this.authenticator = authenticator;
+			this.sessionIDs = sessionIDs;
+		}
+
+		@Override
+		public long run(int thread, long operation) {
+			String[] sessionIDs = this.sessionIDs;
+			int index = (int) ((operation * STRIDE + thread * (SESSION_COUNT / getThreadCount())) % SESSION_COUNT);
+			return this.authenticator.authenticate(sessionIDs[index]).length();
+		}
+
+		@Override
+		public void tearDown() {
+			this.clock.stop();
+			this.timer.cancel();
+		}
+
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.benchmark;
+
+import java.io.IOException;
+
+/**
+ * An operation measured by the {@link BenchmarkRunner}.
+ * <p>
+ * The operation is run in a loop by one or several threads for a fixed time. It has to return a value depending on
+ * its result, so that its computation cannot be eliminated. The objects used by the operation are created by
+ * {@link #setUp()}, so that their creation is not measured.
+ */
+public abstract class Benchmark {
+
+	private final String name;
+	private final int threadCount;
+
+	/**
+	 * Creates a benchmark run by a single thread.
+	 *
+	 * @param name
+	 *            the name of the benchmark, for example <code>request.parse</code>.
+	 */
+	protected Benchmark(String name) {
+		this(name, 1);
+	}
+
+	/**
+	 * Creates a benchmark run concurrently by several threads.
+	 *
+	 * @param name
+	 *            the name of the benchmark, for example <code>request.parse</code>.
+	 * @param threadCount
+	 *            the number of threads running the operation.
+	 */
+	protected Benchmark(String name, int threadCount) {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.name = name;
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Gets the name of this benchmark.
+	 *
+	 * @return the name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Gets the number of threads running the operation.
+	 *
+	 * @return the number of threads.
+	 */
+	public int getThreadCount() {
+		return this.threadCount;
+	}
+
+	/**
+	 * Creates the objects used by the operation, before it is run.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	public void setUp() throws IOException {
+		// nothing to create by default
+	}
+
+	/**
+	 * Runs the operation once.
+	 * <p>
+	 * When several threads run the operation, it is called concurrently: the state changed by the operation has to be
+	 * indexed by the thread.
+	 *
+	 * @param thread
+	 *            the index of the calling thread, from <code>0</code> to {@link #getThreadCount()} excluded.
+	 * @param operation
+	 *            the number of operations already run by the calling thread.
+	 * @return a value depending on the result of the operation.
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	public abstract long run(int thread, long operation) throws IOException;
+
+	/**
+	 * Releases the objects used by the operation, once it has been measured.
+	 *
+	 * @throws IOException
+	 *             if an error occurs.
+	 */
+	public void tearDown() throws IOException {
+		// nothing to release by default
+	}
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import ej.bon.Util;
+import ej.hoka.http.HTTPBenchmarks;
+
+/**
+ * Runs the micro-benchmarks of the hot paths of the server and prints their results, one line per benchmark.
+ * <p>
+ * Each benchmark is run for a warm-up time, so that the code is compiled, then for several iterations of a fixed time.
+ * The number of operations of each iteration gives the throughput of the benchmark, and the time per operation of a
+ * thread. The results are printed as tab-separated values, with a header line starting with <code>#</code>, so that
+ * the results of two builds can be compared by a script:
+ *
+ * <pre>
+ * # benchmark	threads	iterations	operations	ns/op	ops/s	min ops/s	max ops/s
+ * request.parse	1	5	7001245	714.2	1400249.0	1391020.3	1409115.8
+ * </pre>
+ *
+ * The arguments are:
+ * <ul>
+ * <li><code>-warmup &lt;ms&gt;</code>: the warm-up time of each benchmark, 2 seconds by default,</li>
+ * <li><code>-time &lt;ms&gt;</code>: the time of each iteration, 1 second by default,</li>
+ * <li><code>-iterations &lt;n&gt;</code>: the number of measured iterations, 5 by default,</li>
+ * <li>the prefixes of the names of the benchmarks to run, all of them by default.</li>
+ * </ul>
+ * The process exits with the status <code>1</code> if a benchmark fails.
+ */
+public final class BenchmarkRunner {
+
+	private static final int DEFAULT_WARMUP_TIME = 2000;
+	private static final int DEFAULT_ITERATION_TIME = 1000;
+	private static final int DEFAULT_ITERATIONS = 5;
+	private static final double NANOSECONDS_PER_SECOND = 1e9;
+	private static final long NANOSECONDS_PER_MILLISECOND = 1000000;
+	private static final String SEPARATOR = "\t"; //$NON-NLS-1$
+	private static final String HEADER = "# benchmark\tthreads\titerations\toperations" //$NON-NLS-1$
+			+ "\tns/op\tops/s\tmin ops/s\tmax ops/s"; //$NON-NLS-1$
+
+	/**
+	 * Written with the results of the operations, so that they cannot be eliminated.
+	 */
+	private static volatile long sink;
+
+	private final int warmupTime;
+	private final int iterationTime;
+	private final int iterations;
+	private final PrintStream out;
+
+	/**
+	 * Creates a runner.
+	 *
+	 * @param warmupTime
+	 *            the warm-up time of each benchmark, in milliseconds.
+	 * @param iterationTime
+	 *            the time of each iteration, in milliseconds.
+	 * @param iterations
+	 *            the number of measured iterations.
+	 * @param out
+	 *            the stream to print the results to.
+	 */
+	public BenchmarkRunner(int warmupTime, int iterationTime, int iterations, PrintStream out) {
+		if (warmupTime < 0 || iterationTime <= 0 || iterations <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.warmupTime = warmupTime;
+		this.iterationTime = iterationTime;
+		this.iterations = iterations;
+		this.out = out;
+	}
+
+	/**
+	 * Runs the benchmarks selected by the arguments.
+	 *
+	 * @param args
+	 *            the arguments, see {@link BenchmarkRunner}.
+	 */
+	public static void main(String[] args) {
+		int warmupTime = DEFAULT_WARMUP_TIME;
+		int iterationTime = DEFAULT_ITERATION_TIME;
+		int iterations = DEFAULT_ITERATIONS;
+		List<String> prefixes = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-warmup")) { //$NON-NLS-1$
+				warmupTime = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-time")) { //$NON-NLS-1$
+				iterationTime = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-iterations")) { //$NON-NLS-1$
+				iterations = Integer.parseInt(args[++i]);
+			} else {
+				prefixes.add(arg);
+			}
+		}
+
+		List<Benchmark> benchmarks = new ArrayList<>();
+		for (Benchmark benchmark : getBenchmarks()) {
+			if (isSelected(benchmark.getName(), prefixes)) {
+				benchmarks.add(benchmark);
+			}
+		}
+
+		BenchmarkRunner runner = new BenchmarkRunner(warmupTime, iterationTime, iterations, System.out);
+		if (!runner.run(benchmarks)) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Gets all the benchmarks.
+	 *
+	 * @return the benchmarks.
+	 */
+	public static List<Benchmark> getBenchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<>();
+		HTTPBenchmarks.addTo(benchmarks);
+		BodyBenchmarks.addTo(benchmarks);
+		AuthenticationBenchmarks.addTo(benchmarks);
+		return benchmarks;
+	}
+
+	/**
+	 * Runs benchmarks and prints their results.
+	 *
+	 * @param benchmarks
+	 *            the benchmarks to run.
+	 * @return <code>true</code> if all the benchmarks have been run, <code>false</code> if one of them failed.
+	 */
+	public boolean run(List<Benchmark> benchmarks) {
+		PrintStream out = this.out;
+		out.println(HEADER);
+		boolean success = true;
+		for (Benchmark benchmark : benchmarks) {
+			try {
+				run(benchmark);
+			} catch (IOException | RuntimeException e) {
+				System.err.println(benchmark.getName() + " failed"); //$NON-NLS-1$
+				e.printStackTrace();
+				success = false;
+			}
+		}
+		return success;
+	}
+
+	private void run(Benchmark benchmark) throws IOException {
+		benchmark.setUp();
+		try {
+			if (this.warmupTime > 0) {
+				measure(benchmark, this.warmupTime);
+			}
+			long totalOperations = 0;
+			long totalTime = 0;
+			double minThroughput = Double.MAX_VALUE;
+			double maxThroughput = 0;
+			for (int i = 0; i < this.iterations; i++) {
+				long[] result = measure(benchmark, this.iterationTime);
+				long operations = result[0];
+				long time = result[1];
+				double throughput = operations * NANOSECONDS_PER_SECOND / time;
+				minThroughput = Math.min(minThroughput, throughput);
+				maxThroughput = Math.max(maxThroughput, throughput);
+				totalOperations += operations;
+				totalTime += time;
+			}
+			int threadCount = benchmark.getThreadCount();
+			double timePerOperation = totalOperations == 0 ? 0
+					: (double) totalTime * threadCount / totalOperations;
+			double throughput = totalOperations * NANOSECONDS_PER_SECOND / totalTime;
+			this.out.println(benchmark.getName() + SEPARATOR + threadCount + SEPARATOR + this.iterations + SEPARATOR
+					+ totalOperations + SEPARATOR + format(timePerOperation) + SEPARATOR + format(throughput)
+					+ SEPARATOR + format(minThroughput) + SEPARATOR + format(maxThroughput));
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/**
+	 * Runs the operation of a benchmark with all its threads for a given time.
+	 *
+	 * @return the number of operations and the elapsed time in nanoseconds.
+	 */
+	private static long[] measure(Benchmark benchmark, int time) throws IOException {
+		int threadCount = benchmark.getThreadCount();
+		Worker[] workers = new Worker[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			workers[i] = new Worker(benchmark, i);
+		}
+		long startTime = Util.platformTimeNanos();
+		for (Worker worker : workers) {
+			worker.start();
+		}
+		sleep(time);
+		for (Worker worker : workers) {
+			worker.stopped = true;
+		}
+		long operations = 0;
+		long result = 0;
+		for (Worker worker : workers) {
+			join(worker);
+			Exception error = worker.error;
+			if (error instanceof IOException) {
+				throw (IOException) error;
+			} else if (error != null) {
+				throw (RuntimeException) error;
+			}
+			operations += worker.operations;
+			result += worker.result;
+		}
+		long elapsed = Util.platformTimeNanos() - startTime;
+		sink += result;
+		return new long[] { operations, Math.max(elapsed, NANOSECONDS_PER_MILLISECOND) };
+	}
+
+	private static boolean isSelected(String name, List<String> prefixes) {
+		if (prefixes.isEmpty()) {
+			return true;
+		}
+		for (String prefix : prefixes) {
+			if (name.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String format(double value) {
+		// one decimal, without depending on the locale
+		long tenths = Math.round(value * 10);
+		return tenths / 10 + "." + tenths % 10; //$NON-NLS-1$
+	}
+
+	private static void sleep(int time) {
+		try {
+			Thread.sleep(time);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void join(Thread thread) {
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * A thread running the operation of a benchmark until it is stopped.
+	 */
+	private static class Worker extends Thread {
+
+		private final Benchmark benchmark;
+		private final int index;
+		/* default */ volatile boolean stopped;
+		/* default */ long operations;
+		/* default */ long result;
+		/* default */ Exception error;
+
+		/* default */ Worker(Benchmark benchmark, int index) {
+			this.benchmark = benchmark;
+			this.index = index;
+		}
+
+		@Override
+		public void run() {
+			Benchmark benchmark = this.benchmark;
+			int index = this.index;
+			long operations = 0;
+			long result = 0;
+			try {
+				while (!this.stopped) {
+					result += benchmark.run(index, operations);
+					operations++;
+				}
+			} catch (IOException | RuntimeException e) {
+				this.error = e;
+			}
+			this.operations = operations;
+			this.result = result;
+		}
+
+	}
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import ej.hoka.http.body.HTTPPart;
+import ej.hoka.http.body.MultiPartBodyParser;
+import ej.hoka.http.body.MultiPartBodyParser.MultiPartBody;
+import ej.hoka.io.ChunkedMessageBodyInputStream;
+import ej.hoka.io.ChunkedMessageBodyOutputStream;
+
+/**
+ * The benchmarks of the chunked transfer coding and of the parsing of a large multipart body.
+ */
+public final class BodyBenchmarks {
+
+	private static final int BUFFER_SIZE = 4096;
+	private static final int WRITE_SIZE = 1024;
+	private static final int CHUNKED_BODY_SIZE = 65536;
+	private static final int FILE_COUNT = 4;
+	private static final int FILE_SIZE = 262144;
+	private static final String BOUNDARY = "----hokaBenchmarkBoundary7MA4YWxkTrZu0gW"; //$NON-NLS-1$
+
+	private BodyBenchmarks() {
+		// Forbid instantiation.
+	}
+
+	/**
+	 * Adds the benchmarks of this class to a list.
+	 *
+	 * @param benchmarks
+	 *            the list to add the benchmarks to.
+	 */
+	public static void addTo(List<Benchmark> benchmarks) {
+		benchmarks.add(new ChunkedWriteBenchmark());
+		benchmarks.add(new ChunkedReadBenchmark());
+		benchmarks.add(new MultiPartBenchmark());
+	}
+
+	/**
+	 * Creates a body whose bytes are not all equal, so that the searches in the body do not take shortcuts.
+	 */
+	private static byte[] createBody(int size) {
+		byte[] body = new byte[size];
+		for (int i = 0; i < size; i++) {
+			body[i] = (byte) ('a' + i % 26);
+		}
+		return body;
+	}
+
+	/**
+	 * Writes a body through a chunked output stream, by blocks of 1 kB.
+	 */
+	private static class ChunkedWriteBenchmark extends Benchmark {
+
+		private byte[] body;
+		private DiscardOutputStream output;
+
+		/* default */ ChunkedWriteBenchmark() {
+			super("chunked.write"); //$NON-NLS-1$
+		}
+
+		@Override
+		public void setUp() {
+			this.body = createBody(CHUNKED_BODY_SIZE);
+			this.output = new DiscardOutputStream();
+		}
+
+		@Override
+		public long run(int thread, long operation) throws IOException {
+			DiscardOutputStream output = this.output;
+			output.reset();
+			byte[] body = this.body;
+			try (ChunkedMessageBodyOutputStream chunked = new ChunkedMessageBodyOutputStream(output)) {
+				for (int offset = 0; offset < body.length; offset += WRITE_SIZE) {
+					chunked.write(body, offset, WRITE_SIZE);
+				}
+			}
+			return output.getCount();
+		}
+
+	}
+
+	/**
+	 * Reads a chunked body, by blocks of the size of the buffer of the server.
+	 */
+	private static class ChunkedReadBenchmark extends Benchmark {
+
+		private ByteArrayInputStream input;
+		private byte[] buffer;
+
+		/* default */ ChunkedReadBenchmark() {
+			super("chunked.read"); //$NON-NLS-1$
+		}
+
+		@Override
+		public void setUp() throws IOException {
+			byte[] body = createBody(CHUNKED_BODY_SIZE);
+			ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+			try (ChunkedMessageBodyOutputStream chunked = new ChunkedMessageBodyOutputStream(encoded)) {
+				for (int offset = 0; offset < body.length; offset += WRITE_SIZE) {
+					chunked.write(body, offset, WRITE_SIZE);
+				}
+			}
+			this.input = new ByteArrayInputStream(encoded.toByteArray());
+			this.buffer = new byte[BUFFER_SIZE];
+		}
+
+		@Override
+		public long run(int thread, long operation) throws IOException {
+			ByteArrayInputStream input = this.input;
+			input.reset();
+			byte[] buffer = this.buffer;
+			long total = 0;
+			try (ChunkedMessageBodyInputStream chunked = new ChunkedMessageBodyInputStream(input)) {
+				int read;
+				while ((read = chunked.read(buffer, 0, buffer.length)) != -1) {
+					total += read;
+				}
+			}
+			return total;
+		}
+
+	}
+
+	/**
+	 * Parses a multipart body of 1 MB made of a form field and several files, reading each part by blocks.
+	 */
+	private static class MultiPartBenchmark extends Benchmark {
+
+		private ByteArrayInputStream input;
+		private byte[] buffer;
+
+		/* default */ MultiPartBenchmark() {
+			super("multipart.parse"); //$NON-NLS-1$
+		}
+
+		@Override
+		public void setUp() throws IOException {
+			byte[] file = createBody(FILE_SIZE);
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			body.write(("--" + BOUNDARY + "\r\n" //$NON-NLS-1$ //$NON-NLS-2$
+					+ "Content-Disposition: form-data; name=\"title\"\r\n\r\n" //$NON-NLS-1$
+					+ "benchmark\r\n").getBytes()); //$NON-NLS-1$
+			for (int i = 0; i < FILE_COUNT; i++) {
+				body.write(("--" + BOUNDARY + "\r\n" //$NON-NLS-1$ //$NON-NLS-2$
+						+ "Content-Disposition: form-data; name=\"file" + i //$NON-NLS-1$
+						+ "\"; filename=\"file" + i + ".bin\"\r\n" //$NON-NLS-1$ //$NON-NLS-2$
+						+ "Content-Type: application/octet-stream\r\n\r\n").getBytes()); //$NON-NLS-1$
+				body.write(file);
+				body.write("\r\n".getBytes()); //$NON-NLS-1$
+			}
+			body.write(("--" + BOUNDARY + "--\r\n").getBytes()); //$NON-NLS-1$ //$NON-NLS-2$
+			this.input = new ByteArrayInputStream(body.toByteArray());
+			this.buffer = new byte[BUFFER_SIZE];
+		}
+
+		@Override
+		public long run(int thread, long operation) throws IOException {
+			ByteArrayInputStream input = this.input;
+			input.reset();
+			byte[] buffer = this.buffer;
+			MultiPartBody multiPart = new MultiPartBodyParser().parseBody(input,
+					"multipart/form-data; boundary=" + BOUNDARY); //$NON-NLS-1$
+			long total = 0;
+			HTTPPart part;
+			while ((part = multiPart.nextPart()) != null) {
+				int read;
+				while ((read = part.read(buffer, 0, buffer.length)) != -1) {
+					total += read;
+				}
+			}
+			return total;
+		}
+
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.benchmark;
+
+import java.io.OutputStream;
+
+/**
+ * An output stream discarding the bytes written, and counting them so that the benchmarks can return a value depending
+ * on what they wrote.
+ */
+public class DiscardOutputStream extends OutputStream {
+
+	private long count;
+
+	/**
+	 * Gets the number of bytes written since the last reset.
+	 *
+	 * @return the number of bytes.
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Resets the number of bytes written.
+	 */
+	public void reset() {
+		this.count = 0;
+	}
+
+	@Override
+	public void write(int b) {
+		this.count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		this.count += len;
+	}
+
+}
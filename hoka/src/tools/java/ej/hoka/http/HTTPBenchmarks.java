@@ -0,0 +1,198 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import ej.hoka.benchmark.Benchmark;
+import ej.hoka.benchmark.DiscardOutputStream;
+import ej.hoka.http.encoding.HTTPEncodingRegistry;
+import ej.hoka.http.requesthandler.RequestAttributes;
+import ej.hoka.http.support.MIMEUtils;
+import ej.hoka.io.PipelineInputStream;
+import ej.hoka.rest.RestEndpoint;
+import ej.hoka.rest.RestRequestHandler;
+
+/**
+ * The benchmarks of the parsing of the requests, the sending of the responses and the routing of the requests to the
+ * REST endpoints.
+ * <p>
+ * They reuse a request and a buffer from one operation to another, like the jobs of the {@link HTTPServer}.
+ */
+public final class HTTPBenchmarks {
+
+	private static final int BUFFER_SIZE = 4096;
+	private static final int BODY_SIZE = 512;
+	private static final int STREAMED_BODY_SIZE = 16384;
+	private static final int SMALL_ROUTE_COUNT = 10;
+	private static final int LARGE_ROUTE_COUNT = 100;
+
+	/**
+	 * A request of a browser, with a percent-encoded URI and parameters.
+	 */
+	private static final String REQUEST = "GET /api/items/caf%C3%A9?sort=name%20asc&page=2&filter=a%2Bb" //$NON-NLS-1$
+			+ " HTTP/1.1\r\n" //$NON-NLS-1$
+			+ "Host: localhost:8080\r\n" //$NON-NLS-1$
+			+ "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:80.0) Gecko/20100101 Firefox/80.0\r\n" //$NON-NLS-1$
+			+ "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" //$NON-NLS-1$
+			+ "Accept-Language: en-US,en;q=0.5\r\n" //$NON-NLS-1$
+			+ "Accept-Encoding: gzip, deflate\r\n" //$NON-NLS-1$
+			+ "Connection: keep-alive\r\n" //$NON-NLS-1$
+			+ "Cookie: session=Zm9vYmFyYmF6cXV4; theme=dark\r\n" //$NON-NLS-1$
+			+ "Cache-Control: no-cache\r\n" //$NON-NLS-1$
+			+ "\r\n"; //$NON-NLS-1$
+
+	private HTTPBenchmarks() {
+		// Forbid instantiation.
+	}
+
+	/**
+	 * Adds the benchmarks of this class to a list.
+	 *
+	 * @param benchmarks
+	 *            the list to add the benchmarks to.
+	 */
+	public static void addTo(List<Benchmark> benchmarks) {
+		benchmarks.add(new ParseBenchmark());
+		benchmarks.add(new ResponseBenchmark("response.send", false)); //$NON-NLS-1$
+		benchmarks.add(new ResponseBenchmark("response.send.chunked", true)); //$NON-NLS-1$
+		benchmarks.add(new RoutingBenchmark("rest.route." + SMALL_ROUTE_COUNT, SMALL_ROUTE_COUNT)); //$NON-NLS-1$
+		benchmarks.add(new RoutingBenchmark("rest.route." + LARGE_ROUTE_COUNT, LARGE_ROUTE_COUNT)); //$NON-NLS-1$
+	}
+
+	private static ByteArrayInputStream createRequestStream(String request) {
+		return new ByteArrayInputStream(request.getBytes());
+	}
+
+	/**
+	 * Parses the request line and the header fields of a request, decoding its URI and its parameters.
+	 * <p>
+	 * The request is read through a {@link PipelineInputStream}, like the connections of the server: its buffer is
+	 * filled again from the start of the request at each operation.
+	 */
+	private static class ParseBenchmark extends Benchmark {
+
+		private ByteArrayInputStream input;
+		private PipelineInputStream bufferedInput;
+		private HTTPRequest request;
+		private HTTPEncodingRegistry encodingRegistry;
+
+		/* default */ ParseBenchmark() {
+			super("request.parse"); //$NON-NLS-1$
+		}
+
+		@Override
+		public void setUp() {
+			this.input = createRequestStream(REQUEST);
+			this.bufferedInput = new PipelineInputStream(this.input, BUFFER_SIZE);
+			this.request = new HTTPRequest();
+			this.encodingRegistry = new HTTPEncodingRegistry();
+		}
+
+		@Override
+		public long run(int thread, long operation) throws IOException {
+			this.input.reset();
+			HTTPRequest request = this.request;
+			request.parse(this.bufferedInput, this.encodingRegistry);
+			return request.getHeader().size() + request.getParameters().size();
+		}
+
+	}
+
+	/**
+	 * Sends a response with a few header fields, either with a body of a known length or with a streamed body sent in
+	 * chunks.
+	 */
+	private static class ResponseBenchmark extends Benchmark {
+
+		private final boolean chunked;
+		private HTTPEncodingRegistry encodingRegistry;
+		private byte[] buffer;
+		private byte[] body;
+		private DiscardOutputStream output;
+
+		/* default */ ResponseBenchmark(String name, boolean chunked) {
+			super(name);
+			this.chunked = chunked;
+		}
+
+		@Override
+		public void setUp() {
+			this.encodingRegistry = new HTTPEncodingRegistry();
+			this.buffer = new byte[BUFFER_SIZE];
+			this.body = new byte[this.chunked ? STREAMED_BODY_SIZE : BODY_SIZE];
+			this.output = new DiscardOutputStream();
+		}
+
+		@Override
+		public long run(int thread, long operation) throws IOException {
+			HTTPResponse response;
+			if (this.chunked) {
+				response = new HTTPResponse(new ByteArrayInputStream(this.body));
+			} else {
+				response = new HTTPResponse(this.body);
+			}
+			response.setStatus(HTTPConstants.HTTP_STATUS_OK);
+			response.setMimeType(MIMEUtils.MIME_JSON);
+			response.addHeaderField("Cache-Control", "no-store"); //$NON-NLS-1$ //$NON-NLS-2$
+			response.addHeaderField("ETag", "\"33a64df5\""); //$NON-NLS-1$ //$NON-NLS-2$
+			DiscardOutputStream output = this.output;
+			output.reset();
+			response.sendResponse(output, null, this.encodingRegistry, this.buffer, true);
+			return output.getCount();
+		}
+
+	}
+
+	/**
+	 * Routes a request to a sub-endpoint of the last of several global REST endpoints, so that all the endpoints are
+	 * compared to its URI.
+	 */
+	private static class RoutingBenchmark extends Benchmark {
+
+		private final int endpointCount;
+		private RestRequestHandler handler;
+		private HTTPRequest request;
+		private Map<String, String> attributes;
+
+		/* default */ RoutingBenchmark(String name, int endpointCount) {
+			super(name);
+			this.endpointCount = endpointCount;
+		}
+
+		@Override
+		public void setUp() throws IOException {
+			final HTTPResponse response = new HTTPResponse("ok"); //$NON-NLS-1$
+			RestRequestHandler handler = new RestRequestHandler();
+			for (int i = 0; i < this.endpointCount; i++) {
+				handler.addEndpoint(new RestEndpoint("/api/resource" + i + "/*") { //$NON-NLS-1$ //$NON-NLS-2$
+					@Override
+					public HTTPResponse get(HTTPRequest request, Map<String, String> attributes) {
+						return response;
+					}
+				});
+			}
+			this.handler = handler;
+			this.request = new HTTPRequest();
+			this.request.parse(createRequestStream("GET /api/resource" + (this.endpointCount - 1) //$NON-NLS-1$
+					+ "/items/42 HTTP/1.1\r\nHost: localhost\r\n\r\n"), new HTTPEncodingRegistry()); //$NON-NLS-1$
+			this.attributes = new RequestAttributes();
+		}
+
+		@Override
+		public long run(int thread, long operation) {
+			HTTPResponse response = this.handler.process(this.request, this.attributes);
+			return response.getLength();
+		}
+
+	}
+
+}
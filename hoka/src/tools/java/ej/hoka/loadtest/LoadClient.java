@@ -0,0 +1,299 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Random;
+
+import ej.bon.Util;
+import ej.hoka.loadtest.LoadTest.Endpoint;
+
+/**
+ * A client of a {@link LoadTest}, sending its requests on its own connection until it is stopped.
+ * <p>
+ * When the requests are pipelined, the client sends a batch of requests then reads their responses. When an error
+ * occurs, the connection is closed and another one is opened.
+ */
+/* default */ class LoadClient extends Thread {
+
+	private static final int TIMEOUT = 10000;
+	private static final int BUFFER_SIZE = 8192;
+	private static final int MAX_LINE_LENGTH = 8192;
+	private static final int HEX_RADIX = 16;
+	private static final String STATUS_OK = "200"; //$NON-NLS-1$
+	private static final String FIELD_CONTENT_LENGTH = "content-length"; //$NON-NLS-1$
+	private static final String FIELD_TRANSFER_ENCODING = "transfer-encoding"; //$NON-NLS-1$
+	private static final String FIELD_CONNECTION = "connection"; //$NON-NLS-1$
+
+	private final LoadTest test;
+	private final Random random;
+	private final Endpoint[] batch;
+	private final StringBuilder line;
+
+	private volatile boolean running;
+	private Socket socket;
+	private InputStream input;
+	private OutputStream output;
+	private boolean closed;
+
+	private long errors;
+	private long bytes;
+	private long maxLatency;
+
+	/**
+	 * Creates a client.
+	 *
+	 * @param test
+	 *            the load test.
+	 * @param index
+	 *            the index of the client, used as seed of its random choice of the endpoints.
+	 */
+	/* default */ LoadClient(LoadTest test, int index) {
+		super("LoadClient-" + index); //$NON-NLS-1$
+		this.test = test;
+		this.random = new Random(index);
+		this.batch = new Endpoint[test.getPipeline()];
+		this.line = new StringBuilder();
+		this.running = true;
+	}
+
+	/**
+	 * Stops the client after its current batch of requests.
+	 */
+	/* default */ void stopClient() {
+		this.running = false;
+	}
+
+	/**
+	 * Gets the number of failed requests during the measured time.
+	 *
+	 * @return the number of errors.
+	 */
+	/* default */ long getErrors() {
+		return this.errors;
+	}
+
+	/**
+	 * Gets the number of bytes of the responses received during the measured time.
+	 *
+	 * @return the number of bytes.
+	 */
+	/* default */ long getBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * Gets the largest latency measured, in microseconds.
+	 *
+	 * @return the largest latency.
+	 */
+	/* default */ long getMaxLatency() {
+		return this.maxLatency;
+	}
+
+	@Override
+	public void run() {
+		LoadTest test = this.test;
+		while (this.running) {
+			try {
+				if (this.socket == null) {
+					connect();
+				}
+				sendBatch();
+			} catch (IOException e) {
+				if (this.running && test.isRecording()) {
+					this.errors++;
+				}
+				disconnect();
+			}
+		}
+		disconnect();
+	}
+
+	private void connect() throws IOException {
+		LoadTest test = this.test;
+		Socket socket = new Socket(test.getHost(), test.getPort());
+		this.socket = socket;
+		socket.setTcpNoDelay(true);
+		socket.setSoTimeout(TIMEOUT);
+		this.input = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+		this.output = socket.getOutputStream();
+		this.closed = false;
+	}
+
+	private void disconnect() {
+		Socket socket = this.socket;
+		if (socket != null) {
+			this.socket = null;
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing to do.
+			}
+		}
+	}
+
+	/**
+	 * Sends a batch of requests, then reads their responses and records their latencies.
+	 */
+	private void sendBatch() throws IOException {
+		LoadTest test = this.test;
+		Endpoint[] batch = this.batch;
+		for (int i = 0; i < batch.length; i++) {
+			batch[i] = test.nextEndpoint(this.random);
+		}
+
+		long startTime = Util.platformTimeNanos();
+		OutputStream output = this.output;
+		for (Endpoint endpoint : batch) {
+			output.write(endpoint.request);
+		}
+		output.flush();
+
+		for (Endpoint endpoint : batch) {
+			boolean recording = test.isRecording();
+			long length = readResponse();
+			long latency = Util.platformTimeNanos() - startTime;
+			if (recording && test.isRecording()) {
+				if (length < 0) {
+					this.errors++;
+				} else {
+					this.bytes += length;
+					this.maxLatency = Math.max(this.maxLatency, test.record(endpoint, latency));
+				}
+			}
+		}
+
+		if (this.closed) {
+			disconnect();
+		}
+	}
+
+	/**
+	 * Reads a response and skips its body.
+	 *
+	 * @return the number of bytes of the response, or <code>-1</code> if its status is not <code>200</code>.
+	 */
+	private long readResponse() throws IOException {
+		InputStream input = this.input;
+		String statusLine = readLine(input);
+		long length = statusLine.length() + 2;
+		int space = statusLine.indexOf(' ');
+		boolean ok = space != -1 && statusLine.startsWith(STATUS_OK, space + 1);
+
+		long contentLength = -1;
+		boolean chunked = false;
+		String header;
+		while (!(header = readLine(input)).isEmpty()) {
+			length += header.length() + 2;
+			int colon = header.indexOf(':');
+			if (colon == -1) {
+				throw new IOException(header);
+			}
+			String name = header.substring(0, colon).trim().toLowerCase();
+			String value = header.substring(colon + 1).trim();
+			if (name.equals(FIELD_CONTENT_LENGTH)) {
+				contentLength = Long.parseLong(value);
+			} else if (name.equals(FIELD_TRANSFER_ENCODING)) {
+				chunked = value.equalsIgnoreCase("chunked"); //$NON-NLS-1$
+			} else if (name.equals(FIELD_CONNECTION)) {
+				this.closed |= value.equalsIgnoreCase("close"); //$NON-NLS-1$
+			}
+		}
+		length += 2;
+
+		if (chunked) {
+			length += skipChunkedBody(input);
+		} else if (contentLength >= 0) {
+			skip(input, contentLength);
+			length += contentLength;
+		} else {
+			// The body ends with the connection.
+			this.closed = true;
+			length += skipToEnd(input);
+		}
+		return ok ? length : -1;
+	}
+
+	private long skipChunkedBody(InputStream input) throws IOException {
+		long length = 0;
+		while (true) {
+			String sizeLine = readLine(input);
+			length += sizeLine.length() + 2;
+			int extension = sizeLine.indexOf(';');
+			String size = (extension == -1 ? sizeLine : sizeLine.substring(0, extension)).trim();
+			long chunkSize = Long.parseLong(size, HEX_RADIX);
+			if (chunkSize == 0) {
+				break;
+			}
+			skip(input, chunkSize + 2);
+			length += chunkSize + 2;
+		}
+		// Trailer fields.
+		String trailer;
+		while (!(trailer = readLine(input)).isEmpty()) {
+			length += trailer.length() + 2;
+		}
+		return length + 2;
+	}
+
+	private static void skip(InputStream input, long count) throws IOException {
+		long remaining = count;
+		while (remaining > 0) {
+			long skipped = input.skip(remaining);
+			if (skipped <= 0) {
+				if (input.read() == -1) {
+					throw new EOFException();
+				}
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+	}
+
+	private static long skipToEnd(InputStream input) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long length = 0;
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			length += read;
+		}
+		return length;
+	}
+
+	/**
+	 * Reads a line ended by CRLF, without its end.
+	 */
+	private String readLine(InputStream input) throws IOException {
+		StringBuilder line = this.line;
+		line.setLength(0);
+		while (true) {
+			int read = input.read();
+			if (read == -1) {
+				throw new EOFException();
+			}
+			if (read == '\n') {
+				int length = line.length();
+				if (length > 0 && line.charAt(length - 1) == '\r') {
+					line.setLength(length - 1);
+				}
+				return line.toString();
+			}
+			if (line.length() == MAX_LINE_LENGTH) {
+				throw new IOException();
+			}
+			line.append((char) read);
+		}
+	}
+
+}
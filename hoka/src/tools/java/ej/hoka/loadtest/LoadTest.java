@@ -0,0 +1,499 @@
+/*
+ * Java
+ *
+ * Copyright 2020 MicroEJ Corp. All rights reserved.
+ * This library is provided in source code for use, modification and test, subject to license terms.
+ * Any modification of the source code will break MicroEJ Corp. warranties on the whole library.
+ */
+package ej.hoka.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import ej.bon.Util;
+import ej.hoka.http.HTTPConstants;
+import ej.hoka.http.HTTPRequest;
+import ej.hoka.http.HTTPResponse;
+import ej.hoka.http.HTTPServer;
+import ej.hoka.http.body.BodyParser;
+import ej.hoka.http.support.MIMEUtils;
+import ej.hoka.json.JsonWriter;
+import ej.hoka.log.Messages;
+import ej.hoka.metrics.Histogram;
+import ej.hoka.rest.RestEndpoint;
+import ej.hoka.rest.RestRequestHandler;
+import ej.util.message.Level;
+
+/**
+ * Starts an {@link HTTPServer} on the loopback interface and drives it with concurrent clients, then prints the
+ * throughput and the latencies of the requests.
+ * <p>
+ * The server exposes four endpoints:
+ * <ul>
+ * <li><code>hello</code>: <code>GET /hello</code>, a short text,</li>
+ * <li><code>data</code>: <code>GET /data</code>, a body of the response size, with its length,</li>
+ * <li><code>stream</code>: <code>GET /stream</code>, a body of the response size, sent in chunks,</li>
+ * <li><code>echo</code>: <code>POST /echo</code>, reads a body of the request size and returns its length.</li>
+ * </ul>
+ * Each client opens a connection and sends its requests, choosing each endpoint at random according to the mix. The
+ * latency of a request is the time from the sending of its batch of pipelined requests to the end of its response.
+ * The requests completed during the warm-up are not counted.
+ * <p>
+ * The arguments are:
+ * <ul>
+ * <li><code>-port &lt;port&gt;</code>: the port of the server, 8099 by default,</li>
+ * <li><code>-concurrency &lt;n&gt;</code>: the number of clients, each with its own connection, 16 by default,</li>
+ * <li><code>-jobs &lt;n&gt;</code>: the number of jobs of the server, the number of clients by default,</li>
+ * <li><code>-close</code>: closes the connection after each request, instead of keeping it alive,</li>
+ * <li><code>-pipeline &lt;n&gt;</code>: the number of requests sent before reading their responses, 1 by
+ * default,</li>
+ * <li><code>-warmup &lt;ms&gt;</code>: the warm-up time, 2 seconds by default,</li>
+ * <li><code>-duration &lt;ms&gt;</code>: the measured time, 10 seconds by default,</li>
+ * <li><code>-request-size &lt;bytes&gt;</code>: the size of the bodies of the requests, 1024 by default,</li>
+ * <li><code>-response-size &lt;bytes&gt;</code>: the size of the bodies of the responses, 1024 by default,</li>
+ * <li><code>-mix &lt;name:weight,...&gt;</code>: the weights of the endpoints,
+ * <code>hello:70,data:10,stream:10,echo:10</code> by default.</li>
+ * </ul>
+ * The results are printed as a JSON object on a single line on the standard output, so that the results of two builds
+ * can be compared by a script. The latencies are in microseconds, rounded up to the bucket of a histogram whose
+ * buckets grow by 2%.
+ */
+public final class LoadTest {
+
+	private static final int DEFAULT_PORT = 8099;
+	private static final int DEFAULT_CONCURRENCY = 16;
+	private static final int DEFAULT_WARMUP = 2000;
+	private static final int DEFAULT_DURATION = 10000;
+	private static final int DEFAULT_BODY_SIZE = 1024;
+	private static final String DEFAULT_MIX = "hello:70,data:10,stream:10,echo:10"; //$NON-NLS-1$
+
+	private static final String HELLO = "hello"; //$NON-NLS-1$
+	private static final String DATA = "data"; //$NON-NLS-1$
+	private static final String STREAM = "stream"; //$NON-NLS-1$
+	private static final String ECHO = "echo"; //$NON-NLS-1$
+	private static final String HELLO_MESSAGE = "Hello, World!"; //$NON-NLS-1$
+	private static final String HOST = "127.0.0.1"; //$NON-NLS-1$
+	private static final int COPY_BUFFER_SIZE = 4096;
+	private static final double NANOSECONDS_PER_SECOND = 1e9;
+	private static final long NANOSECONDS_PER_MILLISECOND = 1000000;
+	private static final long NANOSECONDS_PER_MICROSECOND = 1000;
+
+	/**
+	 * The bounds of the buckets of the latencies, in microseconds: from 1 microsecond to more than 1 minute, each
+	 * bound 2% larger than the previous one.
+	 */
+	private static final long[] LATENCY_BOUNDS = createBounds(1, 60000000, 1.02);
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+	private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			"p999" }; //$NON-NLS-1$
+
+	private int port = DEFAULT_PORT;
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private int jobCount;
+	private boolean keepAlive = true;
+	private int pipeline = 1;
+	private int warmup = DEFAULT_WARMUP;
+	private int duration = DEFAULT_DURATION;
+	private int requestSize = DEFAULT_BODY_SIZE;
+	private int responseSize = DEFAULT_BODY_SIZE;
+	private String mix = DEFAULT_MIX;
+
+	private Endpoint[] endpoints;
+	private int totalWeight;
+	private Histogram latencies;
+	private volatile boolean recording;
+
+	private LoadTest() {
+		// created by main
+	}
+
+	/**
+	 * Runs the load test configured by the arguments.
+	 *
+	 * @param args
+	 *            the arguments, see {@link LoadTest}.
+	 * @throws IOException
+	 *             if the server cannot be started or the results cannot be printed.
+	 */
+	public static void main(String[] args) throws IOException {
+		LoadTest test = new LoadTest();
+		test.parseArguments(args);
+		test.run(System.out);
+	}
+
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-close")) { //$NON-NLS-1$
+				this.keepAlive = false;
+				continue;
+			}
+			if (i + 1 == args.length) {
+				throw new IllegalArgumentException(arg);
+			}
+			String value = args[++i];
+			if (arg.equals("-port")) { //$NON-NLS-1$
+				this.port = Integer.parseInt(value);
+			} else if (arg.equals("-concurrency")) { //$NON-NLS-1$
+				this.concurrency = Integer.parseInt(value);
+			} else if (arg.equals("-jobs")) { //$NON-NLS-1$
+				this.jobCount = Integer.parseInt(value);
+			} else if (arg.equals("-pipeline")) { //$NON-NLS-1$
+				this.pipeline = Integer.parseInt(value);
+			} else if (arg.equals("-warmup")) { //$NON-NLS-1$
+				this.warmup = Integer.parseInt(value);
+			} else if (arg.equals("-duration")) { //$NON-NLS-1$
+				this.duration = Integer.parseInt(value);
+			} else if (arg.equals("-request-size")) { //$NON-NLS-1$
+				this.requestSize = Integer.parseInt(value);
+			} else if (arg.equals("-response-size")) { //$NON-NLS-1$
+				this.responseSize = Integer.parseInt(value);
+			} else if (arg.equals("-mix")) { //$NON-NLS-1$
+				this.mix = value;
+			} else {
+				throw new IllegalArgumentException(arg);
+			}
+		}
+		if (this.jobCount == 0) {
+			this.jobCount = this.concurrency;
+		}
+		if (this.concurrency <= 0 || this.jobCount <= 0 || this.pipeline <= 0 || this.warmup < 0
+				|| this.duration <= 0 || this.requestSize < 0 || this.responseSize < 0
+				|| (this.pipeline > 1 && !this.keepAlive)) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	private void run(OutputStream out) throws IOException {
+		this.endpoints = parseMix(this.mix);
+		this.latencies = new Histogram(LATENCY_BOUNDS);
+		// Logging each request would slow the server down more than the requests themselves.
+		Messages.LOGGER.setLevel(Level.WARNING);
+
+		HTTPServer server = new HTTPServer(this.port, 2 * this.concurrency, this.jobCount, createRequestHandler());
+		server.start();
+		try {
+			LoadClient[] clients = new LoadClient[this.concurrency];
+			for (int i = 0; i < clients.length; i++) {
+				clients[i] = new LoadClient(this, i);
+				clients[i].start();
+			}
+
+			sleep(this.warmup);
+			this.recording = true;
+			long startTime = Util.platformTimeNanos();
+			sleep(this.duration);
+			this.recording = false;
+			long elapsed = Util.platformTimeNanos() - startTime;
+
+			for (LoadClient client : clients) {
+				client.stopClient();
+			}
+			long errors = 0;
+			long bytes = 0;
+			long maxLatency = 0;
+			for (LoadClient client : clients) {
+				join(client);
+				errors += client.getErrors();
+				bytes += client.getBytes();
+				maxLatency = Math.max(maxLatency, client.getMaxLatency());
+			}
+			printResults(out, elapsed, errors, bytes, maxLatency);
+		} finally {
+			server.stop();
+		}
+	}
+
+	private void printResults(OutputStream out, long elapsed, long errors, long bytes, long maxLatency)
+			throws IOException {
+		Histogram latencies = this.latencies;
+		long requests = latencies.getCount();
+		JsonWriter writer = new JsonWriter(out);
+		writer.beginObject();
+
+		writer.name("config").beginObject(); //$NON-NLS-1$
+		writer.name("concurrency").value(this.concurrency); //$NON-NLS-1$
+		writer.name("jobs").value(this.jobCount); //$NON-NLS-1$
+		writer.name("keepAlive").value(this.keepAlive); //$NON-NLS-1$
+		writer.name("pipeline").value(this.pipeline); //$NON-NLS-1$
+		writer.name("warmup").value(this.warmup); //$NON-NLS-1$
+		writer.name("duration").value(this.duration); //$NON-NLS-1$
+		writer.name("requestSize").value(this.requestSize); //$NON-NLS-1$
+		writer.name("responseSize").value(this.responseSize); //$NON-NLS-1$
+		writer.name("mix").value(this.mix); //$NON-NLS-1$
+		writer.endObject();
+
+		writer.name("elapsed").value(elapsed / NANOSECONDS_PER_MILLISECOND); //$NON-NLS-1$
+		writer.name("requests").value(requests); //$NON-NLS-1$
+		writer.name("errors").value(errors); //$NON-NLS-1$
+		writer.name("bytesReceived").value(bytes); //$NON-NLS-1$
+		writer.name("throughput").value(round(requests * NANOSECONDS_PER_SECOND / elapsed)); //$NON-NLS-1$
+		writer.name("latency"); //$NON-NLS-1$
+		writeLatencies(writer, latencies);
+		writer.name("max").value(maxLatency); //$NON-NLS-1$
+		writer.endObject();
+
+		writer.name("endpoints").beginObject(); //$NON-NLS-1$
+		for (Endpoint endpoint : this.endpoints) {
+			writer.name(endpoint.name);
+			writer.beginObject();
+			writer.name("requests").value(endpoint.latencies.getCount()); //$NON-NLS-1$
+			writer.name("latency"); //$NON-NLS-1$
+			writeLatencies(writer, endpoint.latencies);
+			writer.endObject();
+			writer.endObject();
+		}
+		writer.endObject();
+
+		writer.endObject();
+		writer.flush();
+		out.write('\n');
+		out.flush();
+	}
+
+	/**
+	 * Writes the mean and the percentiles of the latencies, leaving their object open.
+	 */
+	private static void writeLatencies(JsonWriter writer, Histogram latencies) throws IOException {
+		writer.beginObject();
+		long count = latencies.getCount();
+		writer.name("mean").value(count == 0 ? 0 : round((double) latencies.getSum() / count)); //$NON-NLS-1$
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			writer.name(PERCENTILE_NAMES[i]).value(latencies.getPercentile(PERCENTILES[i]));
+		}
+	}
+
+	/**
+	 * Checks whether the requests completed now are counted.
+	 *
+	 * @return <code>true</code> once the warm-up is done, until the end of the measured time.
+	 */
+	/* default */ boolean isRecording() {
+		return this.recording;
+	}
+
+	/**
+	 * Records the latency of a request completed during the measured time.
+	 *
+	 * @param endpoint
+	 *            the endpoint of the request.
+	 * @param latency
+	 *            the latency in nanoseconds.
+	 * @return the latency in microseconds.
+	 */
+	/* default */ long record(Endpoint endpoint, long latency) {
+		long microseconds = latency / NANOSECONDS_PER_MICROSECOND;
+		endpoint.latencies.record(microseconds);
+		this.latencies.record(microseconds);
+		return microseconds;
+	}
+
+	/**
+	 * Chooses the endpoint of the next request according to the mix.
+	 *
+	 * @param random
+	 *            the random number generator of the client.
+	 * @return the endpoint.
+	 */
+	/* default */ Endpoint nextEndpoint(Random random) {
+		int value = random.nextInt(this.totalWeight);
+		for (Endpoint endpoint : this.endpoints) {
+			value -= endpoint.weight;
+			if (value < 0) {
+				return endpoint;
+			}
+		}
+		throw new IllegalStateException();
+	}
+
+	/* default */ String getHost() {
+		return HOST;
+	}
+
+	/* default */ int getPort() {
+		return this.port;
+	}
+
+	/* default */ boolean isKeepAlive() {
+		return this.keepAlive;
+	}
+
+	/* default */ int getPipeline() {
+		return this.pipeline;
+	}
+
+	private Endpoint[] parseMix(String mix) {
+		List<Endpoint> endpoints = new ArrayList<>();
+		int totalWeight = 0;
+		for (String entry : mix.split(",")) { //$NON-NLS-1$
+			int separator = entry.indexOf(':');
+			if (separator == -1) {
+				throw new IllegalArgumentException(entry);
+			}
+			String name = entry.substring(0, separator).trim();
+			int weight = Integer.parseInt(entry.substring(separator + 1).trim());
+			if (weight < 0) {
+				throw new IllegalArgumentException(entry);
+			}
+			if (weight > 0) {
+				endpoints.add(new Endpoint(name, weight, createRequest(name)));
+				totalWeight += weight;
+			}
+		}
+		if (totalWeight == 0) {
+			throw new IllegalArgumentException(mix);
+		}
+		this.totalWeight = totalWeight;
+		return endpoints.toArray(new Endpoint[endpoints.size()]);
+	}
+
+	private byte[] createRequest(String name) {
+		boolean post = name.equals(ECHO);
+		if (!post && !name.equals(HELLO) && !name.equals(DATA) && !name.equals(STREAM)) {
+			throw new IllegalArgumentException(name);
+		}
+		StringBuilder request = new StringBuilder();
+		request.append(post ? "POST /" : "GET /"); //$NON-NLS-1$ //$NON-NLS-2$
+		request.append(name).append(" HTTP/1.1\r\n"); //$NON-NLS-1$
+		request.append("Host: ").append(HOST).append(':').append(this.port).append("\r\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		if (!this.keepAlive) {
+			request.append("Connection: close\r\n"); //$NON-NLS-1$
+		}
+		if (post) {
+			request.append("Content-Type: ").append(MIMEUtils.MIME_DEFAULT_BINARY) //$NON-NLS-1$
+					.append("\r\n"); //$NON-NLS-1$
+			request.append("Content-Length: ").append(this.requestSize).append("\r\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		request.append("\r\n"); //$NON-NLS-1$
+		byte[] head = request.toString().getBytes();
+		if (!post) {
+			return head;
+		}
+		byte[] bytes = new byte[head.length + this.requestSize];
+		System.arraycopy(head, 0, bytes, 0, head.length);
+		for (int i = head.length; i < bytes.length; i++) {
+			bytes[i] = (byte) ('a' + i % 26);
+		}
+		return bytes;
+	}
+
+	private RestRequestHandler createRequestHandler() {
+		final byte[] data = new byte[this.responseSize];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ('a' + i % 26);
+		}
+		final BodyParser<Long> lengthParser = new BodyParser<Long>() {
+			@Override
+			public Long parseBody(InputStream inputStream, String contentType) throws IOException {
+				byte[] buffer = new byte[COPY_BUFFER_SIZE];
+				long length = 0;
+				int read;
+				while ((read = inputStream.read(buffer)) != -1) {
+					length += read;
+				}
+				return Long.valueOf(length);
+			}
+		};
+
+		RestRequestHandler handler = new RestRequestHandler();
+		handler.addEndpoint(new RestEndpoint("/" + HELLO) { //$NON-NLS-1$
+			@Override
+			public HTTPResponse get(HTTPRequest request, Map<String, String> attributes) {
+				return new HTTPResponse(HTTPConstants.HTTP_STATUS_OK, MIMEUtils.MIME_PLAINTEXT, HELLO_MESSAGE);
+			}
+		});
+		handler.addEndpoint(new RestEndpoint("/" + DATA) { //$NON-NLS-1$
+			@Override
+			public HTTPResponse get(HTTPRequest request, Map<String, String> attributes) {
+				HTTPResponse response = new HTTPResponse(data);
+				response.setStatus(HTTPConstants.HTTP_STATUS_OK);
+				response.setMimeType(MIMEUtils.MIME_DEFAULT_BINARY);
+				return response;
+			}
+		});
+		handler.addEndpoint(new RestEndpoint("/" + STREAM) { //$NON-NLS-1$
+			@Override
+			public HTTPResponse get(HTTPRequest request, Map<String, String> attributes) {
+				return new HTTPResponse(HTTPConstants.HTTP_STATUS_OK, MIMEUtils.MIME_DEFAULT_BINARY,
+						new ByteArrayInputStream(data));
+			}
+		});
+		handler.addEndpoint(new RestEndpoint("/" + ECHO) { //$NON-NLS-1$
+			@Override
+			public HTTPResponse post(HTTPRequest request, Map<String, String> attributes) {
+				try {
+					Long length = request.parseBody(lengthParser);
+					return new HTTPResponse(HTTPConstants.HTTP_STATUS_OK, MIMEUtils.MIME_PLAINTEXT,
+							length.toString());
+				} catch (IOException e) {
+					return HTTPResponse.createResponseFromStatus(HTTPConstants.HTTP_STATUS_BADREQUEST);
+				}
+			}
+		});
+		return handler;
+	}
+
+	/**
+	 * Creates bounds growing by a given factor, and at least by one.
+	 */
+	private static long[] createBounds(long first, long last, double factor) {
+		List<Long> bounds = new ArrayList<>();
+		long bound = first;
+		while (bound < last) {
+			bounds.add(Long.valueOf(bound));
+			bound = Math.max(bound + 1, (long) Math.ceil(bound * factor));
+		}
+		bounds.add(Long.valueOf(bound));
+		long[] array = new long[bounds.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = bounds.get(i).longValue();
+		}
+		return array;
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 10) / 10.0;
+	}
+
+	private static void sleep(int time) {
+		try {
+			Thread.sleep(time);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void join(Thread thread) {
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * An endpoint of the mix, with the latencies of its requests.
+	 */
+	/* default */ static final class Endpoint {
+
+		/* default */ final String name;
+		/* default */ final int weight;
+		/* default */ final byte[] request;
+		/* default */ final Histogram latencies;
+
+		/* default */ Endpoint(String name, int weight, byte[] request) {
+			this.name = name;
+			this.weight = weight;
+			this.request = request;
+			this.latencies = new Histogram(LATENCY_BOUNDS);
+		}
+
+	}
+
+}